@@ -0,0 +1,86 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventDeserializer;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventSerializer;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация ProductCreatedEvent так, как она настроена в сервисах: ProductCreatedEventSerializer у продюсера и
+ * ErrorHandlingDeserializer с ProductCreatedEventDeserializer у потребителя. Для сравнения с прежним форматом
+ * измеряется та же цепочка с JsonSerializer/JsonDeserializer и заголовками типа.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EventSerdeBenchmark {
+    private static final String TOPIC = "product-created-events-topic";
+
+    private ProductCreatedEvent event;
+    private ProductCreatedEventSerializer contractSerializer;
+    private ErrorHandlingDeserializer<Object> contractDeserializer;
+    private JsonSerializer<ProductCreatedEvent> jsonSerializer;
+    private ErrorHandlingDeserializer<Object> jsonDeserializer;
+    private byte[] contractValue;
+    private byte[] jsonValue;
+    private RecordHeaders jsonHeaders;
+
+    @Setup
+    public void setUp() {
+        event = new ProductCreatedEvent(UUID.randomUUID().toString(), "Samsung", new BigDecimal("600.00"), 1);
+
+        contractSerializer = new ProductCreatedEventSerializer();
+        contractDeserializer = new ErrorHandlingDeserializer<>();
+        contractDeserializer.configure(Map.of(
+                ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, ProductCreatedEventDeserializer.class), false);
+        contractValue = contractSerializer.serialize(TOPIC, new RecordHeaders(), event);
+
+        jsonSerializer = new JsonSerializer<>();
+        jsonDeserializer = new ErrorHandlingDeserializer<>();
+        // заголовки типа нужны на каждой итерации, поэтому не удаляются после чтения
+        jsonDeserializer.configure(Map.of(
+                ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class,
+                JsonDeserializer.TRUSTED_PACKAGES, "sakhno.springframework.ms.EventContract.event",
+                JsonDeserializer.REMOVE_TYPE_INFO_HEADERS, false), false);
+        jsonHeaders = new RecordHeaders();
+        jsonValue = jsonSerializer.serialize(TOPIC, jsonHeaders, event);
+    }
+
+    @TearDown
+    public void tearDown() {
+        contractDeserializer.close();
+        jsonDeserializer.close();
+    }
+
+    @Benchmark
+    public byte[] contractSerialize() {
+        return contractSerializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+
+    @Benchmark
+    public Object contractDeserialize() {
+        return contractDeserializer.deserialize(TOPIC, new RecordHeaders(), contractValue);
+    }
+
+    @Benchmark
+    public byte[] jsonSerialize() {
+        return jsonSerializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+
+    @Benchmark
+    public Object jsonDeserialize() {
+        return jsonDeserializer.deserialize(TOPIC, jsonHeaders, jsonValue);
+    }
+}
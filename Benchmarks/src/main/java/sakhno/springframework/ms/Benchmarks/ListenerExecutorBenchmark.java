@@ -0,0 +1,73 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Блокирующий обработчик на исполнителе слушателей, как в KafkaConfig: executor=platform - SimpleAsyncTaskExecutor
+ * с потоками платформы (по умолчанию для контейнера), executor=virtual - тот же исполнитель с виртуальными потоками
+ * (kafka.listener.threading=virtual). Операция - TASKS задач, каждая ждет BLOCKING_MS, как вызов сервиса
+ * уведомлений. Виртуальные потоки доступны с Java 21: на более ранней JDK executor=virtual пропускается, операция
+ * ничего не делает и ее результат не сравнивается.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ListenerExecutorBenchmark {
+    private static final int TASKS = 200;
+    private static final long BLOCKING_MS = 1;
+
+    @Param({"platform", "virtual"})
+    public String executor;
+
+    private SimpleAsyncTaskExecutor taskExecutor;
+
+    static boolean virtualThreadsSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    @Setup
+    public void setUp() {
+        if ("virtual".equals(executor) && !virtualThreadsSupported()) {
+            System.out.println("executor=virtual пропущен: виртуальные потоки требуют Java 21, текущая версия "
+                    + Runtime.version().feature());
+            return;
+        }
+        taskExecutor = new SimpleAsyncTaskExecutor("kafka-listener-" + ("virtual".equals(executor) ? "vt-" : ""));
+        taskExecutor.setVirtualThreads("virtual".equals(executor));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (taskExecutor != null) {
+            taskExecutor.close();
+        }
+    }
+
+    @Benchmark
+    public long blockingHandler() throws InterruptedException {
+        if (taskExecutor == null) {
+            return 0;
+        }
+        CountDownLatch done = new CountDownLatch(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            taskExecutor.execute(() -> {
+                try {
+                    Thread.sleep(BLOCKING_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        return done.getCount();
+    }
+}
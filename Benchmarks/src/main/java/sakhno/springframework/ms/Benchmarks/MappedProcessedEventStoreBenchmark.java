@@ -0,0 +1,80 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import sakhno.springframework.ms.EmailNotificationService.dedup.MappedProcessedEventStore;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedMessage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Те же операции, что в ProcessedEventStoreBenchmark, на отображенном в память индексе
+ * (notification.dedup.store=mapped) вместо H2: findMissAndSave - промах и вставка, findHit - дубликат из PRELOADED
+ * записей. Без транзакции вставка выполняется сразу.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MappedProcessedEventStoreBenchmark {
+    private static final int PRELOADED = 10_000;
+    private static final int PARTITION = 0;
+
+    private Path directory;
+    private MappedProcessedEventStore store;
+    private long mostSignificantBits;
+    private long sequence;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("dedup-benchmark");
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Map.of("notification.dedup.mapped.directory", directory.toString(),
+                        "notification.dedup.mapped.single-instance", "true")));
+        store = new MappedProcessedEventStore(environment);
+        mostSignificantBits = ThreadLocalRandom.current().nextLong();
+        for (int i = 0; i < PRELOADED; i++) {
+            store.save(new ProcessedMessage(messageId(i), "product-" + i, PARTITION));
+        }
+        sequence = PRELOADED;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.destroy();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public boolean findMissAndSave() {
+        String messageId = messageId(sequence++);
+        if (store.contains(messageId, PARTITION)) {
+            return true;
+        }
+        store.save(new ProcessedMessage(messageId, "product", PARTITION));
+        return false;
+    }
+
+    @Benchmark
+    public boolean findHit() {
+        return store.contains(messageId(ThreadLocalRandom.current().nextInt(PRELOADED)), PARTITION);
+    }
+
+    private String messageId(long sequence) {
+        return new UUID(mostSignificantBits, sequence).toString();
+    }
+}
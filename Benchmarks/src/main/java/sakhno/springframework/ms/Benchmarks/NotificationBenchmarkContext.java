@@ -0,0 +1,74 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+import sakhno.springframework.ms.EmailNotificationService.cache.ProcessedEventCache;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+import sakhno.springframework.ms.EmailNotificationService.dedup.JpaProcessedEventStore;
+import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
+import sakhno.springframework.ms.EmailNotificationService.handler.ProductCreatedEventHandler;
+import sakhno.springframework.ms.EmailNotificationService.handler.ProductCreatedEventProcessor;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerPipelineMetrics;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.EmailNotificationService.resilience.NotificationCircuitBreaker;
+import sakhno.springframework.ms.EmailNotificationService.resilience.TokenBucketRateLimiter;
+
+import java.net.http.HttpClient;
+import java.util.Arrays;
+
+/**
+ * Контекст EmailNotificationService без Kafka: JPA с H2 в памяти, ProcessedEventRepository и цепочка
+ * ProductCreatedEventHandler - ProductCreatedEventProcessor - NotificationClient. RestTemplate заменен заглушкой,
+ * которая сразу отвечает 200. Настройки читаются из benchmark.properties, application.properties сервиса не
+ * используется. Без @EnableKafka аннотация @KafkaListener не создает контейнер, поэтому handle вызывается напрямую.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration(exclude = KafkaAutoConfiguration.class)
+@EntityScan(basePackageClasses = ProcessedEventEntity.class)
+@EnableJpaRepositories(basePackageClasses = ProcessedEventRepository.class)
+@Import({ProductCreatedEventHandler.class, ProductCreatedEventProcessor.class, NotificationClient.class,
+        NotificationCircuitBreaker.class, TokenBucketRateLimiter.class, ProcessedEventCache.class,
+        JpaProcessedEventStore.class, ConsumerPipelineMetrics.class})
+public class NotificationBenchmarkContext {
+
+    /**
+     * @param properties - настройки поверх benchmark.properties в виде name=value
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(NotificationBenchmarkContext.class)
+                .properties("spring.config.name=benchmark")
+                .run(Arrays.stream(properties).map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    @Bean
+    RestTemplate stubRestTemplate() {
+        return new StubRestTemplate();
+    }
+
+    @Bean
+    HttpClient notificationHttpClient() {
+        return HttpClient.newHttpClient();
+    }
+
+    static class StubRestTemplate extends RestTemplate {
+        private static final ResponseEntity<String> OK = ResponseEntity.ok("ok");
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> ResponseEntity<T> exchange(String url, HttpMethod method, HttpEntity<?> requestEntity,
+                                              Class<T> responseType, Object... uriVariables) {
+            return (ResponseEntity<T>) OK;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationHttpClientPool;
+import sakhno.springframework.ms.EmailNotificationService.resilience.NotificationCircuitBreaker;
+import sakhno.springframework.ms.EmailNotificationService.resilience.TokenBucketRateLimiter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NotificationClient.sendNotification из THREADS потоков против локальной заглушки сервиса уведомлений, которая сразу
+ * отвечает 200. client=simple - соединение на каждый вызов (SimpleClientHttpRequestFactory), client=pooled - пул
+ * постоянных соединений {@link NotificationHttpClientPool}. Throughput дает число вызовов в секунду, SampleTime -
+ * распределение времени вызова с p99.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(NotificationClientBenchmark.THREADS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NotificationClientBenchmark {
+    static final int THREADS = 8;
+
+    @Param({"simple", "pooled"})
+    public String client;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private NotificationHttpClientPool pool;
+    private NotificationClient notificationClient;
+
+    @Setup
+    public void setUp() throws IOException {
+        // без nodelay заглушка добавляет к вызову около 40 мс (Нейгл и отложенный ACK), см. DownstreamStubServer
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        serverExecutor = Executors.newFixedThreadPool(THREADS * 2);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/response", exchange -> {
+            byte[] body = "{}".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                "notification.client.http.pool.max-per-route", THREADS,
+                "notification.client.circuit-breaker.enabled", false,
+                "notification.client.rate-limit.enabled", false)));
+        RestTemplate restTemplate;
+        if ("pooled".equals(client)) {
+            pool = new NotificationHttpClientPool(environment);
+            restTemplate = new RestTemplate(pool.requestFactory());
+        } else {
+            SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+            requestFactory.setConnectTimeout(2000);
+            requestFactory.setReadTimeout(5000);
+            restTemplate = new RestTemplate(requestFactory);
+        }
+        notificationClient = new NotificationClient(restTemplate, HttpClient.newHttpClient(),
+                new NotificationCircuitBreaker(environment), new TokenBucketRateLimiter(environment),
+                "http://localhost:" + server.getAddress().getPort() + "/response/200", 5000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.destroy();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public void sendNotification() {
+        notificationClient.sendNotification();
+    }
+}
@@ -0,0 +1,91 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import sakhno.springframework.ms.EmailNotificationService.entety.MessageIdConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск и вставка в processed_events в зависимости от типа ключа: прежняя схема (message_id varchar(36)) и текущая
+ * (message_id binary(16) + processed_at, см. {@link MessageIdConverter}). lookup - поиск по message_id, половина
+ * запросов находит одну из tableSize заранее вставленных записей; insert - вставка нового message_id.
+ * Размер таблицы задается параметром, например {@code java -jar target/benchmarks.jar ProcessedEventKeyBenchmark
+ * -p tableSize=10000,100000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProcessedEventKeyBenchmark {
+    private static final int FILL_BATCH = 1_000;
+    private static final MessageIdConverter CONVERTER = new MessageIdConverter();
+
+    @Param({"varchar", "binary"})
+    public String keyType;
+
+    @Param({"10000"})
+    public int tableSize;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private String insert;
+    private List<String> existingIds;
+
+    @Setup
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:key-benchmark-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        boolean binary = "binary".equals(keyType);
+        jdbcTemplate.execute("create table processed_events (id bigint auto_increment primary key, "
+                + (binary ? "message_id binary(16) not null unique, processed_at timestamp not null"
+                        : "message_id varchar(36) not null unique")
+                + ", product_id varchar(255) not null)");
+        insert = binary
+                ? "insert into processed_events (message_id, product_id, processed_at) values (?, ?, current_timestamp)"
+                : "insert into processed_events (message_id, product_id) values (?, ?)";
+
+        existingIds = new ArrayList<>(tableSize);
+        for (int filled = 0; filled < tableSize; filled += FILL_BATCH) {
+            List<Object[]> rows = new ArrayList<>(FILL_BATCH);
+            for (int i = 0; i < FILL_BATCH; i++) {
+                String messageId = UUID.randomUUID().toString();
+                existingIds.add(messageId);
+                rows.add(new Object[]{key(messageId), "product"});
+            }
+            jdbcTemplate.batchUpdate(insert, rows);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("shutdown");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public List<Long> lookup() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String messageId = random.nextBoolean() ? existingIds.get(random.nextInt(existingIds.size()))
+                : UUID.randomUUID().toString();
+        return jdbcTemplate.queryForList("select id from processed_events where message_id = ?", Long.class,
+                key(messageId));
+    }
+
+    @Benchmark
+    public int insert() {
+        return jdbcTemplate.update(insert, key(UUID.randomUUID().toString()), "product");
+    }
+
+    private Object key(String messageId) {
+        return "binary".equals(keyType) ? CONVERTER.convertToDatabaseColumn(messageId) : messageId;
+    }
+}
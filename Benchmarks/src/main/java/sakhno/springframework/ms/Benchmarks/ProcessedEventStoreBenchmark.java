@@ -0,0 +1,74 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка дубликата и сохранение messageId в H2, как в ProductCreatedEventProcessor без кэша: findByMessageId
+ * и save в одной транзакции. findMissAndSave - новое сообщение (промах и вставка), findHit - дубликат из заранее
+ * сохраненных PRELOADED записей.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProcessedEventStoreBenchmark {
+    private static final int PRELOADED = 10_000;
+
+    private ConfigurableApplicationContext context;
+    private ProcessedEventRepository processedEventRepository;
+    private TransactionTemplate transactionTemplate;
+    private long mostSignificantBits;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        context = NotificationBenchmarkContext.start();
+        processedEventRepository = context.getBean(ProcessedEventRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        mostSignificantBits = ThreadLocalRandom.current().nextLong();
+        for (int i = 0; i < PRELOADED; i += 500) {
+            int from = i;
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int j = from; j < from + 500; j++) {
+                    processedEventRepository.save(new ProcessedEventEntity(messageId(j), "product-" + j));
+                }
+            });
+        }
+        sequence = PRELOADED;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ProcessedEventEntity findMissAndSave() {
+        String messageId = messageId(sequence++);
+        return transactionTemplate.execute(status -> {
+            ProcessedEventEntity processedEvent = processedEventRepository.findByMessageId(messageId);
+            return processedEvent != null ? processedEvent
+                    : processedEventRepository.save(new ProcessedEventEntity(messageId, "product"));
+        });
+    }
+
+    @Benchmark
+    public ProcessedEventEntity findHit() {
+        String messageId = messageId(ThreadLocalRandom.current().nextInt(PRELOADED));
+        return transactionTemplate.execute(status -> processedEventRepository.findByMessageId(messageId));
+    }
+
+    private String messageId(long sequence) {
+        return new UUID(mostSignificantBits, sequence).toString();
+    }
+}
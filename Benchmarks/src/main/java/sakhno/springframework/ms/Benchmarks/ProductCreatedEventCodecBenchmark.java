@@ -0,0 +1,71 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventDeserializer;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventSerializer;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение двоичного кодека с JsonSerializer/JsonDeserializer, которые использовались сервисами, без
+ * ErrorHandlingDeserializer (цепочку целиком измеряет {@link EventSerdeBenchmark}). JSON-путь включает заголовок
+ * типа, как при отправке через KafkaTemplate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProductCreatedEventCodecBenchmark {
+    private ProductCreatedEvent event;
+    private ProductCreatedEventSerializer binarySerializer;
+    private ProductCreatedEventDeserializer binaryDeserializer;
+    private JsonSerializer<ProductCreatedEvent> jsonSerializer;
+    private JsonDeserializer<ProductCreatedEvent> jsonDeserializer;
+    private byte[] binary;
+    private byte[] json;
+    private RecordHeaders jsonHeaders;
+
+    @Setup
+    public void setUp() {
+        event = new ProductCreatedEvent(UUID.randomUUID().toString(), "Test product", new BigDecimal("199.99"), 3);
+        binarySerializer = new ProductCreatedEventSerializer();
+        binaryDeserializer = new ProductCreatedEventDeserializer();
+        jsonSerializer = new JsonSerializer<>();
+        jsonDeserializer = new JsonDeserializer<>();
+        // заголовки типа нужны на каждой итерации, поэтому не удаляются после чтения
+        jsonDeserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "sakhno.springframework.ms.EventContract.event",
+                JsonDeserializer.REMOVE_TYPE_INFO_HEADERS, false), false);
+        binary = binarySerializer.serialize("topic", event);
+        jsonHeaders = new RecordHeaders();
+        json = jsonSerializer.serialize("topic", jsonHeaders, event);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return binarySerializer.serialize("topic", event);
+    }
+
+    @Benchmark
+    public ProductCreatedEvent binaryDecode() {
+        return binaryDeserializer.deserialize("topic", binary);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return jsonSerializer.serialize("topic", new RecordHeaders(), event);
+    }
+
+    @Benchmark
+    public ProductCreatedEvent jsonDecode() {
+        return jsonDeserializer.deserialize("topic", jsonHeaders, json);
+    }
+}
@@ -0,0 +1,71 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import sakhno.springframework.ms.EmailNotificationService.handler.ProductCreatedEventHandler;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProductCreatedEventHandler.handle в режиме record с заглушкой RestTemplate: проверка дубликата, вызов
+ * NotificationClient (автомат защиты, ограничение частоты) и сохранение messageId в H2 в одной транзакции.
+ * handleNew - каждое сообщение новое, handleDuplicate - одно и то же уже обработанное сообщение. Параметр cache
+ * включает ProcessedEventCache; без него дубликат ищется запросом к processed_events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProductCreatedEventHandlerBenchmark {
+    private static final String TOPIC = "product-created-events-topic";
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    private ConfigurableApplicationContext context;
+    private ProductCreatedEventHandler handler;
+    private ProductCreatedEvent event;
+    private String duplicateMessageId;
+    private long mostSignificantBits;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        context = NotificationBenchmarkContext.start("notification.dedup.cache.enabled=" + cache);
+        handler = context.getBean(ProductCreatedEventHandler.class);
+        event = new ProductCreatedEvent(UUID.randomUUID().toString(), "Samsung", new BigDecimal("600.00"), 1);
+        mostSignificantBits = ThreadLocalRandom.current().nextLong();
+        duplicateMessageId = messageId(sequence++);
+        handle(duplicateMessageId);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void handleNew() {
+        handle(messageId(sequence++));
+    }
+
+    @Benchmark
+    public void handleDuplicate() {
+        handle(duplicateMessageId);
+    }
+
+    private void handle(String messageId) {
+        handler.handle(event, messageId, event.getProductId(), TOPIC, 0, 0L,
+                Long.toString(System.currentTimeMillis()));
+    }
+
+    private String messageId(long sequence) {
+        return new UUID(mostSignificantBits, sequence).toString();
+    }
+}
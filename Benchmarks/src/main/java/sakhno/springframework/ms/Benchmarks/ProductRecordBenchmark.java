@@ -0,0 +1,95 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.util.ReflectionUtils;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventSerializer;
+import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
+import sakhno.springframework.ms.KafkaMicroservice.idempotency.IdempotencyKeyCache;
+import sakhno.springframework.ms.KafkaMicroservice.producer.AdaptiveBatchingController;
+import sakhno.springframework.ms.KafkaMicroservice.producer.ProducerAdmissionController;
+import sakhno.springframework.ms.KafkaMicroservice.service.ProductServiceImpl;
+import sakhno.springframework.ms.KafkaMicroservice.spool.ProductEventSpool;
+import sakhno.springframework.ms.KafkaMicroservice.spool.SpoolDrainer;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Путь ProductServiceImpl.createProductAsync в режиме direct до вызова KafkaTemplate.send: создание события,
+ * записи и заголовков messageId и produceTimestamp, проход через AdaptiveBatchingController и SpoolDrainer. Отправка
+ * подменена шаблоном, который сразу возвращает подтверждение, поэтому сеть и буфер продюсера не измеряются.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProductRecordBenchmark {
+    private ProductServiceImpl productService;
+    private CreateProductDto createProductDto;
+
+    @Setup
+    public void setUp() {
+        ProducerFactory<String, ProductCreatedEvent> producerFactory = new DefaultKafkaProducerFactory<>(Map.of(
+                ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092",
+                ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class,
+                ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ProductCreatedEventSerializer.class));
+        KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = new AcknowledgingKafkaTemplate(producerFactory);
+        StandardEnvironment environment = new StandardEnvironment();
+        AdaptiveBatchingController adaptiveBatchingController =
+                new AdaptiveBatchingController(producerFactory, kafkaTemplate, environment);
+        SpoolDrainer spoolDrainer = new SpoolDrainer(new ProductEventSpool(false, Path.of("spool"), 0, false),
+                kafkaTemplate, adaptiveBatchingController, environment);
+        productService = new ProductServiceImpl(kafkaTemplate, adaptiveBatchingController,
+                new ProducerAdmissionController(kafkaTemplate, environment), null, null, null, spoolDrainer,
+                new IdempotencyKeyCache(environment));
+        setField(productService, "delivery", "direct");
+        setField(productService, "sendTimeout", 0L);
+        createProductDto = new CreateProductDto("Samsung", new BigDecimal("600.00"), 1);
+    }
+
+    @Benchmark
+    public String createProductDirect() {
+        return productService.createProductAsync(createProductDto).join();
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    /**
+     * Шаблон, который не отправляет запись, а сразу подтверждает ее в партиции 0.
+     */
+    static class AcknowledgingKafkaTemplate extends KafkaTemplate<String, ProductCreatedEvent> {
+        private static final RecordMetadata METADATA = new RecordMetadata(
+                new TopicPartition("product-created-events-topic", 0), 0, 0, 0, 0, 0);
+
+        AcknowledgingKafkaTemplate(ProducerFactory<String, ProductCreatedEvent> producerFactory) {
+            super(producerFactory);
+        }
+
+        @Override
+        public CompletableFuture<SendResult<String, ProductCreatedEvent>> send(
+                ProducerRecord<String, ProductCreatedEvent> record) {
+            return CompletableFuture.completedFuture(new SendResult<>(record, METADATA));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка, что все бенчмарки модуля запускаются: одна короткая итерация без форка (surefire не передает classpath
+ * дочерней JVM). Числа из этого прогона не сравниваются, для измерений запускается target/benchmarks.jar.
+ */
+public class BenchmarksSmokeTest {
+    // 4 в EventSerdeBenchmark, 1 в ProductRecordBenchmark, 2 в ProcessedEventStoreBenchmark,
+    // 2 в MappedProcessedEventStoreBenchmark, 2 x 2 значения cache в ProductCreatedEventHandlerBenchmark,
+    // 2 режима x 2 значения client в NotificationClientBenchmark, 2 x 2 значения keyType в ProcessedEventKeyBenchmark,
+    // 4 в ProductCreatedEventCodecBenchmark, 1 x 2 значения executor в ListenerExecutorBenchmark (virtual - с Java 21)
+    private static final int BENCHMARKS = ListenerExecutorBenchmark.virtualThreadsSupported() ? 27 : 26;
+
+    @Test
+    void allBenchmarksProduceScore() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(BenchmarksSmokeTest.class.getPackageName() + "\\..*Benchmark\\..*")
+                .forks(0)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .measurementTime(TimeValue.milliseconds(200))
+                .param("executor", ListenerExecutorBenchmark.virtualThreadsSupported()
+                        ? new String[]{"platform", "virtual"} : new String[]{"platform"})
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-smoke.json")
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        assertEquals(BENCHMARKS, results.size());
+        results.forEach(result -> assertTrue(result.getPrimaryResult().getScore() > 0,
+                result.getParams().getBenchmark()));
+    }
+}
@@ -0,0 +1,77 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Локальная заглушка сервиса уведомлений вместо localhost:8090: отвечает 200 с задержкой latencyMs, а с
+ * вероятностью errorRate - 503. Сетевой доступ не нужен, сервер слушает случайный порт на localhost.
+ * <p>
+ * Без sun.net.httpserver.nodelay HttpServer отправляет заголовки и тело ответа отдельными пакетами, и из-за алгоритма
+ * Нейгла и отложенного ACK каждый вызов получает около 40 мс лишней задержки. Свойство читается один раз при первом
+ * создании HttpServer в JVM.
+ * </p>
+ */
+public class DownstreamStubServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+
+    public DownstreamStubServer(long latencyMs, double errorRate) {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        try {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        server.setExecutor(executor);
+        server.createContext("/response", exchange -> {
+            requests.incrementAndGet();
+            try {
+                if (latencyMs > 0) {
+                    Thread.sleep(latencyMs);
+                }
+                boolean error = ThreadLocalRandom.current().nextDouble() < errorRate;
+                if (error) {
+                    errors.incrementAndGet();
+                }
+                byte[] body = "{}".getBytes();
+                exchange.sendResponseHeaders(error ? 503 : 200, body.length);
+                exchange.getResponseBody().write(body);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/response/200";
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return - количество ответов 503
+     */
+    public int getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,216 @@
+package sakhno.springframework.ms.Benchmarks;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import sakhno.springframework.ms.EmailNotificationService.EmailNotificationServiceApplication;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.KafkaMicroservice.KafkaMicroserviceApplication;
+import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
+import sakhno.springframework.ms.KafkaMicroservice.service.ProductService;
+
+import java.math.BigDecimal;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сквозной нагрузочный тест: KafkaMicroservice и EmailNotificationService запускаются в одной JVM на встроенном
+ * кластере из 3 брокеров, сервис уведомлений заменен {@link DownstreamStubServer}. Из e2e.threads потоков выполняется
+ * e2e.requests вызовов ProductService.createProduct, затем тест ждет, пока каждое событие будет обработано
+ * потребителем или уйдет в DLT (ответ 503 - NonRetryableException).
+ * <p>
+ * Отчет: пропускная способность продюсера (вызовы createProduct в секунду), пропускная способность потребителя
+ * (обработанные события в секунду от первого вызова до последней обработки), p50/p99 сквозной задержки по гистограмме
+ * notification.consumer.e2e.latency и количество дубликатов (записи, обработанные повторно). Тест падает, если
+ * пропускная способность ниже e2e.min-producer-throughput или e2e.min-consumer-throughput.
+ * </p>
+ * <p>
+ * Параметры задаются системными свойствами, например
+ * {@code ./mvnw test -Dtest=EndToEndThroughputTest -De2e.requests=20000 -De2e.stub.latency-ms=5}. Настройки сервисов
+ * берутся из их application.properties и так же переопределяются системными свойствами, например
+ * {@code -Dproduct.create.delivery=direct} или {@code -Dnotification.listener.mode=parallel}.
+ * </p>
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true)
+public class EndToEndThroughputTest {
+    private static final Logger log = LoggerFactory.getLogger(EndToEndThroughputTest.class);
+
+    private static final int REQUESTS = Integer.getInteger("e2e.requests", 3000);
+    private static final int THREADS = Integer.getInteger("e2e.threads", 16);
+    private static final long STUB_LATENCY_MS = Long.getLong("e2e.stub.latency-ms", 2);
+    private static final double STUB_ERROR_RATE = Double.parseDouble(System.getProperty("e2e.stub.error-rate", "0.01"));
+    private static final long MIN_PRODUCER_THROUGHPUT = Long.getLong("e2e.min-producer-throughput", 100);
+    private static final long MIN_CONSUMER_THROUGHPUT = Long.getLong("e2e.min-consumer-throughput", 50);
+    private static final long TIMEOUT_MS = Long.getLong("e2e.timeout-ms", 180_000);
+
+    private DownstreamStubServer stubServer;
+    private ConfigurableApplicationContext producerContext;
+    private ConfigurableApplicationContext consumerContext;
+
+    @BeforeAll
+    void setUp(EmbeddedKafkaBroker embeddedKafkaBroker) {
+        stubServer = new DownstreamStubServer(STUB_LATENCY_MS, STUB_ERROR_RATE);
+        String brokers = embeddedKafkaBroker.getBrokersAsString();
+        // продюсер первым: он создает product-created-events-topic с 3 репликами
+        producerContext = start(KafkaMicroserviceApplication.class,
+                "spring.kafka.producer.bootstrap-servers=" + brokers);
+        consumerContext = start(EmailNotificationServiceApplication.class,
+                "spring.kafka.consumer.bootstrap-servers=" + brokers,
+                "spring.kafka.consumer.auto-offset-reset=earliest",
+                "notification.url=" + stubServer.getUrl());
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (consumerContext != null) {
+            consumerContext.close();
+        }
+        if (producerContext != null) {
+            producerContext.close();
+        }
+        stubServer.close();
+    }
+
+    @Test
+    void testCreateProduct_whenManyThreads_throughputAboveFloor() throws Exception {
+        ProductService productService = producerContext.getBean(ProductService.class);
+        ProcessedEventRepository processedEventRepository = consumerContext.getBean(ProcessedEventRepository.class);
+        MeterRegistry consumerMeterRegistry = consumerContext.getBean(MeterRegistry.class);
+        CreateProductDto createProductDto = new CreateProductDto("Samsung", new BigDecimal("600.00"), 1);
+
+        // прогрев: метаданные топика, соединения с брокерами и назначение партиций потребителю
+        productService.createProduct(createProductDto);
+        await().atMost(Duration.ofSeconds(60)).until(() -> processedEventRepository.count() + stubServer.getErrors() >= 1);
+        long warmupProcessed = processedEventRepository.count();
+        int warmupErrors = stubServer.getErrors();
+        long warmupDeliveries = e2eCount(consumerMeterRegistry);
+        Map<Long, Long> warmupHistogram = e2eHistogram(consumerMeterRegistry);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        long producerNanos;
+        try {
+            List<Future<String>> results = new ArrayList<>(REQUESTS);
+            for (int i = 0; i < REQUESTS; i++) {
+                results.add(executor.submit(() -> productService.createProduct(createProductDto)));
+            }
+            for (Future<String> result : results) {
+                assertNotNull(result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            }
+            producerNanos = System.nanoTime() - start;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        await().atMost(Duration.ofMillis(TIMEOUT_MS)).pollInterval(Duration.ofMillis(50)).until(() ->
+                processedEventRepository.count() - warmupProcessed + stubServer.getErrors() - warmupErrors >= REQUESTS);
+        long consumerNanos = System.nanoTime() - start;
+
+        long processed = processedEventRepository.count() - warmupProcessed;
+        long failed = stubServer.getErrors() - warmupErrors;
+        // e2e-задержка учитывается для каждой обработанной записи, в том числе для повторно доставленной
+        long duplicates = e2eCount(consumerMeterRegistry) - warmupDeliveries - processed;
+        Map<Long, Long> histogram = e2eHistogram(consumerMeterRegistry);
+        warmupHistogram.forEach((bucket, count) -> histogram.merge(bucket, -count, Long::sum));
+        long producerThroughput = throughput(REQUESTS, producerNanos);
+        long consumerThroughput = throughput(processed, consumerNanos);
+
+        log.info("E2E: {} requests on {} threads, stub latency {} ms, stub error rate {}",
+                REQUESTS, THREADS, STUB_LATENCY_MS, STUB_ERROR_RATE);
+        log.info("E2E: producer {} req/s, consumer {} events/s, processed {}, DLT {}, duplicates {}, HTTP calls {}",
+                producerThroughput, consumerThroughput, processed, failed, duplicates, stubServer.getRequests());
+        long deliveries = processed + duplicates;
+        log.info("E2E: latency p50 {}, p99 {}",
+                percentile(histogram, deliveries, 0.5), percentile(histogram, deliveries, 0.99));
+
+        assertEquals(REQUESTS, processed + failed);
+        assertTrue(duplicates >= 0);
+        assertTrue(producerThroughput >= MIN_PRODUCER_THROUGHPUT,
+                "Producer throughput " + producerThroughput + " req/s is below " + MIN_PRODUCER_THROUGHPUT);
+        assertTrue(consumerThroughput >= MIN_CONSUMER_THROUGHPUT,
+                "Consumer throughput " + consumerThroughput + " events/s is below " + MIN_CONSUMER_THROUGHPUT);
+    }
+
+    /**
+     * Запуск сервиса с его собственным application.properties: оба сервиса лежат в classpath, и обычный поиск
+     * classpath:application.properties нашел бы только один из файлов.
+     * @param properties - настройки поверх application.properties в виде name=value
+     */
+    private static ConfigurableApplicationContext start(Class<?> application, String... properties) {
+        URL location = application.getProtectionDomain().getCodeSource().getLocation();
+        String applicationProperties = location.getPath().endsWith(".jar")
+                ? "jar:" + location + "!/application.properties"
+                : location + "application.properties";
+        List<String> args = new ArrayList<>();
+        args.add("--spring.config.location=" + applicationProperties);
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        SpringApplication springApplication = new SpringApplication(application);
+        springApplication.setWebApplicationType(WebApplicationType.NONE);
+        return springApplication.run(args.toArray(String[]::new));
+    }
+
+    private static long e2eCount(MeterRegistry meterRegistry) {
+        return meterRegistry.find("notification.consumer.e2e.latency").timers().stream().mapToLong(Timer::count).sum();
+    }
+
+    /**
+     * Накопленные счетчики гистограммы e2e-задержки, сложенные по партициям.
+     * @return - граница корзины в мс и количество записей с задержкой не больше нее
+     */
+    private static Map<Long, Long> e2eHistogram(MeterRegistry meterRegistry) {
+        Map<Long, Long> histogram = new TreeMap<>();
+        for (Timer timer : meterRegistry.find("notification.consumer.e2e.latency").timers()) {
+            for (CountAtBucket bucket : timer.takeSnapshot().histogramCounts()) {
+                histogram.merge((long) Math.ceil(bucket.bucket(TimeUnit.MILLISECONDS)), (long) bucket.count(),
+                        Long::sum);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * @param total - количество записей в гистограмме
+     * @return - верхняя граница корзины, в которую попадает перцентиль, или последняя граница, если перцентиль выше
+     */
+    private static String percentile(Map<Long, Long> histogram, long total, double quantile) {
+        long last = 0;
+        for (Map.Entry<Long, Long> bucket : histogram.entrySet()) {
+            if (bucket.getValue() >= Math.ceil(total * quantile)) {
+                return "<= " + bucket.getKey() + " ms";
+            }
+            last = bucket.getKey();
+        }
+        return "> " + last + " ms";
+    }
+
+    private static long throughput(long count, long nanos) {
+        return count * TimeUnit.SECONDS.toNanos(1) / Math.max(nanos, 1);
+    }
+}
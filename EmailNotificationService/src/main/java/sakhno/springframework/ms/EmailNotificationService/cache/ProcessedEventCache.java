@@ -0,0 +1,268 @@
+package sakhno.springframework.ms.EmailNotificationService.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Limit;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш недавно обработанных messageId перед таблицей processed_events.
+ * <p>
+ * Положительная часть - ограниченный по размеру (max-size) и времени жизни (ttl-ms) набор идентификаторов. Найденный
+ * в нем messageId - точно дубликат, запрос в БД не нужен. Вытеснение идет в порядке добавления: идентификатор
+ * сообщения проверяется повторно только при повторной доставке, поэтому порядок добавления совпадает с LRU.
+ * </p>
+ * <p>
+ * Отрицательная часть - фильтр Блума по всем обработанным messageId (bloom-filter.enabled, по умолчанию выключен).
+ * Фильтр видит только записи, загруженные при старте и сохраненные этим экземпляром, поэтому ответу "нет" можно
+ * верить только для партиции, которой экземпляр владеет с момента старта: ее записи после загрузки обрабатывал
+ * только он. Владение отслеживается как слушатель перебалансировки контейнера: партиции первого назначения
+ * потребителя и партиции, вернувшиеся к экземпляру в следующем поколении группы, считаются своими; партиция,
+ * пришедшая от другого экземпляра (перебалансировка, расширение топика) или потерянная, проверяется по БД до
+ * перезапуска. Первое назначение считается своим, поэтому фильтр включают только для единственного экземпляра
+ * сервиса: при нескольких экземплярах партиция при старте могла обрабатываться другим экземпляром уже после
+ * загрузки фильтра.
+ * </p>
+ * Кэш заполняется при старте из БД и обновляется после фиксации транзакции с сохранением события. При
+ * notification.dedup.store=mapped кэш выключен: processed_events не заполняется, и после перезапуска фильтр Блума
+ * ошибочно признавал бы новыми уже обработанные сообщения, а поиск в файле партиции не медленнее кэша.
+ */
+@Component
+public class ProcessedEventCache implements MeterBinder, ConsumerAwareRebalanceListener {
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private final static Logger log = LoggerFactory.getLogger(ProcessedEventCache.class);
+
+    public enum Lookup {
+        /** messageId найден в кэше - сообщение уже обработано */
+        DUPLICATE,
+        /** фильтр Блума не содержит messageId, партиция принадлежит экземпляру с момента старта - сообщение новое */
+        NEW,
+        /** ответ неизвестен, нужен запрос в БД */
+        UNKNOWN
+    }
+
+    private final ProcessedEventRepository processedEventRepository;
+    private final boolean enabled;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final BloomFilter bloomFilter;
+
+    private final ConcurrentHashMap<String, Long> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bloomNegatives = new LongAdder();
+    private final Set<TopicPartition> ownedPartitions = ConcurrentHashMap.newKeySet();
+    private final Set<TopicPartition> seenPartitions = ConcurrentHashMap.newKeySet();
+    private final Map<TopicPartition, Integer> revokedGenerations = new ConcurrentHashMap<>();
+    private final Set<Consumer<?, ?>> assignedConsumers =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    @Autowired
+    public ProcessedEventCache(ProcessedEventRepository processedEventRepository, Environment environment) {
+        this.processedEventRepository = processedEventRepository;
+        this.enabled = environment.getProperty("notification.dedup.cache.enabled", Boolean.class, true)
+                && !"mapped".equals(environment.getProperty("notification.dedup.store"));
+        this.maxSize = environment.getProperty("notification.dedup.cache.max-size", Integer.class, 100_000);
+        this.ttlMillis = environment.getProperty("notification.dedup.cache.ttl-ms", Long.class, 3_600_000L);
+        boolean bloomEnabled = enabled
+                && environment.getProperty("notification.dedup.cache.bloom-filter.enabled", Boolean.class, false);
+        this.bloomFilter = bloomEnabled ? new BloomFilter(
+                environment.getProperty("notification.dedup.cache.bloom-filter.expected-insertions", Long.class, 1_000_000L),
+                environment.getProperty("notification.dedup.cache.bloom-filter.fpp", Double.class, 0.01)) : null;
+    }
+
+    /**
+     * Загрузка обработанных messageId при старте: все идентификаторы попадают в фильтр Блума, в кэше остаются
+     * последние max-size.
+     */
+    @PostConstruct
+    void load() {
+        if (!enabled) {
+            return;
+        }
+        long loaded = 0;
+        Long lastId = 0L;
+        List<ProcessedEventEntity> page;
+        do {
+            page = processedEventRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(LOAD_PAGE_SIZE));
+            for (ProcessedEventEntity processedEvent : page) {
+                put(processedEvent.getMessageId());
+                lastId = processedEvent.getId();
+            }
+            loaded += page.size();
+        } while (page.size() == LOAD_PAGE_SIZE);
+        evictions.reset();
+        log.info("Processed event cache loaded: {} message ids, {} cached", loaded, entries.size());
+    }
+
+    /**
+     * Проверка messageId без обращения к БД.
+     * @param messageId - идентификатор сообщения
+     * @param topic - топик записи
+     * @param partition - партиция записи, NEW возвращается только для партиции, которой экземпляр владеет с момента
+     *                  старта
+     * @return - DUPLICATE, NEW или UNKNOWN, если нужен запрос в БД
+     */
+    public Lookup lookup(String messageId, String topic, int partition) {
+        if (!enabled) {
+            return Lookup.UNKNOWN;
+        }
+        Long insertedAt = entries.get(messageId);
+        if (insertedAt != null && System.currentTimeMillis() - insertedAt <= ttlMillis) {
+            hits.increment();
+            return Lookup.DUPLICATE;
+        }
+        misses.increment();
+        if (bloomFilter != null && ownedPartitions.contains(new TopicPartition(topic, partition))
+                && !bloomFilter.mightContain(messageId)) {
+            bloomNegatives.increment();
+            return Lookup.NEW;
+        }
+        return Lookup.UNKNOWN;
+    }
+
+    /**
+     * Добавление messageId после фиксации текущей транзакции. Если транзакции нет, добавление выполняется сразу.
+     * При откате транзакции кэш не меняется, иначе повторная доставка была бы ошибочно принята за дубликат.
+     * @param messageId - идентификатор сообщения
+     */
+    public void putAfterCommit(String messageId) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(messageId);
+                }
+            });
+        } else {
+            put(messageId);
+        }
+    }
+
+    /**
+     * Партиции первого назначения потребителя, которые экземпляр видит впервые, считаются своими. Ранее отозванная
+     * партиция остается своей, только если вернулась в следующем поколении группы: между отзывом и назначением ее
+     * никто не обрабатывал.
+     */
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        boolean firstAssignment = assignedConsumers.add(consumer);
+        int generation = consumer.groupMetadata().generationId();
+        for (TopicPartition partition : partitions) {
+            Integer revokedGeneration = revokedGenerations.remove(partition);
+            boolean owned = revokedGeneration != null ? revokedGeneration == generation - 1
+                    : firstAssignment && !seenPartitions.contains(partition);
+            seenPartitions.add(partition);
+            if (owned) {
+                ownedPartitions.add(partition);
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        int generation = consumer.groupMetadata().generationId();
+        for (TopicPartition partition : partitions) {
+            if (ownedPartitions.remove(partition)) {
+                revokedGenerations.put(partition, generation);
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            ownedPartitions.remove(partition);
+            revokedGenerations.remove(partition);
+        }
+    }
+
+    private void put(String messageId) {
+        if (bloomFilter != null) {
+            bloomFilter.put(messageId);
+        }
+        if (entries.put(messageId, System.currentTimeMillis()) == null) {
+            insertionOrder.add(messageId);
+        }
+        evict();
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        String oldest;
+        while ((oldest = insertionOrder.peek()) != null) {
+            Long insertedAt = entries.get(oldest);
+            boolean expired = insertedAt == null || now - insertedAt > ttlMillis;
+            if (!expired && entries.size() <= maxSize) {
+                return;
+            }
+            String evicted = insertionOrder.poll();
+            if (evicted != null && entries.remove(evicted) != null) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getBloomNegatives() {
+        return bloomNegatives.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("notification.dedup.cache.hits", this, ProcessedEventCache::getHits)
+                .description("Сообщения, признанные дубликатами по кэшу").register(registry);
+        FunctionCounter.builder("notification.dedup.cache.misses", this, ProcessedEventCache::getMisses)
+                .description("Сообщения, не найденные в кэше").register(registry);
+        FunctionCounter.builder("notification.dedup.cache.evictions", this, ProcessedEventCache::getEvictions)
+                .description("Вытеснения из кэша по размеру или времени жизни").register(registry);
+        FunctionCounter.builder("notification.dedup.cache.bloom.negatives", this, ProcessedEventCache::getBloomNegatives)
+                .description("Сообщения, признанные новыми по фильтру Блума").register(registry);
+        Gauge.builder("notification.dedup.cache.size", this, ProcessedEventCache::size)
+                .description("Текущий размер кэша").register(registry);
+    }
+}
@@ -0,0 +1,193 @@
+package sakhno.springframework.ms.EmailNotificationService.client;
+
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import sakhno.springframework.ms.EmailNotificationService.exception.CircuitBreakerOpenException;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+import sakhno.springframework.ms.EmailNotificationService.exception.RetryableException;
+import sakhno.springframework.ms.EmailNotificationService.resilience.NotificationCircuitBreaker;
+import sakhno.springframework.ms.EmailNotificationService.resilience.TokenBucketRateLimiter;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+@Component
+public class NotificationClient {
+    private RestTemplate restTemplate;
+    private HttpClient httpClient;
+    private NotificationCircuitBreaker circuitBreaker;
+    private TokenBucketRateLimiter rateLimiter;
+    private final static Logger log = LoggerFactory.getLogger(NotificationClient.class);
+
+    private final String url;
+    private final long readTimeout;
+
+    @Autowired
+    public NotificationClient(RestTemplate restTemplate, HttpClient httpClient,
+                              NotificationCircuitBreaker circuitBreaker, TokenBucketRateLimiter rateLimiter,
+                              @Value("${notification.url}") String url,
+                              @Value("${notification.client.read-timeout-ms}") long readTimeout) {
+        this.restTemplate = restTemplate;
+        this.httpClient = httpClient;
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+        this.url = url;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Вызов сервиса уведомлений. Вызов проходит через автомат защиты и ограничение частоты, ошибки ввода-вывода и
+     * ответы 5xx учитываются автоматом как отказы сервиса.
+     * @throws RetryableException - если сервис недоступен (ошибка ввода-вывода, в том числе таймаут подключения
+     * notification.client.connect-timeout-ms или чтения notification.client.read-timeout-ms), не хватило соединения
+     * в пуле за acquire-timeout-ms, автомат защиты разомкнут или превышен лимит частоты, вызов имеет смысл повторить
+     * @throws NonRetryableException - при любой другой ошибке, повтор не поможет
+     */
+    public void sendNotification() {
+        exchange(HttpMethod.GET, null);
+    }
+
+    /**
+     * Один вызов сервиса уведомлений на несколько событий: POST на notification.url со списком событий в теле (JSON).
+     * Используется в режиме notification.listener.mode=coalescing. Автомат защиты, ограничение частоты и
+     * классификация ошибок такие же, как у {@link #sendNotification()}; вызов расходует один токен независимо от числа
+     * событий.
+     * @param events - события окна в порядке смещений
+     */
+    public void sendNotifications(List<ProductCreatedEvent> events) {
+        exchange(HttpMethod.POST, new HttpEntity<>(events));
+    }
+
+    private void exchange(HttpMethod method, HttpEntity<?> requestEntity) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new CircuitBreakerOpenException("Notification circuit breaker is open");
+        }
+        try {
+            rateLimiter.acquire();
+        } catch (RetryableException e) {
+            circuitBreaker.onIgnored();
+            throw e;
+        }
+        long start = System.nanoTime();
+        try {
+            ResponseEntity<String> response = restTemplate.exchange(url, method, requestEntity, String.class);
+            circuitBreaker.onSuccess(System.nanoTime() - start);
+            if(response.getStatusCode().value() == HttpStatus.OK.value()) {
+                log.info("Received response: {}", response.getBody());
+            }
+        } catch (ResourceAccessException e) {
+            if (e.getCause() instanceof ConnectionRequestTimeoutException) {
+                // пул соединений исчерпан: сервис не вызывался, автомат защиты не учитывает вызов
+                circuitBreaker.onIgnored();
+            } else {
+                circuitBreaker.onError(System.nanoTime() - start);
+            }
+            log.error(e.getMessage());
+            throw new RetryableException(e);
+        } catch (HttpServerErrorException e) {
+            circuitBreaker.onError(System.nanoTime() - start);
+            log.error(e.getMessage());
+            throw new NonRetryableException(e);
+        } catch (Exception e) {
+            circuitBreaker.onIgnored();
+            log.error(e.getMessage());
+            throw new NonRetryableException(e);
+        }
+    }
+
+    /**
+     * Неблокирующий вызов сервиса уведомлений. Классификация ошибок совпадает с {@link #sendNotification()}: ошибка
+     * ввода-вывода (в том числе таймаут), разомкнутый автомат защиты и превышение лимита частоты - RetryableException,
+     * ответ 4xx/5xx и прочие ошибки - NonRetryableException. Ожидание токена не занимает поток.
+     * @return - future, завершается после получения ответа
+     */
+    public CompletableFuture<Void> sendNotificationAsync() {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return CompletableFuture.failedFuture(new CircuitBreakerOpenException("Notification circuit breaker is open"));
+        }
+        long waitNanos = rateLimiter.reserve();
+        if (waitNanos < 0) {
+            circuitBreaker.onIgnored();
+            return CompletableFuture.failedFuture(new RetryableException("Notification rate limit exceeded"));
+        }
+        CompletableFuture<Void> permit = waitNanos == 0 ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(readTimeout))
+                .GET()
+                .build();
+        return permit.thenCompose(ignored -> {
+            long start = System.nanoTime();
+            return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .handle((response, throwable) -> {
+                        if (throwable != null) {
+                            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                                    ? throwable.getCause() : throwable;
+                            log.error(cause.getMessage());
+                            if (cause instanceof IOException) {
+                                circuitBreaker.onError(System.nanoTime() - start);
+                                throw new RetryableException(cause);
+                            }
+                            circuitBreaker.onIgnored();
+                            throw new NonRetryableException(cause);
+                        }
+                        if (response.statusCode() >= 500) {
+                            circuitBreaker.onError(System.nanoTime() - start);
+                        } else {
+                            circuitBreaker.onSuccess(System.nanoTime() - start);
+                        }
+                        if (response.statusCode() >= 400) {
+                            log.error("Notification failed with status {}", response.statusCode());
+                            throw new NonRetryableException("Notification failed with status " + response.statusCode());
+                        }
+                        if (response.statusCode() == HttpStatus.OK.value()) {
+                            log.info("Received response: {}", response.body());
+                        }
+                        return null;
+                    });
+        });
+    }
+
+    /**
+     * Пробный вызов сервиса уведомлений в полуоткрытом состоянии автомата защиты, пока партиции слушателей
+     * приостановлены. Выполняется, только если автомат выдал разрешение; результат учитывается автоматом, ошибки не
+     * пробрасываются.
+     */
+    public void probe() {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            restTemplate.exchange(url, HttpMethod.GET, null, String.class);
+            circuitBreaker.onSuccess(System.nanoTime() - start);
+        } catch (ResourceAccessException | HttpServerErrorException e) {
+            circuitBreaker.onError(System.nanoTime() - start);
+            log.warn("Notification probe failed: {}", e.getMessage());
+        } catch (Exception e) {
+            circuitBreaker.onIgnored();
+            log.warn("Notification probe failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package sakhno.springframework.ms.EmailNotificationService.client;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.ToIntFunction;
+
+/**
+ * Пул постоянных HTTP/1.1 соединений (Apache HttpClient 5) для блокирующих вызовов сервиса уведомлений через
+ * RestTemplate. Отключается настройкой notification.client.http.pool.enabled=false, тогда RestTemplate открывает
+ * соединение на каждый вызов.
+ * <p>
+ * Соединения переиспользуются (keep-alive): всего не больше max-total, к одному адресу - не больше max-per-route.
+ * Вызов, которому не хватило соединения, ждет освобождения не дольше acquire-timeout-ms. Таймауты
+ * (notification.client.connect-timeout-ms, notification.client.read-timeout-ms) задаются соединениям пула;
+ * классификацию ошибок выполняет {@link NotificationClient}. Соединения, простаивающие дольше idle-timeout-ms,
+ * закрываются фоновым потоком, а перед повторным использованием соединение, простоявшее validate-after-inactivity-ms,
+ * проверяется. Автоматические повторы клиента отключены: повторами управляют обработчики.
+ * </p>
+ * <p>
+ * Метрики насыщения пула: notification.client.pool.leased - занятые соединения, notification.client.pool.pending -
+ * вызовы в ожидании соединения, notification.client.pool.available - свободные открытые соединения,
+ * notification.client.pool.max - max-total.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "notification.client.http.pool.enabled", havingValue = "true", matchIfMissing = true)
+public class NotificationHttpClientPool implements MeterBinder, DisposableBean {
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    @Autowired
+    public NotificationHttpClientPool(Environment environment) {
+        long connectTimeout = environment.getProperty("notification.client.connect-timeout-ms", Long.class, 2000L);
+        long readTimeout = environment.getProperty("notification.client.read-timeout-ms", Long.class, 5000L);
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(environment.getProperty("notification.client.http.pool.max-total", Integer.class, 50))
+                .setMaxConnPerRoute(
+                        environment.getProperty("notification.client.http.pool.max-per-route", Integer.class, 20))
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeout))
+                        .setValidateAfterInactivity(TimeValue.ofMilliseconds(environment.getProperty(
+                                "notification.client.http.pool.validate-after-inactivity-ms", Long.class, 2000L)))
+                        .build())
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(environment.getProperty(
+                                "notification.client.http.pool.acquire-timeout-ms", Long.class, 1000L)))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeout))
+                        .build())
+                .evictIdleConnections(TimeValue.ofMilliseconds(environment.getProperty(
+                        "notification.client.http.pool.idle-timeout-ms", Long.class, 30_000L)))
+                .evictExpiredConnections()
+                .disableAutomaticRetries()
+                .build();
+    }
+
+    public ClientHttpRequestFactory requestFactory() {
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    public PoolStats getStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        gauge(registry, "notification.client.pool.leased", "Pooled connections in use", PoolStats::getLeased);
+        gauge(registry, "notification.client.pool.pending", "Calls waiting for a pooled connection",
+                PoolStats::getPending);
+        gauge(registry, "notification.client.pool.available", "Idle pooled connections", PoolStats::getAvailable);
+        gauge(registry, "notification.client.pool.max", "Maximum pooled connections", PoolStats::getMax);
+    }
+
+    private void gauge(MeterRegistry registry, String name, String description, ToIntFunction<PoolStats> value) {
+        Gauge.builder(name, this, pool -> value.applyAsInt(pool.getStats()))
+                .description(description)
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package sakhno.springframework.ms.EmailNotificationService.config;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Несколько слушателей перебалансировки на одном контейнере: контейнер принимает только один. Назначение передается
+ * слушателям в порядке списка, отзыв и потеря - в обратном.
+ */
+class CompositeRebalanceListener implements ConsumerAwareRebalanceListener {
+    private final List<ConsumerAwareRebalanceListener> listeners;
+
+    CompositeRebalanceListener(List<ConsumerAwareRebalanceListener> listeners) {
+        this.listeners = List.copyOf(listeners);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (int i = listeners.size() - 1; i >= 0; i--) {
+            listeners.get(i).onPartitionsRevokedBeforeCommit(consumer, partitions);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (int i = listeners.size() - 1; i >= 0; i--) {
+            listeners.get(i).onPartitionsRevokedAfterCommit(consumer, partitions);
+        }
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (int i = listeners.size() - 1; i >= 0; i--) {
+            listeners.get(i).onPartitionsLost(consumer, partitions);
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        for (ConsumerAwareRebalanceListener listener : listeners) {
+            listener.onPartitionsAssigned(consumer, partitions);
+        }
+    }
+}
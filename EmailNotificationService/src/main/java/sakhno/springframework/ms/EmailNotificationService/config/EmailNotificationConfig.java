@@ -1,14 +1,50 @@
 package sakhno.springframework.ms.EmailNotificationService.config;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationHttpClientPool;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
 
 @Configuration
 public class EmailNotificationConfig {
 
+    /**
+     * RestTemplate блокирующих вызовов сервиса уведомлений. Если включен пул соединений
+     * (notification.client.http.pool.enabled=true), вызовы идут через {@link NotificationHttpClientPool}, иначе -
+     * через отдельное соединение на каждый вызов с теми же таймаутами подключения и чтения.
+     */
+    @Bean
+    RestTemplate getRestTemplate(ObjectProvider<NotificationHttpClientPool> notificationHttpClientPool,
+                                 @Value("${notification.client.connect-timeout-ms}") int connectTimeout,
+                                 @Value("${notification.client.read-timeout-ms}") int readTimeout) {
+        NotificationHttpClientPool pool = notificationHttpClientPool.getIfAvailable();
+        if (pool != null) {
+            return new RestTemplate(pool.requestFactory());
+        }
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeout);
+        requestFactory.setReadTimeout(readTimeout);
+        return new RestTemplate(requestFactory);
+    }
+
+    /**
+     * Неблокирующий HTTP клиент для режима notification.listener.mode=async. Вызовы sendAsync не занимают поток на
+     * время ожидания ответа. Клиент держит соединения открытыми между вызовами; при
+     * notification.client.http.version=HTTP_2 (по умолчанию) вызовы к одному адресу мультиплексируются в одном
+     * соединении HTTP/2, если сервер его поддерживает, иначе используется HTTP/1.1.
+     */
     @Bean
-    RestTemplate getRestTemplate() {
-        return new RestTemplate();
+    HttpClient notificationHttpClient(@Value("${notification.client.connect-timeout-ms}") long connectTimeout,
+                                      @Value("${notification.client.http.version:HTTP_2}") HttpClient.Version version) {
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .build();
     }
 }
@@ -1,25 +1,44 @@
 package sakhno.springframework.ms.EmailNotificationService.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.AdminClientConfig;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
-import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.util.backoff.FixedBackOff;
+import sakhno.springframework.ms.EmailNotificationService.cache.ProcessedEventCache;
 import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
 import sakhno.springframework.ms.EmailNotificationService.exception.RetryableException;
+import sakhno.springframework.ms.EmailNotificationService.handler.ProductCreatedEventCoalescingHandler;
+import sakhno.springframework.ms.EmailNotificationService.offsets.ConsumerOffsetStore;
+import sakhno.springframework.ms.EmailNotificationService.retry.RetryTierMetricsInterceptor;
+import sakhno.springframework.ms.EmailNotificationService.scaling.ListenerConcurrencyController;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventDeserializer;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventSerializer;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -32,32 +51,33 @@ public class KafkaConfig {
     }
 
     /**
-     * Метод создает словарь с конфигурацией для kafka consumer
+     * Метод создает словарь с конфигурацией для kafka consumer. Метрики клиента (kafka.consumer.*) каждого созданного
+     * потребителя регистрируются в MeterRegistry, в том числе отставание по партициям
+     * kafka.consumer.fetch.manager.records.lag{topic, partition}
      * @return - словарь с настройками
      */
     @Bean
-    ConsumerFactory<String, Object> consumerFactory(){
+    ConsumerFactory<String, Object> consumerFactory(MeterRegistry meterRegistry){
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG,
                 environment.getProperty("spring.kafka.consumer.bootstrap-servers"));
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
-        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class);
-        config.put(JsonDeserializer.TRUSTED_PACKAGES,
-                environment.getProperty("spring.kafka.consumer.group-id"));
+        config.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, ProductCreatedEventDeserializer.class);
         config.put(ConsumerConfig.GROUP_ID_CONFIG,
-                environment.getProperty("spring.kafka.consumer.properties.spring.json.trusted.packages"));
-        config.put("spring.json.type.mapping",
-                environment.getProperty("spring.kafka.consumer.properties.spring.json.type.mapping"));
+                environment.getProperty("spring.kafka.consumer.group-id"));
         config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG,
                 environment.getProperty("spring.kafka.consumer.auto-offset-reset"));
-        return new DefaultKafkaConsumerFactory<>(config);
+        DefaultKafkaConsumerFactory<String, Object> consumerFactory = new DefaultKafkaConsumerFactory<>(config);
+        consumerFactory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return consumerFactory;
     }
 
     /**
      * Этот бин создает и настраивает фабрику контейнера слушателя Kafka для обработки сообщений.
      * <p>
-     * <b>DefaultErrorHandler</b> — используется для обработки ошибок во время обработки сообщений. В данном случае ошибка будет
+     * <b>DefaultErrorHandler</b> — используется для обработки ошибок во время обработки сообщений в режиме batch. В режиме
+     * record его заменяют неблокирующие повторы через топики, см. {@link RetryTopicConfig}. В данном случае ошибка будет
      * сначала публиковаться в Dead Letter Queue через DeadLetterPublishingRecoverer. Это происходит, если сообщение не
      * может быть обработано в несколько попыток.
      * </p>
@@ -82,25 +102,126 @@ public class KafkaConfig {
      * <b>ConcurrentKafkaListenerContainerFactory</b> — фабрика, которая используется для создания контейнеров слушателей Kafka.
      * В данном случае фабрика настроена на работу с типами сообщений String для ключа и Object для значения.
      * </p>
+     * <p>
+     * <b>notification.listener.mode</b> — режим обработки:
+     * <ul>
+     *     <li><b>record</b> (по умолчанию) — по одной записи, ProductCreatedEventHandler;</li>
+     *     <li><b>batch</b> — слушатель получает весь результат poll списком записей. Ошибка отдельной записи передается
+     *     через BatchListenerFailedException с ее индексом, поэтому повтор и отправка в DLT выполняются только для этой
+     *     записи;</li>
+     *     <li><b>async</b> — неблокирующие HTTP вызовы, ProductCreatedEventAsyncHandler. Используется AckMode.MANUAL с
+     *     asyncAcks: записи подтверждаются по завершении в произвольном порядке, а контейнер фиксирует смещение только
+     *     после подтверждения всех предыдущих записей партиции;</li>
+     *     <li><b>parallel</b> — записи партиции распределяются по пулу исполнителей по ключу,
+     *     ProductCreatedEventParallelHandler. Подтверждение и фиксация смещений такие же, как в режиме async;</li>
+     *     <li><b>coalescing</b> — записи объединяются в окна по ключу или адресу, и на окно выполняется один вызов
+     *     сервиса уведомлений, ProductCreatedEventCoalescingHandler. Записи окна подтверждаются вместе, фиксация
+     *     смещений такая же, как в режиме async.</li>
+     * </ul>
+     * </p>
+     * <p>
+     * <b>spring.threads.virtual.enabled=true</b> — при запуске на JDK 21+ потоки контейнера (poll и вызов обработчика)
+     * создаются как виртуальные. Блокирующие вызовы RestTemplate и JPA внутри обработчика освобождают поток-носитель.
+     * На более ранних JDK настройка игнорируется и используются платформенные потоки.
+     * </p>
+     * <p>
+     * <b>RetryTierMetricsInterceptor</b> — если объявлен (режим record), подсчитывает результаты обработки по ступеням
+     * повторов.
+     * </p>
+     * <p>
+     * <b>notification.offsets.store=db</b> — смещения сохраняются в БД вместе с processed_events, см.
+     * {@link ConsumerOffsetStore}: переход к сохраненным смещениям при назначении партиций, в Kafka смещения
+     * фиксируются раз в notification.offsets.kafka-commit-interval-ms (AckMode.TIME). Поддерживается только в режиме
+     * record.
+     * </p>
+     * <p>
+     * <b>notification.listener.concurrency</b> — начальное число потребителей контейнера (не больше числа партиций
+     * имеет смысл). При notification.listener.autoscale.enabled=true оно меняется во время работы, см.
+     * {@link ListenerConcurrencyController}.
+     * </p>
+     * <p>
+     * <b>ProcessedEventCache</b> — слушатель перебалансировки всех контейнеров фабрики: по назначениям партиций кэш
+     * определяет, каким партициям можно доверять ответ фильтра Блума. В режиме coalescing слушателем также является
+     * ProductCreatedEventCoalescingHandler: записи отозванных партиций изымаются из его открытых окон.
+     * </p>
      * @param consumerFactory Фабрика, которая создает потребителей Kafka, используется для настройки конфигурации потребителя.
-     * @param kafkaTemplate Используется для публикации сообщений в Dead Letter Queue (DLQ) в случае ошибок обработки.
+     * @param deadLetterPublishingRecoverer Используется для публикации сообщений в Dead Letter Queue (DLQ) в случае ошибок
+     * обработки.
+     * @param retryTierMetricsInterceptor Перехватчик записей для метрик ступеней повторов.
+     * @param consumerOffsetStore Хранилище смещений в БД, если включено.
+     * @param processedEventCache Кэш обработанных messageId.
+     * @param coalescingHandler Обработчик режима coalescing, если включен.
      * @return Настроенная фабрика контейнера слушателя Kafka, которая использует обработчик ошибок.
      */
     @Bean
     ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory(
-            ConsumerFactory<String, Object> consumerFactory, KafkaTemplate kafkaTemplate) {
-        DefaultErrorHandler errorHandler = new DefaultErrorHandler(new DeadLetterPublishingRecoverer(kafkaTemplate),
+            ConsumerFactory<String, Object> consumerFactory, DeadLetterPublishingRecoverer deadLetterPublishingRecoverer,
+            ObjectProvider<RetryTierMetricsInterceptor> retryTierMetricsInterceptor,
+            ObjectProvider<ConsumerOffsetStore> consumerOffsetStore, ProcessedEventCache processedEventCache,
+            ObjectProvider<ProductCreatedEventCoalescingHandler> coalescingHandler) {
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(deadLetterPublishingRecoverer,
                 new FixedBackOff(3000, 3));
         errorHandler.addNotRetryableExceptions(NonRetryableException.class);
         errorHandler.addRetryableExceptions(RetryableException.class);
         ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
         factory.setCommonErrorHandler(errorHandler);
+        factory.setConcurrency(environment.getProperty("notification.listener.concurrency", Integer.class, 1));
+        retryTierMetricsInterceptor.ifAvailable(factory::setRecordInterceptor);
+        String listenerMode = environment.getProperty("notification.listener.mode", "record");
+        factory.setBatchListener("batch".equals(listenerMode));
+        if ("async".equals(listenerMode) || "parallel".equals(listenerMode) || "coalescing".equals(listenerMode)) {
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+            factory.getContainerProperties().setAsyncAcks(true);
+        }
+        List<ConsumerAwareRebalanceListener> rebalanceListeners = new ArrayList<>();
+        rebalanceListeners.add(processedEventCache);
+        coalescingHandler.ifAvailable(rebalanceListeners::add);
+        ConsumerOffsetStore offsetStore = consumerOffsetStore.getIfAvailable();
+        if (offsetStore != null) {
+            if (!"record".equals(listenerMode)) {
+                throw new IllegalStateException(
+                        "notification.offsets.store=db is supported only with notification.listener.mode=record");
+            }
+            factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.TIME);
+            factory.getContainerProperties().setAckTime(environment.getProperty(
+                    "notification.offsets.kafka-commit-interval-ms", Long.class, 5000L));
+            rebalanceListeners.add(offsetStore);
+        }
+        factory.getContainerProperties().setConsumerRebalanceListener(
+                new CompositeRebalanceListener(rebalanceListeners));
+        if (Threading.VIRTUAL.isActive(environment)) {
+            SimpleAsyncTaskExecutor listenerTaskExecutor = new SimpleAsyncTaskExecutor("kafka-listener-vt-");
+            listenerTaskExecutor.setVirtualThreads(true);
+            factory.getContainerProperties().setListenerTaskExecutor(listenerTaskExecutor);
+        }
         return factory;
     }
 
     /**
-     * Метод создает словарь с конфигурацией для kafka producer
+     * Публикация необработанных сообщений в топик {исходный топик}-dlt в ту же партицию. Используется обработчиком
+     * ошибок контейнера и асинхронным обработчиком, который завершает повторы самостоятельно.
+     * @param kafkaTemplate Используется для публикации сообщений в Dead Letter Queue (DLQ).
+     */
+    @Bean
+    DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaTemplate<String, Object> kafkaTemplate) {
+        return new DeadLetterPublishingRecoverer(kafkaTemplate);
+    }
+
+    /**
+     * KafkaAdmin для создания топиков повторов. Подключается к тем же брокерам, что и потребитель.
+     */
+    @Bean
+    KafkaAdmin kafkaAdmin() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG,
+                environment.getProperty("spring.kafka.consumer.bootstrap-servers"));
+        return new KafkaAdmin(config);
+    }
+
+    /**
+     * Метод создает словарь с конфигурацией для kafka producer. Продюсер публикует записи в топики повторов и DLT:
+     * события - в двоичном формате, а значения, которые не удалось десериализовать, - исходными байтами.
      * @return - словарь с настройками
      */
     @Bean
@@ -108,9 +229,11 @@ public class KafkaConfig {
         Map<String, Object> config = new HashMap<>();
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG,
                 environment.getProperty("spring.kafka.consumer.bootstrap-servers"));
-        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
-        return new DefaultKafkaProducerFactory<>(config);
+        Map<Class<?>, Serializer<?>> valueSerializers = new LinkedHashMap<>();
+        valueSerializers.put(ProductCreatedEvent.class, new ProductCreatedEventSerializer());
+        valueSerializers.put(byte[].class, new ByteArraySerializer());
+        return new DefaultKafkaProducerFactory<>(config, new StringSerializer(),
+                new DelegatingByTypeSerializer(valueSerializers));
     }
 
     /**
@@ -0,0 +1,100 @@
+package sakhno.springframework.ms.EmailNotificationService.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.retrytopic.DestinationTopic;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationSupport;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.util.backoff.FixedBackOff;
+import sakhno.springframework.ms.EmailNotificationService.exception.CircuitBreakerOpenException;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+import sakhno.springframework.ms.EmailNotificationService.retry.RetryTierMetricsInterceptor;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Неблокирующие повторы для режима record через отдельные топики.
+ * <p>
+ * Запись, обработка которой завершилась ошибкой, сразу публикуется в топик следующей ступени и освобождает партицию
+ * основного топика. С настройками по умолчанию ступени - product-created-events-topic-retry-1000,
+ * -retry-10000, -retry-60000, затем product-created-events-topic-dlt. Контейнер топика повтора приостанавливает
+ * партицию до наступления времени повтора записи, поэтому ожидание не блокирует основной поток.
+ * NonRetryableException отправляет запись сразу в DLT.
+ * </p>
+ * <p>
+ * CircuitBreakerOpenException не переводит запись на следующую ступень: сервис не вызывался, поэтому попытка не
+ * расходуется. Запись возвращается в партицию своего топика и повторяется раз в
+ * notification.client.circuit-breaker.probe-interval-ms; пока автомат разомкнут, ListenerPauseController держит
+ * контейнеры основного топика и топиков повторов на паузе, и запись не читается до его замыкания.
+ * </p>
+ * <p>
+ * Режим batch продолжает использовать блокирующий DefaultErrorHandler (топики повторов не поддерживают пакетных
+ * слушателей), режимы async и parallel повторяют вызовы сами.
+ * </p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "notification.listener.mode", havingValue = "record", matchIfMissing = true)
+public class RetryTopicConfig extends RetryTopicConfigurationSupport {
+    private final Environment environment;
+
+    @Autowired
+    public RetryTopicConfig(Environment environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Ступени повторов: задержка растет от initial-delay-ms с множителем multiplier до max-delay-ms, max-attempts
+     * включает первую попытку в основном топике. Контейнеры топиков повторов и DLT запускаются с concurrency
+     * потребителей независимо от основного слушателя.
+     * @param kafkaTemplate Используется для публикации записей в топики повторов и DLT.
+     */
+    @Bean
+    RetryTopicConfiguration productCreatedEventRetryTopicConfiguration(KafkaTemplate<String, Object> kafkaTemplate) {
+        return RetryTopicConfigurationBuilder.newInstance()
+                .includeTopic("product-created-events-topic")
+                .exponentialBackoff(
+                        environment.getProperty("notification.retry.initial-delay-ms", Long.class, 1000L),
+                        environment.getProperty("notification.retry.multiplier", Double.class, 10.0),
+                        environment.getProperty("notification.retry.max-delay-ms", Long.class, 60_000L))
+                .maxAttempts(environment.getProperty("notification.retry.max-attempts", Integer.class, 4))
+                .setTopicSuffixingStrategy(TopicSuffixingStrategy.SUFFIX_WITH_DELAY_VALUE)
+                .notRetryOn(NonRetryableException.class)
+                .dltHandlerMethod("productCreatedEventHandler", "handleDlt")
+                .concurrency(environment.getProperty("notification.retry.concurrency", Integer.class, 1))
+                .autoCreateTopicsWith(
+                        environment.getProperty("notification.retry.topics.partitions", Integer.class, 3),
+                        environment.getProperty("notification.retry.topics.replication-factor", Short.class, (short) 3))
+                .create(kafkaTemplate);
+    }
+
+    @Override
+    protected void configureBlockingRetries(BlockingRetriesConfigurer blockingRetries) {
+        blockingRetries
+                .retryOn(CircuitBreakerOpenException.class)
+                .backOff(new FixedBackOff(
+                        environment.getProperty("notification.client.circuit-breaker.probe-interval-ms", Long.class, 1000L),
+                        FixedBackOff.UNLIMITED_ATTEMPTS));
+    }
+
+    /**
+     * Ступени для метрик берутся из суффиксов топиков конфигурации повторов: "" - main, -retry-1000 - retry-1000,
+     * -dlt - dlt.
+     */
+    @Bean
+    RetryTierMetricsInterceptor retryTierMetricsInterceptor(MeterRegistry meterRegistry,
+                                                            RetryTopicConfiguration productCreatedEventRetryTopicConfiguration) {
+        Set<String> tiers = new LinkedHashSet<>();
+        for (DestinationTopic.Properties properties : productCreatedEventRetryTopicConfiguration.getDestinationTopicProperties()) {
+            tiers.add(RetryTierMetricsInterceptor.tier(properties.suffix()));
+        }
+        return new RetryTierMetricsInterceptor(meterRegistry, tiers);
+    }
+}
@@ -0,0 +1,56 @@
+package sakhno.springframework.ms.EmailNotificationService.dedup;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Обработанные messageId в таблице processed_events. Партиция не используется: уникальный индекс message_id общий
+ * для всех партиций и экземпляров сервиса. Повторное сохранение существующего messageId завершается
+ * DataIntegrityViolationException в самом вызове save/saveAll: вставка сбрасывается в БД сразу, а не при фиксации
+ * транзакции обработки, иначе исключение вылетело бы уже после выхода из обработчика, мимо его catch.
+ */
+@Component
+@ConditionalOnProperty(name = "notification.dedup.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaProcessedEventStore implements ProcessedEventStore {
+    private final ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    public JpaProcessedEventStore(ProcessedEventRepository processedEventRepository) {
+        this.processedEventRepository = processedEventRepository;
+    }
+
+    @Override
+    public boolean contains(String messageId, int partition) {
+        return processedEventRepository.findByMessageId(messageId) != null;
+    }
+
+    @Override
+    public Set<String> findContained(Map<String, Integer> partitionsByMessageId) {
+        Set<String> contained = new HashSet<>();
+        for (ProcessedEventEntity processedEvent : processedEventRepository.findByMessageIdIn(
+                partitionsByMessageId.keySet())) {
+            contained.add(processedEvent.getMessageId());
+        }
+        return contained;
+    }
+
+    @Override
+    public void save(ProcessedMessage message) {
+        processedEventRepository.saveAndFlush(new ProcessedEventEntity(message.messageId(), message.productId()));
+    }
+
+    @Override
+    public void saveAll(Collection<ProcessedMessage> messages) {
+        processedEventRepository.saveAllAndFlush(messages.stream()
+                .map(message -> new ProcessedEventEntity(message.messageId(), message.productId()))
+                .toList());
+    }
+}
@@ -0,0 +1,239 @@
+package sakhno.springframework.ms.EmailNotificationService.dedup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Множество 128-битных идентификаторов сообщений в отображенном в память файле: хэш-таблица с открытой адресацией
+ * и линейным пробированием.
+ * <p>
+ * Файл - заголовок из HEADER_SIZE байт (магическое число, емкость, число записей) и capacity ячеек по SLOT_SIZE байт:
+ * старшие и младшие 64 бита UUID и время обработки (epoch ms). Время 0 означает пустую ячейку. При вставке сначала
+ * увеличивается счетчик, затем пишется идентификатор и последним - время, поэтому при остановке процесса между
+ * записями ячейка остается пустой, а счетчик только завышается. Открытие не читает таблицу: отображение файла
+ * занимает миллисекунды, страницы подгружаются при обращении.
+ * </p>
+ * <p>
+ * Когда таблица заполняется больше чем на половину, она переписывается в новый файл, без записей старше retention, с
+ * емкостью, при которой заполнение не больше четверти; новый файл заменяет старый атомарным переименованием.
+ * Удаления отдельных записей нет. Методы синхронизированы.
+ * </p>
+ */
+public class MappedMessageIdIndex implements AutoCloseable {
+    private static final long MAGIC = 0x4D53474944583031L;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 24;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 12;
+    /** Ограничение MappedByteBuffer: не больше 2 ГБ на файл */
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private final Path path;
+    private final int initialCapacity;
+    private final long retentionMillis;
+    private final boolean force;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    /**
+     * Открытие файла или создание пустой таблицы.
+     * @param initialCapacity - емкость новой таблицы, округляется до степени двойки
+     * @param retentionMillis - записи старше этого срока отбрасываются при перестроении таблицы
+     * @param force - сбрасывать ли ячейку на диск после каждой вставки
+     */
+    public MappedMessageIdIndex(Path path, int initialCapacity, long retentionMillis, boolean force) {
+        this.path = path;
+        this.initialCapacity = ceilPowerOfTwo(Math.max(16, initialCapacity));
+        this.retentionMillis = retentionMillis;
+        this.force = force;
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            if (Files.exists(path) && Files.size(path) >= HEADER_SIZE) {
+                open(path);
+            } else {
+                create(path, this.initialCapacity);
+                open(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized boolean contains(long mostSignificantBits, long leastSignificantBits) {
+        return find(mostSignificantBits, leastSignificantBits) >= 0;
+    }
+
+    /**
+     * @return - false, если идентификатор уже есть
+     */
+    public synchronized boolean add(long mostSignificantBits, long leastSignificantBits, long processedAt) {
+        if (find(mostSignificantBits, leastSignificantBits) >= 0) {
+            return false;
+        }
+        if ((size + 1) * 2L > capacity) {
+            rebuild(System.currentTimeMillis());
+        }
+        int slot = freeSlot(buffer, capacity, mostSignificantBits, leastSignificantBits);
+        size++;
+        buffer.putInt(SIZE_OFFSET, size);
+        int position = HEADER_SIZE + slot * SLOT_SIZE;
+        buffer.putLong(position, mostSignificantBits);
+        buffer.putLong(position + 8, leastSignificantBits);
+        buffer.putLong(position + 16, Math.max(1, processedAt));
+        if (force) {
+            buffer.force(position, SLOT_SIZE);
+            buffer.force(SIZE_OFFSET, 4);
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int capacity() {
+        return capacity;
+    }
+
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return - номер ячейки или -1, если идентификатора нет
+     */
+    private int find(long mostSignificantBits, long leastSignificantBits) {
+        int mask = capacity - 1;
+        for (int slot = hash(mostSignificantBits, leastSignificantBits) & mask; ; slot = (slot + 1) & mask) {
+            int position = HEADER_SIZE + slot * SLOT_SIZE;
+            if (buffer.getLong(position + 16) == 0) {
+                return -1;
+            }
+            if (buffer.getLong(position) == mostSignificantBits && buffer.getLong(position + 8) == leastSignificantBits) {
+                return slot;
+            }
+        }
+    }
+
+    private void rebuild(long now) {
+        int live = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long processedAt = buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE + 16);
+            if (processedAt != 0 && now - processedAt <= retentionMillis) {
+                live++;
+            }
+        }
+        int newCapacity = Math.max(initialCapacity, ceilPowerOfTwo((live + 1) * 4));
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Dedup index " + path + " exceeds " + MAX_CAPACITY / 4 + " entries");
+        }
+        Path rebuilt = path.resolveSibling(path.getFileName() + ".rebuild");
+        try {
+            create(rebuilt, newCapacity);
+            try (FileChannel target = FileChannel.open(rebuilt, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer targetBuffer = map(target, newCapacity);
+                for (int slot = 0; slot < capacity; slot++) {
+                    int position = HEADER_SIZE + slot * SLOT_SIZE;
+                    long processedAt = buffer.getLong(position + 16);
+                    if (processedAt == 0 || now - processedAt > retentionMillis) {
+                        continue;
+                    }
+                    long mostSignificantBits = buffer.getLong(position);
+                    long leastSignificantBits = buffer.getLong(position + 8);
+                    int targetPosition = HEADER_SIZE
+                            + freeSlot(targetBuffer, newCapacity, mostSignificantBits, leastSignificantBits) * SLOT_SIZE;
+                    targetBuffer.putLong(targetPosition, mostSignificantBits);
+                    targetBuffer.putLong(targetPosition + 8, leastSignificantBits);
+                    targetBuffer.putLong(targetPosition + 16, processedAt);
+                }
+                targetBuffer.putInt(SIZE_OFFSET, live);
+                targetBuffer.force();
+            }
+            channel.close();
+            Files.move(rebuilt, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            open(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void open(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getLong(0) != MAGIC) {
+            channel.close();
+            throw new IllegalStateException("Not a dedup index: " + file);
+        }
+        capacity = header.getInt(CAPACITY_OFFSET);
+        buffer = map(channel, capacity);
+        size = buffer.getInt(SIZE_OFFSET);
+    }
+
+    private static void create(Path file, int capacity) throws IOException {
+        Path created = file.resolveSibling(file.getFileName() + ".new");
+        try (FileChannel target = FileChannel.open(created, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer header = map(target, capacity);
+            header.putLong(0, MAGIC);
+            header.putInt(CAPACITY_OFFSET, capacity);
+            header.putInt(SIZE_OFFSET, 0);
+            header.force();
+        }
+        Files.move(created, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, int capacity) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) capacity * SLOT_SIZE);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        return mapped;
+    }
+
+    private static int freeSlot(MappedByteBuffer buffer, int capacity, long mostSignificantBits,
+                                long leastSignificantBits) {
+        int mask = capacity - 1;
+        int slot = hash(mostSignificantBits, leastSignificantBits) & mask;
+        while (buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE + 16) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Перемешивание 128 бит (финализатор MurmurHash3): у UUID версии 4 часть битов фиксирована.
+     */
+    private static int hash(long mostSignificantBits, long leastSignificantBits) {
+        long h = mostSignificantBits * 0x9E3779B97F4A7C15L ^ leastSignificantBits;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int ceilPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
@@ -0,0 +1,186 @@
+package sakhno.springframework.ms.EmailNotificationService.dedup;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Обработанные messageId в отображенных в память файлах, по файлу {@link MappedMessageIdIndex} на партицию
+ * (notification.dedup.store=mapped).
+ * <p>
+ * Файлы partition-N.idx, уже существующие в notification.dedup.mapped.directory, открываются при старте, файл новой
+ * партиции - при первом обращении к ней; все остаются открытыми до остановки. messageId ищется сначала в файле
+ * партиции записи, а при промахе - в файлах остальных партиций: после увеличения числа партиций топика повторная
+ * отправка того же сообщения может попасть в другую партицию, а записи топиков повторов - в партицию с другим
+ * номером, если число партиций топиков различается. Проверка не обращается к БД и JPA, а таблица processed_events не
+ * заполняется.
+ * </p>
+ * <p>
+ * messageId записывается в файл после фиксации транзакции обработки (при откате не записывается), а без транзакции -
+ * сразу. Запись попадает в страничный кэш ОС и переживает перезапуск процесса; force-on-commit=true дополнительно
+ * сбрасывает ячейку на диск. Если процесс остановится между фиксацией транзакции и записью в файл, сообщение будет
+ * обработано повторно. Записи старше notification.dedup.retention-ms отбрасываются при перестроении файла.
+ * </p>
+ * <p>
+ * <b>Владение.</b> Индекс хранит только то, что обработал этот процесс. Если группу потребителей читает несколько
+ * экземпляров сервиса, партиция после ребалансировки переходит к экземпляру, в файлах которого ее сообщений нет, и
+ * дубликаты не распознаются. Поэтому режим требует, чтобы все партиции читал один экземпляр сервиса (потребители
+ * контейнера внутри процесса - notification.listener.concurrency и автомасштабирование - общий индекс разделяют), и
+ * это подтверждается явно: без notification.dedup.mapped.single-instance=true сервис не запускается. Каталог должен
+ * принадлежать одной группе потребителей и одному топику.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "notification.dedup.store", havingValue = "mapped")
+public class MappedProcessedEventStore implements ProcessedEventStore, MeterBinder, DisposableBean {
+    private final static Logger log = LoggerFactory.getLogger(MappedProcessedEventStore.class);
+    private static final Pattern INDEX_FILE = Pattern.compile("partition-(\\d+)\\.idx");
+
+    private final Path directory;
+    private final int initialCapacity;
+    private final long retentionMillis;
+    private final boolean forceOnCommit;
+
+    private final Map<Integer, MappedMessageIdIndex> shards = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MappedProcessedEventStore(Environment environment) {
+        this.directory = Path.of(environment.getProperty("notification.dedup.mapped.directory",
+                System.getProperty("java.io.tmpdir") + "/email-notification-dedup"));
+        this.initialCapacity = environment.getProperty("notification.dedup.mapped.initial-capacity", Integer.class,
+                65536);
+        this.retentionMillis = environment.getProperty("notification.dedup.retention-ms", Long.class, 604_800_000L);
+        this.forceOnCommit = environment.getProperty("notification.dedup.mapped.force-on-commit", Boolean.class,
+                false);
+        if (!environment.getProperty("notification.dedup.mapped.single-instance", Boolean.class, false)) {
+            throw new IllegalStateException("notification.dedup.store=mapped keeps processed message ids in local "
+                    + "files and misses duplicates of partitions moved from another instance; set "
+                    + "notification.dedup.mapped.single-instance=true if only this instance consumes the group");
+        }
+        openExisting();
+    }
+
+    private void openExisting() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = INDEX_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    shard(Integer.parseInt(matcher.group(1)));
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean contains(String messageId, int partition) {
+        UUID uuid = UUID.fromString(messageId);
+        long mostSignificantBits = uuid.getMostSignificantBits();
+        long leastSignificantBits = uuid.getLeastSignificantBits();
+        MappedMessageIdIndex own = shard(partition);
+        if (own.contains(mostSignificantBits, leastSignificantBits)) {
+            return true;
+        }
+        for (MappedMessageIdIndex index : shards.values()) {
+            if (index != own && index.contains(mostSignificantBits, leastSignificantBits)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set<String> findContained(Map<String, Integer> partitionsByMessageId) {
+        Set<String> contained = new HashSet<>();
+        partitionsByMessageId.forEach((messageId, partition) -> {
+            if (contains(messageId, partition)) {
+                contained.add(messageId);
+            }
+        });
+        return contained;
+    }
+
+    @Override
+    public void save(ProcessedMessage message) {
+        saveAll(List.of(message));
+    }
+
+    @Override
+    public void saveAll(Collection<ProcessedMessage> messages) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<ProcessedMessage> pending = List.copyOf(messages);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(pending);
+                }
+            });
+        } else {
+            add(messages);
+        }
+    }
+
+    private void add(Collection<ProcessedMessage> messages) {
+        long now = System.currentTimeMillis();
+        for (ProcessedMessage message : messages) {
+            UUID uuid = UUID.fromString(message.messageId());
+            shard(message.partition()).add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), now);
+        }
+    }
+
+    private MappedMessageIdIndex shard(int partition) {
+        return shards.computeIfAbsent(partition, key -> {
+            long start = System.nanoTime();
+            MappedMessageIdIndex index = new MappedMessageIdIndex(directory.resolve("partition-" + key + ".idx"),
+                    initialCapacity, retentionMillis, forceOnCommit);
+            log.info("Dedup index of partition {} opened in {} ms: {} message ids", key,
+                    (System.nanoTime() - start) / 1_000_000, index.size());
+            return index;
+        });
+    }
+
+    public long size() {
+        return shards.values().stream().mapToLong(MappedMessageIdIndex::size).sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("notification.dedup.mapped.size", this, MappedProcessedEventStore::size)
+                .description("Message ids in the open dedup index files")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        shards.values().forEach(MappedMessageIdIndex::close);
+        shards.clear();
+    }
+}
@@ -0,0 +1,29 @@
+package sakhno.springframework.ms.EmailNotificationService.dedup;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Хранилище обработанных messageId для проверки на дубликат. Реализацию выбирает notification.dedup.store:
+ * <ul>
+ *     <li><b>jpa</b> (по умолчанию) - таблица processed_events, {@link JpaProcessedEventStore};</li>
+ *     <li><b>mapped</b> - отображенные в память файлы по партициям, {@link MappedProcessedEventStore}.</li>
+ * </ul>
+ * Сохранение выполняется в текущей транзакции обработки или после ее фиксации, повторное сохранение того же messageId
+ * в рамках одной транзакции не допускается.
+ */
+public interface ProcessedEventStore {
+
+    boolean contains(String messageId, int partition);
+
+    /**
+     * @param partitionsByMessageId - партиции записей по messageId
+     * @return - уже обработанные messageId
+     */
+    Set<String> findContained(Map<String, Integer> partitionsByMessageId);
+
+    void save(ProcessedMessage message);
+
+    void saveAll(Collection<ProcessedMessage> messages);
+}
@@ -0,0 +1,10 @@
+package sakhno.springframework.ms.EmailNotificationService.dedup;
+
+/**
+ * Обработанное сообщение для {@link ProcessedEventStore}.
+ * @param messageId - значение заголовка messageId (UUID)
+ * @param productId - ключ записи
+ * @param partition - партиция записи
+ */
+public record ProcessedMessage(String messageId, String productId, int partition) {
+}
@@ -0,0 +1,102 @@
+package sakhno.springframework.ms.EmailNotificationService.diagnostics;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.handler.ProductCreatedEventProcessor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Диагностика закрепления (pinning) виртуальных потоков. Через JFR подписывается на событие jdk.VirtualThreadPinned
+ * и логирует случаи, когда виртуальный поток не смог освободить поток-носитель дольше порога. Отдельно считаются
+ * закрепления внутри ProductCreatedEventProcessor - транзакционный обработчик вызывает JDBC и RestTemplate, где
+ * synchronized блоки драйвера или пула приводят к закреплению.
+ * <p>
+ * Включается настройкой notification.virtual-threads.pinning-diagnostics.enabled=true, работает только на JDK 21+.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "notification.virtual-threads.pinning-diagnostics.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor implements SmartLifecycle {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int LOGGED_FRAMES = 8;
+    private final static Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    private final Duration threshold;
+    private final AtomicLong pinnedCount = new AtomicLong();
+    private final AtomicLong handlerPinnedCount = new AtomicLong();
+    private volatile RecordingStream recordingStream;
+
+    public VirtualThreadPinningMonitor(
+            @Value("${notification.virtual-threads.pinning-diagnostics.threshold-ms:20}") long thresholdMs) {
+        this.threshold = Duration.ofMillis(thresholdMs);
+    }
+
+    @Override
+    public void start() {
+        if (Runtime.version().feature() < 21) {
+            log.warn("Pinning diagnostics requires JDK 21+, current runtime: {}", Runtime.version());
+            return;
+        }
+        RecordingStream stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::onPinned);
+        stream.startAsync();
+        recordingStream = stream;
+        log.info("Virtual thread pinning diagnostics started, threshold: {} ms", threshold.toMillis());
+    }
+
+    @Override
+    public void stop() {
+        RecordingStream stream = recordingStream;
+        recordingStream = null;
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return recordingStream != null;
+    }
+
+    /**
+     * @return - общее количество зафиксированных закреплений виртуальных потоков
+     */
+    public long getPinnedCount() {
+        return pinnedCount.get();
+    }
+
+    /**
+     * @return - количество закреплений, в стеке которых присутствует ProductCreatedEventProcessor
+     */
+    public long getHandlerPinnedCount() {
+        return handlerPinnedCount.get();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinnedCount.incrementAndGet();
+        List<RecordedFrame> frames = event.getStackTrace() == null ? List.of() : event.getStackTrace().getFrames();
+        boolean inHandler = frames.stream()
+                .anyMatch(frame -> ProductCreatedEventProcessor.class.getName().equals(frame.getMethod().getType().getName()));
+        if (inHandler) {
+            handlerPinnedCount.incrementAndGet();
+        }
+        String stack = frames.stream()
+                .limit(LOGGED_FRAMES)
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber())
+                .collect(Collectors.joining(" <- "));
+        log.warn("Virtual thread pinned for {} ms{}: {}", event.getDuration().toMillis(),
+                inHandler ? " in ProductCreatedEventProcessor" : "", stack);
+    }
+}
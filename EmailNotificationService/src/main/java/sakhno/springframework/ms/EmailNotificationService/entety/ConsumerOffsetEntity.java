@@ -0,0 +1,55 @@
+package sakhno.springframework.ms.EmailNotificationService.entety;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Смещение, с которого группа продолжит чтение партиции (смещение последней обработанной записи + 1). Хранится при
+ * notification.offsets.store=db и записывается в одной транзакции с {@link ProcessedEventEntity}.
+ */
+@Entity
+@Table(name = "consumer_offsets")
+public class ConsumerOffsetEntity {
+    @EmbeddedId
+    private ConsumerOffsetId id;
+
+    @Column(name = "next_offset", nullable = false)
+    private long nextOffset;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public ConsumerOffsetEntity() {
+    }
+
+    public ConsumerOffsetEntity(ConsumerOffsetId id, long nextOffset) {
+        this.id = id;
+        this.nextOffset = nextOffset;
+        this.updatedAt = Instant.now();
+    }
+
+    public ConsumerOffsetId getId() {
+        return id;
+    }
+
+    public void setId(ConsumerOffsetId id) {
+        this.id = id;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public void setNextOffset(long nextOffset) {
+        this.nextOffset = nextOffset;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
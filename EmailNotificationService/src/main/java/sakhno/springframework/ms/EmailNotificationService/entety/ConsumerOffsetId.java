@@ -0,0 +1,60 @@
+package sakhno.springframework.ms.EmailNotificationService.entety;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Ключ смещения: группа потребителей, топик и партиция.
+ */
+@Embeddable
+public class ConsumerOffsetId implements Serializable {
+    @Column(name = "group_id", nullable = false)
+    private String groupId;
+
+    @Column(name = "topic", nullable = false)
+    private String topic;
+
+    @Column(name = "partition_id", nullable = false)
+    private int partition;
+
+    public ConsumerOffsetId() {
+    }
+
+    public ConsumerOffsetId(String groupId, String topic, int partition) {
+        this.groupId = groupId;
+        this.topic = topic;
+        this.partition = partition;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ConsumerOffsetId that)) {
+            return false;
+        }
+        return partition == that.partition && Objects.equals(groupId, that.groupId)
+                && Objects.equals(topic, that.topic);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(groupId, topic, partition);
+    }
+}
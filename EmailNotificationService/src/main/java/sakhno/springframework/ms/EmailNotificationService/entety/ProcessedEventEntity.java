@@ -2,25 +2,44 @@ package sakhno.springframework.ms.EmailNotificationService.entety;
 
 import jakarta.persistence.*;
 
+import java.time.Instant;
+
 @Entity
-@Table(name = "processed_events")
+@Table(name = "processed_events",
+        indexes = @Index(name = "idx_processed_events_processed_at", columnList = "processed_at"))
 public class ProcessedEventEntity {
+    /**
+     * Идентификатор берется из последовательности с шагом 50, а не IDENTITY: с IDENTITY Hibernate отключает
+     * JDBC batch вставку, которая нужна для saveAll в пакетном режиме обработки.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "processed_events_seq")
+    @SequenceGenerator(name = "processed_events_seq", sequenceName = "processed_events_seq", allocationSize = 50)
     private Long id;
 
-    @Column(name = "message_id", nullable = false, unique = true)
+    /**
+     * UUID сообщения, в БД хранится как BINARY(16), см. {@link MessageIdConverter}.
+     */
+    @Convert(converter = MessageIdConverter.class)
+    @Column(name = "message_id", nullable = false, unique = true, columnDefinition = "binary(16)")
     private String messageId;
 
     @Column(name = "product_id", nullable = false)
     private String productId;
 
+    /**
+     * Время обработки, по нему ProcessedEventRetentionPurger удаляет записи старше срока хранения.
+     */
+    @Column(name = "processed_at", nullable = false)
+    private Instant processedAt;
+
     public ProcessedEventEntity() {
     }
 
     public ProcessedEventEntity(String messageId, String productId) {
         this.messageId = messageId;
         this.productId = productId;
+        this.processedAt = Instant.now();
     }
 
     public Long getId() {
@@ -46,4 +65,12 @@ public class ProcessedEventEntity {
     public void setProductId(String productId) {
         this.productId = productId;
     }
+
+    public Instant getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setProcessedAt(Instant processedAt) {
+        this.processedAt = processedAt;
+    }
 }
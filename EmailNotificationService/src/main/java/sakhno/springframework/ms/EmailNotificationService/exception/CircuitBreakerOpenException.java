@@ -0,0 +1,12 @@
+package sakhno.springframework.ms.EmailNotificationService.exception;
+
+/**
+ * Вызов сервиса уведомлений не выполнялся: автомат защиты разомкнут. Сервис считается недоступным, вызов имеет
+ * смысл повторить позже.
+ */
+public class CircuitBreakerOpenException extends RetryableException {
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
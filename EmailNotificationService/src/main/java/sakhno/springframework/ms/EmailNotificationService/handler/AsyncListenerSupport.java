@@ -0,0 +1,162 @@
+package sakhno.springframework.ms.EmailNotificationService.handler;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Общая часть обработчиков, которые подтверждают записи вне потока потребителя (режимы async, parallel, coalescing).
+ * <p>
+ * <b>Отправка в DLT</b> повторяется, пока не удастся: запись, которая не отправлена в DLT, нельзя подтвердить, а без
+ * подтверждения смещение партиции не продвинется дальше нее. Задержка между попытками растет вдвое от
+ * notification.listener.dlt.initial-backoff-ms до notification.listener.dlt.max-backoff-ms. При остановке сервиса
+ * повторы прекращаются, запись остается неподтвержденной и будет доставлена повторно после перезапуска.
+ * </p>
+ * <p>
+ * <b>Ограничение записей партиции в обработке</b> ({@link InFlightLimit}) не блокирует поток потребителя: при
+ * достижении лимита партиция приостанавливается в контейнере и возобновляется, когда записей в обработке снова
+ * меньше лимита. Записи, уже полученные последним poll, доставляются обработчику и после приостановки, поэтому лимит
+ * может быть превышен на max.poll.records.
+ * </p>
+ */
+@Component
+public class AsyncListenerSupport {
+    private final static Logger log = LoggerFactory.getLogger(AsyncListenerSupport.class);
+
+    private final DeadLetterPublishingRecoverer deadLetterPublishingRecoverer;
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final ScheduledExecutorService dltRetryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "notification-dlt-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public AsyncListenerSupport(DeadLetterPublishingRecoverer deadLetterPublishingRecoverer,
+                                KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+                                Environment environment) {
+        this.deadLetterPublishingRecoverer = deadLetterPublishingRecoverer;
+        this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+        this.initialBackoffMillis = environment.getProperty("notification.listener.dlt.initial-backoff-ms",
+                Long.class, 1000L);
+        this.maxBackoffMillis = environment.getProperty("notification.listener.dlt.max-backoff-ms",
+                Long.class, 30_000L);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        dltRetryExecutor.shutdownNow();
+    }
+
+    /**
+     * Отправка записи в DLT после исчерпания повторов или NonRetryableException. Первая попытка выполняется в
+     * вызывающем потоке, повторы - в потоке notification-dlt-retry.
+     * @return - завершается, когда запись отправлена и ее можно подтвердить. Не завершается, если сервис остановлен
+     * раньше, чем отправка удалась.
+     */
+    public CompletableFuture<Void> recover(ConsumerRecord<?, ?> record, Throwable throwable) {
+        Exception exception = throwable instanceof Exception e ? e : new NonRetryableException(throwable);
+        CompletableFuture<Void> published = new CompletableFuture<>();
+        publish(record, exception, published, 1, initialBackoffMillis);
+        return published;
+    }
+
+    private void publish(ConsumerRecord<?, ?> record, Exception exception, CompletableFuture<Void> published,
+                         int attempt, long backoffMillis) {
+        try {
+            deadLetterPublishingRecoverer.accept(record, exception);
+            published.complete(null);
+            return;
+        } catch (Exception e) {
+            log.error("Unable to publish {}-{}@{} to DLT, attempt {}, retrying in {} ms", record.topic(),
+                    record.partition(), record.offset(), attempt, backoffMillis, e);
+        }
+        try {
+            dltRetryExecutor.schedule(() -> publish(record, exception, published, attempt + 1,
+                    Math.min(backoffMillis * 2, maxBackoffMillis)), backoffMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.warn("Shutting down, {}-{}@{} is left unacknowledged", record.topic(), record.partition(),
+                    record.offset());
+        }
+    }
+
+    /**
+     * @param maxPerPartition - лимит записей партиции в обработке
+     */
+    public InFlightLimit inFlightLimit(int maxPerPartition) {
+        return new InFlightLimit(maxPerPartition);
+    }
+
+    public static String getMessageId(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader("messageId");
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Счетчики записей в обработке по партициям. {@link #acquire} вызывается в потоке потребителя при получении
+     * записи, {@link #release} - после ее подтверждения или отказа от подтверждения.
+     */
+    public class InFlightLimit {
+        private final int maxPerPartition;
+        private final Map<TopicPartition, int[]> inFlight = new ConcurrentHashMap<>();
+
+        private InFlightLimit(int maxPerPartition) {
+            this.maxPerPartition = maxPerPartition;
+        }
+
+        public void acquire(ConsumerRecord<?, ?> record) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            int[] count = inFlight.computeIfAbsent(partition, key -> new int[1]);
+            // пауза и возобновление под блокировкой счетчика, иначе пауза могла бы примениться после возобновления
+            synchronized (count) {
+                if (++count[0] == maxPerPartition) {
+                    log.debug("{} records of {} in flight, pausing partition", maxPerPartition, partition);
+                    forContainerOf(partition, container -> container.pausePartition(partition));
+                }
+            }
+        }
+
+        public void release(ConsumerRecord<?, ?> record) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            int[] count = inFlight.get(partition);
+            if (count == null) {
+                return;
+            }
+            synchronized (count) {
+                if (count[0]-- == maxPerPartition) {
+                    forContainerOf(partition, container -> container.resumePartition(partition));
+                }
+            }
+        }
+    }
+
+    private void forContainerOf(TopicPartition partition, Consumer<MessageListenerContainer> action) {
+        for (MessageListenerContainer container : kafkaListenerEndpointRegistry.getListenerContainers()) {
+            if (container.getAssignedPartitions() != null && container.getAssignedPartitions().contains(partition)) {
+                action.accept(container);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package sakhno.springframework.ms.EmailNotificationService.handler;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.cache.ProcessedEventCache;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedEventStore;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedMessage;
+import sakhno.springframework.ms.EmailNotificationService.entety.MessageIdConverter;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+import sakhno.springframework.ms.EmailNotificationService.exception.RetryableException;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerPipelineMetrics;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Обработчик ProductCreatedEvent с неблокирующим вызовом сервиса уведомлений. Включается настройкой
+ * notification.listener.mode=async.
+ * <p>
+ * Поток потребителя только запускает обработку записи и сразу берет следующую. Когда в обработке
+ * max-in-flight-per-partition записей одной партиции, партиция приостанавливается до освобождения слота, см.
+ * {@link AsyncListenerSupport}. Записи с одинаковым ключом выполняются строго друг за другом в порядке смещений.
+ * </p>
+ * <p>
+ * Повторы RetryableException (notification.listener.retry.*) и отправка в DLT (с повторами до успеха) выполняются
+ * здесь же, в цепочке записи, чтобы следующие записи того же ключа не обогнали ее. Запись подтверждается после
+ * успешной обработки или отправки в DLT; контейнер (asyncAcks) фиксирует смещение только когда подтверждены все
+ * предыдущие записи партиции, поэтому сохраняется семантика at-least-once.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "notification.listener.mode", havingValue = "async")
+public class ProductCreatedEventAsyncHandler {
+    private final static Logger log = LoggerFactory.getLogger(ProductCreatedEventAsyncHandler.class);
+
+    private NotificationClient notificationClient;
+    private ProcessedEventStore processedEventStore;
+    private ProcessedEventCache processedEventCache;
+    private AsyncListenerSupport listenerSupport;
+    private ConsumerPipelineMetrics pipelineMetrics;
+    private final ThreadPoolTaskExecutor workerExecutor;
+    private final AsyncListenerSupport.InFlightLimit inFlight;
+    private final long retryInterval;
+    private final int maxAttempts;
+
+    private final Map<String, CompletableFuture<Void>> keyTails = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ProductCreatedEventAsyncHandler(NotificationClient notificationClient,
+                                           ProcessedEventStore processedEventStore,
+                                           ProcessedEventCache processedEventCache,
+                                           AsyncListenerSupport listenerSupport,
+                                           ConsumerPipelineMetrics pipelineMetrics,
+                                           @Value("${notification.client.async.max-in-flight-per-partition}") int maxInFlightPerPartition,
+                                           @Value("${notification.client.async.worker-threads}") int workerThreads,
+                                           @Value("${notification.listener.retry.interval-ms}") long retryInterval,
+                                           @Value("${notification.listener.retry.max-attempts}") int maxAttempts) {
+        this.notificationClient = notificationClient;
+        this.processedEventStore = processedEventStore;
+        this.processedEventCache = processedEventCache;
+        this.listenerSupport = listenerSupport;
+        this.pipelineMetrics = pipelineMetrics;
+        this.inFlight = listenerSupport.inFlightLimit(maxInFlightPerPartition);
+        this.retryInterval = retryInterval;
+        this.maxAttempts = maxAttempts;
+        this.workerExecutor = new ThreadPoolTaskExecutor();
+        this.workerExecutor.setCorePoolSize(workerThreads);
+        this.workerExecutor.setThreadNamePrefix("notification-async-");
+        this.workerExecutor.initialize();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workerExecutor.shutdown();
+    }
+
+    /**
+     * Запуск обработки записи.
+     * @param record Запись из Kafka.
+     * @param acknowledgment Подтверждение записи, вызывается по завершении обработки.
+     */
+    @KafkaListener(topics = "product-created-events-topic")
+    public void handle(ConsumerRecord<String, ProductCreatedEvent> record, Acknowledgment acknowledgment) {
+        inFlight.acquire(record);
+
+        String key = record.key();
+        CompletableFuture<Void> previous = key == null ? null : keyTails.get(key);
+        CompletableFuture<Void> current = (previous == null ? CompletableFuture.<Void>completedFuture(null) : previous)
+                .thenComposeAsync(ignored -> process(record), workerExecutor)
+                .handle((result, throwable) -> {
+                    if (throwable == null) {
+                        pipelineMetrics.recordEndToEnd(record);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    return listenerSupport.recover(record, unwrap(throwable));
+                })
+                .thenCompose(Function.identity())
+                .whenComplete((result, throwable) -> {
+                    if (throwable == null) {
+                        acknowledgment.acknowledge();
+                    }
+                    inFlight.release(record);
+                });
+        if (key != null) {
+            keyTails.put(key, current);
+            current.whenComplete((result, throwable) -> keyTails.remove(key, current));
+        }
+    }
+
+    private CompletableFuture<Void> process(ConsumerRecord<String, ProductCreatedEvent> record) {
+        String messageId = AsyncListenerSupport.getMessageId(record);
+        if (!MessageIdConverter.isValid(messageId)) {
+            return CompletableFuture.failedFuture(new NonRetryableException("Invalid message id: " + messageId));
+        }
+        if (record.value() == null) {
+            return CompletableFuture.failedFuture(new NonRetryableException("Unable to deserialize event"));
+        }
+        log.info("Received event: {}", record.value().getTitle());
+
+        if (pipelineMetrics.dedupLookup().record(() -> isDuplicate(messageId, record.topic(), record.partition()))) {
+            log.info("Duplicate message id: {}", messageId);
+            processedEventCache.putAfterCommit(messageId);
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendWithRetry(1)
+                .thenRunAsync(() -> save(messageId, record.key(), record.partition()), workerExecutor);
+    }
+
+    private boolean isDuplicate(String messageId, String topic, int partition) {
+        ProcessedEventCache.Lookup lookup = processedEventCache.lookup(messageId, topic, partition);
+        return lookup == ProcessedEventCache.Lookup.DUPLICATE
+                || lookup == ProcessedEventCache.Lookup.UNKNOWN && processedEventStore.contains(messageId, partition);
+    }
+
+    private CompletableFuture<Void> sendWithRetry(int attempt) {
+        long start = System.nanoTime();
+        return notificationClient.sendNotificationAsync().whenComplete((result, throwable) ->
+                pipelineMetrics.httpCall().record(System.nanoTime() - start, TimeUnit.NANOSECONDS)
+        ).exceptionallyCompose(throwable -> {
+            Throwable cause = unwrap(throwable);
+            if (cause instanceof RetryableException && attempt <= maxAttempts) {
+                log.warn("Notification attempt {} failed, retrying in {} ms", attempt, retryInterval);
+                return CompletableFuture.runAsync(() -> { },
+                                CompletableFuture.delayedExecutor(retryInterval, TimeUnit.MILLISECONDS, workerExecutor))
+                        .thenCompose(ignored -> sendWithRetry(attempt + 1));
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
+    }
+
+    private void save(String messageId, String messageKey, int partition) {
+        try {
+            pipelineMetrics.dbSave().record(() ->
+                    processedEventStore.save(new ProcessedMessage(messageId, messageKey, partition)));
+            processedEventCache.putAfterCommit(messageId);
+        } catch (DataIntegrityViolationException e) {
+            log.error(e.getMessage());
+            throw new NonRetryableException(e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+}
@@ -0,0 +1,161 @@
+package sakhno.springframework.ms.EmailNotificationService.handler;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.cache.ProcessedEventCache;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedEventStore;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedMessage;
+import sakhno.springframework.ms.EmailNotificationService.entety.MessageIdConverter;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+import sakhno.springframework.ms.EmailNotificationService.exception.RetryableException;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerPipelineMetrics;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Пакетный обработчик событий ProductCreatedEvent. Включается настройкой notification.listener.mode=batch
+ * вместо {@link ProductCreatedEventHandler}.
+ */
+@Component
+@ConditionalOnProperty(name = "notification.listener.mode", havingValue = "batch")
+public class ProductCreatedEventBatchHandler {
+    private NotificationClient notificationClient;
+    private ProcessedEventStore processedEventStore;
+    private ProcessedEventCache processedEventCache;
+    private ConsumerPipelineMetrics pipelineMetrics;
+    private final static Logger log = LoggerFactory.getLogger(ProductCreatedEventBatchHandler.class);
+
+    @Autowired
+    public ProductCreatedEventBatchHandler(NotificationClient notificationClient,
+                                           ProcessedEventStore processedEventStore,
+                                           ProcessedEventCache processedEventCache,
+                                           ConsumerPipelineMetrics pipelineMetrics) {
+        this.notificationClient = notificationClient;
+        this.processedEventStore = processedEventStore;
+        this.processedEventCache = processedEventCache;
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    /**
+     * Обработка пакета записей из Kafka.
+     * <p>
+     * Дубликаты определяются одним запросом IN по всем заголовкам messageId пакета, новые записи сохраняются одним
+     * saveAll (JDBC batch) в одной транзакции. В запрос попадают только messageId, по которым ProcessedEventCache не дал
+     * однозначного ответа; если таких нет, запрос не выполняется. Транзакция БД не удерживается на время HTTP вызовов.
+     * </p>
+     * <p>
+     * Если запись с индексом i не может быть обработана, уже обработанные записи 0..i-1 сохраняются, а ошибка
+     * пробрасывается как BatchListenerFailedException с индексом i. DefaultErrorHandler фиксирует смещения до i,
+     * повторяет (RetryableException) или сразу отправляет в DLT (NonRetryableException) только запись i, после чего
+     * остаток пакета доставляется повторно.
+     * </p>
+     * @param records Пакет записей, полученный за один poll.
+     */
+    @KafkaListener(topics = "product-created-events-topic")
+    public void handle(List<ConsumerRecord<String, ProductCreatedEvent>> records) {
+        log.info("Received batch of {} events", records.size());
+
+        Set<String> processedIds = pipelineMetrics.dedupLookup().record(() -> findProcessedIds(records));
+        List<ProcessedMessage> newEvents = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, ProductCreatedEvent> record = records.get(i);
+            String messageId = getMessageId(record);
+            try {
+                if (!MessageIdConverter.isValid(messageId)) {
+                    throw new NonRetryableException("Invalid message id: " + messageId);
+                }
+                if (record.value() == null) {
+                    throw new NonRetryableException("Unable to deserialize event");
+                }
+                if (!processedIds.add(messageId)) {
+                    log.info("Duplicate message id: {}", messageId);
+                    continue;
+                }
+                log.info("Received event: {}", record.value().getTitle());
+                pipelineMetrics.httpCall().record(notificationClient::sendNotification);
+                newEvents.add(new ProcessedMessage(messageId, record.key(), record.partition()));
+            } catch (RetryableException | NonRetryableException e) {
+                saveAll(newEvents);
+                records.subList(0, i).forEach(pipelineMetrics::recordEndToEnd);
+                throw new BatchListenerFailedException(e.getMessage(), e, i);
+            }
+        }
+        saveAll(newEvents);
+        records.forEach(pipelineMetrics::recordEndToEnd);
+    }
+
+    /**
+     * @return - messageId пакета, которые уже обработаны, по данным ProcessedEventCache и ProcessedEventStore
+     */
+    private Set<String> findProcessedIds(List<ConsumerRecord<String, ProductCreatedEvent>> records) {
+        Set<String> processedIds = new HashSet<>();
+        Map<String, Integer> unknownIds = new HashMap<>();
+        for (ConsumerRecord<String, ProductCreatedEvent> record : records) {
+            String messageId = getMessageId(record);
+            if (!MessageIdConverter.isValid(messageId)) {
+                continue;
+            }
+            switch (processedEventCache.lookup(messageId, record.topic(), record.partition())) {
+                case DUPLICATE -> processedIds.add(messageId);
+                case UNKNOWN -> unknownIds.put(messageId, record.partition());
+                case NEW -> { }
+            }
+        }
+        if (!unknownIds.isEmpty()) {
+            for (String processedId : processedEventStore.findContained(unknownIds)) {
+                processedIds.add(processedId);
+                processedEventCache.putAfterCommit(processedId);
+            }
+        }
+        return processedIds;
+    }
+
+    private void saveAll(List<ProcessedMessage> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        pipelineMetrics.dbSave().record(() -> saveAllOrSkipExisting(events));
+    }
+
+    private void saveAllOrSkipExisting(List<ProcessedMessage> events) {
+        try {
+            processedEventStore.saveAll(events);
+        } catch (DataIntegrityViolationException e) {
+            // messageId уже записан другим экземпляром, о котором не знает фильтр Блума: сохраняем только отсутствующие
+            log.warn("Processed events already exist, retrying without them: {}", e.getMessage());
+            Map<String, Integer> partitionsByMessageId = new HashMap<>();
+            events.forEach(event -> partitionsByMessageId.put(event.messageId(), event.partition()));
+            Set<String> existingIds = processedEventStore.findContained(partitionsByMessageId);
+            events = events.stream().filter(event -> !existingIds.contains(event.messageId())).toList();
+            existingIds.forEach(processedEventCache::putAfterCommit);
+            try {
+                processedEventStore.saveAll(events);
+            } catch (DataIntegrityViolationException retryException) {
+                log.error(retryException.getMessage());
+                throw new RetryableException(retryException);
+            }
+        }
+        events.forEach(event -> processedEventCache.putAfterCommit(event.messageId()));
+    }
+
+    private String getMessageId(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader("messageId");
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,401 @@
+package sakhno.springframework.ms.EmailNotificationService.handler;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.cache.ProcessedEventCache;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedEventStore;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedMessage;
+import sakhno.springframework.ms.EmailNotificationService.entety.MessageIdConverter;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+import sakhno.springframework.ms.EmailNotificationService.exception.RetryableException;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerPipelineMetrics;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Обработчик ProductCreatedEvent, который объединяет записи в окна и вызывает сервис уведомлений один раз на окно.
+ * Включается настройкой notification.listener.mode=coalescing.
+ * <p>
+ * Записи собираются в окно по группе: при group-by=key - по ключу записи (productId), при group-by=destination - все
+ * записи в одно окно адреса notification.url. Окно закрывается, когда в нем max-size записей или через window-ms после
+ * первой записи. Закрытое окно обрабатывается целиком: дубликаты отбрасываются по ProcessedEventCache и
+ * ProcessedEventStore, остальные события отправляются одним запросом {@link NotificationClient#sendNotifications(List)},
+ * и все их messageId сохраняются одним saveAll.
+ * </p>
+ * <p>
+ * Окна одной группы обрабатываются строго друг за другом, записи внутри окна - в порядке смещений, поэтому порядок по
+ * ключу сохраняется. Записи окна подтверждаются вместе и только когда окно обработано целиком или все его записи
+ * отправлены в DLT; частично окно не подтверждается. Контейнер (AckMode.MANUAL, asyncAcks) фиксирует смещение, когда
+ * подтверждены все предыдущие записи партиции. Повтор RetryableException (notification.listener.retry.*) выполняется для
+ * всего окна. Записи с некорректным messageId или телом не попадают в окно и сразу отправляются в DLT. Отправка в DLT
+ * повторяется, пока не удастся, см. {@link AsyncListenerSupport}; запись без подтверждения остается только при
+ * остановке сервиса и доставляется повторно после перезапуска.
+ * </p>
+ * <p>
+ * При отзыве партиций (перебалансировка, остановка контейнера) ее записи изымаются из открытых окон без обработки и
+ * подтверждения: их получит новый владелец партиции с зафиксированного смещения. Окна, уже поставленные в очередь
+ * обработки, завершаются. При остановке сервиса открытые окна отбрасываются так же.
+ * </p>
+ * <p>
+ * Когда в окнах max-in-flight-per-partition неподтвержденных записей партиции, партиция приостанавливается, см.
+ * {@link AsyncListenerSupport}. Метрики: notification.coalescing.windows{trigger=size|time},
+ * notification.coalescing.records и notification.coalescing.requests - число запросов к сервису уведомлений.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "notification.listener.mode", havingValue = "coalescing")
+public class ProductCreatedEventCoalescingHandler implements MeterBinder, ConsumerAwareRebalanceListener {
+    private final static Logger log = LoggerFactory.getLogger(ProductCreatedEventCoalescingHandler.class);
+
+    private NotificationClient notificationClient;
+    private ProcessedEventStore processedEventStore;
+    private ProcessedEventCache processedEventCache;
+    private AsyncListenerSupport listenerSupport;
+    private ConsumerPipelineMetrics pipelineMetrics;
+    private final ThreadPoolTaskExecutor workerExecutor;
+    private final AsyncListenerSupport.InFlightLimit inFlight;
+    private final boolean groupByKey;
+    private final String destination;
+    private final long windowMillis;
+    private final int maxSize;
+    private final long retryInterval;
+    private final int maxAttempts;
+
+    private final Map<String, Window> openWindows = new HashMap<>();
+    private final Map<String, CompletableFuture<Void>> groupTails = new ConcurrentHashMap<>();
+
+    private final LongAdder sizeWindows = new LongAdder();
+    private final LongAdder timeWindows = new LongAdder();
+    private final LongAdder coalescedRecords = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+
+    @Autowired
+    public ProductCreatedEventCoalescingHandler(NotificationClient notificationClient,
+                                                ProcessedEventStore processedEventStore,
+                                                ProcessedEventCache processedEventCache,
+                                                AsyncListenerSupport listenerSupport,
+                                                ConsumerPipelineMetrics pipelineMetrics,
+                                                Environment environment) {
+        this.notificationClient = notificationClient;
+        this.processedEventStore = processedEventStore;
+        this.processedEventCache = processedEventCache;
+        this.listenerSupport = listenerSupport;
+        this.pipelineMetrics = pipelineMetrics;
+        String groupBy = environment.getProperty("notification.listener.coalescing.group-by", "destination");
+        if (!"key".equals(groupBy) && !"destination".equals(groupBy)) {
+            throw new IllegalStateException("Unknown notification.listener.coalescing.group-by: " + groupBy);
+        }
+        this.groupByKey = "key".equals(groupBy);
+        this.destination = environment.getProperty("notification.url", "");
+        this.windowMillis = environment.getProperty("notification.listener.coalescing.window-ms", Long.class, 200L);
+        this.maxSize = environment.getProperty("notification.listener.coalescing.max-size", Integer.class, 100);
+        this.inFlight = listenerSupport.inFlightLimit(environment.getProperty(
+                "notification.listener.coalescing.max-in-flight-per-partition", Integer.class, 1000));
+        this.retryInterval = environment.getProperty("notification.listener.retry.interval-ms", Long.class, 3000L);
+        this.maxAttempts = environment.getProperty("notification.listener.retry.max-attempts", Integer.class, 3);
+        this.workerExecutor = new ThreadPoolTaskExecutor();
+        this.workerExecutor.setCorePoolSize(
+                environment.getProperty("notification.listener.coalescing.worker-threads", Integer.class, 4));
+        this.workerExecutor.setThreadNamePrefix("notification-coalescing-");
+        this.workerExecutor.initialize();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        synchronized (openWindows) {
+            for (Window window : openWindows.values()) {
+                log.info("Shutting down, dropping open window of {} records", window.records.size());
+                window.records.forEach(inFlight::release);
+            }
+            openWindows.clear();
+        }
+        workerExecutor.shutdown();
+    }
+
+    /**
+     * Записи отозванных партиций изымаются из открытых окон до фиксации смещений, без обработки и подтверждения.
+     */
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        synchronized (openWindows) {
+            Iterator<Window> windows = openWindows.values().iterator();
+            while (windows.hasNext()) {
+                Window window = windows.next();
+                List<ConsumerRecord<String, ProductCreatedEvent>> dropped = window.remove(partitions);
+                if (!dropped.isEmpty()) {
+                    log.info("Partitions {} revoked, dropping {} records of open window {}", partitions,
+                            dropped.size(), window.group);
+                    dropped.forEach(inFlight::release);
+                }
+                if (window.records.isEmpty()) {
+                    windows.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Добавление записи в открытое окно ее группы.
+     * @param record Запись из Kafka.
+     * @param acknowledgment Подтверждение записи, вызывается после обработки окна.
+     */
+    @KafkaListener(topics = "product-created-events-topic")
+    public void handle(ConsumerRecord<String, ProductCreatedEvent> record, Acknowledgment acknowledgment) {
+        String messageId = AsyncListenerSupport.getMessageId(record);
+        if (!MessageIdConverter.isValid(messageId) || record.value() == null) {
+            NonRetryableException exception = new NonRetryableException(record.value() == null
+                    ? "Unable to deserialize event" : "Invalid message id: " + messageId);
+            listenerSupport.recover(record, exception).thenRun(acknowledgment::acknowledge);
+            return;
+        }
+        inFlight.acquire(record);
+
+        String group = groupByKey ? String.valueOf(record.key()) : destination;
+        synchronized (openWindows) {
+            Window window = openWindows.get(group);
+            if (window == null) {
+                Window opened = new Window(group);
+                openWindows.put(group, opened);
+                CompletableFuture.delayedExecutor(windowMillis, TimeUnit.MILLISECONDS, workerExecutor)
+                        .execute(() -> closeOnTimeout(opened));
+                window = opened;
+            }
+            window.add(record, messageId, acknowledgment);
+            if (window.records.size() >= maxSize) {
+                sizeWindows.increment();
+                close(window);
+            }
+        }
+    }
+
+    private void closeOnTimeout(Window window) {
+        synchronized (openWindows) {
+            if (openWindows.get(window.group) == window) {
+                timeWindows.increment();
+                close(window);
+            }
+        }
+    }
+
+    /**
+     * Снятие окна с приема записей и постановка его в очередь обработки группы. Вызывается под блокировкой openWindows.
+     */
+    private void close(Window window) {
+        openWindows.remove(window.group);
+        CompletableFuture<Void> previous = groupTails.get(window.group);
+        CompletableFuture<Void> current = (previous == null ? CompletableFuture.<Void>completedFuture(null) : previous)
+                .thenComposeAsync(ignored -> complete(window), workerExecutor);
+        groupTails.put(window.group, current);
+        current.whenComplete((result, throwable) -> groupTails.remove(window.group, current));
+    }
+
+    /**
+     * @return - завершается после подтверждения записей окна (в том числе после отправки в DLT), поэтому следующее
+     * окно группы начинает обработку только после этого; завершается успешно и тогда, когда окно оставлено без
+     * подтверждения при остановке, чтобы очередь группы не прерывалась
+     */
+    private CompletableFuture<Void> complete(Window window) {
+        return processWithRetry(window).handle((result, throwable) -> {
+            if (throwable == null) {
+                coalescedRecords.add(window.records.size());
+                window.acknowledgments.forEach(Acknowledgment::acknowledge);
+            } else {
+                log.warn("Shutting down, window of {} records is left unacknowledged", window.records.size());
+            }
+            window.records.forEach(inFlight::release);
+            return null;
+        });
+    }
+
+    /**
+     * @return - завершается, когда окно обработано или все его записи отправлены в DLT и их можно подтвердить;
+     * завершается ошибкой, если исполнитель прерван при остановке
+     */
+    private CompletableFuture<Void> processWithRetry(Window window) {
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    process(window);
+                    window.records.forEach(pipelineMetrics::recordEndToEnd);
+                    return CompletableFuture.completedFuture(null);
+                } catch (RetryableException e) {
+                    if (attempt > maxAttempts) {
+                        throw e;
+                    }
+                    log.warn("Window of {} records, attempt {} failed, retrying in {} ms", window.records.size(),
+                            attempt, retryInterval);
+                    Thread.sleep(retryInterval);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } catch (Exception e) {
+            return CompletableFuture.allOf(window.records.stream()
+                    .map(record -> listenerSupport.recover(record, e))
+                    .toArray(CompletableFuture[]::new));
+        }
+    }
+
+    private void process(Window window) {
+        Set<String> processedIds = pipelineMetrics.dedupLookup().record(() -> findProcessedIds(window));
+        List<ProductCreatedEvent> events = new ArrayList<>();
+        List<ProcessedMessage> newMessages = new ArrayList<>();
+        for (int i = 0; i < window.records.size(); i++) {
+            ConsumerRecord<String, ProductCreatedEvent> record = window.records.get(i);
+            String messageId = window.messageIds.get(i);
+            if (!processedIds.add(messageId)) {
+                log.info("Duplicate message id: {}", messageId);
+                continue;
+            }
+            events.add(record.value());
+            newMessages.add(new ProcessedMessage(messageId, record.key(), record.partition()));
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        log.info("Sending {} coalesced events of window {}", events.size(), window.group);
+        pipelineMetrics.httpCall().record(() -> notificationClient.sendNotifications(events));
+        requests.increment();
+        pipelineMetrics.dbSave().record(() -> saveAllOrSkipExisting(newMessages));
+    }
+
+    /**
+     * @return - messageId окна, которые уже обработаны, по данным ProcessedEventCache и ProcessedEventStore
+     */
+    private Set<String> findProcessedIds(Window window) {
+        Set<String> processedIds = new HashSet<>();
+        Map<String, Integer> unknownIds = new HashMap<>();
+        for (int i = 0; i < window.records.size(); i++) {
+            String messageId = window.messageIds.get(i);
+            ConsumerRecord<String, ProductCreatedEvent> record = window.records.get(i);
+            switch (processedEventCache.lookup(messageId, record.topic(), record.partition())) {
+                case DUPLICATE -> processedIds.add(messageId);
+                case UNKNOWN -> unknownIds.put(messageId, record.partition());
+                case NEW -> { }
+            }
+        }
+        if (!unknownIds.isEmpty()) {
+            for (String processedId : processedEventStore.findContained(unknownIds)) {
+                processedIds.add(processedId);
+                processedEventCache.putAfterCommit(processedId);
+            }
+        }
+        return processedIds;
+    }
+
+    private void saveAllOrSkipExisting(List<ProcessedMessage> messages) {
+        try {
+            processedEventStore.saveAll(messages);
+        } catch (DataIntegrityViolationException e) {
+            // messageId уже записан другим экземпляром: уведомление отправлено, сохраняем только отсутствующие
+            log.warn("Processed events already exist, retrying without them: {}", e.getMessage());
+            Map<String, Integer> partitionsByMessageId = new HashMap<>();
+            messages.forEach(message -> partitionsByMessageId.put(message.messageId(), message.partition()));
+            Set<String> existingIds = processedEventStore.findContained(partitionsByMessageId);
+            messages = messages.stream().filter(message -> !existingIds.contains(message.messageId())).toList();
+            existingIds.forEach(processedEventCache::putAfterCommit);
+            try {
+                processedEventStore.saveAll(messages);
+            } catch (DataIntegrityViolationException retryException) {
+                log.error(retryException.getMessage());
+                throw new RetryableException(retryException);
+            }
+        }
+        messages.forEach(message -> processedEventCache.putAfterCommit(message.messageId()));
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getCoalescedRecords() {
+        return coalescedRecords.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("notification.coalescing.windows", sizeWindows, LongAdder::sum)
+                .description("Coalescing windows closed")
+                .tag("trigger", "size")
+                .register(registry);
+        FunctionCounter.builder("notification.coalescing.windows", timeWindows, LongAdder::sum)
+                .description("Coalescing windows closed")
+                .tag("trigger", "time")
+                .register(registry);
+        FunctionCounter.builder("notification.coalescing.records", coalescedRecords, LongAdder::sum)
+                .description("Records acknowledged as part of a processed coalescing window")
+                .register(registry);
+        FunctionCounter.builder("notification.coalescing.requests", requests, LongAdder::sum)
+                .description("Aggregated notification requests sent")
+                .register(registry);
+    }
+
+    /**
+     * Записи одной группы, накопленные за окно, с их подтверждениями. Изменяется под блокировкой openWindows, после
+     * закрытия не изменяется.
+     */
+    private static class Window {
+        private final String group;
+        private final List<ConsumerRecord<String, ProductCreatedEvent>> records = new ArrayList<>();
+        private final List<String> messageIds = new ArrayList<>();
+        private final List<Acknowledgment> acknowledgments = new ArrayList<>();
+
+        private Window(String group) {
+            this.group = group;
+        }
+
+        private void add(ConsumerRecord<String, ProductCreatedEvent> record, String messageId,
+                         Acknowledgment acknowledgment) {
+            records.add(record);
+            messageIds.add(messageId);
+            acknowledgments.add(acknowledgment);
+        }
+
+        /**
+         * @return - изъятые записи партиций
+         */
+        private List<ConsumerRecord<String, ProductCreatedEvent>> remove(Collection<TopicPartition> partitions) {
+            List<ConsumerRecord<String, ProductCreatedEvent>> removed = new ArrayList<>();
+            for (int i = records.size() - 1; i >= 0; i--) {
+                ConsumerRecord<String, ProductCreatedEvent> record = records.get(i);
+                if (partitions.contains(new TopicPartition(record.topic(), record.partition()))) {
+                    removed.add(record);
+                    records.remove(i);
+                    messageIds.remove(i);
+                    acknowledgments.remove(i);
+                }
+            }
+            return removed;
+        }
+    }
+}
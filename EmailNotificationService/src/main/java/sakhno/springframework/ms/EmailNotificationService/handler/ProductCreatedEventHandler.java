@@ -3,76 +3,65 @@ package sakhno.springframework.ms.EmailNotificationService.handler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.kafka.annotation.KafkaHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
-import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
-import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
-import sakhno.springframework.ms.EmailNotificationService.exception.RetryableException;
-import sakhno.springframework.ms.EmailNotificationService.event.ProductCreatedEvent;
-import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerPipelineMetrics;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.nio.charset.StandardCharsets;
 
 @Component
-@KafkaListener(topics = "product-created-events-topic")
+@ConditionalOnProperty(name = "notification.listener.mode", havingValue = "record", matchIfMissing = true)
 public class ProductCreatedEventHandler {
-    private RestTemplate restTemplate;
-    private ProcessedEventRepository processedEventRepository;
     private final static Logger log = LoggerFactory.getLogger(ProductCreatedEventHandler.class);
+    private ProductCreatedEventProcessor productCreatedEventProcessor;
+    private ConsumerPipelineMetrics pipelineMetrics;
 
     @Autowired
-    public ProductCreatedEventHandler(RestTemplate restTemplate, ProcessedEventRepository processedEventRepository) {
-        this.restTemplate = restTemplate;
-        this.processedEventRepository = processedEventRepository;
+    public ProductCreatedEventHandler(ProductCreatedEventProcessor productCreatedEventProcessor,
+                                      ConsumerPipelineMetrics pipelineMetrics) {
+        this.productCreatedEventProcessor = productCreatedEventProcessor;
+        this.pipelineMetrics = pipelineMetrics;
     }
 
     /**
      * Обработчик событий, поступающих через Kafka, для создания и обработки события `ProductCreatedEvent`.
+     * Обработка выполняется в потоке потребителя в одной транзакции, см. {@link ProductCreatedEventProcessor}.
      * @param productCreatedEvent Событие, которое было получено из Kafka.
      * @param messageId Идентификатор сообщения, который используется для проверки на дублирование.
      * @param messageKey Ключ сообщения, который может быть использован для идентификации или маршрутизации.
+     * @param topic Топик записи: основной или топик повтора.
+     * @param partition Партиция записи.
+     * @param offset Смещение записи, сохраняется в БД при notification.offsets.store=db.
+     * @param produceTimestamp Время создания события для расчета сквозной задержки, см. {@link ConsumerPipelineMetrics}.
      */
-    @Transactional
-    @KafkaHandler
+    @KafkaListener(topics = "product-created-events-topic")
     public void handle(@Payload ProductCreatedEvent productCreatedEvent, @Header("messageId") String messageId,
-                       @Header(KafkaHeaders.RECEIVED_KEY) String messageKey) {
-        log.info("Received event: {}", productCreatedEvent.getTitle());
-
-        String url = "http://localhost:8090/response/200";
-        ProcessedEventEntity processedEvent = processedEventRepository.findByMessageId(messageId);
-
-        if(processedEvent != null) {
-            log.info("Duplicate message id: {}", messageId);
-            return;
-        }
-        try {
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, null, String.class);
-            if(response.getStatusCode().value() == HttpStatus.OK.value()) {
-                log.info("Received response: {}", response.getBody());
-            }
-        }catch (ResourceAccessException e) {
-            log.error(e.getMessage());
-            throw new RetryableException(e);
-        } catch (Exception e) {
-            log.error(e.getMessage());
-            throw new NonRetryableException(e);
-        }
-
-        try {
-            processedEventRepository.save(new ProcessedEventEntity(messageId, messageKey));
-        } catch (DataIntegrityViolationException e) {
-            log.error(e.getMessage());
-            throw new NonRetryableException(e);
-        }
+                       @Header(KafkaHeaders.RECEIVED_KEY) String messageKey,
+                       @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                       @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+                       @Header(KafkaHeaders.OFFSET) long offset,
+                       @Header(name = "produceTimestamp", required = false) String produceTimestamp) {
+        productCreatedEventProcessor.process(productCreatedEvent, messageId, messageKey, topic, partition, offset);
+        pipelineMetrics.recordEndToEnd(topic, partition, produceTimestamp);
+    }
 
+    /**
+     * Обработчик записей, исчерпавших повторы и попавших в product-created-events-topic-dlt, см.
+     * {@link sakhno.springframework.ms.EmailNotificationService.config.RetryTopicConfig}. Запись только
+     * протоколируется и остается в DLT для анализа.
+     * @param productCreatedEvent Событие, которое не удалось обработать.
+     * @param messageKey Ключ сообщения.
+     * @param exceptionMessage Сообщение последней ошибки обработки.
+     */
+    public void handleDlt(@Payload ProductCreatedEvent productCreatedEvent,
+                          @Header(KafkaHeaders.RECEIVED_KEY) String messageKey,
+                          @Header(name = KafkaHeaders.EXCEPTION_MESSAGE, required = false) byte[] exceptionMessage) {
+        log.error("Event for product {} moved to DLT: {}", messageKey,
+                exceptionMessage == null ? null : new String(exceptionMessage, StandardCharsets.UTF_8));
     }
 }
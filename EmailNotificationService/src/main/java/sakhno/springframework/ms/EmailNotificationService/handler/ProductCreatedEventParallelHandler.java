@@ -0,0 +1,135 @@
+package sakhno.springframework.ms.EmailNotificationService.handler;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+import sakhno.springframework.ms.EmailNotificationService.exception.RetryableException;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerPipelineMetrics;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Параллельная обработка записей одной партиции. Включается настройкой notification.listener.mode=parallel.
+ * <p>
+ * Поток потребителя распределяет записи по workers однопоточным исполнителям по хэшу ключа (productId). Записи с
+ * одинаковым ключом попадают в один исполнитель и обрабатываются в порядке смещений, записи с разными ключами -
+ * параллельно. Так число одновременно обрабатываемых записей не ограничено числом партиций топика.
+ * </p>
+ * <p>
+ * Каждая запись подтверждается после обработки или отправки в DLT. Контейнер (AckMode.MANUAL, asyncAcks) хранит
+ * подтверждения вне порядка и фиксирует high-water mark - наибольшее смещение, до которого подтверждены все записи
+ * партиции. Когда в обработке max-in-flight-per-partition записей партиции, партиция приостанавливается, см.
+ * {@link AsyncListenerSupport}. Повтор RetryableException выполняется в исполнителе записи и задерживает остальные
+ * ключи этого исполнителя; повторы отправки в DLT исполнитель не занимают.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "notification.listener.mode", havingValue = "parallel")
+public class ProductCreatedEventParallelHandler {
+    private final static Logger log = LoggerFactory.getLogger(ProductCreatedEventParallelHandler.class);
+
+    private ProductCreatedEventProcessor productCreatedEventProcessor;
+    private AsyncListenerSupport listenerSupport;
+    private ConsumerPipelineMetrics pipelineMetrics;
+    private final ThreadPoolTaskExecutor[] workers;
+    private final AsyncListenerSupport.InFlightLimit inFlight;
+    private final long retryInterval;
+    private final int maxAttempts;
+
+    @Autowired
+    public ProductCreatedEventParallelHandler(ProductCreatedEventProcessor productCreatedEventProcessor,
+                                              AsyncListenerSupport listenerSupport,
+                                              ConsumerPipelineMetrics pipelineMetrics,
+                                              @Value("${notification.listener.parallel.workers}") int workerCount,
+                                              @Value("${notification.listener.parallel.max-in-flight-per-partition}") int maxInFlightPerPartition,
+                                              @Value("${notification.listener.retry.interval-ms}") long retryInterval,
+                                              @Value("${notification.listener.retry.max-attempts}") int maxAttempts) {
+        this.productCreatedEventProcessor = productCreatedEventProcessor;
+        this.listenerSupport = listenerSupport;
+        this.pipelineMetrics = pipelineMetrics;
+        this.inFlight = listenerSupport.inFlightLimit(maxInFlightPerPartition);
+        this.retryInterval = retryInterval;
+        this.maxAttempts = maxAttempts;
+        this.workers = new ThreadPoolTaskExecutor[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            ThreadPoolTaskExecutor worker = new ThreadPoolTaskExecutor();
+            worker.setCorePoolSize(1);
+            worker.setMaxPoolSize(1);
+            worker.setThreadNamePrefix("notification-worker-" + i + "-");
+            worker.initialize();
+            workers[i] = worker;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (ThreadPoolTaskExecutor worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    /**
+     * Передача записи исполнителю ее ключа.
+     * @param record Запись из Kafka.
+     * @param acknowledgment Подтверждение записи, вызывается по завершении обработки.
+     */
+    @KafkaListener(topics = "product-created-events-topic")
+    public void handle(ConsumerRecord<String, ProductCreatedEvent> record, Acknowledgment acknowledgment) {
+        inFlight.acquire(record);
+
+        long shardKey = record.key() == null ? record.offset() : record.key().hashCode();
+        ThreadPoolTaskExecutor worker = workers[(int) Math.floorMod(shardKey, (long) workers.length)];
+        try {
+            worker.execute(() -> processWithRetry(record).whenComplete((result, throwable) -> {
+                if (throwable == null) {
+                    acknowledgment.acknowledge();
+                }
+                inFlight.release(record);
+            }));
+        } catch (RuntimeException e) {
+            inFlight.release(record);
+            throw e;
+        }
+    }
+
+    /**
+     * @return - завершается, когда запись обработана или отправлена в DLT и ее можно подтвердить; завершается ошибкой,
+     * если исполнитель прерван
+     */
+    private CompletableFuture<Void> processWithRetry(ConsumerRecord<String, ProductCreatedEvent> record) {
+        try {
+            if (record.value() == null) {
+                throw new NonRetryableException("Unable to deserialize event");
+            }
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    productCreatedEventProcessor.process(record.value(), AsyncListenerSupport.getMessageId(record),
+                            record.key(), record.topic(), record.partition());
+                    pipelineMetrics.recordEndToEnd(record);
+                    return CompletableFuture.completedFuture(null);
+                } catch (RetryableException e) {
+                    if (attempt > maxAttempts) {
+                        throw e;
+                    }
+                    log.warn("Processing attempt {} failed, retrying in {} ms", attempt, retryInterval);
+                    Thread.sleep(retryInterval);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } catch (Exception e) {
+            return listenerSupport.recover(record, e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package sakhno.springframework.ms.EmailNotificationService.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import sakhno.springframework.ms.EmailNotificationService.cache.ProcessedEventCache;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedEventStore;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedMessage;
+import sakhno.springframework.ms.EmailNotificationService.entety.MessageIdConverter;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerPipelineMetrics;
+import sakhno.springframework.ms.EmailNotificationService.offsets.ConsumerOffsetStore;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+/**
+ * Блокирующая обработка одного события ProductCreatedEvent: проверка на дубликат, вызов сервиса уведомлений и
+ * сохранение messageId в одной транзакции. Используется обработчиками режимов record и parallel.
+ */
+@Component
+public class ProductCreatedEventProcessor {
+    private NotificationClient notificationClient;
+    private ProcessedEventStore processedEventStore;
+    private ProcessedEventCache processedEventCache;
+    private ConsumerPipelineMetrics pipelineMetrics;
+    private ConsumerOffsetStore consumerOffsetStore;
+    private final static Logger log = LoggerFactory.getLogger(ProductCreatedEventProcessor.class);
+
+    @Autowired
+    public ProductCreatedEventProcessor(NotificationClient notificationClient,
+                                        ProcessedEventStore processedEventStore,
+                                        ProcessedEventCache processedEventCache,
+                                        ConsumerPipelineMetrics pipelineMetrics,
+                                        ObjectProvider<ConsumerOffsetStore> consumerOffsetStore) {
+        this.notificationClient = notificationClient;
+        this.processedEventStore = processedEventStore;
+        this.processedEventCache = processedEventCache;
+        this.pipelineMetrics = pipelineMetrics;
+        this.consumerOffsetStore = consumerOffsetStore.getIfAvailable();
+    }
+
+    /**
+     * @param productCreatedEvent Событие, которое было получено из Kafka.
+     * @param messageId Идентификатор сообщения, который используется для проверки на дублирование.
+     * @param messageKey Ключ сообщения, сохраняется как идентификатор продукта.
+     * @param topic Топик записи.
+     * @param partition Партиция записи, по ней {@link ProcessedEventStore} выбирает файл в режиме mapped.
+     * @throws sakhno.springframework.ms.EmailNotificationService.exception.RetryableException если сервис уведомлений
+     * недоступен
+     * @throws NonRetryableException при некорректном messageId или ошибке, которую повтор не исправит
+     */
+    @Transactional
+    public void process(ProductCreatedEvent productCreatedEvent, String messageId, String messageKey, String topic,
+                        int partition) {
+        log.info("Received event: {}", productCreatedEvent.getTitle());
+
+        if(!MessageIdConverter.isValid(messageId)) {
+            throw new NonRetryableException("Invalid message id: " + messageId);
+        }
+
+        if(pipelineMetrics.dedupLookup().record(() -> isDuplicate(messageId, topic, partition))) {
+            log.info("Duplicate message id: {}", messageId);
+            return;
+        }
+        pipelineMetrics.httpCall().record(notificationClient::sendNotification);
+
+        try {
+            pipelineMetrics.dbSave().record(() ->
+                    processedEventStore.save(new ProcessedMessage(messageId, messageKey, partition)));
+            processedEventCache.putAfterCommit(messageId);
+        } catch (DataIntegrityViolationException e) {
+            log.error(e.getMessage());
+            throw new NonRetryableException(e);
+        }
+    }
+
+    /**
+     * То же, что {@link #process(ProductCreatedEvent, String, String, String, int)}, и, если включено notification.offsets.store=db,
+     * в той же транзакции сохраняет смещение следующей записи партиции, см. {@link ConsumerOffsetStore}. Смещение
+     * сохраняется и для дубликата.
+     * @param offset Смещение записи.
+     */
+    @Transactional
+    public void process(ProductCreatedEvent productCreatedEvent, String messageId, String messageKey,
+                        String topic, int partition, long offset) {
+        process(productCreatedEvent, messageId, messageKey, topic, partition);
+        if (consumerOffsetStore != null) {
+            consumerOffsetStore.save(topic, partition, offset + 1);
+        }
+    }
+
+    private boolean isDuplicate(String messageId, String topic, int partition) {
+        ProcessedEventCache.Lookup lookup = processedEventCache.lookup(messageId, topic, partition);
+        if(lookup == ProcessedEventCache.Lookup.DUPLICATE) {
+            return true;
+        }
+        if(lookup == ProcessedEventCache.Lookup.UNKNOWN && processedEventStore.contains(messageId, partition)) {
+            processedEventCache.putAfterCommit(messageId);
+            return true;
+        }
+        return false;
+    }
+}
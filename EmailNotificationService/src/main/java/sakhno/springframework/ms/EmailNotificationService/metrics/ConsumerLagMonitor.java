@@ -0,0 +1,132 @@
+package sakhno.springframework.ms.EmailNotificationService.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.offsets.ConsumerOffsetStore;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Отставание группы потребителей по партициям.
+ * <p>
+ * notification.consumer.lag{topic, partition} - разница между последним смещением партиции и зафиксированным
+ * смещением группы (spring.kafka.consumer.group-id). Обновляется раз в interval-ms запросами AdminClient
+ * listConsumerGroupOffsets и listOffsets, поэтому учитывает записи, которые получены, но еще не подтверждены
+ * (режимы async и parallel), и партиции, которые сейчас никому не назначены. Учитываются все топики группы, в том
+ * числе топики повторов. Метрика клиента kafka.consumer.fetch.manager.records.lag, напротив, считается от позиции
+ * чтения и только для назначенных этому экземпляру партиций.
+ * </p>
+ * <p>
+ * При notification.offsets.store=db смещение партиции - большее из сохраненного в consumer_offsets и
+ * зафиксированного в Kafka, см. {@link ConsumerOffsetStore}.
+ * </p>
+ */
+@Component
+public class ConsumerLagMonitor implements DisposableBean {
+    private final static Logger log = LoggerFactory.getLogger(ConsumerLagMonitor.class);
+
+    private final KafkaAdmin kafkaAdmin;
+    private final MeterRegistry meterRegistry;
+    private final ConsumerOffsetStore consumerOffsetStore;
+    private final boolean enabled;
+    private final String groupId;
+    private final long timeoutMs;
+
+    private final Map<TopicPartition, AtomicLong> lags = new ConcurrentHashMap<>();
+    private AdminClient adminClient;
+
+    @Autowired
+    public ConsumerLagMonitor(KafkaAdmin kafkaAdmin, MeterRegistry meterRegistry, Environment environment,
+                              ObjectProvider<ConsumerOffsetStore> consumerOffsetStore) {
+        this.kafkaAdmin = kafkaAdmin;
+        this.meterRegistry = meterRegistry;
+        this.consumerOffsetStore = consumerOffsetStore.getIfAvailable();
+        this.enabled = environment.getProperty("notification.metrics.consumer-lag.enabled", Boolean.class, true);
+        this.groupId = environment.getProperty("spring.kafka.consumer.group-id");
+        this.timeoutMs = environment.getProperty("notification.metrics.consumer-lag.timeout-ms", Long.class, 5000L);
+    }
+
+    @Scheduled(fixedDelayString = "${notification.metrics.consumer-lag.interval-ms:10000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (adminClient == null) {
+                adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+            }
+            Map<TopicPartition, Long> committed = new HashMap<>();
+            adminClient.listConsumerGroupOffsets(groupId).partitionsToOffsetAndMetadata()
+                    .get(timeoutMs, TimeUnit.MILLISECONDS)
+                    .forEach((partition, offset) -> {
+                        if (offset != null) {
+                            committed.put(partition, offset.offset());
+                        }
+                    });
+            if (consumerOffsetStore != null) {
+                consumerOffsetStore.findOffsets(groupId).forEach((partition, offset) ->
+                        committed.merge(partition, offset, Math::max));
+            }
+            Map<TopicPartition, OffsetSpec> request = new HashMap<>();
+            committed.keySet().forEach(partition -> request.put(partition, OffsetSpec.latest()));
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> latest = adminClient.listOffsets(request)
+                    .all().get(timeoutMs, TimeUnit.MILLISECONDS);
+            committed.forEach((partition, offset) -> {
+                ListOffsetsResult.ListOffsetsResultInfo end = latest.get(partition);
+                if (end != null) {
+                    lag(partition).set(Math.max(0, end.offset() - offset));
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Unable to read consumer lag of group {}: {}", groupId, e.getMessage());
+        }
+    }
+
+    /**
+     * @return - суммарное отставание по партициям топика на момент последнего обновления
+     */
+    public long getLag(String topic) {
+        return lags.entrySet().stream()
+                .filter(lag -> lag.getKey().topic().equals(topic))
+                .mapToLong(lag -> lag.getValue().get())
+                .sum();
+    }
+
+    private AtomicLong lag(TopicPartition partition) {
+        return lags.computeIfAbsent(partition, key -> {
+            AtomicLong lag = new AtomicLong();
+            Gauge.builder("notification.consumer.lag", lag, AtomicLong::get)
+                    .description("Records between the end of the partition and the committed offset of the group")
+                    .tag("topic", key.topic())
+                    .tag("partition", String.valueOf(key.partition()))
+                    .register(meterRegistry);
+            return lag;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (adminClient != null) {
+            adminClient.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package sakhno.springframework.ms.EmailNotificationService.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики обработки событий потребителем.
+ * <p>
+ * notification.consumer.e2e.latency{topic, partition} - сквозная задержка: от времени создания события в заголовке
+ * produceTimestamp (epoch ms, ставит KafkaMicroservice) до завершения его обработки, включая дубликаты. Для записей из
+ * топиков повторов в нее входит задержка повтора. Записи без заголовка не учитываются. Часы сервисов считаются
+ * синхронизированными, отрицательная разница учитывается как 0.
+ * </p>
+ * <p>
+ * notification.handler.stage{stage} - длительность этапов обработчика: dedup-lookup (ProcessedEventCache и запрос к
+ * processed_events; в режиме batch - один раз на пакет), http-call (одна попытка вызова сервиса уведомлений, в том
+ * числе неудачная) и db-save (сохранение messageId; в режиме batch - один saveAll на пакет).
+ * </p>
+ * <p>
+ * Обе метрики публикуются с гистограммой для расчета перцентилей. Таймер сквозной задержки регистрируется при первой
+ * записи партиции и дальше берется из кэша.
+ * </p>
+ */
+@Component
+public class ConsumerPipelineMetrics {
+    private static final String PRODUCE_TIMESTAMP = "produceTimestamp";
+
+    private final MeterRegistry meterRegistry;
+    private final Timer dedupLookup;
+    private final Timer httpCall;
+    private final Timer dbSave;
+    private final Map<TopicPartition, Timer> endToEndTimers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ConsumerPipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.dedupLookup = stage("dedup-lookup");
+        this.httpCall = stage("http-call");
+        this.dbSave = stage("db-save");
+    }
+
+    public Timer dedupLookup() {
+        return dedupLookup;
+    }
+
+    public Timer httpCall() {
+        return httpCall;
+    }
+
+    public Timer dbSave() {
+        return dbSave;
+    }
+
+    /**
+     * Учет сквозной задержки обработанной записи.
+     */
+    public void recordEndToEnd(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader(PRODUCE_TIMESTAMP);
+        recordEndToEnd(record.topic(), record.partition(),
+                header == null ? null : new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Учет сквозной задержки обработанной записи.
+     * @param produceTimestamp - значение заголовка produceTimestamp, null - если заголовка нет
+     */
+    public void recordEndToEnd(String topic, int partition, String produceTimestamp) {
+        if (produceTimestamp == null) {
+            return;
+        }
+        long produced;
+        try {
+            produced = Long.parseLong(produceTimestamp);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        endToEndTimer(new TopicPartition(topic, partition))
+                .record(Math.max(0, System.currentTimeMillis() - produced), TimeUnit.MILLISECONDS);
+    }
+
+    private Timer endToEndTimer(TopicPartition topicPartition) {
+        Timer timer = endToEndTimers.get(topicPartition);
+        if (timer != null) {
+            return timer;
+        }
+        return endToEndTimers.computeIfAbsent(topicPartition, key -> Timer.builder("notification.consumer.e2e.latency")
+                .description("Time from event creation in the producer to the end of its processing")
+                .tag("topic", key.topic())
+                .tag("partition", String.valueOf(key.partition()))
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private Timer stage(String stage) {
+        return Timer.builder("notification.handler.stage")
+                .description("Duration of a notification handler stage")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,98 @@
+package sakhno.springframework.ms.EmailNotificationService.offsets;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.KafkaUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import sakhno.springframework.ms.EmailNotificationService.entety.ConsumerOffsetEntity;
+import sakhno.springframework.ms.EmailNotificationService.entety.ConsumerOffsetId;
+import sakhno.springframework.ms.EmailNotificationService.repository.ConsumerOffsetRepository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Смещения потребителя в таблице consumer_offsets вместо фиксации в Kafka (notification.offsets.store=db, только
+ * режим record).
+ * <p>
+ * Смещение следующей записи партиции сохраняется в транзакции обработки записи, вместе с processed_events, поэтому
+ * после сбоя или перебалансировки повторно доставляются только записи, транзакция которых не была зафиксирована.
+ * </p>
+ * <p>
+ * В Kafka смещения фиксируются контейнером в AckMode.TIME раз в notification.offsets.kafka-commit-interval-ms, а также
+ * при отзыве партиций и остановке. Запись подтверждается после возврата из обработчика, то есть после фиксации ее
+ * транзакции, поэтому смещение в Kafka не опережает сохраненное в БД. Смещение в Kafka нужно внешним инструментам
+ * (лаг группы, kafka-consumer-groups) и отстает от БД не больше чем на интервал фиксации; источником позиции
+ * остается БД.
+ * </p>
+ * <p>
+ * При назначении партиций потребитель переходит к большему из смещений в consumer_offsets и в Kafka. Партиции без
+ * сохраненного смещения читаются по spring.kafka.consumer.auto-offset-reset.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "notification.offsets.store", havingValue = "db")
+public class ConsumerOffsetStore implements ConsumerAwareRebalanceListener {
+    private final static Logger log = LoggerFactory.getLogger(ConsumerOffsetStore.class);
+
+    private final ConsumerOffsetRepository consumerOffsetRepository;
+
+    @Autowired
+    public ConsumerOffsetStore(ConsumerOffsetRepository consumerOffsetRepository) {
+        this.consumerOffsetRepository = consumerOffsetRepository;
+    }
+
+    /**
+     * Сохранение смещения в текущей транзакции обработки. Вызывается в потоке потребителя, группа берется из
+     * контейнера.
+     * @param nextOffset - смещение обработанной записи + 1
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void save(String topic, int partition, long nextOffset) {
+        ConsumerOffsetId id = new ConsumerOffsetId(KafkaUtils.getConsumerGroupId(), topic, partition);
+        if (consumerOffsetRepository.advance(id, nextOffset, Instant.now()) == 0
+                && !consumerOffsetRepository.existsById(id)) {
+            consumerOffsetRepository.save(new ConsumerOffsetEntity(id, nextOffset));
+        }
+    }
+
+    /**
+     * @return - сохраненные смещения группы по партициям
+     */
+    public Map<TopicPartition, Long> findOffsets(String groupId) {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (ConsumerOffsetEntity offset : consumerOffsetRepository.findByIdGroupId(groupId)) {
+            offsets.put(new TopicPartition(offset.getId().getTopic(), offset.getId().getPartition()),
+                    offset.getNextOffset());
+        }
+        return offsets;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) {
+            return;
+        }
+        Map<TopicPartition, Long> stored = findOffsets(consumer.groupMetadata().groupId());
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(partitions));
+        for (TopicPartition partition : partitions) {
+            Long offset = stored.get(partition);
+            OffsetAndMetadata kafkaOffset = committed.get(partition);
+            if (offset != null && (kafkaOffset == null || kafkaOffset.offset() < offset)) {
+                log.info("Seeking {} to stored offset {}", partition, offset);
+                consumer.seek(partition, offset);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package sakhno.springframework.ms.EmailNotificationService.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import sakhno.springframework.ms.EmailNotificationService.entety.ConsumerOffsetEntity;
+import sakhno.springframework.ms.EmailNotificationService.entety.ConsumerOffsetId;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ConsumerOffsetRepository extends JpaRepository<ConsumerOffsetEntity, ConsumerOffsetId> {
+
+    List<ConsumerOffsetEntity> findByIdGroupId(String groupId);
+
+    /**
+     * Сдвиг смещения вперед одним UPDATE без предварительного чтения строки. Меньшее смещение не записывается.
+     * @return - 0, если строки нет или сохраненное смещение не меньше nextOffset
+     */
+    @Modifying
+    @Query("update ConsumerOffsetEntity o set o.nextOffset = :nextOffset, o.updatedAt = :updatedAt " +
+            "where o.id = :id and o.nextOffset < :nextOffset")
+    int advance(@Param("id") ConsumerOffsetId id, @Param("nextOffset") long nextOffset,
+                @Param("updatedAt") Instant updatedAt);
+}
@@ -1,11 +1,26 @@
 package sakhno.springframework.ms.EmailNotificationService.repository;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface ProcessedEventRepository extends JpaRepository<ProcessedEventEntity, Long> {
 
     ProcessedEventEntity findByMessageId(String messageId);
+
+    List<ProcessedEventEntity> findByMessageIdIn(Collection<String> messageIds);
+
+    List<ProcessedEventEntity> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Query("select e.id from ProcessedEventEntity e where e.processedAt < :before order by e.processedAt")
+    List<Long> findIdsProcessedBefore(@Param("before") Instant before, Pageable pageable);
 }
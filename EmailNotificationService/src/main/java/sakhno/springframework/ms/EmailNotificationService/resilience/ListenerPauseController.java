@@ -0,0 +1,80 @@
+package sakhno.springframework.ms.EmailNotificationService.resilience;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * Приостановка потребления, пока сервис уведомлений недоступен.
+ * <p>
+ * При размыкании автомата защиты на паузу ставятся контейнеры основного топика и топиков повторов: контейнер
+ * вызывает consumer.pause() для назначенных партиций и продолжает poll без получения записей, поэтому потребитель
+ * остается в группе и ребалансировка не происходит. Без паузы записи ступеней повторов получали бы
+ * CircuitBreakerOpenException и проходили все ступени до DLT, пока сервис недоступен. Пауза контейнера не мешает
+ * паузе отдельных партиций до времени повтора: после возобновления они остаются приостановленными до своего срока.
+ * Контейнер DLT не приостанавливается, его обработчик сервис не вызывает. Запись, которая уже выполнялась при
+ * размыкании, не переходит на следующую ступень, а возвращается в партицию (см. RetryTopicConfig).
+ * </p>
+ * <p>
+ * Раз в probe-interval-ms проверяется состояние автомата. Когда истекает open-wait-ms или автомат уже полуоткрыт,
+ * выполняется пробный вызов сервиса; после успеха пробных вызовов автомат замыкается, и потребление возобновляется с
+ * тех же смещений. Пока ожидание не истекло, разрешение у автомата не запрашивается.
+ * </p>
+ */
+@Component
+public class ListenerPauseController {
+    private final static Logger log = LoggerFactory.getLogger(ListenerPauseController.class);
+    private static final String MAIN_TOPIC = "product-created-events-topic";
+    private static final String RETRY_TOPIC_PREFIX = MAIN_TOPIC + "-retry";
+
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+    private final NotificationCircuitBreaker circuitBreaker;
+    private final NotificationClient notificationClient;
+
+    @Autowired
+    public ListenerPauseController(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+                                   NotificationCircuitBreaker circuitBreaker, NotificationClient notificationClient) {
+        this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+        this.circuitBreaker = circuitBreaker;
+        this.notificationClient = notificationClient;
+        circuitBreaker.addStateListener(this::onStateChange);
+    }
+
+    void onStateChange(NotificationCircuitBreaker.State state) {
+        if (state == NotificationCircuitBreaker.State.OPEN) {
+            log.warn("Pausing listener containers until the notification service recovers");
+            notificationContainers().forEach(MessageListenerContainer::pause);
+        } else if (state == NotificationCircuitBreaker.State.CLOSED) {
+            log.info("Resuming listener containers");
+            notificationContainers().forEach(MessageListenerContainer::resume);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${notification.client.circuit-breaker.probe-interval-ms}")
+    public void probe() {
+        if (circuitBreaker.isProbeDue()) {
+            notificationClient.probe();
+        }
+    }
+
+    /**
+     * Контейнеры, обработчики которых вызывают сервис уведомлений: основной топик и топики повторов
+     * product-created-events-topic-retry-*.
+     */
+    private Stream<MessageListenerContainer> notificationContainers() {
+        return kafkaListenerEndpointRegistry.getListenerContainers().stream()
+                .filter(container -> {
+                    String[] topics = container.getContainerProperties().getTopics();
+                    return topics != null && Arrays.stream(topics)
+                            .anyMatch(topic -> topic.equals(MAIN_TOPIC) || topic.startsWith(RETRY_TOPIC_PREFIX));
+                });
+    }
+}
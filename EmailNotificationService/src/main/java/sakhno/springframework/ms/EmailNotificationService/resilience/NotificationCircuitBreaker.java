@@ -0,0 +1,251 @@
+package sakhno.springframework.ms.EmailNotificationService.resilience;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Автомат защиты (circuit breaker) вызовов сервиса уведомлений.
+ * <p>
+ * В состоянии CLOSED результаты последних window-size вызовов хранятся в скользящем окне. Когда в окне набирается
+ * minimum-calls результатов и доля ошибок достигает failure-rate-threshold процентов или доля медленных вызовов
+ * (дольше slow-call-duration-ms) достигает slow-call-rate-threshold процентов, автомат переходит в OPEN.
+ * </p>
+ * <p>
+ * В состоянии OPEN вызовы отклоняются. Через open-wait-ms первый запрос разрешения переводит автомат в HALF_OPEN,
+ * где пропускается не больше half-open-permitted-calls пробных вызовов. Если все они успешны и не медленные, автомат
+ * замыкается (CLOSED) с пустым окном, при первой неудаче снова размыкается.
+ * </p>
+ * Об изменении состояния сообщается подписчикам {@link #addStateListener(Consumer)} вне блокировки.
+ */
+@Component
+public class NotificationCircuitBreaker implements MeterBinder {
+    private final static Logger log = LoggerFactory.getLogger(NotificationCircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallDurationNanos;
+    private final double slowCallRateThreshold;
+    private final long openWaitNanos;
+    private final int halfOpenPermittedCalls;
+
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private int windowIndex;
+    private int windowCount;
+    private int failureCount;
+    private int slowCallCount;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenInFlight;
+    private int halfOpenSuccesses;
+
+    private final List<Consumer<State>> stateListeners = new CopyOnWriteArrayList<>();
+    private final LongAdder successfulCalls = new LongAdder();
+    private final LongAdder failedCalls = new LongAdder();
+    private final LongAdder slowCallsTotal = new LongAdder();
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    @Autowired
+    public NotificationCircuitBreaker(Environment environment) {
+        this.enabled = environment.getProperty("notification.client.circuit-breaker.enabled", Boolean.class, true);
+        int windowSize = environment.getProperty("notification.client.circuit-breaker.window-size", Integer.class, 20);
+        this.minimumCalls = Math.min(windowSize,
+                environment.getProperty("notification.client.circuit-breaker.minimum-calls", Integer.class, 10));
+        this.failureRateThreshold = environment.getProperty(
+                "notification.client.circuit-breaker.failure-rate-threshold", Double.class, 50.0);
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(environment.getProperty(
+                "notification.client.circuit-breaker.slow-call-duration-ms", Long.class, 2000L));
+        this.slowCallRateThreshold = environment.getProperty(
+                "notification.client.circuit-breaker.slow-call-rate-threshold", Double.class, 80.0);
+        this.openWaitNanos = TimeUnit.MILLISECONDS.toNanos(environment.getProperty(
+                "notification.client.circuit-breaker.open-wait-ms", Long.class, 10_000L));
+        this.halfOpenPermittedCalls = environment.getProperty(
+                "notification.client.circuit-breaker.half-open-permitted-calls", Integer.class, 3);
+        this.failures = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+    }
+
+    /**
+     * @return - true, если вызов можно выполнить. После разрешенного вызова обязательно сообщить результат через
+     * {@link #onSuccess(long)}, {@link #onError(long)} или {@link #onIgnored()}
+     */
+    public boolean tryAcquirePermission() {
+        if (!enabled) {
+            return true;
+        }
+        State transition = null;
+        boolean permitted;
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openWaitNanos) {
+                transition = transitionTo(State.HALF_OPEN);
+            }
+            permitted = state == State.CLOSED
+                    || (state == State.HALF_OPEN && halfOpenInFlight < halfOpenPermittedCalls);
+            if (permitted && state == State.HALF_OPEN) {
+                halfOpenInFlight++;
+            }
+        }
+        if (!permitted) {
+            rejectedCalls.increment();
+        }
+        notifyListeners(transition);
+        return permitted;
+    }
+
+    /**
+     * Вызов завершился ответом сервиса.
+     * @param durationNanos - длительность вызова
+     */
+    public void onSuccess(long durationNanos) {
+        successfulCalls.increment();
+        record(false, durationNanos);
+    }
+
+    /**
+     * Сервис недоступен или ответил ошибкой 5xx.
+     * @param durationNanos - длительность вызова
+     */
+    public void onError(long durationNanos) {
+        failedCalls.increment();
+        record(true, durationNanos);
+    }
+
+    /**
+     * Вызов не выполнялся или завершился ошибкой, не относящейся к доступности сервиса. Результат не учитывается,
+     * освобождается только разрешение пробного вызова.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && halfOpenInFlight > 0) {
+            halfOpenInFlight--;
+        }
+    }
+
+    /**
+     * Проверка без запроса разрешения: автомат полуоткрыт или открыт дольше open-wait-ms, и пробный вызов получит
+     * разрешение. Не учитывается как отклоненный вызов.
+     */
+    public synchronized boolean isProbeDue() {
+        return enabled && (state == State.HALF_OPEN
+                || (state == State.OPEN && System.nanoTime() - openedAt >= openWaitNanos));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public void addStateListener(Consumer<State> listener) {
+        stateListeners.add(listener);
+    }
+
+    private void record(boolean failed, long durationNanos) {
+        if (!enabled) {
+            return;
+        }
+        boolean slow = durationNanos >= slowCallDurationNanos;
+        if (slow) {
+            slowCallsTotal.increment();
+        }
+        State transition = null;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                if (halfOpenInFlight > 0) {
+                    halfOpenInFlight--;
+                }
+                if (failed || slow) {
+                    transition = transitionTo(State.OPEN);
+                } else if (++halfOpenSuccesses >= halfOpenPermittedCalls) {
+                    transition = transitionTo(State.CLOSED);
+                }
+            } else if (state == State.CLOSED) {
+                addToWindow(failed, slow);
+                if (windowCount >= minimumCalls
+                        && (failureCount * 100.0 / windowCount >= failureRateThreshold
+                        || slowCallCount * 100.0 / windowCount >= slowCallRateThreshold)) {
+                    transition = transitionTo(State.OPEN);
+                }
+            }
+            // результаты вызовов, начатых до размыкания, в состоянии OPEN не учитываются
+        }
+        notifyListeners(transition);
+    }
+
+    private void addToWindow(boolean failed, boolean slow) {
+        if (windowCount == failures.length) {
+            if (failures[windowIndex]) {
+                failureCount--;
+            }
+            if (slowCalls[windowIndex]) {
+                slowCallCount--;
+            }
+        } else {
+            windowCount++;
+        }
+        failures[windowIndex] = failed;
+        slowCalls[windowIndex] = slow;
+        if (failed) {
+            failureCount++;
+        }
+        if (slow) {
+            slowCallCount++;
+        }
+        windowIndex = (windowIndex + 1) % failures.length;
+    }
+
+    private State transitionTo(State newState) {
+        state = newState;
+        halfOpenInFlight = 0;
+        halfOpenSuccesses = 0;
+        if (newState == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+        if (newState == State.CLOSED) {
+            windowIndex = 0;
+            windowCount = 0;
+            failureCount = 0;
+            slowCallCount = 0;
+        }
+        return newState;
+    }
+
+    private void notifyListeners(State transition) {
+        if (transition == null) {
+            return;
+        }
+        log.warn("Notification circuit breaker is {}", transition);
+        stateListeners.forEach(listener -> listener.accept(transition));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("notification.client.circuit-breaker.state", this, breaker -> breaker.getState().ordinal())
+                .description("0 - closed, 1 - open, 2 - half-open")
+                .register(registry);
+        FunctionCounter.builder("notification.client.circuit-breaker.calls", successfulCalls, LongAdder::sum)
+                .tag("outcome", "success").register(registry);
+        FunctionCounter.builder("notification.client.circuit-breaker.calls", failedCalls, LongAdder::sum)
+                .tag("outcome", "failure").register(registry);
+        FunctionCounter.builder("notification.client.circuit-breaker.calls", rejectedCalls, LongAdder::sum)
+                .tag("outcome", "rejected").register(registry);
+        FunctionCounter.builder("notification.client.circuit-breaker.slow-calls", slowCallsTotal, LongAdder::sum)
+                .register(registry);
+    }
+}
@@ -0,0 +1,99 @@
+package sakhno.springframework.ms.EmailNotificationService.resilience;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.exception.RetryableException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограничение частоты исходящих вызовов сервиса уведомлений (token bucket).
+ * <p>
+ * Корзина вмещает burst токенов и пополняется со скоростью permits-per-second. Каждый вызов забирает один токен;
+ * если токенов нет, вызов резервирует следующий и ждет его появления. Если ожидание превысило бы max-wait-ms,
+ * вызов отклоняется без резервирования. По умолчанию ограничение выключено (notification.client.rate-limit.enabled).
+ * </p>
+ */
+@Component
+public class TokenBucketRateLimiter implements MeterBinder {
+    private final boolean enabled;
+    private final double permitsPerNano;
+    private final double burst;
+    private final long maxWaitNanos;
+
+    private double tokens;
+    private long lastRefill;
+
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @Autowired
+    public TokenBucketRateLimiter(Environment environment) {
+        this.enabled = environment.getProperty("notification.client.rate-limit.enabled", Boolean.class, false);
+        this.permitsPerNano = environment.getProperty("notification.client.rate-limit.permits-per-second",
+                Double.class, 200.0) / TimeUnit.SECONDS.toNanos(1);
+        this.burst = environment.getProperty("notification.client.rate-limit.burst", Integer.class, 50);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(
+                environment.getProperty("notification.client.rate-limit.max-wait-ms", Long.class, 1000L));
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Резервирование токена.
+     * @return - сколько наносекунд нужно подождать до вызова, или -1, если ожидание превысило бы max-wait-ms
+     */
+    public long reserve() {
+        if (!enabled) {
+            return 0;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerNano);
+            lastRefill = now;
+            waitNanos = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerNano);
+            if (waitNanos > maxWaitNanos) {
+                rejected.increment();
+                return -1;
+            }
+            tokens -= 1;
+        }
+        if (waitNanos > 0) {
+            delayed.increment();
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Блокирующее получение токена.
+     * @throws RetryableException - если ожидание превысило бы max-wait-ms или поток был прерван
+     */
+    public void acquire() {
+        long waitNanos = reserve();
+        if (waitNanos < 0) {
+            throw new RetryableException("Notification rate limit exceeded");
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RetryableException(e);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("notification.client.rate-limiter.delayed", delayed, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("notification.client.rate-limiter.rejected", rejected, LongAdder::sum)
+                .register(registry);
+    }
+}
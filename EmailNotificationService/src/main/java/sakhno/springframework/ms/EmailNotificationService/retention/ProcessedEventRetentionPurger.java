@@ -0,0 +1,73 @@
+package sakhno.springframework.ms.EmailNotificationService.retention;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Фоновое удаление записей processed_events старше срока хранения (notification.dedup.retention-ms).
+ * <p>
+ * Удаление идет пакетами по purge.batch-size строк: выборка идентификаторов по индексу processed_at и один
+ * DELETE ... WHERE id IN (...) в отдельной короткой транзакции. Блокировки держатся только на время одного пакета,
+ * обработка сообщений между пакетами не ждет. За один запуск удаляется не больше purge.max-batches пакетов,
+ * остаток доберет следующий запуск.
+ * </p>
+ * Срок хранения должен превышать максимальное время повторной доставки сообщения, иначе дубликат не будет найден.
+ */
+@Component
+public class ProcessedEventRetentionPurger {
+    private final static Logger log = LoggerFactory.getLogger(ProcessedEventRetentionPurger.class);
+
+    private final ProcessedEventRepository processedEventRepository;
+    private final Duration retention;
+    private final int batchSize;
+    private final int maxBatches;
+
+    @Autowired
+    public ProcessedEventRetentionPurger(ProcessedEventRepository processedEventRepository,
+                                         @Value("${notification.dedup.retention-ms}") long retentionMs,
+                                         @Value("${notification.dedup.purge.batch-size}") int batchSize,
+                                         @Value("${notification.dedup.purge.max-batches}") int maxBatches) {
+        this.processedEventRepository = processedEventRepository;
+        this.retention = Duration.ofMillis(retentionMs);
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+    }
+
+    @Scheduled(fixedDelayString = "${notification.dedup.purge.interval-ms}")
+    public void scheduledPurge() {
+        purge();
+    }
+
+    /**
+     * @return - количество удаленных записей
+     */
+    public long purge() {
+        Instant before = Instant.now().minus(retention);
+        long deleted = 0;
+        for (int batch = 0; batch < maxBatches; batch++) {
+            List<Long> ids = processedEventRepository.findIdsProcessedBefore(before, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            processedEventRepository.deleteAllByIdInBatch(ids);
+            deleted += ids.size();
+            if (ids.size() < batchSize) {
+                break;
+            }
+        }
+        if (deleted > 0) {
+            log.info("Purged {} processed events older than {}", deleted, before);
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,98 @@
+package sakhno.springframework.ms.EmailNotificationService.retry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.KafkaBackoffException;
+import org.springframework.kafka.listener.RecordInterceptor;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Метрики обработки по ступеням повторов: основной топик (main), топики повторов (retry-1000, retry-10000, ...)
+ * и DLT (dlt).
+ * <p>
+ * notification.retry.tier.records{tier, outcome} - число записей, обработанных на ступени успешно (success) или с
+ * ошибкой (failure). Ошибка на ступени означает переход записи на следующую ступень. Запись, полученная из топика
+ * повтора раньше своего времени, возвращается контейнером без вызова обработчика и не учитывается.
+ * </p>
+ * <p>
+ * Счетчики известных ступеней регистрируются при создании, обработка записи только находит счетчик своего топика.
+ * </p>
+ */
+public class RetryTierMetricsInterceptor implements RecordInterceptor<String, Object> {
+    private static final String RETRY_SUFFIX = "-retry-";
+    private static final String DLT_SUFFIX = "-dlt";
+
+    private static final String SUCCESS = "success";
+    private static final String FAILURE = "failure";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> successCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> failureCounters = new ConcurrentHashMap<>();
+
+    /**
+     * @param tiers - ступени, счетчики которых регистрируются сразу (main, retry-1000, ..., dlt). Счетчик ступени,
+     *              которой нет в списке, регистрируется при первой записи из ее топика.
+     */
+    public RetryTierMetricsInterceptor(MeterRegistry meterRegistry, Collection<String> tiers) {
+        this.meterRegistry = meterRegistry;
+        for (String tier : tiers) {
+            register(tier, SUCCESS);
+            register(tier, FAILURE);
+        }
+    }
+
+    @Override
+    public ConsumerRecord<String, Object> intercept(ConsumerRecord<String, Object> record,
+                                                    Consumer<String, Object> consumer) {
+        return record;
+    }
+
+    @Override
+    public void success(ConsumerRecord<String, Object> record, Consumer<String, Object> consumer) {
+        counter(successCounters, record.topic(), SUCCESS).increment();
+    }
+
+    @Override
+    public void failure(ConsumerRecord<String, Object> record, Exception exception, Consumer<String, Object> consumer) {
+        if (!isBackoff(exception)) {
+            counter(failureCounters, record.topic(), FAILURE).increment();
+        }
+    }
+
+    private Counter counter(Map<String, Counter> counters, String topic, String outcome) {
+        Counter counter = counters.get(topic);
+        if (counter != null) {
+            return counter;
+        }
+        return counters.computeIfAbsent(topic, key -> register(tier(key), outcome));
+    }
+
+    private Counter register(String tier, String outcome) {
+        return Counter.builder("notification.retry.tier.records")
+                .tag("tier", tier)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public static String tier(String topic) {
+        int retryIndex = topic.lastIndexOf(RETRY_SUFFIX);
+        if (retryIndex >= 0) {
+            return topic.substring(retryIndex + 1);
+        }
+        return topic.endsWith(DLT_SUFFIX) ? "dlt" : "main";
+    }
+
+    private static boolean isBackoff(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof KafkaBackoffException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
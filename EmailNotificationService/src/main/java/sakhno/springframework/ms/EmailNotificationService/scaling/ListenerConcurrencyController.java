@@ -0,0 +1,219 @@
+package sakhno.springframework.ms.EmailNotificationService.scaling;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerLagMonitor;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerPipelineMetrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Подстройка числа потребителей контейнера основного топика по отставанию (notification.listener.autoscale.enabled).
+ * <p>
+ * Раз в interval-ms оценивается нужное число потребителей: отставание топика из {@link ConsumerLagMonitor} должно
+ * разбираться за target-drain-seconds, а один потребитель обрабатывает 1000 / latency записей в секунду, где latency -
+ * среднее время обработки записи за интервал по этапам notification.handler.stage. В режимах async и parallel
+ * потребитель обрабатывает несколько записей одновременно, поэтому оценка завышена и ее ограничивает
+ * max-concurrency. Если отставания нет, нужен min-concurrency потребителей; если за интервал не обработано ни одной
+ * записи при ненулевом отставании (например, контейнер на паузе), число не меняется.
+ * </p>
+ * <p>
+ * Гистерезис: число увеличивается до нужного после scale-up-evaluations оценок подряд, в которых нужно больше
+ * потребителей, и уменьшается на одного после scale-down-evaluations оценок подряд, в которых нужно меньше. После
+ * изменения счетчики сбрасываются. Новое число применяется остановкой и запуском контейнера, что вызывает
+ * ребалансировку группы. Остановка асинхронная: поток планировщика не ждет завершения обработки текущих записей,
+ * контейнер запускается с новым числом потребителей из обратного вызова остановки. Пока перезапуск не завершен,
+ * оценки пропускаются.
+ * </p>
+ * <p>
+ * Потребителей не может быть больше, чем партиций топика. Если нужно больше, рекомендуемое число партиций
+ * публикуется в notification.listener.autoscale.recommended-partitions{topic} и пишется в лог.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "notification.listener.autoscale.enabled", havingValue = "true")
+public class ListenerConcurrencyController {
+    private final static Logger log = LoggerFactory.getLogger(ListenerConcurrencyController.class);
+
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+    private final ConsumerLagMonitor consumerLagMonitor;
+    private final ConsumerPipelineMetrics consumerPipelineMetrics;
+    private final KafkaAdmin kafkaAdmin;
+    private final String topic;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final double targetDrainSeconds;
+    private final int scaleUpEvaluations;
+    private final int scaleDownEvaluations;
+
+    private final AtomicInteger concurrency = new AtomicInteger();
+    private final AtomicInteger desiredConcurrency = new AtomicInteger();
+    private final AtomicInteger recommendedPartitions = new AtomicInteger();
+    private final AtomicBoolean restarting = new AtomicBoolean();
+    private int scaleUpStreak;
+    private int scaleDownStreak;
+    private long lastCount;
+    private double lastTotalMs;
+
+    @Autowired
+    public ListenerConcurrencyController(KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry,
+                                         ConsumerLagMonitor consumerLagMonitor,
+                                         ConsumerPipelineMetrics consumerPipelineMetrics, KafkaAdmin kafkaAdmin,
+                                         MeterRegistry meterRegistry, Environment environment) {
+        this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+        this.consumerLagMonitor = consumerLagMonitor;
+        this.consumerPipelineMetrics = consumerPipelineMetrics;
+        this.kafkaAdmin = kafkaAdmin;
+        this.topic = environment.getProperty("notification.listener.autoscale.topic",
+                "product-created-events-topic");
+        this.minConcurrency = environment.getProperty("notification.listener.autoscale.min-concurrency",
+                Integer.class, 1);
+        this.maxConcurrency = environment.getProperty("notification.listener.autoscale.max-concurrency",
+                Integer.class, Integer.MAX_VALUE);
+        this.targetDrainSeconds = environment.getProperty("notification.listener.autoscale.target-drain-seconds",
+                Double.class, 30.0);
+        this.scaleUpEvaluations = environment.getProperty("notification.listener.autoscale.scale-up-evaluations",
+                Integer.class, 2);
+        this.scaleDownEvaluations = environment.getProperty(
+                "notification.listener.autoscale.scale-down-evaluations", Integer.class, 5);
+        Gauge.builder("notification.listener.concurrency", concurrency, AtomicInteger::get)
+                .description("Consumers of the listener container")
+                .tag("topic", topic)
+                .register(meterRegistry);
+        Gauge.builder("notification.listener.autoscale.desired", desiredConcurrency, AtomicInteger::get)
+                .description("Consumers needed to drain the lag in the target time")
+                .tag("topic", topic)
+                .register(meterRegistry);
+        Gauge.builder("notification.listener.autoscale.recommended-partitions", recommendedPartitions,
+                        AtomicInteger::get)
+                .description("Partitions needed to run the desired number of consumers")
+                .tag("topic", topic)
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${notification.listener.autoscale.interval-ms:30000}")
+    public void refresh() {
+        ConcurrentMessageListenerContainer<?, ?> container = findContainer();
+        if (container == null || restarting.get() || !container.isRunning()) {
+            return;
+        }
+        double latencyMs = handlerLatencyMs();
+        int partitions;
+        try {
+            TopicDescription description = kafkaAdmin.describeTopics(topic).get(topic);
+            partitions = description.partitions().size();
+        } catch (Exception e) {
+            log.warn("Unable to describe topic {}: {}", topic, e.getMessage());
+            return;
+        }
+        int current = container.getConcurrency();
+        int target = evaluate(consumerLagMonitor.getLag(topic), latencyMs, current, partitions);
+        if (target != current) {
+            log.info("Changing concurrency of the {} listener from {} to {}", topic, current, target);
+            restarting.set(true);
+            container.stop(() -> {
+                try {
+                    container.setConcurrency(target);
+                    container.start();
+                    concurrency.set(target);
+                } catch (RuntimeException e) {
+                    log.error("Unable to restart the {} listener with concurrency {}", topic, target, e);
+                } finally {
+                    restarting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Оценка с учетом гистерезиса.
+     * @param lag - отставание топика
+     * @param latencyMs - среднее время обработки записи за интервал, NaN - если записи не обрабатывались
+     * @param current - текущее число потребителей
+     * @param partitions - число партиций топика
+     * @return - число потребителей, которое нужно установить (current, если менять не нужно)
+     */
+    public synchronized int evaluate(long lag, double latencyMs, int current, int partitions) {
+        concurrency.set(current);
+        int limit = Math.max(1, Math.min(maxConcurrency, partitions));
+        int desired;
+        if (lag <= 0) {
+            desired = minConcurrency;
+        } else if (Double.isNaN(latencyMs)) {
+            desired = current;
+        } else {
+            double perConsumer = 1000.0 / Math.max(latencyMs, 0.001);
+            desired = (int) Math.min(Integer.MAX_VALUE, Math.ceil(lag / (perConsumer * targetDrainSeconds)));
+            desired = Math.max(minConcurrency, desired);
+        }
+        desiredConcurrency.set(desired);
+        int recommended = Math.max(desired, partitions);
+        if (desired > partitions && recommended != recommendedPartitions.get()) {
+            log.warn("Lag of {} needs {} consumers, but the topic has {} partitions; consider {} partitions",
+                    topic, desired, partitions, recommended);
+        }
+        recommendedPartitions.set(recommended);
+
+        int target = Math.min(desired, limit);
+        if (target > current) {
+            scaleDownStreak = 0;
+            if (++scaleUpStreak >= scaleUpEvaluations) {
+                scaleUpStreak = 0;
+                return target;
+            }
+        } else if (target < current) {
+            scaleUpStreak = 0;
+            if (++scaleDownStreak >= scaleDownEvaluations) {
+                scaleDownStreak = 0;
+                return current - 1;
+            }
+        } else {
+            scaleUpStreak = 0;
+            scaleDownStreak = 0;
+        }
+        return current;
+    }
+
+    /**
+     * Среднее время обработки записи с прошлой оценки: сумма этапов, деленная на число вызовов сервиса уведомлений.
+     */
+    private double handlerLatencyMs() {
+        Timer httpCall = consumerPipelineMetrics.httpCall();
+        long count = httpCall.count();
+        double totalMs = httpCall.totalTime(TimeUnit.MILLISECONDS)
+                + consumerPipelineMetrics.dedupLookup().totalTime(TimeUnit.MILLISECONDS)
+                + consumerPipelineMetrics.dbSave().totalTime(TimeUnit.MILLISECONDS);
+        long calls = count - lastCount;
+        double latencyMs = calls > 0 ? (totalMs - lastTotalMs) / calls : Double.NaN;
+        lastCount = count;
+        lastTotalMs = totalMs;
+        return latencyMs;
+    }
+
+    private ConcurrentMessageListenerContainer<?, ?> findContainer() {
+        for (MessageListenerContainer container : kafkaListenerEndpointRegistry.getListenerContainers()) {
+            String[] topics = container.getContainerProperties().getTopics();
+            if (container instanceof ConcurrentMessageListenerContainer<?, ?> concurrent && topics != null
+                    && Arrays.asList(topics).contains(topic)) {
+                return concurrent;
+            }
+        }
+        return null;
+    }
+}
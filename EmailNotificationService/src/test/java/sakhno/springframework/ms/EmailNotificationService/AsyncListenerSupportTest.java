@@ -0,0 +1,81 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.mock.env.MockEnvironment;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+import sakhno.springframework.ms.EmailNotificationService.handler.AsyncListenerSupport;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class AsyncListenerSupportTest {
+    private static final TopicPartition PARTITION = new TopicPartition("product-created-events-topic", 0);
+
+    private final DeadLetterPublishingRecoverer recoverer = mock(DeadLetterPublishingRecoverer.class);
+    private final KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+    private final MessageListenerContainer container = mock(MessageListenerContainer.class);
+    private final AsyncListenerSupport listenerSupport = new AsyncListenerSupport(recoverer, registry,
+            new MockEnvironment()
+                    .withProperty("notification.listener.dlt.initial-backoff-ms", "10")
+                    .withProperty("notification.listener.dlt.max-backoff-ms", "20"));
+
+    @Test
+    void testRecover_whenDltPublishFails_retriesUntilPublished() throws Exception {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>(PARTITION.topic(), 0, 5, "key", "value");
+        doThrow(new KafkaException("broker down")).doThrow(new KafkaException("broker down")).doNothing()
+                .when(recoverer).accept(any(), any());
+
+        CompletableFuture<Void> published = listenerSupport.recover(record, new NonRetryableException("poison"));
+
+        published.get(5, TimeUnit.SECONDS);
+        verify(recoverer, times(3)).accept(any(), any());
+    }
+
+    @Test
+    void testInFlightLimit_whenLimitReached_pausesPartitionWithoutBlocking() {
+        when(registry.getListenerContainers()).thenReturn(List.of(container));
+        when(container.getAssignedPartitions()).thenReturn(List.of(PARTITION));
+        AsyncListenerSupport.InFlightLimit inFlight = listenerSupport.inFlightLimit(2);
+        ConsumerRecord<String, String> first = new ConsumerRecord<>(PARTITION.topic(), 0, 0, "key", "value");
+        ConsumerRecord<String, String> second = new ConsumerRecord<>(PARTITION.topic(), 0, 1, "key", "value");
+        ConsumerRecord<String, String> third = new ConsumerRecord<>(PARTITION.topic(), 0, 2, "key", "value");
+
+        inFlight.acquire(first);
+        verify(container, never()).pausePartition(PARTITION);
+        inFlight.acquire(second);
+        verify(container).pausePartition(PARTITION);
+        // запись из того же poll принимается сверх лимита
+        inFlight.acquire(third);
+
+        inFlight.release(first);
+        verify(container, never()).resumePartition(PARTITION);
+        inFlight.release(second);
+        verify(container).resumePartition(PARTITION);
+        inFlight.release(third);
+        verify(container, times(1)).pausePartition(PARTITION);
+        verify(container, times(1)).resumePartition(PARTITION);
+    }
+
+    @Test
+    void testGetMessageId_readsLastHeaderOrNull() {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>(PARTITION.topic(), 0, 0, "key", "value");
+        assertNull(AsyncListenerSupport.getMessageId(record));
+
+        record.headers().add("messageId", "first".getBytes());
+        record.headers().add("messageId", "second".getBytes());
+
+        assertEquals("second", AsyncListenerSupport.getMessageId(record));
+    }
+}
@@ -0,0 +1,93 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import sakhno.springframework.ms.EmailNotificationService.resilience.NotificationCircuitBreaker;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Записи, попавшие в топик повтора до размыкания автомата защиты, не проходят ступени до DLT, пока автомат
+ * разомкнут: контейнеры топиков повторов приостановлены, а CircuitBreakerOpenException не переводит запись дальше.
+ */
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 1, topics = {"product-created-events-topic", "product-created-events-topic-retry-1000",
+        "product-created-events-topic-retry-2000", "product-created-events-topic-dlt"})
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.datasource.url=jdbc:h2:mem:circuit-breaker-retry-topic-test",
+        "notification.listener.mode=record",
+        // сервис уведомлений недоступен: отказ подключения - RetryableException и отказ для автомата защиты
+        "notification.url=http://localhost:1",
+        "notification.retry.initial-delay-ms=1000",
+        "notification.retry.multiplier=2",
+        "notification.retry.max-delay-ms=2000",
+        "notification.retry.max-attempts=3",
+        "notification.client.circuit-breaker.window-size=2",
+        "notification.client.circuit-breaker.minimum-calls=2",
+        "notification.client.circuit-breaker.open-wait-ms=600000",
+        "notification.client.circuit-breaker.probe-interval-ms=200"})
+public class CircuitBreakerRetryTopicIntegrationTest {
+    private static final String MAIN_TOPIC = "product-created-events-topic";
+
+    @Autowired
+    KafkaTemplate<String, Object> kafkaTemplate;
+    @Autowired
+    NotificationCircuitBreaker circuitBreaker;
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Test
+    void testCircuitBreaker_whenOpenWithRecordsInRetryTopic_keepsThemOutOfNextTiersAndDlt() {
+        for (int i = 0; i < 4; i++) {
+            String productId = UUID.randomUUID().toString();
+            ProducerRecord<String, Object> record = new ProducerRecord<>(MAIN_TOPIC, productId,
+                    new ProductCreatedEvent(productId, "Test", BigDecimal.ONE, 1));
+            record.headers().add("messageId", UUID.randomUUID().toString().getBytes());
+            kafkaTemplate.send(record);
+        }
+        kafkaTemplate.flush();
+
+        try (Consumer<String, String> consumer = new DefaultKafkaConsumerFactory<>(
+                KafkaTestUtils.consumerProps("circuit-breaker-offsets", "false", embeddedKafkaBroker),
+                new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            // две записи дошли до сервиса, перешли на первую ступень и разомкнули автомат; остальные ждут в основном
+            await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+                assertEquals(NotificationCircuitBreaker.State.OPEN, circuitBreaker.getState());
+                assertEquals(2L, endOffset(consumer, MAIN_TOPIC + "-retry-1000"));
+            });
+
+            // без паузы записи прошли бы -retry-2000 и попали в DLT примерно через три секунды
+            await().during(Duration.ofSeconds(6)).atMost(Duration.ofSeconds(10)).untilAsserted(() -> {
+                assertEquals(2L, endOffset(consumer, MAIN_TOPIC + "-retry-1000"));
+                assertEquals(0L, endOffset(consumer, MAIN_TOPIC + "-retry-2000"));
+                assertEquals(0L, endOffset(consumer, MAIN_TOPIC + "-dlt"));
+            });
+        }
+    }
+
+    private static long endOffset(Consumer<String, String> consumer, String topic) {
+        TopicPartition partition = new TopicPartition(topic, 0);
+        return consumer.endOffsets(List.of(partition)).get(partition);
+    }
+}
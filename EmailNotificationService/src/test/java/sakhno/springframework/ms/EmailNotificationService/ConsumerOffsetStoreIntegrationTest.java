@@ -0,0 +1,125 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import sakhno.springframework.ms.EmailNotificationService.offsets.ConsumerOffsetStore;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * notification.offsets.store=db: смещения сохраняются в consumer_offsets, в Kafka фиксируются периодически, а после
+ * перезапуска слушателя чтение продолжается с сохраненного смещения. auto-offset-reset=latest, поэтому без перехода к
+ * сохраненному смещению записи, отправленные при остановленном слушателе, были бы пропущены.
+ */
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3, topics = "product-created-events-topic")
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.auto-offset-reset=latest",
+        "spring.datasource.url=jdbc:h2:mem:consumer-offsets-test",
+        "notification.listener.mode=record",
+        "notification.offsets.store=db",
+        "notification.offsets.kafka-commit-interval-ms=500"})
+public class ConsumerOffsetStoreIntegrationTest {
+    private static final String TOPIC = "product-created-events-topic";
+    private static final String GROUP_ID = "product-created-events";
+
+    private static final NotificationStubServer server = new NotificationStubServer(0);
+
+    @Autowired
+    ProcessedEventRepository processedEventRepository;
+    @Autowired
+    ConsumerOffsetStore consumerOffsetStore;
+    @Autowired
+    KafkaTemplate<String, Object> kafkaTemplate;
+    @Autowired
+    KafkaListenerEndpointRegistry registry;
+    @Autowired
+    KafkaAdmin kafkaAdmin;
+
+    @DynamicPropertySource
+    static void notificationUrl(DynamicPropertyRegistry registry) {
+        registry.add("notification.url", server::getUrl);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void testOffsetsStoredInDb_whenListenerRestarted_resumesFromStoredOffsets() throws Exception {
+        MessageListenerContainer container = registry.getListenerContainers().stream()
+                .filter(candidate -> Arrays.asList(candidate.getContainerProperties().getTopics()).contains(TOPIC))
+                .findFirst().orElseThrow();
+        ContainerTestUtils.waitForAssignment(container, 3);
+
+        for (int i = 0; i < 9; i++) {
+            send();
+        }
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> assertEquals(9, processedEventRepository.count()));
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> assertEquals(9, storedOffsetsSum()));
+        // смещение группы в Kafka догоняет сохраненное в БД, поэтому лаг группы виден внешним инструментам
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> assertEquals(9, committedOffsetsSum()));
+
+        container.stop();
+        for (int i = 0; i < 6; i++) {
+            send();
+        }
+        kafkaTemplate.flush();
+        container.start();
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> assertEquals(15, processedEventRepository.count()));
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> assertEquals(15, storedOffsetsSum()));
+    }
+
+    private long committedOffsetsSum() throws Exception {
+        try (AdminClient adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties())) {
+            Map<TopicPartition, OffsetAndMetadata> committed = adminClient.listConsumerGroupOffsets(GROUP_ID)
+                    .partitionsToOffsetAndMetadata().get();
+            return committed.entrySet().stream()
+                    .filter(offset -> offset.getKey().topic().equals(TOPIC))
+                    .mapToLong(offset -> offset.getValue().offset()).sum();
+        }
+    }
+
+    private long storedOffsetsSum() {
+        return consumerOffsetStore.findOffsets(GROUP_ID).entrySet().stream()
+                .filter(offset -> offset.getKey().topic().equals(TOPIC))
+                .mapToLong(Map.Entry::getValue).sum();
+    }
+
+    private void send() throws Exception {
+        String productId = UUID.randomUUID().toString();
+        ProducerRecord<String, Object> record = new ProducerRecord<>(TOPIC, productId,
+                new ProductCreatedEvent(productId, "Test", BigDecimal.ONE, 1));
+        record.headers().add("messageId", UUID.randomUUID().toString().getBytes());
+        kafkaTemplate.send(record).get();
+    }
+}
@@ -0,0 +1,103 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сквозная задержка по заголовку produceTimestamp, таймеры этапов обработчика и отставание потребителя по партициям
+ * выдаются на /actuator/prometheus.
+ */
+@DirtiesContext
+@AutoConfigureObservability
+@ActiveProfiles("test")
+@EmbeddedKafka
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+                "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+                "spring.datasource.url=jdbc:h2:mem:pipeline-metrics-test",
+                "notification.metrics.consumer-lag.interval-ms=500"})
+public class ConsumerPipelineMetricsIntegrationTest {
+    private static final int RECORDS = 20;
+    private static final long PRODUCE_DELAY_MS = 500;
+
+    private static final NotificationStubServer server = new NotificationStubServer(10);
+
+    @Autowired
+    ProcessedEventRepository processedEventRepository;
+    @Autowired
+    KafkaTemplate<String, Object> kafkaTemplate;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @DynamicPropertySource
+    static void notificationUrl(DynamicPropertyRegistry registry) {
+        registry.add("notification.url", server::getUrl);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void testHandler_whenRecordsCarryProduceTimestamp_recordsEndToEndLatencyAndStages() throws Exception {
+        long produced = System.currentTimeMillis() - PRODUCE_DELAY_MS;
+        for (int i = 0; i < RECORDS; i++) {
+            String key = UUID.randomUUID().toString();
+            ProducerRecord<String, Object> record = new ProducerRecord<>("product-created-events-topic", key,
+                    new ProductCreatedEvent(key, "Test", BigDecimal.ONE, 1));
+            record.headers().add("messageId", UUID.randomUUID().toString().getBytes());
+            record.headers().add("produceTimestamp", Long.toString(produced).getBytes());
+            kafkaTemplate.send(record).get();
+        }
+
+        await().atMost(Duration.ofSeconds(30)).untilAsserted(() ->
+                assertEquals(RECORDS, meterRegistry.find("notification.consumer.e2e.latency").timers().stream()
+                        .mapToLong(Timer::count).sum()));
+        assertEquals(RECORDS, processedEventRepository.count());
+        for (Timer timer : meterRegistry.find("notification.consumer.e2e.latency").timers()) {
+            assertTrue(timer.count() == 0 || timer.max(TimeUnit.MILLISECONDS) >= PRODUCE_DELAY_MS);
+        }
+        assertEquals(RECORDS, stage("dedup-lookup").count());
+        assertEquals(RECORDS, stage("http-call").count());
+        assertEquals(RECORDS, stage("db-save").count());
+
+        String scrape = restTemplate.getForObject("/actuator/prometheus", String.class);
+        assertTrue(scrape.contains("notification_consumer_e2e_latency_seconds_bucket"));
+        assertTrue(scrape.contains("notification_handler_stage_seconds_bucket"));
+        assertTrue(scrape.contains("kafka_consumer_fetch_manager_records_lag_max"));
+        await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> assertTrue(
+                restTemplate.getForObject("/actuator/prometheus", String.class)
+                        .contains("notification_consumer_lag{partition=\"0\",topic=\"product-created-events-topic\"} 0.0")));
+    }
+
+    private Timer stage(String stage) {
+        return meterRegistry.get("notification.handler.stage").tag("stage", stage).timer();
+    }
+}
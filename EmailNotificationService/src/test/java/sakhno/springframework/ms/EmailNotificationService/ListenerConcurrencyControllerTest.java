@@ -0,0 +1,123 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.mock.env.MockEnvironment;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerLagMonitor;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerPipelineMetrics;
+import sakhno.springframework.ms.EmailNotificationService.scaling.ListenerConcurrencyController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class ListenerConcurrencyControllerTest {
+    private static final String TOPIC = "product-created-events-topic";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ListenerConcurrencyController controller = new ListenerConcurrencyController(
+            mock(KafkaListenerEndpointRegistry.class), mock(ConsumerLagMonitor.class),
+            new ConsumerPipelineMetrics(meterRegistry), mock(KafkaAdmin.class), meterRegistry,
+            new MockEnvironment()
+                    .withProperty("notification.listener.autoscale.max-concurrency", "8")
+                    .withProperty("notification.listener.autoscale.target-drain-seconds", "10")
+                    .withProperty("notification.listener.autoscale.scale-up-evaluations", "2")
+                    .withProperty("notification.listener.autoscale.scale-down-evaluations", "3"));
+
+    @Test
+    void testEvaluate_whenLagGrows_scalesUpAfterConsecutiveEvaluations() {
+        // 10 мс на запись - 100 записей в секунду на потребителя, 1000 за 10 секунд
+        assertEquals(1, controller.evaluate(4000, 10, 1, 6));
+        assertEquals(4, controller.evaluate(4000, 10, 1, 6));
+        assertEquals(4, desired());
+
+        // одна оценка с меньшим отставанием сбрасывает счетчик
+        assertEquals(4, controller.evaluate(4000, 10, 4, 6));
+        assertEquals(4, controller.evaluate(6000, 10, 4, 6));
+        assertEquals(4, controller.evaluate(3000, 10, 4, 6));
+        assertEquals(4, controller.evaluate(6000, 10, 4, 6));
+        assertEquals(6, controller.evaluate(6000, 10, 4, 6));
+    }
+
+    @Test
+    void testEvaluate_whenLagDrops_scalesDownOneConsumerAtATime() {
+        assertEquals(4, controller.evaluate(0, 10, 4, 6));
+        assertEquals(4, controller.evaluate(0, 10, 4, 6));
+        assertEquals(3, controller.evaluate(0, 10, 4, 6));
+        assertEquals(3, controller.evaluate(0, 10, 3, 6));
+        // без обработанных записей при ненулевом отставании число не меняется
+        assertEquals(3, controller.evaluate(500, Double.NaN, 3, 6));
+        assertEquals(3, controller.evaluate(0, 10, 3, 6));
+        assertEquals(3, controller.evaluate(0, 10, 3, 6));
+        assertEquals(2, controller.evaluate(0, 10, 3, 6));
+    }
+
+    @Test
+    void testEvaluate_whenPartitionsLimitConcurrency_recommendsPartitions() {
+        controller.evaluate(20000, 10, 2, 3);
+        assertEquals(3, controller.evaluate(20000, 10, 2, 3));
+        assertEquals(20, desired());
+        assertEquals(20, meterRegistry.get("notification.listener.autoscale.recommended-partitions")
+                .tag("topic", TOPIC).gauge().value());
+
+        controller.evaluate(1000, 10, 3, 3);
+        assertEquals(3, meterRegistry.get("notification.listener.autoscale.recommended-partitions")
+                .tag("topic", TOPIC).gauge().value());
+    }
+
+    @Test
+    void testRefresh_whenScalingUp_restartsContainerFromStopCallback() {
+        ConcurrentMessageListenerContainer<?, ?> container = mock(ConcurrentMessageListenerContainer.class);
+        when(container.getContainerProperties()).thenReturn(new ContainerProperties(TOPIC));
+        when(container.isRunning()).thenReturn(true);
+        when(container.getConcurrency()).thenReturn(1);
+        KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+        when(registry.getListenerContainers()).thenReturn(List.of(container));
+        ConsumerLagMonitor lagMonitor = mock(ConsumerLagMonitor.class);
+        when(lagMonitor.getLag(TOPIC)).thenReturn(20000L);
+        KafkaAdmin kafkaAdmin = mock(KafkaAdmin.class);
+        Node node = new Node(0, "localhost", 9092);
+        when(kafkaAdmin.describeTopics(TOPIC)).thenReturn(Map.of(TOPIC, new TopicDescription(TOPIC, false,
+                List.of(0, 1, 2).stream().map(partition -> new TopicPartitionInfo(partition, node, List.of(node),
+                        List.of(node))).toList())));
+        ConsumerPipelineMetrics pipelineMetrics = new ConsumerPipelineMetrics(meterRegistry);
+        ListenerConcurrencyController refreshing = new ListenerConcurrencyController(registry, lagMonitor,
+                pipelineMetrics, kafkaAdmin, new SimpleMeterRegistry(), new MockEnvironment()
+                        .withProperty("notification.listener.autoscale.scale-up-evaluations", "2"));
+
+        for (int i = 0; i < 2; i++) {
+            pipelineMetrics.httpCall().record(10, TimeUnit.MILLISECONDS);
+            refreshing.refresh();
+        }
+        ArgumentCaptor<Runnable> callback = ArgumentCaptor.forClass(Runnable.class);
+        verify(container).stop(callback.capture());
+        verify(container, never()).setConcurrency(anyInt());
+
+        // пока контейнер останавливается, оценки пропускаются
+        pipelineMetrics.httpCall().record(10, TimeUnit.MILLISECONDS);
+        refreshing.refresh();
+        verify(container, times(1)).stop(any(Runnable.class));
+
+        callback.getValue().run();
+        verify(container).setConcurrency(3);
+        verify(container).start();
+    }
+
+    private int desired() {
+        return (int) meterRegistry.get("notification.listener.autoscale.desired").tag("topic", TOPIC).gauge().value();
+    }
+}
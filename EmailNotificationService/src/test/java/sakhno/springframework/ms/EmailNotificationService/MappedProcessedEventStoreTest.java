@@ -0,0 +1,141 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import sakhno.springframework.ms.EmailNotificationService.dedup.MappedMessageIdIndex;
+import sakhno.springframework.ms.EmailNotificationService.dedup.MappedProcessedEventStore;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedMessage;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedProcessedEventStoreTest {
+    private static final Logger log = LoggerFactory.getLogger(MappedProcessedEventStoreTest.class);
+    private static final int MESSAGES = 200_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testIndex_whenReopened_containsAllIdsWithoutLoadingTable() {
+        Path file = directory.resolve("partition-0.idx");
+        long seed = 42;
+        try (MappedMessageIdIndex index = new MappedMessageIdIndex(file, 16, Long.MAX_VALUE, false)) {
+            for (long i = 0; i < MESSAGES; i++) {
+                assertTrue(index.add(seed, i, System.currentTimeMillis()));
+            }
+            assertFalse(index.add(seed, 7, System.currentTimeMillis()));
+            assertEquals(MESSAGES, index.size());
+        }
+
+        long start = System.nanoTime();
+        try (MappedMessageIdIndex index = new MappedMessageIdIndex(file, 16, Long.MAX_VALUE, false)) {
+            log.info("Dedup index with {} ids reopened in {} ms, capacity {}", MESSAGES,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), index.capacity());
+            assertEquals(MESSAGES, index.size());
+            for (long i = 0; i < MESSAGES; i++) {
+                assertTrue(index.contains(seed, i));
+            }
+            assertFalse(index.contains(seed, MESSAGES));
+            assertFalse(index.contains(seed + 1, 0));
+        }
+    }
+
+    @Test
+    void testIndex_whenRebuilt_dropsExpiredIds() {
+        long now = System.currentTimeMillis();
+        try (MappedMessageIdIndex index = new MappedMessageIdIndex(directory.resolve("partition-1.idx"), 16,
+                TimeUnit.HOURS.toMillis(1), false)) {
+            for (long i = 0; i < 8; i++) {
+                index.add(1, i, now - TimeUnit.HOURS.toMillis(2));
+            }
+            // девятая запись превышает половину емкости 16 и перестраивает таблицу
+            index.add(2, 0, now);
+            assertEquals(1, index.size());
+            assertFalse(index.contains(1, 0));
+            assertTrue(index.contains(2, 0));
+        }
+    }
+
+    @Test
+    void testStore_whenInTransaction_addsAfterCommitOnly() {
+        MockEnvironment environment = environment();
+        String committed = UUID.randomUUID().toString();
+        String rolledBack = UUID.randomUUID().toString();
+        MappedProcessedEventStore store = new MappedProcessedEventStore(environment);
+        try {
+            inTransaction(() -> store.save(new ProcessedMessage(committed, "product", 2)), true);
+            inTransaction(() -> store.save(new ProcessedMessage(rolledBack, "product", 2)), false);
+            store.saveAll(List.of(new ProcessedMessage(UUID.randomUUID().toString(), "product", 0)));
+
+            assertTrue(store.contains(committed, 2));
+            assertFalse(store.contains(rolledBack, 2));
+            assertEquals(Set.of(committed), store.findContained(Map.of(committed, 2, rolledBack, 2)));
+        } finally {
+            store.destroy();
+        }
+
+        MappedProcessedEventStore reopened = new MappedProcessedEventStore(environment);
+        try {
+            // файлы партиций открываются при старте
+            assertEquals(2, reopened.size());
+            assertTrue(reopened.contains(committed, 2));
+            assertFalse(reopened.contains(rolledBack, 2));
+        } finally {
+            reopened.destroy();
+        }
+    }
+
+    @Test
+    void testStore_whenRedeliveredToAnotherPartition_findsIdInOtherFile() {
+        String messageId = UUID.randomUUID().toString();
+        MappedProcessedEventStore store = new MappedProcessedEventStore(environment());
+        try {
+            store.save(new ProcessedMessage(messageId, "product", 1));
+
+            // после увеличения числа партиций то же сообщение попадает в новую партицию
+            assertTrue(store.contains(messageId, 5));
+            assertFalse(store.contains(UUID.randomUUID().toString(), 5));
+        } finally {
+            store.destroy();
+        }
+    }
+
+    @Test
+    void testStore_whenSingleInstanceNotConfirmed_failsAtStartup() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("notification.dedup.mapped.directory", directory.toString());
+
+        assertThrows(IllegalStateException.class, () -> new MappedProcessedEventStore(environment));
+    }
+
+    private MockEnvironment environment() {
+        return new MockEnvironment()
+                .withProperty("notification.dedup.mapped.directory", directory.toString())
+                .withProperty("notification.dedup.mapped.initial-capacity", "16")
+                .withProperty("notification.dedup.mapped.single-instance", "true");
+    }
+
+    private static void inTransaction(Runnable action, boolean commit) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            action.run();
+            if (commit) {
+                TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
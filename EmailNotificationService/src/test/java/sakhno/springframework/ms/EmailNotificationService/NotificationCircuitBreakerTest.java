@@ -0,0 +1,145 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.mock.env.MockEnvironment;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+import sakhno.springframework.ms.EmailNotificationService.resilience.ListenerPauseController;
+import sakhno.springframework.ms.EmailNotificationService.resilience.NotificationCircuitBreaker;
+import sakhno.springframework.ms.EmailNotificationService.resilience.NotificationCircuitBreaker.State;
+import sakhno.springframework.ms.EmailNotificationService.resilience.TokenBucketRateLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class NotificationCircuitBreakerTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final MockEnvironment environment = new MockEnvironment()
+            .withProperty("notification.client.circuit-breaker.window-size", "10")
+            .withProperty("notification.client.circuit-breaker.minimum-calls", "4")
+            .withProperty("notification.client.circuit-breaker.failure-rate-threshold", "50")
+            .withProperty("notification.client.circuit-breaker.slow-call-duration-ms", "100")
+            .withProperty("notification.client.circuit-breaker.open-wait-ms", "50")
+            .withProperty("notification.client.circuit-breaker.half-open-permitted-calls", "2");
+
+    @Test
+    void testCircuitBreaker_whenFailureRateReached_opensAndRecoversThroughHalfOpen() throws InterruptedException {
+        NotificationCircuitBreaker breaker = new NotificationCircuitBreaker(environment);
+        List<State> transitions = new ArrayList<>();
+        breaker.addStateListener(transitions::add);
+
+        call(breaker, false);
+        call(breaker, true);
+        call(breaker, false);
+        assertEquals(State.CLOSED, breaker.getState());
+        call(breaker, true);
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+
+        TimeUnit.MILLISECONDS.sleep(60);
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+        // разрешено только half-open-permitted-calls пробных вызовов
+        assertFalse(breaker.tryAcquirePermission());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(List.of(State.OPEN, State.HALF_OPEN, State.CLOSED), transitions);
+    }
+
+    @Test
+    void testCircuitBreaker_whenProbeFailsOrCallsAreSlow_opens() throws InterruptedException {
+        NotificationCircuitBreaker breaker = new NotificationCircuitBreaker(environment
+                .withProperty("notification.client.circuit-breaker.slow-call-rate-threshold", "75"));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquirePermission());
+            breaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(150));
+        }
+        call(breaker, false);
+        assertEquals(State.OPEN, breaker.getState());
+
+        TimeUnit.MILLISECONDS.sleep(60);
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onError(FAST);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testListenerPauseController_whenCircuitOpensAndCloses_pausesAndResumesContainers() throws InterruptedException {
+        NotificationCircuitBreaker breaker = new NotificationCircuitBreaker(environment
+                .withProperty("notification.client.circuit-breaker.open-wait-ms", "1000"));
+        MessageListenerContainer container = mock(MessageListenerContainer.class);
+        when(container.getContainerProperties()).thenReturn(new ContainerProperties("product-created-events-topic"));
+        MessageListenerContainer retryContainer = mock(MessageListenerContainer.class);
+        when(retryContainer.getContainerProperties())
+                .thenReturn(new ContainerProperties("product-created-events-topic-retry-1000"));
+        MessageListenerContainer dltContainer = mock(MessageListenerContainer.class);
+        when(dltContainer.getContainerProperties())
+                .thenReturn(new ContainerProperties("product-created-events-topic-dlt"));
+        KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+        when(registry.getListenerContainers()).thenReturn(List.of(container, retryContainer, dltContainer));
+        NotificationClient notificationClient = mock(NotificationClient.class);
+        doAnswer(invocation -> {
+            if (breaker.tryAcquirePermission()) {
+                breaker.onSuccess(FAST);
+            }
+            return null;
+        }).when(notificationClient).probe();
+        ListenerPauseController controller = new ListenerPauseController(registry, breaker, notificationClient);
+
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true);
+        }
+        verify(container).pause();
+        verify(retryContainer).pause();
+        // пока open-wait-ms не истек, пробный вызов не выполняется и не считается отклоненным
+        controller.probe();
+        verify(notificationClient, never()).probe();
+        verify(container, never()).resume();
+
+        TimeUnit.MILLISECONDS.sleep(1100);
+        controller.probe();
+        controller.probe();
+        verify(container).resume();
+        controller.probe();
+        verify(notificationClient, times(2)).probe();
+        verify(retryContainer).resume();
+        verify(dltContainer, never()).pause();
+        verify(dltContainer, never()).resume();
+    }
+
+    @Test
+    void testTokenBucketRateLimiter_whenBurstExhausted_delaysThenRejects() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(new MockEnvironment()
+                .withProperty("notification.client.rate-limit.enabled", "true")
+                .withProperty("notification.client.rate-limit.permits-per-second", "10")
+                .withProperty("notification.client.rate-limit.burst", "2")
+                .withProperty("notification.client.rate-limit.max-wait-ms", "150"));
+
+        assertEquals(0, limiter.reserve());
+        assertEquals(0, limiter.reserve());
+        long wait = limiter.reserve();
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(50) && wait <= TimeUnit.MILLISECONDS.toNanos(100), "wait " + wait);
+        // следующий токен появится только через ~200 мс, это больше max-wait-ms
+        assertEquals(-1, limiter.reserve());
+    }
+
+    private static void call(NotificationCircuitBreaker breaker, boolean failed) {
+        assertTrue(breaker.tryAcquirePermission());
+        if (failed) {
+            breaker.onError(FAST);
+        } else {
+            breaker.onSuccess(FAST);
+        }
+    }
+}
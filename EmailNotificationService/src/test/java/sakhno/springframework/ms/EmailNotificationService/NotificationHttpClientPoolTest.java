@@ -0,0 +1,113 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.client.RestTemplate;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationHttpClientPool;
+import sakhno.springframework.ms.EmailNotificationService.exception.RetryableException;
+import sakhno.springframework.ms.EmailNotificationService.resilience.NotificationCircuitBreaker;
+import sakhno.springframework.ms.EmailNotificationService.resilience.TokenBucketRateLimiter;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotificationHttpClientPoolTest {
+    private final MockEnvironment environment = new MockEnvironment()
+            .withProperty("notification.client.connect-timeout-ms", "1000")
+            .withProperty("notification.client.read-timeout-ms", "1000")
+            .withProperty("notification.client.http.pool.max-total", "10")
+            .withProperty("notification.client.http.pool.max-per-route", "2")
+            .withProperty("notification.client.http.pool.acquire-timeout-ms", "250")
+            .withProperty("notification.client.circuit-breaker.minimum-calls", "100")
+            .withProperty("notification.client.rate-limit.enabled", "false");
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private NotificationStubServer server;
+    private NotificationHttpClientPool pool;
+
+    @AfterEach
+    void tearDown() {
+        pool.destroy();
+        server.close();
+    }
+
+    @Test
+    void testSendNotification_whenCalledSequentially_reusesOneConnection() {
+        server = new NotificationStubServer(0);
+        NotificationClient client = client();
+
+        for (int i = 0; i < 20; i++) {
+            client.sendNotification();
+        }
+        assertEquals(20, server.getRequests());
+        assertEquals(0, pool.getStats().getLeased());
+        assertEquals(1, pool.getStats().getAvailable());
+        assertEquals(10, meterRegistry.get("notification.client.pool.max").gauge().value());
+    }
+
+    @Test
+    void testSendNotification_whenRouteLimitReached_waitsThenFailsRetryableWithoutBreakerFailure() throws Exception {
+        server = new NotificationStubServer(600);
+        NotificationClient client = client();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                calls.add(CompletableFuture.runAsync(client::sendNotification, executor));
+            }
+            await().untilAsserted(() -> {
+                assertEquals(2, meterRegistry.get("notification.client.pool.leased").gauge().value());
+                assertEquals(2, meterRegistry.get("notification.client.pool.pending").gauge().value());
+            });
+            int rejected = 0;
+            for (CompletableFuture<Void> call : calls) {
+                try {
+                    call.join();
+                } catch (Exception e) {
+                    RetryableException cause = assertInstanceOf(RetryableException.class, e.getCause());
+                    assertInstanceOf(ConnectionRequestTimeoutException.class, cause.getCause().getCause());
+                    rejected++;
+                }
+            }
+            assertEquals(2, rejected);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, server.getMaxConcurrentRequests());
+        assertEquals(0, meterRegistry.get("notification.client.circuit-breaker.calls").tag("outcome", "failure")
+                .functionCounter().count());
+    }
+
+    @Test
+    void testSendNotification_whenReadTimeoutExpires_failsRetryableAndCountsBreakerFailure() {
+        server = new NotificationStubServer(1500);
+        NotificationClient client = client();
+
+        RetryableException exception = assertThrows(RetryableException.class, client::sendNotification);
+        assertInstanceOf(SocketTimeoutException.class, exception.getCause().getCause());
+        assertEquals(1, meterRegistry.get("notification.client.circuit-breaker.calls").tag("outcome", "failure")
+                .functionCounter().count());
+    }
+
+    private NotificationClient client() {
+        pool = new NotificationHttpClientPool(environment);
+        pool.bindTo(meterRegistry);
+        NotificationCircuitBreaker circuitBreaker = new NotificationCircuitBreaker(environment);
+        circuitBreaker.bindTo(meterRegistry);
+        return new NotificationClient(new RestTemplate(pool.requestFactory()), HttpClient.newHttpClient(),
+                circuitBreaker, new TokenBucketRateLimiter(environment), server.getUrl(), 1000);
+    }
+}
@@ -0,0 +1,126 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerGroupMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import sakhno.springframework.ms.EmailNotificationService.cache.ProcessedEventCache;
+import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ProcessedEventCacheTest {
+    private static final String TOPIC = "product-created-events-topic";
+    private static final TopicPartition PARTITION_0 = new TopicPartition(TOPIC, 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition(TOPIC, 1);
+
+    @Test
+    void testLookup_whenLoadedOnStartup_answersWithoutDatabase() {
+        ProcessedEventEntity processedEvent = new ProcessedEventEntity("loaded-id", "product");
+        processedEvent.setId(1L);
+        ProcessedEventRepository repository = mock(ProcessedEventRepository.class);
+        when(repository.findByIdGreaterThanOrderByIdAsc(eq(0L), any())).thenReturn(List.of(processedEvent));
+
+        ProcessedEventCache cache = createCache(repository, bloomFilterEnabled());
+        cache.onPartitionsAssigned(consumer(1), List.of(PARTITION_0));
+
+        assertEquals(ProcessedEventCache.Lookup.DUPLICATE, cache.lookup("loaded-id", TOPIC, 0));
+        assertEquals(ProcessedEventCache.Lookup.NEW, cache.lookup(UUID.randomUUID().toString(), TOPIC, 0));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getBloomNegatives());
+    }
+
+    @Test
+    void testPutAfterCommit_whenMaxSizeExceeded_evictsOldestAndKeepsBloomFilter() {
+        MockEnvironment environment = bloomFilterEnabled()
+                .withProperty("notification.dedup.cache.max-size", "2");
+        ProcessedEventCache cache = createCache(mock(ProcessedEventRepository.class), environment);
+        cache.onPartitionsAssigned(consumer(1), List.of(PARTITION_0));
+
+        cache.putAfterCommit("first");
+        cache.putAfterCommit("second");
+        cache.putAfterCommit("third");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        // вытесненный идентификатор остается в фильтре Блума, поэтому нужен запрос в БД
+        assertEquals(ProcessedEventCache.Lookup.UNKNOWN, cache.lookup("first", TOPIC, 0));
+        assertEquals(ProcessedEventCache.Lookup.DUPLICATE, cache.lookup("third", TOPIC, 0));
+    }
+
+    @Test
+    void testLookup_whenPartitionNotOwnedSinceStartup_requiresDatabase() {
+        ProcessedEventCache cache = createCache(mock(ProcessedEventRepository.class), bloomFilterEnabled());
+        Consumer<?, ?> consumer = consumer(1);
+        String messageId = UUID.randomUUID().toString();
+
+        // до назначения партиции ее записи мог обрабатывать другой экземпляр
+        assertEquals(ProcessedEventCache.Lookup.UNKNOWN, cache.lookup(messageId, TOPIC, 0));
+        cache.onPartitionsAssigned(consumer, List.of(PARTITION_0));
+        assertEquals(ProcessedEventCache.Lookup.NEW, cache.lookup(messageId, TOPIC, 0));
+
+        // перебалансировка: партиция 0 вернулась в следующем поколении, партиция 1 пришла от другого экземпляра
+        cache.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION_0));
+        when(consumer.groupMetadata()).thenReturn(groupMetadata(2));
+        cache.onPartitionsAssigned(consumer, List.of(PARTITION_0, PARTITION_1));
+        assertEquals(ProcessedEventCache.Lookup.NEW, cache.lookup(messageId, TOPIC, 0));
+        assertEquals(ProcessedEventCache.Lookup.UNKNOWN, cache.lookup(messageId, TOPIC, 1));
+
+        // между отзывом и назначением прошло поколение, в котором партиция принадлежала другому экземпляру
+        cache.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION_0, PARTITION_1));
+        when(consumer.groupMetadata()).thenReturn(groupMetadata(4));
+        cache.onPartitionsAssigned(consumer, List.of(PARTITION_0));
+        assertEquals(ProcessedEventCache.Lookup.UNKNOWN, cache.lookup(messageId, TOPIC, 0));
+    }
+
+    @Test
+    void testLookup_whenBloomFilterNotConfigured_neverAnswersNew() {
+        ProcessedEventCache cache = createCache(mock(ProcessedEventRepository.class), new MockEnvironment());
+        cache.onPartitionsAssigned(consumer(1), List.of(PARTITION_0));
+
+        assertEquals(ProcessedEventCache.Lookup.UNKNOWN, cache.lookup(UUID.randomUUID().toString(), TOPIC, 0));
+    }
+
+    @Test
+    void testLookup_whenDisabled_alwaysRequiresDatabase() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("notification.dedup.cache.enabled", "false");
+        ProcessedEventCache cache = createCache(mock(ProcessedEventRepository.class), environment);
+
+        cache.putAfterCommit("id");
+
+        assertEquals(ProcessedEventCache.Lookup.UNKNOWN, cache.lookup("id", TOPIC, 0));
+    }
+
+    private static MockEnvironment bloomFilterEnabled() {
+        return new MockEnvironment().withProperty("notification.dedup.cache.bloom-filter.enabled", "true");
+    }
+
+    private static Consumer<?, ?> consumer(int generation) {
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        when(consumer.groupMetadata()).thenReturn(groupMetadata(generation));
+        return consumer;
+    }
+
+    private static ConsumerGroupMetadata groupMetadata(int generation) {
+        return new ConsumerGroupMetadata("group", generation, "member", Optional.empty());
+    }
+
+    private ProcessedEventCache createCache(ProcessedEventRepository repository, MockEnvironment environment) {
+        ProcessedEventCache cache = new ProcessedEventCache(repository, environment);
+        ReflectionTestUtils.invokeMethod(cache, "load");
+        return cache;
+    }
+}
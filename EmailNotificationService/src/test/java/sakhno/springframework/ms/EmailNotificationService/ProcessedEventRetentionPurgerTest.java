@@ -0,0 +1,50 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.EmailNotificationService.retention.ProcessedEventRetentionPurger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@DataJpaTest(properties = {"notification.dedup.retention-ms=3600000", "notification.dedup.purge.batch-size=7"})
+@Import(ProcessedEventRetentionPurger.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ProcessedEventRetentionPurgerTest {
+    @Autowired
+    ProcessedEventRepository processedEventRepository;
+    @Autowired
+    ProcessedEventRetentionPurger processedEventRetentionPurger;
+
+    @Test
+    void testPurge_whenRowsOlderThanRetention_deletesOnlyExpiredRowsInBatches() {
+        List<ProcessedEventEntity> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ProcessedEventEntity expired = new ProcessedEventEntity(UUID.randomUUID().toString(), "expired");
+            expired.setProcessedAt(Instant.now().minus(Duration.ofHours(2)));
+            events.add(expired);
+        }
+        String freshId = UUID.randomUUID().toString();
+        events.add(new ProcessedEventEntity(freshId, "fresh"));
+        processedEventRepository.saveAll(events);
+
+        assertEquals(20, processedEventRetentionPurger.purge());
+
+        assertEquals(1, processedEventRepository.count());
+        assertNotNull(processedEventRepository.findByMessageId(freshId));
+        assertNull(processedEventRepository.findByMessageId(events.get(0).getMessageId()));
+    }
+}
@@ -0,0 +1,97 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.client.RestTemplate;
+import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 1, topics = {"product-created-events-topic", "product-created-events-topic-dlt"})
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.datasource.url=jdbc:h2:mem:batch-handler-test",
+        "notification.listener.mode=batch",
+        // строка processed_events вставляется тестом напрямую, мимо кэша; дубликат должен найти запрос IN
+        "notification.dedup.cache.bloom-filter.enabled=false"})
+public class ProductCreatedEventBatchHandlerIntegrationTest {
+    @MockitoBean
+    RestTemplate restTemplate;
+    @Autowired
+    ProcessedEventRepository processedEventRepository;
+    @Autowired
+    KafkaTemplate<String, Object> kafkaTemplate;
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Test
+    public void testBatchHandler_whenBatchHasDuplicatesAndPoisonRecord_savesNewAndRoutesPoisonToDlt() throws Exception {
+        when(restTemplate.exchange(any(String.class), any(HttpMethod.class), isNull(), eq(String.class)))
+                .thenReturn(new ResponseEntity<>("{}", HttpStatus.OK));
+
+        String alreadyProcessedId = UUID.randomUUID().toString();
+        processedEventRepository.save(new ProcessedEventEntity(alreadyProcessedId, "processed"));
+        String repeatedId = UUID.randomUUID().toString();
+
+        send(UUID.randomUUID().toString());
+        send(alreadyProcessedId);
+        send(repeatedId);
+        send(null);
+        send(repeatedId);
+        send(UUID.randomUUID().toString());
+        send(UUID.randomUUID().toString());
+        kafkaTemplate.flush();
+
+        Map<String, Object> consumerProperties = KafkaTestUtils.consumerProps("dlt-reader", "false", embeddedKafkaBroker);
+        try (Consumer<String, String> consumer = new DefaultKafkaConsumerFactory<>(consumerProperties,
+                new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            embeddedKafkaBroker.consumeFromAnEmbeddedTopic(consumer, "product-created-events-topic-dlt");
+            ConsumerRecord<String, String> deadLetter = KafkaTestUtils.getSingleRecord(consumer,
+                    "product-created-events-topic-dlt", Duration.ofSeconds(30));
+            assertNull(deadLetter.headers().lastHeader("messageId"));
+        }
+
+        await().atMost(Duration.ofSeconds(30))
+                .untilAsserted(() -> assertEquals(5, processedEventRepository.count()));
+        verify(restTemplate, times(4)).exchange(any(String.class), any(HttpMethod.class), isNull(), eq(String.class));
+    }
+
+    private void send(String messageId) {
+        String productId = UUID.randomUUID().toString();
+        ProducerRecord<String, Object> record = new ProducerRecord<>("product-created-events-topic", productId,
+                new ProductCreatedEvent(productId, "Test", BigDecimal.ONE, 1));
+        if (messageId != null) {
+            record.headers().add("messageId", messageId.getBytes());
+        }
+        kafkaTemplate.send(record);
+    }
+}
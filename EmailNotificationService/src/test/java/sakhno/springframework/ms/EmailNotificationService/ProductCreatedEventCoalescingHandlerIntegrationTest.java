@@ -0,0 +1,124 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
+import sakhno.springframework.ms.EmailNotificationService.handler.ProductCreatedEventCoalescingHandler;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 1, topics = {"product-created-events-topic", "product-created-events-topic-dlt"})
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.datasource.url=jdbc:h2:mem:coalescing-handler-test",
+        "notification.listener.mode=coalescing",
+        "notification.listener.coalescing.window-ms=500",
+        "notification.listener.coalescing.max-size=50"})
+public class ProductCreatedEventCoalescingHandlerIntegrationTest {
+    private static final int KEYS = 4;
+    private static final int RECORDS_PER_KEY = 50;
+    private static final int RECORDS = KEYS * RECORDS_PER_KEY;
+
+    private static final NotificationStubServer server = new NotificationStubServer(10);
+
+    @Autowired
+    ProcessedEventRepository processedEventRepository;
+    @Autowired
+    KafkaTemplate<String, Object> kafkaTemplate;
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafkaBroker;
+    @Autowired
+    ProductCreatedEventCoalescingHandler coalescingHandler;
+
+    @DynamicPropertySource
+    static void notificationUrl(DynamicPropertyRegistry registry) {
+        registry.add("notification.url", server::getUrl);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void testCoalescingHandler_whenBurstOfRecords_sendsOneRequestPerWindowInKeyOrderAndCommitsAll() throws Exception {
+        List<String> keys = new ArrayList<>();
+        List<List<String>> messageIdsByKey = new ArrayList<>();
+        for (int k = 0; k < KEYS; k++) {
+            keys.add(UUID.randomUUID().toString());
+            messageIdsByKey.add(new ArrayList<>());
+        }
+        for (int i = 0; i < RECORDS_PER_KEY; i++) {
+            for (int k = 0; k < KEYS; k++) {
+                String messageId = UUID.randomUUID().toString();
+                messageIdsByKey.get(k).add(messageId);
+                send(keys.get(k), messageId);
+            }
+        }
+        // повтор уже отправленного messageId попадает в окно, но не в запрос
+        send(keys.get(0), messageIdsByKey.get(0).get(0));
+        kafkaTemplate.flush();
+
+        await().atMost(Duration.ofSeconds(30))
+                .untilAsserted(() -> assertEquals(RECORDS + 1, coalescingHandler.getCoalescedRecords()));
+
+        assertEquals(RECORDS, processedEventRepository.count());
+        assertEquals(coalescingHandler.getRequests(), server.getRequests());
+        assertTrue(server.getRequests() <= RECORDS / 10,
+                "expected coalesced requests, got " + server.getRequests() + " for " + RECORDS + " records");
+        // идентификаторы строк выдаются в порядке сохранения, поэтому по ним проверяется порядок внутри ключа
+        List<ProcessedEventEntity> saved = new ArrayList<>(processedEventRepository.findAll());
+        saved.sort(Comparator.comparing(ProcessedEventEntity::getId));
+        for (int k = 0; k < KEYS; k++) {
+            String key = keys.get(k);
+            assertEquals(messageIdsByKey.get(k), saved.stream()
+                    .filter(event -> key.equals(event.getProductId()))
+                    .map(ProcessedEventEntity::getMessageId)
+                    .toList());
+        }
+
+        try (AdminClient adminClient = AdminClient.create(Map.of("bootstrap.servers", embeddedKafkaBroker.getBrokersAsString()))) {
+            await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> {
+                Map<TopicPartition, OffsetAndMetadata> offsets = adminClient
+                        .listConsumerGroupOffsets("product-created-events")
+                        .partitionsToOffsetAndMetadata().get();
+                OffsetAndMetadata committed = offsets.get(new TopicPartition("product-created-events-topic", 0));
+                assertEquals(RECORDS + 1, committed == null ? 0 : committed.offset());
+            });
+        }
+    }
+
+    private void send(String key, String messageId) {
+        ProducerRecord<String, Object> record = new ProducerRecord<>("product-created-events-topic", key,
+                new ProductCreatedEvent(key, "Test", BigDecimal.ONE, 1));
+        record.headers().add("messageId", messageId.getBytes());
+        kafkaTemplate.send(record);
+    }
+}
@@ -0,0 +1,107 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.mock.env.MockEnvironment;
+import sakhno.springframework.ms.EmailNotificationService.cache.ProcessedEventCache;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+import sakhno.springframework.ms.EmailNotificationService.dedup.ProcessedEventStore;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+import sakhno.springframework.ms.EmailNotificationService.handler.AsyncListenerSupport;
+import sakhno.springframework.ms.EmailNotificationService.handler.ProductCreatedEventCoalescingHandler;
+import sakhno.springframework.ms.EmailNotificationService.metrics.ConsumerPipelineMetrics;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ProductCreatedEventCoalescingHandlerTest {
+    private static final String TOPIC = "product-created-events-topic";
+
+    private final NotificationClient notificationClient = mock(NotificationClient.class);
+    private final ProcessedEventStore processedEventStore = mock(ProcessedEventStore.class);
+    private final ProcessedEventCache processedEventCache = mock(ProcessedEventCache.class);
+    private final KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+    private final ProductCreatedEventCoalescingHandler handler = new ProductCreatedEventCoalescingHandler(
+            notificationClient, processedEventStore, processedEventCache,
+            new AsyncListenerSupport(mock(DeadLetterPublishingRecoverer.class), registry, new MockEnvironment()),
+            new ConsumerPipelineMetrics(new SimpleMeterRegistry()),
+            new MockEnvironment().withProperty("notification.listener.coalescing.window-ms", "1000"));
+
+    @AfterEach
+    void shutdown() {
+        handler.onPartitionsRevokedBeforeCommit(mock(Consumer.class),
+                List.of(new TopicPartition(TOPIC, 0), new TopicPartition(TOPIC, 1)));
+    }
+
+    @Test
+    void testRevoke_whenWindowOpen_dropsRecordsOfRevokedPartitionWithoutAck() {
+        when(processedEventCache.lookup(anyString(), anyString(), anyInt())).thenReturn(ProcessedEventCache.Lookup.NEW);
+        when(processedEventStore.findContained(anyMap())).thenReturn(Set.of());
+        Acknowledgment revokedAck = mock(Acknowledgment.class);
+        Acknowledgment keptAck = mock(Acknowledgment.class);
+
+        handler.handle(record(0), revokedAck);
+        handler.handle(record(1), keptAck);
+        handler.onPartitionsRevokedBeforeCommit(mock(Consumer.class), List.of(new TopicPartition(TOPIC, 0)));
+
+        verify(keptAck, timeout(5000)).acknowledge();
+        verify(notificationClient).sendNotifications(argThat(events -> events.size() == 1));
+        verify(revokedAck, never()).acknowledge();
+    }
+
+    @Test
+    void testClose_whenPreviousWindowPublishesToDlt_startsNextWindowOfGroupAfterItsAck() {
+        when(processedEventCache.lookup(anyString(), anyString(), anyInt())).thenReturn(ProcessedEventCache.Lookup.NEW);
+        when(processedEventStore.findContained(anyMap())).thenReturn(Set.of());
+        List<String> calls = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            calls.add("send");
+            if (calls.size() == 1) {
+                throw new NonRetryableException("rejected");
+            }
+            return null;
+        }).when(notificationClient).sendNotifications(anyList());
+        // первая публикация в DLT не удается и повторяется через initial-backoff-ms
+        DeadLetterPublishingRecoverer recoverer = mock(DeadLetterPublishingRecoverer.class);
+        doThrow(new KafkaException("broker unavailable")).doNothing().when(recoverer).accept(any(), any());
+        ProductCreatedEventCoalescingHandler sizeHandler = new ProductCreatedEventCoalescingHandler(
+                notificationClient, processedEventStore, processedEventCache,
+                new AsyncListenerSupport(recoverer, registry, new MockEnvironment()
+                        .withProperty("notification.listener.dlt.initial-backoff-ms", "300")),
+                new ConsumerPipelineMetrics(new SimpleMeterRegistry()),
+                new MockEnvironment().withProperty("notification.listener.coalescing.max-size", "1"));
+        Acknowledgment firstAck = mock(Acknowledgment.class);
+        doAnswer(invocation -> calls.add("ack")).when(firstAck).acknowledge();
+        Acknowledgment secondAck = mock(Acknowledgment.class);
+
+        sizeHandler.handle(record(0), firstAck);
+        sizeHandler.handle(record(0), secondAck);
+
+        verify(secondAck, timeout(5000)).acknowledge();
+        assertEquals(List.of("send", "ack", "send"), calls);
+    }
+
+    private static ConsumerRecord<String, ProductCreatedEvent> record(int partition) {
+        String productId = UUID.randomUUID().toString();
+        ConsumerRecord<String, ProductCreatedEvent> record = new ConsumerRecord<>(TOPIC, partition, 0, productId,
+                new ProductCreatedEvent(productId, "Samsung", new BigDecimal(600), 1));
+        record.headers().add("messageId", UUID.randomUUID().toString().getBytes());
+        return record;
+    }
+}
@@ -14,9 +14,9 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 import org.springframework.web.client.RestTemplate;
 import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
-import sakhno.springframework.ms.EmailNotificationService.event.ProductCreatedEvent;
 import sakhno.springframework.ms.EmailNotificationService.handler.ProductCreatedEventHandler;
 import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
 
 import java.math.BigDecimal;
 import java.util.UUID;
@@ -28,7 +28,8 @@ import static org.mockito.Mockito.*;
 
 @ActiveProfiles("test")
 @EmbeddedKafka
-@SpringBootTest(properties = "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}")
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}"})
 public class ProductCreatedEventHandlerIntegrationTest {
     @MockitoBean
     ProcessedEventRepository processedEventRepository;
@@ -55,7 +56,7 @@ public class ProductCreatedEventHandlerIntegrationTest {
 
         ProcessedEventEntity processedEvent = new ProcessedEventEntity();
         when(processedEventRepository.findByMessageId(anyString())).thenReturn(processedEvent);
-        when(processedEventRepository.save(any(ProcessedEventEntity.class))).thenReturn(null);
+        when(processedEventRepository.saveAndFlush(any(ProcessedEventEntity.class))).thenReturn(null);
 
         String responseBody = "{\"key\":\"value\"}";
         HttpHeaders headers = new HttpHeaders();
@@ -76,7 +77,8 @@ public class ProductCreatedEventHandlerIntegrationTest {
         ArgumentCaptor<ProductCreatedEvent> processedEventCaptor = ArgumentCaptor.forClass(ProductCreatedEvent.class);
 
         verify(productCreatedEventHandler, timeout(5000).times(1)).handle(
-                processedEventCaptor.capture(), messageIdCaptor.capture(), messageKeyCaptor.capture());
+                processedEventCaptor.capture(), messageIdCaptor.capture(), messageKeyCaptor.capture(), anyString(),
+                anyInt(), anyLong(), any());
 
         assertEquals(messageId, messageIdCaptor.getValue());
         assertEquals(messageKey, messageKeyCaptor.getValue());
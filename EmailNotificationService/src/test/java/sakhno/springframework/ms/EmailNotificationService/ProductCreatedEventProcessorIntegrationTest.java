@@ -0,0 +1,55 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import sakhno.springframework.ms.EmailNotificationService.cache.ProcessedEventCache;
+import sakhno.springframework.ms.EmailNotificationService.client.NotificationClient;
+import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
+import sakhno.springframework.ms.EmailNotificationService.exception.NonRetryableException;
+import sakhno.springframework.ms.EmailNotificationService.handler.ProductCreatedEventProcessor;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 1)
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.datasource.url=jdbc:h2:mem:event-processor-test"})
+public class ProductCreatedEventProcessorIntegrationTest {
+    @MockitoBean
+    NotificationClient notificationClient;
+    @MockitoBean
+    ProcessedEventCache processedEventCache;
+    @Autowired
+    ProcessedEventRepository processedEventRepository;
+    @Autowired
+    ProductCreatedEventProcessor productCreatedEventProcessor;
+
+    @Test
+    public void testProcess_whenMessageIdSavedConcurrently_throwsNonRetryableInsideHandler() {
+        String messageId = UUID.randomUUID().toString();
+        String productId = UUID.randomUUID().toString();
+        // другой экземпляр записал messageId между проверкой на дубликат и вставкой
+        when(processedEventCache.lookup(anyString(), anyString(), anyInt())).thenReturn(ProcessedEventCache.Lookup.NEW);
+        processedEventRepository.save(new ProcessedEventEntity(messageId, productId));
+
+        assertThrows(NonRetryableException.class, () -> productCreatedEventProcessor.process(
+                new ProductCreatedEvent(productId, "Test", BigDecimal.ONE, 1), messageId, productId, "product-created-events-topic", 0));
+        assertEquals(1, processedEventRepository.count());
+    }
+}
@@ -0,0 +1,118 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import sakhno.springframework.ms.EmailNotificationService.entety.ProcessedEventEntity;
+import sakhno.springframework.ms.EmailNotificationService.exception.RetryableException;
+import sakhno.springframework.ms.EmailNotificationService.handler.ProductCreatedEventProcessor;
+import sakhno.springframework.ms.EmailNotificationService.repository.ProcessedEventRepository;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 1, topics = {"product-created-events-topic", "product-created-events-topic-dlt"})
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.datasource.url=jdbc:h2:mem:retry-topic-test",
+        "notification.listener.mode=record",
+        "notification.retry.initial-delay-ms=1000",
+        "notification.retry.multiplier=2",
+        "notification.retry.max-delay-ms=4000"})
+public class ProductCreatedEventRetryTopicIntegrationTest {
+    private static final NotificationStubServer server = new NotificationStubServer(0);
+
+    @MockitoSpyBean
+    ProductCreatedEventProcessor productCreatedEventProcessor;
+    @Autowired
+    ProcessedEventRepository processedEventRepository;
+    @Autowired
+    KafkaTemplate<String, Object> kafkaTemplate;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void notificationUrl(DynamicPropertyRegistry registry) {
+        registry.add("notification.url", server::getUrl);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void testRetryTopics_whenRecordsFail_moveThemOffMainPartitionThroughTiersToDlt() {
+        String poisonId = UUID.randomUUID().toString();
+        String transientId = UUID.randomUUID().toString();
+        String healthyId = UUID.randomUUID().toString();
+        doThrow(new RetryableException("notification service is down"))
+                .when(productCreatedEventProcessor).process(argThat(event -> event.getProductId().equals(poisonId)), any(), any(), any(), anyInt());
+        doThrow(new RetryableException("notification service is down")).doCallRealMethod()
+                .when(productCreatedEventProcessor).process(argThat(event -> event.getProductId().equals(transientId)), any(), any(), any(), anyInt());
+
+        send(poisonId);
+        send(transientId);
+        send(healthyId);
+        kafkaTemplate.flush();
+
+        await().atMost(Duration.ofSeconds(30))
+                .untilAsserted(() -> assertEquals(2, processedEventRepository.count()));
+        // запись после упавших обрабатывается сразу, а не после их повторов
+        ProcessedEventEntity healthy = processedEventRepository.findAll().stream()
+                .filter(event -> event.getProductId().equals(healthyId)).findFirst().orElseThrow();
+        ProcessedEventEntity recovered = processedEventRepository.findAll().stream()
+                .filter(event -> event.getProductId().equals(transientId)).findFirst().orElseThrow();
+        assertTrue(healthy.getId() < recovered.getId(), "main partition was blocked by retries");
+
+        await().atMost(Duration.ofSeconds(30))
+                .untilAsserted(() -> assertEquals(1.0, count("dlt", "success")));
+        assertEquals(1.0, count("main", "success"));
+        assertEquals(2.0, count("main", "failure"));
+        assertEquals(1.0, count("retry-1000", "success"));
+        assertEquals(1.0, count("retry-1000", "failure"));
+        assertEquals(1.0, count("retry-2000", "failure"));
+        assertEquals(1.0, count("retry-4000", "failure"));
+        // счетчики ступеней зарегистрированы заранее, в том числе без единой записи
+        assertNotNull(meterRegistry.find("notification.retry.tier.records").tag("tier", "retry-4000")
+                .tag("outcome", "success").counter());
+        assertEquals(0.0, count("retry-4000", "success"));
+    }
+
+    private double count(String tier, String outcome) {
+        Counter counter = meterRegistry.find("notification.retry.tier.records")
+                .tag("tier", tier).tag("outcome", outcome).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private void send(String productId) {
+        ProducerRecord<String, Object> record = new ProducerRecord<>("product-created-events-topic", productId,
+                new ProductCreatedEvent(productId, "Test", BigDecimal.ONE, 1));
+        record.headers().add("messageId", UUID.randomUUID().toString().getBytes());
+        kafkaTemplate.send(record);
+    }
+}
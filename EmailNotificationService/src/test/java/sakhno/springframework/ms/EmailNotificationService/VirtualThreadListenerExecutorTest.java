@@ -0,0 +1,81 @@
+package sakhno.springframework.ms.EmailNotificationService;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Контейнеры фабрики из KafkaConfig при spring.threads.virtual.enabled=true: на Java 21+ обработчик выполняется в
+ * виртуальных потоках kafka-listener-vt-*, на более старой JVM настройка не действует и контейнер работает на
+ * платформенных потоках. В обоих случаях все записи должны быть обработаны.
+ */
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3, topics = "vt-listener-executor")
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.threads.virtual.enabled=true"})
+public class VirtualThreadListenerExecutorTest {
+    private static final String TOPIC = "vt-listener-executor";
+    private static final int RECORDS = 30;
+
+    @Autowired
+    ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory;
+    @Autowired
+    KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Test
+    void testListener_whenVirtualThreadsEnabled_runsOnExecutorSupportedByJvm() throws Exception {
+        for (int i = 0; i < RECORDS; i++) {
+            String productId = UUID.randomUUID().toString();
+            kafkaTemplate.send(TOPIC, productId, new ProductCreatedEvent(productId, "Test", BigDecimal.ONE, 1));
+        }
+        kafkaTemplate.flush();
+
+        CountDownLatch latch = new CountDownLatch(RECORDS);
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        ConcurrentMessageListenerContainer<String, Object> container =
+                kafkaListenerContainerFactory.createContainer(TOPIC);
+        container.setConcurrency(3);
+        container.getContainerProperties().setGroupId(TOPIC);
+        container.setupMessageListener((MessageListener<String, Object>) (ConsumerRecord<String, Object> record) -> {
+            threadNames.add(Thread.currentThread().getName());
+            latch.countDown();
+        });
+
+        container.start();
+        try {
+            assertTrue(latch.await(60, TimeUnit.SECONDS));
+        } finally {
+            container.stop();
+        }
+
+        if (JRE.currentVersion().compareTo(JRE.JAVA_21) >= 0) {
+            assertTrue(threadNames.stream().allMatch(name -> name.startsWith("kafka-listener-vt-")),
+                    "listener threads: " + threadNames);
+        } else {
+            assertFalse(threadNames.stream().anyMatch(name -> name.startsWith("kafka-listener-vt-")),
+                    "listener threads: " + threadNames);
+        }
+    }
+}
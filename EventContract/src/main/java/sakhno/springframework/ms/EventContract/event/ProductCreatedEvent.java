@@ -0,0 +1,77 @@
+package sakhno.springframework.ms.EventContract.event;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Событие создания продукта, публикуется KafkaMicroservice в product-created-events-topic и читается
+ * EmailNotificationService. Формат передачи - {@link sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventCodec}.
+ */
+public class ProductCreatedEvent {
+    private String productId;
+    private String title;
+    private BigDecimal price;
+    private Integer quantity;
+
+    public ProductCreatedEvent() {
+    }
+
+    public ProductCreatedEvent(String productId, String title, BigDecimal price, Integer quantity) {
+        this.productId = productId;
+        this.title = title;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ProductCreatedEvent that = (ProductCreatedEvent) o;
+        return Objects.equals(productId, that.productId) && Objects.equals(title, that.title)
+                && Objects.equals(price, that.price) && Objects.equals(quantity, that.quantity);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(productId, title, price, quantity);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductCreatedEvent{productId='" + productId + "', title='" + title + "', price=" + price
+                + ", quantity=" + quantity + '}';
+    }
+}
@@ -0,0 +1,181 @@
+package sakhno.springframework.ms.EventContract.serialization;
+
+import org.apache.kafka.common.errors.SerializationException;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Двоичный формат ProductCreatedEvent.
+ * <pre>
+ * version   1 байт  - версия схемы, сейчас 1
+ * presence  1 байт  - биты заданных полей: 0 productId, 1 title, 2 price, 3 quantity
+ * productId varint длина + UTF-8
+ * title     varint длина + UTF-8
+ * price     zigzag varint scale + varint длина + unscaled value (дополнительный код, big-endian)
+ * quantity  zigzag varint
+ * </pre>
+ * Отсутствующие (null) поля не записываются. Новые поля добавляются в конец с увеличением версии; читатель
+ * отклоняет версии, которых не знает, поэтому при изменении схемы сначала обновляются потребители, затем продюсер.
+ */
+public final class ProductCreatedEventCodec {
+    public static final byte VERSION = 1;
+
+    private static final int PRODUCT_ID = 1;
+    private static final int TITLE = 1 << 1;
+    private static final int PRICE = 1 << 2;
+    private static final int QUANTITY = 1 << 3;
+
+    private ProductCreatedEventCodec() {
+    }
+
+    public static byte[] encode(ProductCreatedEvent event) {
+        byte[] productId = event.getProductId() == null ? null : event.getProductId().getBytes(StandardCharsets.UTF_8);
+        byte[] title = event.getTitle() == null ? null : event.getTitle().getBytes(StandardCharsets.UTF_8);
+        byte[] unscaled = event.getPrice() == null ? null : event.getPrice().unscaledValue().toByteArray();
+
+        Writer writer = new Writer(2 + size(productId) + size(title)
+                + (unscaled == null ? 0 : 5 + size(unscaled)) + (event.getQuantity() == null ? 0 : 5));
+        writer.writeByte(VERSION);
+        writer.writeByte((productId == null ? 0 : PRODUCT_ID) | (title == null ? 0 : TITLE)
+                | (unscaled == null ? 0 : PRICE) | (event.getQuantity() == null ? 0 : QUANTITY));
+        if (productId != null) {
+            writer.writeBytes(productId);
+        }
+        if (title != null) {
+            writer.writeBytes(title);
+        }
+        if (unscaled != null) {
+            writer.writeVarint(zigzag(event.getPrice().scale()));
+            writer.writeBytes(unscaled);
+        }
+        if (event.getQuantity() != null) {
+            writer.writeVarint(zigzag(event.getQuantity()));
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * @throws SerializationException - если версия неизвестна или данные повреждены
+     */
+    public static ProductCreatedEvent decode(byte[] data) {
+        Reader reader = new Reader(data);
+        int version = reader.readByte();
+        if (version != VERSION) {
+            throw new SerializationException("Unsupported ProductCreatedEvent version: " + version);
+        }
+        int presence = reader.readByte();
+        ProductCreatedEvent event = new ProductCreatedEvent();
+        if ((presence & PRODUCT_ID) != 0) {
+            event.setProductId(reader.readString());
+        }
+        if ((presence & TITLE) != 0) {
+            event.setTitle(reader.readString());
+        }
+        if ((presence & PRICE) != 0) {
+            int scale = unzigzag(reader.readVarint());
+            event.setPrice(new BigDecimal(new BigInteger(reader.readBytes()), scale));
+        }
+        if ((presence & QUANTITY) != 0) {
+            event.setQuantity(unzigzag(reader.readVarint()));
+        }
+        if (reader.position != data.length) {
+            throw new SerializationException("Unexpected trailing bytes in ProductCreatedEvent");
+        }
+        return event;
+    }
+
+    private static int size(byte[] bytes) {
+        return bytes == null ? 0 : 5 + bytes.length;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private final byte[] buffer;
+        private int position;
+
+        Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readByte() {
+            if (position >= data.length) {
+                throw new SerializationException("Truncated ProductCreatedEvent");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new SerializationException("Malformed varint in ProductCreatedEvent");
+        }
+
+        byte[] readBytes() {
+            int length = readVarint();
+            if (length < 0 || length > data.length - position) {
+                throw new SerializationException("Truncated ProductCreatedEvent");
+            }
+            byte[] bytes = Arrays.copyOfRange(data, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        String readString() {
+            int length = readVarint();
+            if (length < 0 || length > data.length - position) {
+                throw new SerializationException("Truncated ProductCreatedEvent");
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package sakhno.springframework.ms.EventContract.serialization;
+
+import org.apache.kafka.common.serialization.Deserializer;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+/**
+ * Десериализатор значения Kafka из двоичного формата {@link ProductCreatedEventCodec}. При неизвестной версии или
+ * поврежденных данных бросает SerializationException; вместе с ErrorHandlingDeserializer запись уходит в DLT.
+ */
+public class ProductCreatedEventDeserializer implements Deserializer<ProductCreatedEvent> {
+
+    @Override
+    public ProductCreatedEvent deserialize(String topic, byte[] data) {
+        return data == null ? null : ProductCreatedEventCodec.decode(data);
+    }
+}
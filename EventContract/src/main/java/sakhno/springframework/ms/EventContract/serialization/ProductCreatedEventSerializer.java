@@ -0,0 +1,15 @@
+package sakhno.springframework.ms.EventContract.serialization;
+
+import org.apache.kafka.common.serialization.Serializer;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+/**
+ * Сериализатор значения Kafka в двоичный формат {@link ProductCreatedEventCodec}. Заголовки типа не добавляются.
+ */
+public class ProductCreatedEventSerializer implements Serializer<ProductCreatedEvent> {
+
+    @Override
+    public byte[] serialize(String topic, ProductCreatedEvent data) {
+        return data == null ? null : ProductCreatedEventCodec.encode(data);
+    }
+}
@@ -0,0 +1,74 @@
+package sakhno.springframework.ms.EventContract;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventCodec;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventDeserializer;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventSerializer;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductCreatedEventCodecTest {
+    private static final Logger log = LoggerFactory.getLogger(ProductCreatedEventCodecTest.class);
+
+    @Test
+    void testCodec_whenRoundTrip_preservesAllFields() {
+        assertRoundTrip(new ProductCreatedEvent(UUID.randomUUID().toString(), "Ноутбук 💻",
+                new BigDecimal("1299.990"), 7));
+        assertRoundTrip(new ProductCreatedEvent("p", "", new BigDecimal("-12345678901234567890.5"), Integer.MIN_VALUE));
+        assertRoundTrip(new ProductCreatedEvent("p", "t", new BigDecimal("1E+5"), Integer.MAX_VALUE));
+        assertRoundTrip(new ProductCreatedEvent(null, null, null, null));
+    }
+
+    @Test
+    void testCodec_whenVersionUnknownOrDataTruncated_throwsSerializationException() {
+        byte[] encoded = ProductCreatedEventCodec.encode(
+                new ProductCreatedEvent("product", "title", BigDecimal.TEN, 1));
+
+        byte[] newerVersion = encoded.clone();
+        newerVersion[0] = ProductCreatedEventCodec.VERSION + 1;
+        assertThrows(SerializationException.class, () -> ProductCreatedEventCodec.decode(newerVersion));
+        assertThrows(SerializationException.class,
+                () -> ProductCreatedEventCodec.decode(Arrays.copyOf(encoded, encoded.length - 1)));
+        // JSON-сообщение старого формата начинается с '{' и отклоняется по версии
+        assertThrows(SerializationException.class,
+                () -> ProductCreatedEventCodec.decode("{\"productId\":\"p\"}".getBytes()));
+    }
+
+    @Test
+    void testSerializer_whenComparedWithJson_isSmaller() {
+        ProductCreatedEvent event = new ProductCreatedEvent(UUID.randomUUID().toString(), "Test product",
+                new BigDecimal("199.99"), 3);
+        byte[] binary = new ProductCreatedEventSerializer().serialize("topic", event);
+
+        RecordHeaders headers = new RecordHeaders();
+        byte[] json;
+        try (JsonSerializer<ProductCreatedEvent> jsonSerializer = new JsonSerializer<>()) {
+            json = jsonSerializer.serialize("topic", headers, event);
+        }
+        int jsonHeaderBytes = Arrays.stream(headers.toArray())
+                .mapToInt(header -> header.key().length() + header.value().length).sum();
+
+        log.info("ProductCreatedEvent size: binary {} bytes, JSON {} bytes + type header {} bytes",
+                binary.length, json.length, jsonHeaderBytes);
+        assertTrue(binary.length * 3 < json.length + jsonHeaderBytes);
+        assertEquals(event, new ProductCreatedEventDeserializer().deserialize("topic", binary));
+    }
+
+    private static void assertRoundTrip(ProductCreatedEvent event) {
+        ProductCreatedEvent decoded = ProductCreatedEventCodec.decode(ProductCreatedEventCodec.encode(event));
+        assertEquals(event, decoded);
+        if (event.getPrice() != null) {
+            assertEquals(event.getPrice().scale(), decoded.getPrice().scale());
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package sakhno.springframework.ms.KafkaMicroservice.admin;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ConsumerGroupDescription;
+import org.apache.kafka.clients.admin.CreatePartitionsOptions;
+import org.apache.kafka.clients.admin.LogDirDescription;
+import org.apache.kafka.clients.admin.NewPartitions;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.ReplicaInfo;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.apache.kafka.common.errors.GroupIdNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.KafkaMicroservice.exception.PartitionExpansionRejectedException;
+import sakhno.springframework.ms.KafkaMicroservice.producer.PartitionLatencyTracker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Емкость топика product-created-events-topic во время работы: отчет по партициям, рекомендация числа партиций и
+ * увеличение их числа. Запросы к кластеру выполняются через AdminClient с настройками {@link KafkaAdmin} и адресами
+ * брокеров продюсера.
+ * <p>
+ * Раз в sample-interval-ms в собственном потоке topic-capacity-sampler (вызовы AdminClient блокируются до
+ * admin-timeout-ms и не должны занимать общий планировщик) снимаются конечные offset партиций, offset,
+ * зафиксированные группой потребителей consumer-group, и размер лидерской реплики на диске. Скорость записи и чтения
+ * партиции - разность offset с прошлого снимка, деленная на прошедшее время.
+ * </p>
+ * <p>
+ * Рекомендация: ceil(целевая скорость * (1 + headroom) / скорость потребителя на партицию), но не меньше текущего
+ * числа партиций и не больше max-partitions. Скорость потребителя на партицию задается в запросе или берется из
+ * последнего снимка: максимальная скорость чтения среди партиций с отставанием. Если отставания нет, потребители
+ * успевают за записью, и измеренная скорость - только нижняя граница их возможностей.
+ * </p>
+ * <p>
+ * Число партиций можно только увеличить. Хеш ключа берется по модулю числа партиций, поэтому после увеличения
+ * записи того же ключа уходят в другую партицию, и новая запись может быть обработана раньше старой, еще не
+ * прочитанной. Пока product.producer.partitioner.mode учитывает ключ (default, key-affinity), увеличение выполняется
+ * только с подтверждением acceptKeyReordering.
+ * </p>
+ * <p>
+ * Вместе с топиком до того же числа партиций увеличиваются существующие топики повторов и DLT
+ * (product-created-events-topic-retry-*, product-created-events-topic-dlt): запись, не обработанная потребителем,
+ * публикуется в партицию топика повторов с тем же номером, и партиции, которой там нет, она бы не нашла. Если
+ * сервис уведомлений создает эти топики сам (notification.retry.topics.partitions), его настройку нужно поднять
+ * тоже, иначе новый топик повторов будет создан с прежним числом партиций.
+ * </p>
+ */
+@Component
+public class TopicCapacityService implements DisposableBean {
+    private final static Logger log = LoggerFactory.getLogger(TopicCapacityService.class);
+    private static final String TOPIC = "product-created-events-topic";
+
+    private final KafkaAdmin kafkaAdmin;
+    private final PartitionLatencyTracker partitionLatencyTracker;
+    private final String bootstrapServers;
+    private final String consumerGroup;
+    private final double headroom;
+    private final int maxPartitions;
+    private final long adminTimeoutMs;
+    private final long sampleIntervalMs;
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "topic-capacity-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AdminClient adminClient;
+    private Sample lastSample;
+    private volatile CapacityReport lastReport;
+
+    @Autowired
+    public TopicCapacityService(KafkaAdmin kafkaAdmin, PartitionLatencyTracker partitionLatencyTracker,
+                                Environment environment) {
+        this.kafkaAdmin = kafkaAdmin;
+        this.partitionLatencyTracker = partitionLatencyTracker;
+        this.bootstrapServers = environment.getProperty("spring.kafka.producer.bootstrap-servers");
+        this.consumerGroup = environment.getProperty("product.topic.capacity.consumer-group",
+                "product-created-events");
+        this.headroom = environment.getProperty("product.topic.capacity.headroom", Double.class, 0.2);
+        this.maxPartitions = environment.getProperty("product.topic.capacity.max-partitions", Integer.class, 48);
+        this.adminTimeoutMs = environment.getProperty("product.topic.capacity.admin-timeout-ms", Long.class, 10000L);
+        this.sampleIntervalMs = environment.getProperty("product.topic.capacity.sample-interval-ms", Long.class,
+                10000L);
+    }
+
+    @PostConstruct
+    void start() {
+        sampler.scheduleWithFixedDelay(this::scheduledSample, sampleIntervalMs, sampleIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduledSample() {
+        try {
+            sample();
+        } catch (Exception e) {
+            log.warn("Capacity sample of {} failed: {}", TOPIC, e.getMessage());
+        }
+    }
+
+    /**
+     * Снимок состояния партиций; скорости считаются относительно предыдущего снимка.
+     * @return - отчет по партициям
+     */
+    public synchronized CapacityReport sample() throws Exception {
+        AdminClient admin = adminClient();
+        TopicDescription description = describeTopic(admin);
+        long now = System.nanoTime();
+
+        Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+        for (TopicPartitionInfo partition : description.partitions()) {
+            latest.put(new TopicPartition(TOPIC, partition.partition()), OffsetSpec.latest());
+        }
+        Map<Integer, Long> endOffsets = new HashMap<>();
+        admin.listOffsets(latest).all().get(adminTimeoutMs, TimeUnit.MILLISECONDS)
+                .forEach((topicPartition, info) -> endOffsets.put(topicPartition.partition(), info.offset()));
+
+        Map<Integer, Long> committedOffsets = new HashMap<>();
+        Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(consumerGroup)
+                .partitionsToOffsetAndMetadata().get(adminTimeoutMs, TimeUnit.MILLISECONDS);
+        committed.forEach((topicPartition, offset) -> {
+            if (TOPIC.equals(topicPartition.topic()) && offset != null) {
+                committedOffsets.put(topicPartition.partition(), offset.offset());
+            }
+        });
+        int consumerMembers = consumerMembers(admin);
+
+        List<Integer> brokers = description.partitions().stream()
+                .map(TopicPartitionInfo::leader)
+                .filter(leader -> leader != null)
+                .map(Node::id)
+                .distinct()
+                .toList();
+        Map<Integer, Map<String, LogDirDescription>> logDirs = admin.describeLogDirs(brokers).allDescriptions()
+                .get(adminTimeoutMs, TimeUnit.MILLISECONDS);
+
+        Sample previous = lastSample;
+        double seconds = previous == null ? 0 : (now - previous.timeNanos()) / 1e9;
+        List<PartitionCapacity> partitions = new ArrayList<>();
+        for (TopicPartitionInfo partition : description.partitions()) {
+            int id = partition.partition();
+            long endOffset = endOffsets.getOrDefault(id, 0L);
+            Long committedOffset = committedOffsets.get(id);
+            long lag = committedOffset == null ? endOffset : Math.max(0, endOffset - committedOffset);
+            double produceRate = rate(seconds, endOffset, previous == null ? null : previous.endOffsets().get(id));
+            double consumerRate = committedOffset == null ? 0 : rate(seconds, committedOffset,
+                    previous == null ? null : previous.committedOffsets().get(id));
+            boolean lagging = lag > 0 && previous != null && previous.lag(id) > 0;
+            partitions.add(new PartitionCapacity(id, partition.leader() == null ? -1 : partition.leader().id(),
+                    endOffset, size(logDirs, partition), produceRate, committedOffset, lag, consumerRate, lagging));
+        }
+        lastSample = new Sample(now, endOffsets, committedOffsets);
+        CapacityReport report = new CapacityReport(TOPIC, partitions.size(), System.currentTimeMillis(), seconds,
+                consumerGroup, consumerMembers, partitions);
+        lastReport = report;
+        return report;
+    }
+
+    /**
+     * @return - последний снимок или новый, если снимков еще не было
+     */
+    public CapacityReport report() throws Exception {
+        CapacityReport report = lastReport;
+        return report != null ? report : sample();
+    }
+
+    /**
+     * Рекомендация числа партиций для целевой скорости записи.
+     * @param targetRecordsPerSecond - целевая скорость записи в топик, записей в секунду
+     * @param consumerRatePerPartition - скорость обработки одной партиции потребителем, записей в секунду; null -
+     *                                 взять из последнего снимка
+     */
+    public PartitionRecommendation recommend(double targetRecordsPerSecond, Double consumerRatePerPartition)
+            throws Exception {
+        if (targetRecordsPerSecond <= 0) {
+            throw new IllegalArgumentException("targetRecordsPerSecond must be positive");
+        }
+        CapacityReport report = report();
+        List<String> warnings = new ArrayList<>();
+        double rate;
+        boolean measured = consumerRatePerPartition == null;
+        if (measured) {
+            rate = report.partitionDetails().stream()
+                    .filter(PartitionCapacity::lagging)
+                    .mapToDouble(PartitionCapacity::consumerRate)
+                    .max()
+                    .orElse(0);
+            if (rate <= 0) {
+                rate = report.partitionDetails().stream().mapToDouble(PartitionCapacity::consumerRate).max().orElse(0);
+                if (rate > 0) {
+                    warnings.add("Consumers kept up with producers during the last sample: the measured rate "
+                            + "is a lower bound of their capacity and the recommendation may be too high");
+                }
+            }
+            if (rate <= 0) {
+                throw new IllegalStateException("No consumer rate of group " + consumerGroup
+                        + " measured yet, pass consumerRatePerPartition");
+            }
+        } else if (consumerRatePerPartition <= 0) {
+            throw new IllegalArgumentException("consumerRatePerPartition must be positive");
+        } else {
+            rate = consumerRatePerPartition;
+        }
+
+        int required = (int) Math.ceil(targetRecordsPerSecond * (1 + headroom) / rate);
+        int recommended = Math.max(report.partitions(), Math.min(maxPartitions, required));
+        if (required > maxPartitions) {
+            warnings.add(required + " partitions are required, limited to max-partitions " + maxPartitions
+                    + ": consumers have to process records faster");
+        }
+        if (recommended > report.consumerMembers()) {
+            warnings.add("Group " + consumerGroup + " has " + report.consumerMembers() + " consumers: partitions "
+                    + "add parallelism only up to the number of consumer threads, raise the listener concurrency");
+        }
+        return new PartitionRecommendation(TOPIC, report.partitions(), recommended, targetRecordsPerSecond, rate,
+                measured, warnings);
+    }
+
+    /**
+     * Увеличение числа партиций топика.
+     * @param partitions - новое число партиций, больше текущего и не больше max-partitions
+     * @param dryRun - только проверить запрос брокером (validateOnly)
+     * @param acceptKeyReordering - подтверждение, что записи одного ключа могут быть обработаны не по порядку
+     * @throws PartitionExpansionRejectedException - если партиционер учитывает ключ, а acceptKeyReordering не задан
+     */
+    public synchronized PartitionExpansion expand(int partitions, boolean dryRun, boolean acceptKeyReordering)
+            throws Exception {
+        AdminClient admin = adminClient();
+        int current = describeTopic(admin).partitions().size();
+        List<String> companions = admin.listTopics().names().get(adminTimeoutMs, TimeUnit.MILLISECONDS).stream()
+                .filter(name -> name.startsWith(TOPIC + "-retry") || name.equals(TOPIC + "-dlt"))
+                .sorted()
+                .toList();
+        if (partitions <= current) {
+            throw new IllegalArgumentException("Topic " + TOPIC + " has " + current
+                    + " partitions, the number of partitions can only be increased");
+        }
+        if (partitions > maxPartitions) {
+            throw new IllegalArgumentException(partitions + " partitions exceed max-partitions " + maxPartitions);
+        }
+
+        List<String> warnings = new ArrayList<>();
+        boolean keyed = partitionLatencyTracker.getMode() != PartitionLatencyTracker.Mode.LATENCY_AWARE;
+        if (keyed) {
+            warnings.add("Partitioner mode " + partitionLatencyTracker.getMode() + " maps keys to partitions by "
+                    + "hash modulo partition count: after the expansion records of an existing key go to another "
+                    + "partition and may be processed before older records of that key still in the consumer lag");
+        }
+        warnings.add("Producers use the new partitions after their metadata refresh (metadata.max.age.ms), "
+                + "consumers after a rebalance; a consumer group with auto.offset.reset=latest skips records "
+                + "written to a new partition before it is assigned");
+        if (keyed && !acceptKeyReordering) {
+            throw new PartitionExpansionRejectedException("Expansion of " + TOPIC + " to " + partitions
+                    + " partitions breaks key ordering, repeat with acceptKeyReordering=true", warnings);
+        }
+
+        Map<String, NewPartitions> increases = new HashMap<>();
+        increases.put(TOPIC, NewPartitions.increaseTo(partitions));
+        List<String> expandedCompanions = new ArrayList<>();
+        if (!companions.isEmpty()) {
+            admin.describeTopics(companions).allTopicNames().get(adminTimeoutMs, TimeUnit.MILLISECONDS)
+                    .forEach((name, description) -> {
+                        if (description.partitions().size() < partitions) {
+                            increases.put(name, NewPartitions.increaseTo(partitions));
+                            expandedCompanions.add(name);
+                        }
+                    });
+            expandedCompanions.sort(null);
+        }
+        if (!expandedCompanions.isEmpty()) {
+            warnings.add("Retry and dead-letter topics " + expandedCompanions + " are expanded to " + partitions
+                    + " partitions as well; raise notification.retry.topics.partitions of the notification service "
+                    + "so that retry topics it creates match");
+        }
+
+        admin.createPartitions(increases, new CreatePartitionsOptions().validateOnly(dryRun))
+                .all().get(adminTimeoutMs, TimeUnit.MILLISECONDS);
+        if (!dryRun) {
+            log.warn("Topic {} expanded from {} to {} partitions, along with {}", TOPIC, current, partitions,
+                    expandedCompanions);
+            lastSample = null;
+            lastReport = null;
+        }
+        return new PartitionExpansion(TOPIC, current, partitions, dryRun, expandedCompanions, warnings);
+    }
+
+    private TopicDescription describeTopic(AdminClient admin) throws Exception {
+        return admin.describeTopics(List.of(TOPIC)).allTopicNames().get(adminTimeoutMs, TimeUnit.MILLISECONDS)
+                .get(TOPIC);
+    }
+
+    private int consumerMembers(AdminClient admin) throws InterruptedException, TimeoutException,
+            ExecutionException {
+        try {
+            ConsumerGroupDescription group = admin.describeConsumerGroups(List.of(consumerGroup))
+                    .describedGroups().get(consumerGroup).get(adminTimeoutMs, TimeUnit.MILLISECONDS);
+            return group.members().size();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GroupIdNotFoundException) {
+                return 0;
+            }
+            throw e;
+        }
+    }
+
+    private static long size(Map<Integer, Map<String, LogDirDescription>> logDirs, TopicPartitionInfo partition) {
+        if (partition.leader() == null || !logDirs.containsKey(partition.leader().id())) {
+            return 0;
+        }
+        TopicPartition topicPartition = new TopicPartition(TOPIC, partition.partition());
+        long size = 0;
+        for (LogDirDescription logDir : logDirs.get(partition.leader().id()).values()) {
+            ReplicaInfo replica = logDir.replicaInfos().get(topicPartition);
+            if (replica != null) {
+                size += replica.size();
+            }
+        }
+        return size;
+    }
+
+    private static double rate(double seconds, long offset, Long previousOffset) {
+        if (seconds <= 0 || previousOffset == null) {
+            return 0;
+        }
+        return Math.max(0, offset - previousOffset) / seconds;
+    }
+
+    private AdminClient adminClient() {
+        if (adminClient == null) {
+            Map<String, Object> config = new HashMap<>(kafkaAdmin.getConfigurationProperties());
+            config.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+            adminClient = AdminClient.create(config);
+        }
+        return adminClient;
+    }
+
+    @Override
+    public void destroy() {
+        sampler.shutdownNow();
+        closeAdminClient();
+    }
+
+    private synchronized void closeAdminClient() {
+        if (adminClient != null) {
+            adminClient.close();
+        }
+    }
+
+    private record Sample(long timeNanos, Map<Integer, Long> endOffsets, Map<Integer, Long> committedOffsets) {
+        long lag(int partition) {
+            Long committed = committedOffsets.get(partition);
+            return endOffsets.getOrDefault(partition, 0L) - (committed == null ? 0 : committed);
+        }
+    }
+
+    /**
+     * @param intervalSeconds - время с предыдущего снимка, по которому посчитаны скорости; 0 - скорости еще не
+     *                        измерены
+     * @param consumerMembers - число потребителей в группе
+     */
+    public record CapacityReport(String topic, int partitions, long sampledAt, double intervalSeconds,
+                                 String consumerGroup, int consumerMembers, List<PartitionCapacity> partitionDetails) {
+    }
+
+    /**
+     * @param sizeBytes - размер лидерской реплики на диске
+     * @param produceRate - записей в секунду
+     * @param committedOffset - offset группы потребителей, null - группа не фиксировала offset в партиции
+     * @param consumerRate - записей в секунду
+     * @param lagging - отставание потребителя было и в этом, и в предыдущем снимке
+     */
+    public record PartitionCapacity(int partition, int leader, long endOffset, long sizeBytes, double produceRate,
+                                    Long committedOffset, long lag, double consumerRate, boolean lagging) {
+    }
+
+    /**
+     * @param measured - скорость потребителя взята из снимка, а не из запроса
+     */
+    public record PartitionRecommendation(String topic, int currentPartitions, int recommendedPartitions,
+                                          double targetRecordsPerSecond, double consumerRatePerPartition,
+                                          boolean measured, List<String> warnings) {
+    }
+
+    /**
+     * @param companionTopics - топики повторов и DLT, увеличенные вместе с топиком
+     */
+    public record PartitionExpansion(String topic, int previousPartitions, int partitions, boolean dryRun,
+                                     List<String> companionTopics, List<String> warnings) {
+    }
+}
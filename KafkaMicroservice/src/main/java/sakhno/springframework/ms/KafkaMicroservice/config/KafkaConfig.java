@@ -1,5 +1,6 @@
 package sakhno.springframework.ms.KafkaMicroservice.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.springframework.beans.factory.annotation.Value;
@@ -8,8 +9,15 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
-import sakhno.springframework.ms.KafkaMicroservice.event.ProductCreatedEvent;
+import org.springframework.kafka.support.CompositeProducerListener;
+import org.springframework.kafka.support.LoggingProducerListener;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.KafkaMicroservice.producer.PartitionLatencyInterceptor;
+import sakhno.springframework.ms.KafkaMicroservice.producer.PartitionLatencyTracker;
+import sakhno.springframework.ms.KafkaMicroservice.producer.ProductEventPartitioner;
+import sakhno.springframework.ms.KafkaMicroservice.producer.SendLatencyProducerListener;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -44,9 +52,6 @@ public class KafkaConfig {
     @Value("${spring.kafka.producer.properties.max.in.flight.request.per.connection}")
     private String maxInFlightRequests;
 
-    @Value("${spring.kafka.producer.properties.spring.json.type.mapping}")
-    private String typeMapping;
-
     /**
      * Метод создает словарь с конфигурацией для kafka producer
      * @return - словарь с настройками
@@ -62,39 +67,56 @@ public class KafkaConfig {
         config.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, requestTimeout);
         config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, idempotence);
         config.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, maxInFlightRequests);
-        config.put("spring.json.type.mapping", typeMapping);
         return config;
     }
 
     /**
      * Метод создает экземпляр с фабрикой по созданию kafka producer. Для создания необходим словарь с настройками
-     * продюсера
+     * продюсера. Метрики клиента (kafka.producer.*) каждого созданного продюсера регистрируются в MeterRegistry.
+     * Если product.producer.partitioner.mode не default, партицию выбирает {@link ProductEventPartitioner}, а
+     * подтверждения по партициям передаются ему через {@link PartitionLatencyInterceptor}
      * @return - фабрика по созданию kafka producer
      */
     @Bean
-    ProducerFactory<String, ProductCreatedEvent> producerFactory() {
-        return new DefaultKafkaProducerFactory<>(producerConfigs());
+    ProducerFactory<String, ProductCreatedEvent> producerFactory(MeterRegistry meterRegistry,
+                                                                 PartitionLatencyTracker partitionLatencyTracker) {
+        Map<String, Object> config = producerConfigs();
+        if (partitionLatencyTracker.getMode() != PartitionLatencyTracker.Mode.DEFAULT) {
+            config.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, ProductEventPartitioner.class);
+            config.put(ProducerConfig.INTERCEPTOR_CLASSES_CONFIG, PartitionLatencyInterceptor.class.getName());
+            config.put(PartitionLatencyTracker.TRACKER_CONFIG, partitionLatencyTracker);
+        }
+        DefaultKafkaProducerFactory<String, ProductCreatedEvent> producerFactory =
+                new DefaultKafkaProducerFactory<>(config);
+        producerFactory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return producerFactory;
     }
 
     /**
      * Бин KafkaTemplate для отправки сообщений типа ProductCreatedEvent с ключом типа String.
-     * Использует фабрику продюсера для создания и настройки Kafka-продюсеров.
+     * Использует фабрику продюсера для создания и настройки Kafka-продюсеров. Результат каждой отправки
+     * логируется при ошибке и учитывается в метриках {@link SendLatencyProducerListener}.
      */
     @Bean
-    KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate(ProducerFactory<String, ProductCreatedEvent> producerFactory,
+                                                             SendLatencyProducerListener sendLatencyProducerListener) {
+        KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        kafkaTemplate.setProducerListener(new CompositeProducerListener<>(
+                new LoggingProducerListener<>(), sendLatencyProducerListener));
+        return kafkaTemplate;
     }
 
     /**
      * Бин для создания Kafka-топика с именем "product-created-events-topic".
-     * Топик имеет 3 партиции, 3 реплики и настраиваемое количество реплик, которые должны быть синхронизированы для
-     * обеспечения отказоустойчивости.
+     * Топик имеет product.topic.partitions партиций (по умолчанию 3), 3 реплики и настраиваемое количество реплик,
+     * которые должны быть синхронизированы для обеспечения отказоустойчивости. Если у существующего топика партиций
+     * больше (см. TopicCapacityService.expand), их число при запуске не меняется.
      */
     @Bean
-    NewTopic createTopic() {
+    NewTopic createTopic(@Value("${product.topic.partitions:3}") int partitions) {
         return TopicBuilder
                 .name("product-created-events-topic")
-                .partitions(3)
+                .partitions(partitions)
                 .replicas(3)
                 .configs(Map.of("min.insync.replicas", "2"))
                 .build();
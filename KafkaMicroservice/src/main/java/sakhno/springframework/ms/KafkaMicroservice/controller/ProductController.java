@@ -3,17 +3,24 @@ package sakhno.springframework.ms.KafkaMicroservice.controller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import sakhno.springframework.ms.KafkaMicroservice.service.ProductService;
 import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
 import sakhno.springframework.ms.KafkaMicroservice.dto.ErrorMessage;
+import sakhno.springframework.ms.KafkaMicroservice.exception.IdempotencyKeyConflictException;
+import sakhno.springframework.ms.KafkaMicroservice.exception.ProducerOverloadedException;
 
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/product")
@@ -26,15 +33,59 @@ public class ProductController {
         this.productService = productService;
     }
 
+    /**
+     * Создание продукта. Ответ зависит от режима product.create.delivery.
+     * <p>
+     * outbox (по умолчанию): продукт и событие сохраняются в одной транзакции, ответ 201 формируется после фиксации
+     * транзакции, а в Kafka событие отправляет OutboxRelay. Запрос к Kafka не обращается, поэтому статусов 429, 503
+     * и 504 в этом режиме нет; ошибка базы данных возвращается со статусом 500.
+     * </p>
+     * <p>
+     * direct: поток Tomcat освобождается сразу после передачи записи продюсеру, ответ формируется после подтверждения
+     * от брокера. Ошибка отправки возвращается как ErrorMessage со статусом 500, превышение
+     * product.create.send-timeout-ms - со статусом 504. Если запись не допущена к отправке, ответ возвращается сразу:
+     * 429, если исчерпан лимит неподтвержденных отправок, и 503, если занят буфер продюсера, оба с заголовком
+     * Retry-After.
+     * </p>
+     * <p>
+     * С заголовком Idempotency-Key повтор запроса возвращает тот же идентификатор продукта без повторного создания;
+     * тот же ключ с другим телом запроса отклоняется со статусом 422.
+     * </p>
+     * @param createProductDto - продукт
+     * @param idempotencyKey - ключ идемпотентности, необязательный
+     * @return - future с ответом, содержащим идентификатор продукта или описание ошибки
+     */
     @PostMapping
-    public ResponseEntity<Object> createProduct(@RequestBody CreateProductDto createProductDto){
-        String productId = null;
+    public CompletableFuture<ResponseEntity<Object>> createProduct(@RequestBody CreateProductDto createProductDto,
+            @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey){
+        CompletableFuture<String> productId;
         try {
-            productId = productService.createProduct(createProductDto);
+            productId = productService.createProductAsync(createProductDto, idempotencyKey);
         } catch (Exception e) {
-            log.error(e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorMessage(new Date(), e.getMessage()));
+            return CompletableFuture.completedFuture(toErrorResponse(e));
         }
-        return ResponseEntity.status(HttpStatus.CREATED).body(productId);
+        return productId
+                .thenApply(id -> ResponseEntity.status(HttpStatus.CREATED).<Object>body(id))
+                .exceptionally(this::toErrorResponse);
+    }
+
+    private ResponseEntity<Object> toErrorResponse(Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+        if (cause instanceof ProducerOverloadedException overloaded) {
+            log.warn("Rejected: {}", overloaded.getMessage());
+            return ResponseEntity.status(overloaded.isBufferExhausted()
+                            ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(overloaded.getRetryAfterSeconds()))
+                    .body(new ErrorMessage(new Date(), overloaded.getMessage()));
+        }
+        if (cause instanceof IdempotencyKeyConflictException) {
+            log.warn("Rejected: {}", cause.getMessage());
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(new ErrorMessage(new Date(), cause.getMessage()));
+        }
+        log.error(cause.getMessage(), cause);
+        HttpStatus status = cause instanceof TimeoutException ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.INTERNAL_SERVER_ERROR;
+        return ResponseEntity.status(status).body(new ErrorMessage(new Date(), cause.getMessage()));
     }
 }
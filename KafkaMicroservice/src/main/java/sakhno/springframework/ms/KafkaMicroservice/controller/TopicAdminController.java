@@ -0,0 +1,114 @@
+package sakhno.springframework.ms.KafkaMicroservice.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import sakhno.springframework.ms.KafkaMicroservice.admin.TopicCapacityService;
+import sakhno.springframework.ms.KafkaMicroservice.dto.ErrorMessage;
+import sakhno.springframework.ms.KafkaMicroservice.exception.PartitionExpansionRejectedException;
+
+import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Емкость топика product-created-events-topic, см. {@link TopicCapacityService}. Неверные параметры возвращаются
+ * со статусом 400, отказ в увеличении партиций без подтверждения и рекомендация без измеренной скорости
+ * потребителя - 409, таймаут запроса к кластеру - 504.
+ * <p>
+ * Отчет и рекомендация только читают состояние кластера. Увеличение числа партиций необратимо меняет топики
+ * повторов и DLT вместе с основным, поэтому оно доступно только при product.topic.admin.enabled=true, иначе запрос
+ * отклоняется со статусом 403 без обращения к кластеру.
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/topic")
+public class TopicAdminController {
+    private final TopicCapacityService topicCapacityService;
+    private final boolean expansionEnabled;
+    private final static Logger log = LoggerFactory.getLogger(TopicAdminController.class);
+
+    @Autowired
+    public TopicAdminController(TopicCapacityService topicCapacityService, Environment environment) {
+        this.topicCapacityService = topicCapacityService;
+        this.expansionEnabled = environment.getProperty("product.topic.admin.enabled", Boolean.class, false);
+    }
+
+    /**
+     * Отчет по партициям: конечный offset, размер, скорость записи, offset и скорость чтения группы потребителей.
+     * @param refresh - снять новый снимок, а не вернуть последний плановый
+     */
+    @GetMapping("/capacity")
+    public ResponseEntity<Object> capacity(@RequestParam(defaultValue = "false") boolean refresh) {
+        try {
+            return ResponseEntity.ok(refresh ? topicCapacityService.sample() : topicCapacityService.report());
+        } catch (Exception e) {
+            return toErrorResponse(e);
+        }
+    }
+
+    /**
+     * Рекомендация числа партиций.
+     * @param targetRecordsPerSecond - целевая скорость записи
+     * @param consumerRatePerPartition - скорость обработки партиции потребителем, необязательный
+     */
+    @GetMapping("/capacity/recommendation")
+    public ResponseEntity<Object> recommendation(@RequestParam double targetRecordsPerSecond,
+                                                 @RequestParam(required = false) Double consumerRatePerPartition) {
+        try {
+            return ResponseEntity.ok(topicCapacityService.recommend(targetRecordsPerSecond, consumerRatePerPartition));
+        } catch (Exception e) {
+            return toErrorResponse(e);
+        }
+    }
+
+    /**
+     * Увеличение числа партиций, только при product.topic.admin.enabled=true. Ответ содержит предупреждения о порядке
+     * записей и подхвате новых партиций.
+     * @param count - новое число партиций
+     * @param dryRun - только проверить запрос
+     * @param acceptKeyReordering - подтверждение, что записи одного ключа могут быть обработаны не по порядку
+     */
+    @PostMapping("/partitions")
+    public ResponseEntity<Object> expand(@RequestParam int count,
+                                         @RequestParam(defaultValue = "false") boolean dryRun,
+                                         @RequestParam(defaultValue = "false") boolean acceptKeyReordering) {
+        if (!expansionEnabled) {
+            log.warn("Rejected: partition expansion is disabled");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ErrorMessage(new Date(),
+                    "Partition expansion is disabled, set product.topic.admin.enabled=true to allow it"));
+        }
+        try {
+            return ResponseEntity.ok(topicCapacityService.expand(count, dryRun, acceptKeyReordering));
+        } catch (Exception e) {
+            return toErrorResponse(e);
+        }
+    }
+
+    private ResponseEntity<Object> toErrorResponse(Throwable throwable) {
+        Throwable cause = throwable instanceof ExecutionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+        if (cause instanceof PartitionExpansionRejectedException rejected) {
+            log.warn("Rejected: {}", rejected.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorMessage(new Date(),
+                    rejected.getMessage() + ". " + String.join(". ", rejected.getWarnings())));
+        }
+        if (cause instanceof IllegalArgumentException || cause instanceof IllegalStateException) {
+            log.warn("Rejected: {}", cause.getMessage());
+            return ResponseEntity.status(cause instanceof IllegalArgumentException
+                            ? HttpStatus.BAD_REQUEST : HttpStatus.CONFLICT)
+                    .body(new ErrorMessage(new Date(), cause.getMessage()));
+        }
+        log.error(cause.getMessage(), cause);
+        HttpStatus status = cause instanceof TimeoutException ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.INTERNAL_SERVER_ERROR;
+        return ResponseEntity.status(status).body(new ErrorMessage(new Date(), cause.getMessage()));
+    }
+}
@@ -0,0 +1,116 @@
+package sakhno.springframework.ms.KafkaMicroservice.entety;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Событие, ожидающее публикации в Kafka. Записывается в одной транзакции с изменением данных и отправляется
+ * {@link sakhno.springframework.ms.KafkaMicroservice.outbox.OutboxRelay}.
+ */
+@Entity
+@Table(name = "outbox_events",
+        indexes = @Index(name = "idx_outbox_events_sent_at_id", columnList = "sent_at, id"))
+public class OutboxEventEntity {
+    /**
+     * Порядок отправки. Последовательность с шагом 50 позволяет вставлять строки JDBC пакетами.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_events_seq")
+    @SequenceGenerator(name = "outbox_events_seq", sequenceName = "outbox_events_seq", allocationSize = 50)
+    private Long id;
+
+    /**
+     * Значение заголовка messageId. Не меняется при повторной отправке, поэтому потребитель отбрасывает дубликаты.
+     */
+    @Column(name = "message_id", nullable = false, length = 36)
+    private String messageId;
+
+    @Column(name = "topic", nullable = false)
+    private String topic;
+
+    @Column(name = "message_key", nullable = false)
+    private String messageKey;
+
+    /**
+     * Значение записи в формате EventContract.
+     */
+    @Column(name = "payload", nullable = false, length = 65535)
+    private byte[] payload;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    /**
+     * Время подтверждения брокером, null - событие еще не отправлено.
+     */
+    @Column(name = "sent_at")
+    private Instant sentAt;
+
+    public OutboxEventEntity() {
+    }
+
+    public OutboxEventEntity(String messageId, String topic, String messageKey, byte[] payload) {
+        this.messageId = messageId;
+        this.topic = topic;
+        this.messageKey = messageKey;
+        this.payload = payload;
+        this.createdAt = Instant.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(String messageId) {
+        this.messageId = messageId;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public String getMessageKey() {
+        return messageKey;
+    }
+
+    public void setMessageKey(String messageKey) {
+        this.messageKey = messageKey;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Instant getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(Instant sentAt) {
+        this.sentAt = sentAt;
+    }
+}
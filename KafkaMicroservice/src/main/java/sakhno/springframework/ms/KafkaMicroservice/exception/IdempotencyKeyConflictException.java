@@ -0,0 +1,10 @@
+package sakhno.springframework.ms.KafkaMicroservice.exception;
+
+/**
+ * Idempotency-Key повторно передан с другим телом запроса.
+ */
+public class IdempotencyKeyConflictException extends RuntimeException {
+    public IdempotencyKeyConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,20 @@
+package sakhno.springframework.ms.KafkaMicroservice.exception;
+
+import java.util.List;
+
+/**
+ * Увеличение числа партиций не выполнено: оно нарушит порядок записей одного ключа, а запрос не подтвердил это,
+ * см. {@link sakhno.springframework.ms.KafkaMicroservice.admin.TopicCapacityService#expand}.
+ */
+public class PartitionExpansionRejectedException extends RuntimeException {
+    private final List<String> warnings;
+
+    public PartitionExpansionRejectedException(String message, List<String> warnings) {
+        super(message);
+        this.warnings = warnings;
+    }
+
+    public List<String> getWarnings() {
+        return warnings;
+    }
+}
@@ -0,0 +1,28 @@
+package sakhno.springframework.ms.KafkaMicroservice.exception;
+
+/**
+ * Запись не принята к отправке: исчерпан лимит одновременных отправок или буфер продюсера, см.
+ * {@link sakhno.springframework.ms.KafkaMicroservice.producer.ProducerAdmissionController}.
+ */
+public class ProducerOverloadedException extends RuntimeException {
+    private final boolean bufferExhausted;
+    private final long retryAfterSeconds;
+
+    public ProducerOverloadedException(String message, boolean bufferExhausted, long retryAfterSeconds) {
+        super(message);
+        this.bufferExhausted = bufferExhausted;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return - true, если занят буфер продюсера (брокеры не успевают принимать записи), false - если исчерпан лимит
+     * одновременных отправок
+     */
+    public boolean isBufferExhausted() {
+        return bufferExhausted;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
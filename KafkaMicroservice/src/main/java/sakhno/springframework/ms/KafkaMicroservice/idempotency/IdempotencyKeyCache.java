@@ -0,0 +1,234 @@
+package sakhno.springframework.ms.KafkaMicroservice.idempotency;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.KafkaMicroservice.exception.IdempotencyKeyConflictException;
+
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Результаты создания продукта по заголовку Idempotency-Key.
+ * <p>
+ * Ключ связывается с future создания: повтор запроса, пока продукт создается, получает ту же future, а после
+ * завершения - готовый productId без повторной записи в базу и отправки в Kafka. Повтор с тем же ключом, но другим
+ * телом запроса отклоняется {@link IdempotencyKeyConflictException}.
+ * </p>
+ * <p>
+ * Идентификаторы продукта и сообщения выдаются кэшем при первом запросе с ключом. Ошибка, после которой событие точно
+ * не доставлено, не запоминается: запись удаляется, и следующий повтор создает продукт заново с новыми
+ * идентификаторами. После TimeoutException исход неизвестен (подтверждение брокера могло прийти позже), поэтому запись
+ * остается в кэше: следующий повтор отправляет событие еще раз с теми же productId и messageId, и потребитель отбросит
+ * дубликат по messageId. Запись, однажды попавшая в это состояние, сохраняет идентификаторы при любых последующих
+ * ошибках.
+ * </p>
+ * <p>
+ * Кэш ограничен по размеру (max-size) и времени жизни (ttl-ms, отсчитывается от первого запроса). Вытеснение идет в
+ * порядке добавления, записи, создание по которым еще идет, не вытесняются, поэтому на время отправки размер может
+ * превысить max-size на число незавершенных созданий. Размер ключа ограничен размером заголовка запроса (server.max-http-request-header-size).
+ * </p>
+ */
+@Component
+public class IdempotencyKeyCache implements MeterBinder {
+    private final boolean enabled;
+    private final int maxSize;
+    private final long ttlMillis;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder joins = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder resends = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Autowired
+    public IdempotencyKeyCache(Environment environment) {
+        this.enabled = environment.getProperty("product.idempotency.enabled", Boolean.class, true);
+        this.maxSize = environment.getProperty("product.idempotency.max-size", Integer.class, 10_000);
+        this.ttlMillis = environment.getProperty("product.idempotency.ttl-ms", Long.class, 600_000L);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Результат по ключу или создание продукта, если ключа нет или исход предыдущей попытки неизвестен.
+     * @param key - значение Idempotency-Key
+     * @param fingerprint - отпечаток тела запроса
+     * @param create - создание продукта по идентификаторам продукта и сообщения; вызывается для нового ключа и для
+     * повтора после TimeoutException, во втором случае с теми же идентификаторами
+     * @return - future с идентификатором продукта
+     * @throws IdempotencyKeyConflictException - если ключ уже использован с другим телом запроса
+     */
+    public CompletableFuture<String> getOrCreate(String key, String fingerprint,
+                                                 BiFunction<String, String, CompletableFuture<String>> create) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(key, fingerprint, now, UUID.randomUUID().toString(), UUID.randomUUID().toString());
+        Entry existing;
+        while ((existing = entries.putIfAbsent(key, entry)) != null) {
+            if (now - existing.createdAt > ttlMillis && existing.result.isDone()) {
+                if (entries.remove(key, existing)) {
+                    evictions.increment();
+                }
+                continue;
+            }
+            if (!existing.fingerprint.equals(fingerprint)) {
+                conflicts.increment();
+                throw new IdempotencyKeyConflictException(
+                        "Idempotency-Key has already been used with a different request");
+            }
+            CompletableFuture<String> resent;
+            synchronized (existing) {
+                if (!existing.inDoubt || !existing.result.isCompletedExceptionally()) {
+                    if (existing.result.isDone()) {
+                        hits.increment();
+                    } else {
+                        joins.increment();
+                    }
+                    return existing.result;
+                }
+                resent = new CompletableFuture<>();
+                existing.result = resent;
+            }
+            resends.increment();
+            return attempt(existing, resent, create);
+        }
+        misses.increment();
+        insertionOrder.add(entry);
+        CompletableFuture<String> result = attempt(entry, entry.result, create);
+        evict(now);
+        return result;
+    }
+
+    private CompletableFuture<String> attempt(Entry entry, CompletableFuture<String> result,
+                                              BiFunction<String, String, CompletableFuture<String>> create) {
+        CompletableFuture<String> created;
+        try {
+            created = create.apply(entry.productId, entry.messageId);
+        } catch (RuntimeException e) {
+            fail(entry, result, e);
+            throw e;
+        }
+        created.whenComplete((productId, exception) -> {
+            if (exception != null) {
+                fail(entry, result, exception);
+            } else {
+                result.complete(productId);
+            }
+        });
+        return result;
+    }
+
+    private void fail(Entry entry, CompletableFuture<String> result, Throwable exception) {
+        Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                ? exception.getCause() : exception;
+        synchronized (entry) {
+            if (cause instanceof TimeoutException) {
+                entry.inDoubt = true;
+            }
+            if (!entry.inDoubt) {
+                entries.remove(entry.key, entry);
+            }
+        }
+        result.completeExceptionally(exception);
+    }
+
+    private void evict(long now) {
+        Iterator<Entry> iterator = insertionOrder.iterator();
+        while (iterator.hasNext()) {
+            Entry oldest = iterator.next();
+            boolean current = entries.get(oldest.key) == oldest;
+            if (current && now - oldest.createdAt <= ttlMillis && entries.size() <= maxSize) {
+                return;
+            }
+            if (current && !oldest.result.isDone()) {
+                // создание еще идет: запись остается, иначе повтор создал бы продукт второй раз
+                continue;
+            }
+            iterator.remove();
+            if (current && entries.remove(oldest.key, oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getJoins() {
+        return joins.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getResends() {
+        return resends.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("product.idempotency.cache.hits", this, IdempotencyKeyCache::getHits)
+                .description("Repeated requests answered with a completed result").register(registry);
+        FunctionCounter.builder("product.idempotency.cache.joins", this, IdempotencyKeyCache::getJoins)
+                .description("Repeated requests that joined an in-flight creation").register(registry);
+        FunctionCounter.builder("product.idempotency.cache.misses", this, IdempotencyKeyCache::getMisses)
+                .description("Requests with a new key").register(registry);
+        FunctionCounter.builder("product.idempotency.cache.resends", this, IdempotencyKeyCache::getResends)
+                .description("Repeated requests resent with the same ids after a timeout").register(registry);
+        FunctionCounter.builder("product.idempotency.cache.conflicts", this, IdempotencyKeyCache::getConflicts)
+                .description("Keys reused with a different request body").register(registry);
+        FunctionCounter.builder("product.idempotency.cache.evictions", this, IdempotencyKeyCache::getEvictions)
+                .description("Entries evicted by size or time to live").register(registry);
+        Gauge.builder("product.idempotency.cache.size", this, IdempotencyKeyCache::size)
+                .description("Cached keys").register(registry);
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final String fingerprint;
+        private final long createdAt;
+        private final String productId;
+        private final String messageId;
+        private volatile CompletableFuture<String> result = new CompletableFuture<>();
+        /** Была попытка с неизвестным исходом, идентификаторы сохраняются. Изменяется под блокировкой записи. */
+        private boolean inDoubt;
+
+        private Entry(String key, String fingerprint, long createdAt, String productId, String messageId) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.createdAt = createdAt;
+            this.productId = productId;
+            this.messageId = messageId;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package sakhno.springframework.ms.KafkaMicroservice.outbox;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Limit;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventCodec;
+import sakhno.springframework.ms.KafkaMicroservice.entety.OutboxEventEntity;
+import sakhno.springframework.ms.KafkaMicroservice.producer.AdaptiveBatchingController;
+import sakhno.springframework.ms.KafkaMicroservice.repository.OutboxEventRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Публикация событий из таблицы outbox_events в Kafka.
+ * <p>
+ * Раз в interval-ms relay читает до batch-size неотправленных событий в порядке id и отправляет их все без ожидания
+ * подтверждений: записи попадают в буфер продюсера и уходят пакетами. Затем relay ждет подтверждения всех записей и
+ * одним UPDATE отмечает отправленные. Если пачка была полной, следующая читается сразу, но не больше max-batches
+ * пачек за вызов, чтобы relay не занимал поток планировщика, пока в таблицу поступают события. Отправленными
+ * отмечаются только события до первого неподтвержденного: оно и все следующие за ним остаются в таблице и будут
+ * отправлены повторно с тем же messageId и в том же порядке, поэтому доставка - at-least-once, а дубликаты
+ * отбрасывает потребитель. В заголовок produceTimestamp кладется время создания события, поэтому
+ * сквозная задержка на стороне потребителя включает ожидание в таблице.
+ * </p>
+ * <p>
+ * События попадают в таблицу только в режиме product.create.delivery=outbox, и relay отправляет их мимо
+ * ProductServiceImpl, поэтому ограничение неподтвержденных отправок (ProducerAdmissionController) и локальный журнал
+ * (SpoolDrainer) к ним не применяются - это механизмы режима direct, где ответ клиенту ждет брокера. Партицию записи
+ * relay по-прежнему выбирает партиционер продюсера, но задержка подтверждения по партициям влияет на время ответа
+ * только в режиме direct: здесь она сказывается лишь на времени отправки пачки.
+ * </p>
+ * <p>
+ * Предполагается один relay на базу данных: несколько экземпляров сервиса с общей базой будут отправлять одни и те
+ * же события (потребитель их отбросит, но порядок по ключу может нарушиться).
+ * </p>
+ */
+@Component
+public class OutboxRelay implements MeterBinder {
+    private final static Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate;
+    private final AdaptiveBatchingController adaptiveBatchingController;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxBatches;
+    private final long sendTimeoutMs;
+    private final Duration retention;
+
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @Autowired
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate,
+                       AdaptiveBatchingController adaptiveBatchingController,
+                       TransactionTemplate transactionTemplate, Environment environment) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.adaptiveBatchingController = adaptiveBatchingController;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = environment.getProperty("product.outbox.relay.enabled", Boolean.class, true);
+        this.batchSize = environment.getProperty("product.outbox.relay.batch-size", Integer.class, 500);
+        this.maxBatches = environment.getProperty("product.outbox.relay.max-batches", Integer.class, 10);
+        this.sendTimeoutMs = environment.getProperty("product.outbox.relay.send-timeout-ms", Long.class, 30000L);
+        this.retention = Duration.ofMillis(
+                environment.getProperty("product.outbox.retention-ms", Long.class, 86400000L));
+    }
+
+    @Scheduled(fixedDelayString = "${product.outbox.relay.interval-ms:200}")
+    public void relay() {
+        if (!enabled) {
+            return;
+        }
+        int batches = 0;
+        while (relayBatch() == batchSize && ++batches < maxBatches) {
+            // полная пачка: в таблице, возможно, есть еще события
+        }
+    }
+
+    /**
+     * Отправка одной пачки.
+     * @return - количество прочитанных из таблицы событий, если все они подтверждены, иначе 0
+     */
+    int relayBatch() {
+        List<OutboxEventEntity> events = outboxEventRepository.findBySentAtIsNullOrderByIdAsc(Limit.of(batchSize));
+        if (events.isEmpty()) {
+            return 0;
+        }
+        List<CompletableFuture<SendResult<String, ProductCreatedEvent>>> results = new ArrayList<>(events.size());
+        for (OutboxEventEntity event : events) {
+            ProducerRecord<String, ProductCreatedEvent> record = new ProducerRecord<>(event.getTopic(),
+                    event.getMessageKey(), ProductCreatedEventCodec.decode(event.getPayload()));
+            record.headers().add("messageId", event.getMessageId().getBytes(StandardCharsets.UTF_8));
+            record.headers().add("produceTimestamp",
+                    Long.toString(event.getCreatedAt().toEpochMilli()).getBytes(StandardCharsets.UTF_8));
+            results.add(adaptiveBatchingController.send(() -> kafkaTemplate.send(record)));
+        }
+
+        List<Long> acknowledged = new ArrayList<>(events.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        // события после неподтвержденного не отмечаются, иначе его повторная отправка обгонит их
+        for (int i = 0; i < events.size(); i++) {
+            try {
+                results.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                acknowledged.add(events.get(i).getId());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                failed.increment();
+                log.warn("Outbox event {} was not sent, {} following events will be sent again: {}",
+                        events.get(i).getMessageId(), events.size() - i - 1, e.getMessage());
+                break;
+            }
+        }
+        if (!acknowledged.isEmpty()) {
+            Instant sentAt = Instant.now();
+            transactionTemplate.executeWithoutResult(status -> outboxEventRepository.markSent(acknowledged, sentAt));
+            relayed.add(acknowledged.size());
+        }
+        return acknowledged.size() == events.size() ? events.size() : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${product.outbox.purge.interval-ms:60000}")
+    public void purge() {
+        Integer deleted = transactionTemplate.execute(status ->
+                outboxEventRepository.deleteSentBefore(Instant.now().minus(retention)));
+        if (deleted != null && deleted > 0) {
+            log.info("Deleted {} sent outbox events", deleted);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("product.outbox.relayed", relayed, LongAdder::sum)
+                .description("Outbox events acknowledged by the broker")
+                .register(registry);
+        FunctionCounter.builder("product.outbox.failed", failed, LongAdder::sum)
+                .description("Outbox event sends that failed and will be retried")
+                .register(registry);
+        Gauge.builder("product.outbox.pending", outboxEventRepository, OutboxEventRepository::countBySentAtIsNull)
+                .description("Outbox events waiting to be sent")
+                .register(registry);
+    }
+}
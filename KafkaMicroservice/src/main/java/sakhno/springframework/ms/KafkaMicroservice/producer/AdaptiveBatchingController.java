@@ -0,0 +1,292 @@
+package sakhno.springframework.ms.KafkaMicroservice.producer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Подстройка linger.ms и batch.size продюсера под текущую нагрузку.
+ * <p>
+ * Раз в interval-ms по метрикам продюсера вычисляется скорость отправки (record-send-total), средний размер записи,
+ * время ожидания записи в буфере (record-queue-time-avg) и задержка запроса (request-latency-avg). Пока за max-linger-ms
+ * в партицию приходит меньше двух записей, ожидание бессмысленно и linger держится на минимуме. При росте нагрузки
+ * linger выбирается как время накопления target-batch-records записей в партиции, но не больше max-linger-ms, а
+ * batch.size - как объем записей, приходящих в партицию за linger и время запроса. Если среднее время записи в буфере
+ * превысило max-queue-time-ms, linger уменьшается вдвое независимо от скорости.
+ * </p>
+ * <p>
+ * Значения округляются до степени двойки и не меняются, пока нагрузка колеблется в пределах нескольких раз от
+ * той, под которую они выбраны. Новое решение применяется, только если оно повторилось stable-ticks раз
+ * подряд и с прошлого изменения прошло cooldown-ms. Конфигурацию работающего продюсера поменять нельзя, поэтому
+ * при изменении сначала без блокировки отправляются накопленные записи (flush), затем отправки ненадолго блокируются
+ * (см. {@link #send}), пока фабрика закрывает старый продюсер с записями, пришедшими после flush, и пересоздает его с
+ * новыми настройками. Так записи одного ключа не обгоняют друг друга при смене продюсера. По умолчанию подстройка выключена (product.producer.adaptive-batching.enabled).
+ * </p>
+ */
+@Component
+public class AdaptiveBatchingController implements MeterBinder {
+    private final static Logger log = LoggerFactory.getLogger(AdaptiveBatchingController.class);
+    private static final String TOPIC = "product-created-events-topic";
+    private static final int DEFAULT_BATCH_SIZE = 16384;
+    /** Накладные расходы на запись в пакете: заголовок записи и заголовок messageId */
+    private static final int RECORD_OVERHEAD = 64;
+
+    private final ProducerFactory<String, ProductCreatedEvent> producerFactory;
+    private final KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate;
+    private final ReadWriteLock reconfigurationLock = new ReentrantReadWriteLock();
+
+    private final boolean enabled;
+    private final int minLingerMs;
+    private final int maxLingerMs;
+    private final double maxQueueTimeMs;
+    private final int targetBatchRecords;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int stableTicks;
+    private final long cooldownNanos;
+
+    private volatile int lingerMs;
+    private volatile int batchSize;
+    private volatile double sendRate;
+    private int partitions;
+    private double lastSendTotal;
+    private long lastTick;
+    private long lastReconfiguration;
+    private Decision pending;
+    private int pendingTicks;
+
+    private final LongAdder reconfigurations = new LongAdder();
+    private final LongAdder latencyGuardActivations = new LongAdder();
+
+    @Autowired
+    public AdaptiveBatchingController(ProducerFactory<String, ProductCreatedEvent> producerFactory,
+                                      KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate,
+                                      Environment environment) {
+        this.producerFactory = producerFactory;
+        this.kafkaTemplate = kafkaTemplate;
+        this.enabled = environment.getProperty("product.producer.adaptive-batching.enabled", Boolean.class, false);
+        this.minLingerMs = environment.getProperty("product.producer.adaptive-batching.min-linger-ms",
+                Integer.class, 0);
+        this.maxLingerMs = environment.getProperty("product.producer.adaptive-batching.max-linger-ms",
+                Integer.class, 16);
+        this.maxQueueTimeMs = environment.getProperty("product.producer.adaptive-batching.max-queue-time-ms",
+                Double.class, 50.0);
+        this.targetBatchRecords = environment.getProperty("product.producer.adaptive-batching.target-batch-records",
+                Integer.class, 32);
+        this.minBatchSize = environment.getProperty("product.producer.adaptive-batching.min-batch-size",
+                Integer.class, DEFAULT_BATCH_SIZE);
+        this.maxBatchSize = environment.getProperty("product.producer.adaptive-batching.max-batch-size",
+                Integer.class, 262144);
+        this.stableTicks = environment.getProperty("product.producer.adaptive-batching.stable-ticks",
+                Integer.class, 2);
+        this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(
+                environment.getProperty("product.producer.adaptive-batching.cooldown-ms", Long.class, 5000L));
+
+        Map<String, Object> configs = producerFactory.getConfigurationProperties();
+        this.lingerMs = intConfig(configs, ProducerConfig.LINGER_MS_CONFIG, 0);
+        this.batchSize = intConfig(configs, ProducerConfig.BATCH_SIZE_CONFIG, DEFAULT_BATCH_SIZE);
+        this.lastTick = System.nanoTime();
+        this.lastReconfiguration = lastTick - cooldownNanos;
+    }
+
+    /**
+     * Отправка записи. Пока продюсер пересоздается с новыми настройками, вызов ждет завершения перенастройки.
+     * @param send - вызов KafkaTemplate.send
+     * @return - результат send
+     */
+    public <T> T send(Supplier<T> send) {
+        if (!enabled) {
+            return send.get();
+        }
+        reconfigurationLock.readLock().lock();
+        try {
+            return send.get();
+        } finally {
+            reconfigurationLock.readLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${product.producer.adaptive-batching.interval-ms:1000}")
+    public void adjust() {
+        if (!enabled) {
+            return;
+        }
+        Map<MetricName, ? extends Metric> metrics = kafkaTemplate.metrics();
+        long now = System.nanoTime();
+        double sendTotal = metric(metrics, "record-send-total");
+        // после пересоздания продюсера счетчик начинается с нуля
+        double sent = sendTotal >= lastSendTotal ? sendTotal - lastSendTotal : sendTotal;
+        sendRate = sent * TimeUnit.SECONDS.toNanos(1) / Math.max(now - lastTick, 1);
+        lastSendTotal = sendTotal;
+        lastTick = now;
+
+        Decision decision = decide(sendRate, metric(metrics, "record-size-avg"),
+                metric(metrics, "record-queue-time-avg"), metric(metrics, "request-latency-avg"));
+        if (decision.lingerMs() == lingerMs && decision.batchSize() == batchSize) {
+            pending = null;
+            pendingTicks = 0;
+            return;
+        }
+        if (decision.equals(pending)) {
+            pendingTicks++;
+        } else {
+            pending = decision;
+            pendingTicks = 1;
+        }
+        if (pendingTicks >= stableTicks && now - lastReconfiguration >= cooldownNanos) {
+            apply(decision);
+            lastReconfiguration = System.nanoTime();
+            pending = null;
+            pendingTicks = 0;
+        }
+    }
+
+    /**
+     * Выбор linger.ms и batch.size для наблюдаемой нагрузки.
+     * @param sendRate - записей в секунду
+     * @param recordSize - средний размер записи в байтах, NaN если записей не было
+     * @param queueTimeMs - среднее время записи в буфере продюсера, NaN если записей не было
+     * @param requestLatencyMs - средняя задержка запроса к брокеру, NaN если запросов не было
+     */
+    Decision decide(double sendRate, double recordSize, double queueTimeMs, double requestLatencyMs) {
+        double perPartitionPerMs = sendRate / partitions() / 1000;
+        int linger;
+        if (perPartitionPerMs * maxLingerMs < 2) {
+            linger = minLingerMs;
+        } else {
+            double fillMs = targetBatchRecords / perPartitionPerMs;
+            // зона нечувствительности: колебания скорости в пределах двух раз не меняют linger
+            linger = lingerMs > minLingerMs && fillMs >= lingerMs / 2.0 && fillMs <= lingerMs * 2.0 ? lingerMs
+                    : clamp(floorPowerOfTwo((int) Math.ceil(fillMs)), minLingerMs, maxLingerMs);
+        }
+        if (queueTimeMs > maxQueueTimeMs && lingerMs > minLingerMs) {
+            latencyGuardActivations.increment();
+            linger = Math.max(minLingerMs, Math.min(linger, lingerMs / 2));
+        }
+
+        double windowMs = linger + (Double.isNaN(requestLatencyMs) ? 0 : requestLatencyMs);
+        double bytes = perPartitionPerMs * windowMs * ((Double.isNaN(recordSize) ? 0 : recordSize) + RECORD_OVERHEAD);
+        int batch;
+        if (bytes <= batchSize && bytes >= batchSize / 4.0) {
+            batch = batchSize;
+        } else {
+            batch = clamp(ceilPowerOfTwo((int) Math.min(bytes, maxBatchSize)), minBatchSize, maxBatchSize);
+        }
+        return new Decision(linger, batch);
+    }
+
+    private void apply(Decision decision) {
+        // накопленные записи отправляются до блокировки, отправки продолжаются; под блокировкой закрытие старого
+        // продюсера дожидается только записей, отправленных после flush
+        kafkaTemplate.flush();
+        reconfigurationLock.writeLock().lock();
+        try {
+            producerFactory.updateConfigs(Map.of(
+                    ProducerConfig.LINGER_MS_CONFIG, decision.lingerMs(),
+                    ProducerConfig.BATCH_SIZE_CONFIG, decision.batchSize()));
+            producerFactory.reset();
+        } finally {
+            reconfigurationLock.writeLock().unlock();
+        }
+        log.info("Producer reconfigured at {} records/s: linger.ms {} -> {}, batch.size {} -> {}",
+                Math.round(sendRate), lingerMs, decision.lingerMs(), batchSize, decision.batchSize());
+        lingerMs = decision.lingerMs();
+        batchSize = decision.batchSize();
+        lastSendTotal = 0;
+        reconfigurations.increment();
+    }
+
+    /**
+     * Число партиций из метаданных продюсера: они обновляются раз в metadata.max.age.ms, поэтому увеличение числа
+     * партиций топика учитывается без перезапуска. При ошибке используется последнее известное значение.
+     */
+    private int partitions() {
+        try {
+            partitions = Math.max(1, kafkaTemplate.partitionsFor(TOPIC).size());
+        } catch (RuntimeException e) {
+            log.warn("Could not read partitions of {}: {}", TOPIC, e.getMessage());
+        }
+        return Math.max(1, partitions);
+    }
+
+    static double metric(Map<MetricName, ? extends Metric> metrics, String name) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : metrics.entrySet()) {
+            if (name.equals(entry.getKey().name()) && "producer-metrics".equals(entry.getKey().group())) {
+                Object value = entry.getValue().metricValue();
+                return value instanceof Number number ? number.doubleValue() : Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static int intConfig(Map<String, Object> configs, String name, int defaultValue) {
+        Object value = configs.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.toString());
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int floorPowerOfTwo(int value) {
+        return value <= 0 ? 0 : Integer.highestOneBit(value);
+    }
+
+    private static int ceilPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    public int getLingerMs() {
+        return lingerMs;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("product.producer.adaptive-batching.linger", this, AdaptiveBatchingController::getLingerMs)
+                .baseUnit("milliseconds")
+                .description("Current producer linger.ms")
+                .register(registry);
+        Gauge.builder("product.producer.adaptive-batching.batch-size", this, AdaptiveBatchingController::getBatchSize)
+                .baseUnit("bytes")
+                .description("Current producer batch.size")
+                .register(registry);
+        Gauge.builder("product.producer.adaptive-batching.send-rate", this, controller -> controller.sendRate)
+                .description("Records per second observed at the last adjustment")
+                .register(registry);
+        FunctionCounter.builder("product.producer.adaptive-batching.reconfigurations", reconfigurations,
+                        LongAdder::sum)
+                .description("Producer re-creations with new batching settings")
+                .register(registry);
+        FunctionCounter.builder("product.producer.adaptive-batching.latency-guard", latencyGuardActivations,
+                        LongAdder::sum)
+                .description("Decisions where linger was cut because of record queue time")
+                .register(registry);
+    }
+
+    record Decision(int lingerMs, int batchSize) {
+    }
+}
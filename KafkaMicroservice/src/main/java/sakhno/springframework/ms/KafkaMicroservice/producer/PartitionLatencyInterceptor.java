@@ -0,0 +1,44 @@
+package sakhno.springframework.ms.KafkaMicroservice.producer;
+
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Map;
+
+/**
+ * Интерцептор продюсера, который передает в {@link PartitionLatencyTracker} подтверждения и ошибки отправки по
+ * партициям. Создается продюсером по interceptor.classes, трекер берется из настроек продюсера по ключу
+ * {@link PartitionLatencyTracker#TRACKER_CONFIG}. onAcknowledgement выполняется в потоке ввода-вывода продюсера,
+ * поэтому здесь только обновление счетчиков.
+ */
+public class PartitionLatencyInterceptor<K, V> implements ProducerInterceptor<K, V> {
+    private PartitionLatencyTracker tracker;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        this.tracker = (PartitionLatencyTracker) configs.get(PartitionLatencyTracker.TRACKER_CONFIG);
+    }
+
+    @Override
+    public ProducerRecord<K, V> onSend(ProducerRecord<K, V> producerRecord) {
+        return producerRecord;
+    }
+
+    @Override
+    public void onAcknowledgement(RecordMetadata recordMetadata, Exception exception) {
+        // партиция неизвестна, если отправка не дошла до партиционера (например, ошибка сериализации)
+        if (tracker == null || recordMetadata == null || recordMetadata.partition() < 0) {
+            return;
+        }
+        // timestamp записи присваивается при send() (см. SendLatencyProducerListener)
+        long latencyMs = recordMetadata.hasTimestamp() ? System.currentTimeMillis() - recordMetadata.timestamp() : 0;
+        tracker.onAcknowledged(new TopicPartition(recordMetadata.topic(), recordMetadata.partition()), latencyMs,
+                exception != null);
+    }
+
+    @Override
+    public void close() {
+    }
+}
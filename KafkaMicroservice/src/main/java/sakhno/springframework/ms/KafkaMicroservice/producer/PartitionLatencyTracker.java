@@ -0,0 +1,142 @@
+package sakhno.springframework.ms.KafkaMicroservice.producer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Состояние партиций для {@link ProductEventPartitioner}: сглаженная задержка подтверждения и число записей, которые
+ * отправлены в партицию и еще не подтверждены.
+ * <p>
+ * Режим выбирается настройкой product.producer.partitioner.mode:
+ * <ul>
+ *     <li>default - партиционер Kafka по умолчанию (хеш ключа), состояние не ведется;</li>
+ *     <li>key-affinity - партиция по хешу ключа, как у партиционера по умолчанию, записи одного ключа остаются
+ *     упорядоченными. Состояние ведется только для метрик;</li>
+ *     <li>latency-aware - ключ не учитывается: из двух случайных доступных партиций выбирается та, у которой меньше
+ *     {@link #score}, а доля exploration-ratio записей уходит в случайную партицию без неподтвержденных записей,
+ *     чтобы оценка медленной партиции обновлялась. Подходит, пока порядок записей одного ключа не важен (ключ - случайный productId).</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Задержка - время от send() до подтверждения брокером (см. {@link PartitionLatencyInterceptor}), сглаживается
+ * экспоненциально с коэффициентом latency-alpha. Ошибка отправки учитывается как задержка error-penalty-ms.
+ * Метрики: product.producer.partition.latency{topic, partition} - сглаженная задержка в мс,
+ * product.producer.partition.in-flight{topic, partition} - неподтвержденные записи.
+ * </p>
+ */
+@Component
+public class PartitionLatencyTracker {
+    /** Ключ, под которым трекер передается партиционеру и интерцептору в настройках продюсера */
+    public static final String TRACKER_CONFIG = "product.producer.partition-latency-tracker";
+
+    public enum Mode {DEFAULT, KEY_AFFINITY, LATENCY_AWARE}
+
+    private final MeterRegistry meterRegistry;
+    private final Mode mode;
+    private final double alpha;
+    private final double explorationRatio;
+    private final long errorPenaltyMs;
+    private final Map<TopicPartition, PartitionState> partitions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PartitionLatencyTracker(MeterRegistry meterRegistry, Environment environment) {
+        this.meterRegistry = meterRegistry;
+        this.mode = Mode.valueOf(environment.getProperty("product.producer.partitioner.mode", "default")
+                .toUpperCase().replace('-', '_'));
+        this.alpha = environment.getProperty("product.producer.partitioner.latency-alpha", Double.class, 0.2);
+        this.explorationRatio = environment.getProperty("product.producer.partitioner.exploration-ratio",
+                Double.class, 0.05);
+        this.errorPenaltyMs = environment.getProperty("product.producer.partitioner.error-penalty-ms",
+                Long.class, 1000L);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public double getExplorationRatio() {
+        return explorationRatio;
+    }
+
+    /**
+     * Запись назначена в партицию и ждет подтверждения
+     */
+    public void onSend(TopicPartition topicPartition) {
+        state(topicPartition).inFlight.incrementAndGet();
+    }
+
+    /**
+     * Назначение записи отменено: продюсер запросит партицию повторно
+     */
+    public void onSendAborted(TopicPartition topicPartition) {
+        state(topicPartition).inFlight.decrementAndGet();
+    }
+
+    /**
+     * Запись подтверждена брокером или отправка завершилась ошибкой
+     * @param latencyMs - время от send() до подтверждения, не учитывается при ошибке
+     */
+    public void onAcknowledged(TopicPartition topicPartition, long latencyMs, boolean failed) {
+        PartitionState state = state(topicPartition);
+        state.inFlight.decrementAndGet();
+        double sample = failed ? errorPenaltyMs : Math.max(0, latencyMs);
+        synchronized (state) {
+            state.latencyMs = state.latencyMs < 0 ? sample : state.latencyMs + alpha * (sample - state.latencyMs);
+        }
+    }
+
+    /**
+     * Оценка загруженности партиции: чем больше, тем хуже. Растет и с задержкой, и с очередью неподтвержденных записей,
+     * поэтому партиция медленного брокера отсекается раньше, чем обновится сглаженная задержка.
+     */
+    public double score(TopicPartition topicPartition) {
+        PartitionState state = partitions.get(topicPartition);
+        if (state == null) {
+            return 1;
+        }
+        return (Math.max(0, state.latencyMs) + 1) * (Math.max(0, state.inFlight.get()) + 1);
+    }
+
+    public double getLatencyMs(TopicPartition topicPartition) {
+        PartitionState state = partitions.get(topicPartition);
+        return state == null ? 0 : Math.max(0, state.latencyMs);
+    }
+
+    public int getInFlight(TopicPartition topicPartition) {
+        PartitionState state = partitions.get(topicPartition);
+        return state == null ? 0 : state.inFlight.get();
+    }
+
+    private PartitionState state(TopicPartition topicPartition) {
+        PartitionState state = partitions.get(topicPartition);
+        if (state != null) {
+            return state;
+        }
+        return partitions.computeIfAbsent(topicPartition, key -> {
+            PartitionState created = new PartitionState();
+            String partition = String.valueOf(key.partition());
+            Gauge.builder("product.producer.partition.latency", created, value -> Math.max(0, value.latencyMs))
+                    .description("Smoothed time from send() to broker acknowledgement, ms")
+                    .tags("topic", key.topic(), "partition", partition)
+                    .register(meterRegistry);
+            Gauge.builder("product.producer.partition.in-flight", created, value -> value.inFlight.get())
+                    .description("Records sent to the partition and not yet acknowledged")
+                    .tags("topic", key.topic(), "partition", partition)
+                    .register(meterRegistry);
+            return created;
+        });
+    }
+
+    private static class PartitionState {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile double latencyMs = -1;
+    }
+}
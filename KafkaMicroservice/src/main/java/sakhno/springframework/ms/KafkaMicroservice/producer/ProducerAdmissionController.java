@@ -0,0 +1,172 @@
+package sakhno.springframework.ms.KafkaMicroservice.producer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.KafkaMicroservice.exception.ProducerOverloadedException;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограничение числа прямых отправок, ожидающих подтверждения брокера (product.producer.admission.enabled).
+ * <p>
+ * Отправка допускается, пока число неподтвержденных записей меньше лимита и занятая доля буфера продюсера
+ * (buffer-available-bytes / buffer-total-bytes, обновляется раз в buffer-check-interval-ms) не выше
+ * max-buffer-utilization. Иначе запись сразу отклоняется с {@link ProducerOverloadedException}, а не ждет места в
+ * буфере до max.block.ms и подтверждения до delivery.timeout.ms.
+ * </p>
+ * <p>
+ * Лимит подстраивается по задержке подтверждения (AIMD): подтверждение не дольше target-latency-ms увеличивает
+ * лимит на 1 / лимит, то есть примерно на единицу за каждый лимит подтверждений; более долгое подтверждение или
+ * ошибка уменьшает его в backoff-ratio раз, но не чаще одного раза за target-latency-ms. Лимит держится в пределах
+ * min-limit..max-limit. Retry-After - средняя задержка подтверждения, округленная вверх до секунды.
+ * </p>
+ */
+@Component
+public class ProducerAdmissionController implements MeterBinder {
+    private final KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate;
+
+    private final boolean enabled;
+    private final double minLimit;
+    private final double maxLimit;
+    private final long targetLatencyNanos;
+    private final double backoffRatio;
+    private final double maxBufferUtilization;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private volatile double bufferUtilization;
+    private volatile double averageLatencyNanos;
+    private long lastDecrease;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedByLimit = new LongAdder();
+    private final LongAdder rejectedByBuffer = new LongAdder();
+
+    @Autowired
+    public ProducerAdmissionController(KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate,
+                                       Environment environment) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.enabled = environment.getProperty("product.producer.admission.enabled", Boolean.class, false);
+        this.minLimit = environment.getProperty("product.producer.admission.min-limit", Integer.class, 8);
+        this.maxLimit = environment.getProperty("product.producer.admission.max-limit", Integer.class, 1024);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(
+                environment.getProperty("product.producer.admission.target-latency-ms", Long.class, 200L));
+        this.backoffRatio = environment.getProperty("product.producer.admission.backoff-ratio", Double.class, 0.7);
+        this.maxBufferUtilization = environment.getProperty("product.producer.admission.max-buffer-utilization",
+                Double.class, 0.9);
+        this.limit = Math.max(minLimit, Math.min(maxLimit,
+                environment.getProperty("product.producer.admission.initial-limit", Integer.class, 64)));
+        this.lastDecrease = System.nanoTime() - targetLatencyNanos;
+    }
+
+    /**
+     * Допуск записи к отправке. После завершения отправки нужно вызвать {@link #release}.
+     * @return - время допуска (System.nanoTime())
+     * @throws ProducerOverloadedException - если лимит или буфер продюсера исчерпаны
+     */
+    public long acquire() {
+        if (!enabled) {
+            return System.nanoTime();
+        }
+        if (bufferUtilization > maxBufferUtilization) {
+            rejectedByBuffer.increment();
+            throw new ProducerOverloadedException("Producer buffer is full", true, getRetryAfterSeconds());
+        }
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejectedByLimit.increment();
+                throw new ProducerOverloadedException("Too many sends awaiting acknowledgement", false,
+                        getRetryAfterSeconds());
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                admitted.increment();
+                return System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Завершение отправки, допущенной {@link #acquire}.
+     * @param admittedAt - результат acquire
+     * @param failure - ошибка отправки, null - если запись подтверждена
+     */
+    public void release(long admittedAt, Throwable failure) {
+        if (!enabled) {
+            return;
+        }
+        inFlight.decrementAndGet();
+        long now = System.nanoTime();
+        long latency = now - admittedAt;
+        synchronized (this) {
+            averageLatencyNanos = averageLatencyNanos == 0 ? latency : averageLatencyNanos * 0.9 + latency * 0.1;
+            if (failure == null && latency <= targetLatencyNanos) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            } else if (now - lastDecrease >= targetLatencyNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecrease = now;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${product.producer.admission.buffer-check-interval-ms:100}")
+    public void refreshBufferUtilization() {
+        if (!enabled) {
+            return;
+        }
+        Map<MetricName, ? extends Metric> metrics = kafkaTemplate.metrics();
+        double total = AdaptiveBatchingController.metric(metrics, "buffer-total-bytes");
+        double available = AdaptiveBatchingController.metric(metrics, "buffer-available-bytes");
+        bufferUtilization = total > 0 && !Double.isNaN(available) ? 1 - available / total : 0;
+    }
+
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (long) Math.ceil(averageLatencyNanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("product.producer.admission.limit", this, ProducerAdmissionController::getLimit)
+                .description("Current limit of sends awaiting acknowledgement")
+                .register(registry);
+        Gauge.builder("product.producer.admission.in-flight", this, ProducerAdmissionController::getInFlight)
+                .description("Sends awaiting acknowledgement")
+                .register(registry);
+        Gauge.builder("product.producer.admission.buffer-utilization", this,
+                        controller -> controller.bufferUtilization)
+                .description("Used share of the producer buffer")
+                .register(registry);
+        FunctionCounter.builder("product.producer.admission.admitted", admitted, LongAdder::sum)
+                .description("Sends admitted")
+                .register(registry);
+        FunctionCounter.builder("product.producer.admission.rejected", rejectedByLimit, LongAdder::sum)
+                .description("Sends rejected")
+                .tag("reason", "limit")
+                .register(registry);
+        FunctionCounter.builder("product.producer.admission.rejected", rejectedByBuffer, LongAdder::sum)
+                .description("Sends rejected")
+                .tag("reason", "buffer")
+                .register(registry);
+    }
+}
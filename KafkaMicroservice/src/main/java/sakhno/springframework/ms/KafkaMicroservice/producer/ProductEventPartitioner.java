@@ -0,0 +1,83 @@
+package sakhno.springframework.ms.KafkaMicroservice.producer;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Партиционер записей ProductCreatedEvent для режимов key-affinity и latency-aware
+ * (product.producer.partitioner.mode, см. {@link PartitionLatencyTracker}). Создается продюсером по
+ * partitioner.class, трекер берется из настроек продюсера по ключу {@link PartitionLatencyTracker#TRACKER_CONFIG}.
+ * <p>
+ * key-affinity: партиция - murmur2 хеш ключа по модулю числа партиций, как у партиционера Kafka по умолчанию; запись
+ * без ключа выбирается как в latency-aware. latency-aware: лучшая по {@link PartitionLatencyTracker#score} из двух
+ * случайных доступных партиций (power of two choices). С вероятностью exploration-ratio вместо этого берется
+ * случайная партиция, но только если в ней нет неподтвержденных записей: иначе ее оценка и так обновится по их
+ * подтверждениям, а проба медленной партиции блокирует вызывающий поток до подтверждения. Партиции без лидера не
+ * выбираются, пока есть доступные.
+ * </p>
+ */
+public class ProductEventPartitioner implements Partitioner {
+    private PartitionLatencyTracker tracker;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        this.tracker = (PartitionLatencyTracker) configs.get(PartitionLatencyTracker.TRACKER_CONFIG);
+        if (tracker == null) {
+            throw new IllegalStateException(PartitionLatencyTracker.TRACKER_CONFIG + " is not set");
+        }
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes,
+                         Cluster cluster) {
+        int partition;
+        if (tracker.getMode() == PartitionLatencyTracker.Mode.KEY_AFFINITY && keyBytes != null) {
+            partition = Utils.toPositive(Utils.murmur2(keyBytes)) % cluster.partitionCountForTopic(topic);
+        } else {
+            partition = leastLoaded(topic, cluster);
+        }
+        tracker.onSend(new TopicPartition(topic, partition));
+        return partition;
+    }
+
+    private int leastLoaded(String topic, Cluster cluster) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<PartitionInfo> available = cluster.availablePartitionsForTopic(topic);
+        if (available.isEmpty()) {
+            return random.nextInt(cluster.partitionCountForTopic(topic));
+        }
+        int first = available.get(random.nextInt(available.size())).partition();
+        if (available.size() == 1 || random.nextDouble() < tracker.getExplorationRatio()
+                && tracker.getInFlight(new TopicPartition(topic, first)) == 0) {
+            return first;
+        }
+        int index = random.nextInt(available.size() - 1);
+        int second = available.get(index).partition();
+        if (second == first) {
+            second = available.get(available.size() - 1).partition();
+        }
+        return tracker.score(new TopicPartition(topic, second)) < tracker.score(new TopicPartition(topic, first))
+                ? second : first;
+    }
+
+    /**
+     * Продюсер отменил назначение записи в партицию prevPartition, чтобы начать новый пакет, и повторно вызовет
+     * {@link #partition}: запись не должна учитываться в обеих партициях.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public void onNewBatch(String topic, Cluster cluster, int prevPartition) {
+        tracker.onSendAborted(new TopicPartition(topic, prevPartition));
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,79 @@
+package sakhno.springframework.ms.KafkaMicroservice.producer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.support.ProducerListener;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики отправки записей продюсером.
+ * <p>
+ * product.producer.send.latency{topic, partition} - время от вызова send() до подтверждения брокером, с гистограммой
+ * для расчета перцентилей. Началом отправки считается timestamp записи: продюсер присваивает его при вызове send(),
+ * если он не задан явно (тип времени топика CreateTime). В это время входит ожидание в буфере продюсера (linger.ms),
+ * запрос к брокеру и репликация до acks.
+ * </p>
+ * <p>
+ * product.producer.send.errors{topic} - записи, отправка которых завершилась ошибкой.
+ * </p>
+ * <p>
+ * Метрики регистрируются при первой записи партиции (топика) и дальше берутся из кэша слушателя.
+ * </p>
+ */
+@Component
+public class SendLatencyProducerListener implements ProducerListener<String, ProductCreatedEvent> {
+    private final MeterRegistry meterRegistry;
+    private final Map<TopicPartition, Timer> latencyTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errorCounters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SendLatencyProducerListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void onSuccess(ProducerRecord<String, ProductCreatedEvent> producerRecord, RecordMetadata recordMetadata) {
+        if (!recordMetadata.hasTimestamp()) {
+            return;
+        }
+        latencyTimer(new TopicPartition(recordMetadata.topic(), recordMetadata.partition()))
+                .record(Math.max(0, System.currentTimeMillis() - recordMetadata.timestamp()), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onError(ProducerRecord<String, ProductCreatedEvent> producerRecord, RecordMetadata recordMetadata,
+                        Exception exception) {
+        Counter counter = errorCounters.get(producerRecord.topic());
+        if (counter == null) {
+            counter = errorCounters.computeIfAbsent(producerRecord.topic(), topic ->
+                    Counter.builder("product.producer.send.errors")
+                            .description("Records whose send failed")
+                            .tag("topic", topic)
+                            .register(meterRegistry));
+        }
+        counter.increment();
+    }
+
+    private Timer latencyTimer(TopicPartition topicPartition) {
+        Timer timer = latencyTimers.get(topicPartition);
+        if (timer != null) {
+            return timer;
+        }
+        return latencyTimers.computeIfAbsent(topicPartition, key -> Timer.builder("product.producer.send.latency")
+                .description("Time from send() to broker acknowledgement")
+                .tag("topic", key.topic())
+                .tag("partition", String.valueOf(key.partition()))
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,29 @@
+package sakhno.springframework.ms.KafkaMicroservice.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import sakhno.springframework.ms.KafkaMicroservice.entety.OutboxEventEntity;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEventEntity, Long> {
+
+    List<OutboxEventEntity> findBySentAtIsNullOrderByIdAsc(Limit limit);
+
+    long countBySentAtIsNull();
+
+    @Modifying
+    @Query("update OutboxEventEntity e set e.sentAt = :sentAt where e.id in :ids")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("sentAt") Instant sentAt);
+
+    @Modifying
+    @Query("delete from OutboxEventEntity e where e.sentAt < :before")
+    int deleteSentBefore(@Param("before") Instant before);
+}
@@ -0,0 +1,9 @@
+package sakhno.springframework.ms.KafkaMicroservice.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import sakhno.springframework.ms.KafkaMicroservice.entety.ProductEntity;
+
+@Repository
+public interface ProductRepository extends JpaRepository<ProductEntity, String> {
+}
@@ -2,9 +2,14 @@ package sakhno.springframework.ms.KafkaMicroservice.service;
 
 import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 public interface ProductService {
 
     String createProduct(CreateProductDto createProductDto) throws ExecutionException, InterruptedException;
+
+    CompletableFuture<String> createProductAsync(CreateProductDto createProductDto);
+
+    CompletableFuture<String> createProductAsync(CreateProductDto createProductDto, String idempotencyKey);
 }
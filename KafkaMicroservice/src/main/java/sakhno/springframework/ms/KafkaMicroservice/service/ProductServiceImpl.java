@@ -4,27 +4,79 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventCodec;
 import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
-import sakhno.springframework.ms.KafkaMicroservice.event.ProductCreatedEvent;
+import sakhno.springframework.ms.KafkaMicroservice.entety.OutboxEventEntity;
+import sakhno.springframework.ms.KafkaMicroservice.entety.ProductEntity;
+import sakhno.springframework.ms.KafkaMicroservice.idempotency.IdempotencyKeyCache;
+import sakhno.springframework.ms.KafkaMicroservice.producer.AdaptiveBatchingController;
+import sakhno.springframework.ms.KafkaMicroservice.producer.ProducerAdmissionController;
+import sakhno.springframework.ms.KafkaMicroservice.repository.OutboxEventRepository;
+import sakhno.springframework.ms.KafkaMicroservice.repository.ProductRepository;
+import sakhno.springframework.ms.KafkaMicroservice.spool.SpoolDrainer;
 
+import java.math.BigDecimal;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Создание продукта. Способ доставки события задает product.create.delivery:
+ * <ul>
+ *     <li><b>outbox</b> (по умолчанию) - продукт и событие сохраняются в одной локальной транзакции, ответ
+ *     возвращается после ее фиксации, а в Kafka событие отправляет {@link sakhno.springframework.ms.KafkaMicroservice.outbox.OutboxRelay};</li>
+ *     <li><b>direct</b> - событие отправляется в Kafka напрямую, ответ ждет подтверждения брокера или записи в
+ *     локальный журнал, см. {@link SpoolDrainer}. Продукт в базе не сохраняется.</li>
+ * </ul>
+ */
 @Service
 public class ProductServiceImpl implements ProductService {
+    private static final String TOPIC = "product-created-events-topic";
+
     private KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate;
+    private AdaptiveBatchingController adaptiveBatchingController;
+    private ProducerAdmissionController producerAdmissionController;
+    private ProductRepository productRepository;
+    private OutboxEventRepository outboxEventRepository;
+    private TransactionTemplate transactionTemplate;
+    private SpoolDrainer spoolDrainer;
+    private IdempotencyKeyCache idempotencyKeyCache;
     private final static Logger log = LoggerFactory.getLogger(ProductServiceImpl.class);
 
+    @Value("${product.create.send-timeout-ms}")
+    private long sendTimeout;
+
+    @Value("${product.create.delivery:outbox}")
+    private String delivery;
+
     @Autowired
-    public ProductServiceImpl(KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate) {
+    public ProductServiceImpl(KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate,
+                              AdaptiveBatchingController adaptiveBatchingController,
+                              ProducerAdmissionController producerAdmissionController,
+                              ProductRepository productRepository, OutboxEventRepository outboxEventRepository,
+                              TransactionTemplate transactionTemplate, SpoolDrainer spoolDrainer,
+                              IdempotencyKeyCache idempotencyKeyCache) {
         this.kafkaTemplate = kafkaTemplate;
+        this.adaptiveBatchingController = adaptiveBatchingController;
+        this.producerAdmissionController = producerAdmissionController;
+        this.productRepository = productRepository;
+        this.outboxEventRepository = outboxEventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.spoolDrainer = spoolDrainer;
+        this.idempotencyKeyCache = idempotencyKeyCache;
     }
 
     /**
-     * Данный метод отправляет событие в кафку в синхронном режиме
+     * Данный метод создает продукт в синхронном режиме: в режиме outbox - после фиксации транзакции, в режиме direct -
+     * после подтверждения от брокера
      * @param createProductDto - продукт
      * @return - идентификатор
      * @throws ExecutionException - если асинхронная операция завершилась с ошибкой, она будет зафиксирована. Например,
@@ -34,22 +86,157 @@ public class ProductServiceImpl implements ProductService {
      */
     @Override
     public String createProduct(CreateProductDto createProductDto) throws ExecutionException, InterruptedException {
-        //TODO: сохранять в базу
         String productId = UUID.randomUUID().toString();
+        if (isOutbox()) {
+            saveWithOutbox(productId, UUID.randomUUID().toString(), createProductDto);
+        } else {
+            sendDirect(createRecord(productId, UUID.randomUUID().toString(), createProductDto), 0).get();
+        }
 
-        ProductCreatedEvent productCreatedEvent = new ProductCreatedEvent(
-                productId, createProductDto.getTitle(), createProductDto.getPrice(), createProductDto.getQuantity());
+        log.info("Return: {}", productId);
+        return productId;
+    }
+
+    /**
+     * Данный метод создает продукт в асинхронном режиме. В режиме outbox запись в базу выполняется в вызывающем потоке
+     * и future возвращается уже завершенным. В режиме direct вызывающий поток не ждет подтверждения от брокера,
+     * результат будет доступен после получения ack.
+     * @param createProductDto - продукт
+     * @return - future с идентификатором продукта. Завершается с ошибкой, если отправка не удалась или не уложилась в
+     * product.create.send-timeout-ms (TimeoutException).
+     * @throws sakhno.springframework.ms.KafkaMicroservice.exception.ProducerOverloadedException - в режиме direct, если
+     * запись не допущена к отправке {@link ProducerAdmissionController}
+     */
+    @Override
+    public CompletableFuture<String> createProductAsync(CreateProductDto createProductDto) {
+        return createProductAsync(UUID.randomUUID().toString(), UUID.randomUUID().toString(), createProductDto);
+    }
+
+    private CompletableFuture<String> createProductAsync(String productId, String messageId,
+                                                         CreateProductDto createProductDto) {
+        if (isOutbox()) {
+            saveWithOutbox(productId, messageId, createProductDto);
+            log.info("Return: {}", productId);
+            return CompletableFuture.completedFuture(productId);
+        }
+
+        return sendDirect(createRecord(productId, messageId, createProductDto), sendTimeout)
+                .thenApply(spooled -> {
+                    log.info("Return: {}", productId);
+                    return productId;
+                });
+    }
+
+    /**
+     * Создание продукта с ключом идемпотентности. Повтор с тем же ключом возвращает результат первого запроса, см.
+     * {@link IdempotencyKeyCache}.
+     * @param createProductDto - продукт
+     * @param idempotencyKey - значение заголовка Idempotency-Key, null - создать без ключа
+     * @return - future с идентификатором продукта
+     * @throws sakhno.springframework.ms.KafkaMicroservice.exception.IdempotencyKeyConflictException - если ключ уже
+     * использован с другим продуктом
+     */
+    @Override
+    public CompletableFuture<String> createProductAsync(CreateProductDto createProductDto, String idempotencyKey) {
+        if (idempotencyKey == null || !idempotencyKeyCache.isEnabled()) {
+            return createProductAsync(createProductDto);
+        }
+        return idempotencyKeyCache.getOrCreate(idempotencyKey, fingerprint(createProductDto),
+                (productId, messageId) -> createProductAsync(productId, messageId, createProductDto));
+    }
 
-        ProducerRecord<String, ProductCreatedEvent> record = new ProducerRecord<>("product-created-events-topic",
-                productId, productCreatedEvent);
-        record.headers().add("messageId", UUID.randomUUID().toString().getBytes());
-        SendResult<String, ProductCreatedEvent> result = kafkaTemplate.send(record).get();
+    /**
+     * Прямая отправка записи. Если включен локальный журнал (product.spool.enabled), то при недоступном кластере
+     * запись сразу пишется в журнал, а при ошибке отправки - после нее; в обоих случаях future завершается успешно.
+     * Отправку в Kafka допускает {@link ProducerAdmissionController}, отклоненная запись в журнал не пишется.
+     * Превышение timeoutMs завершает future с TimeoutException без записи в журнал и без признака недоступности
+     * кластера: запись остается в продюсере и попадет в журнал, только если позже завершится ошибкой ее отправка.
+     * @param timeoutMs - ограничение ожидания подтверждения, 0 - без ограничения
+     * @return - future, завершающийся после подтверждения брокером или записи в журнал
+     */
+    private CompletableFuture<Void> sendDirect(ProducerRecord<String, ProductCreatedEvent> record, long timeoutMs) {
+        if (spoolDrainer.spoolIfSpooling(record)) {
+            log.info("Spooled: {}", record.key());
+            return CompletableFuture.completedFuture(null);
+        }
+        long admittedAt = producerAdmissionController.acquire();
+        CompletableFuture<SendResult<String, ProductCreatedEvent>> result;
+        try {
+            result = adaptiveBatchingController.send(() -> kafkaTemplate.send(record));
+        } catch (RuntimeException e) {
+            // future не получен, разрешение освобождается через failedFuture ниже
+            result = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Void> sent = result.whenComplete((sendResult, exception) ->
+                producerAdmissionController.release(admittedAt, exception))
+                .<Void>thenApply(sendResult -> {
+                    logResult(sendResult);
+                    return null;
+                }).exceptionally(exception -> {
+                    Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+                            ? exception.getCause() : exception;
+                    if (spoolDrainer.spoolFailed(record, cause)) {
+                        return null;
+                    }
+                    throw exception instanceof CompletionException completionException
+                            ? completionException : new CompletionException(cause);
+                });
+        // таймаут ограничивает только ожидание вызывающего: запись остается в продюсере и может быть доставлена,
+        // поэтому в журнал она пишется лишь при ошибке самой отправки. orTimeout завершает тот future, у которого
+        // вызван, поэтому он вызывается у копии: иначе после таймаута не выполнятся release и запись в журнал
+        return timeoutMs > 0 ? sent.copy().orTimeout(timeoutMs, TimeUnit.MILLISECONDS) : sent;
+    }
+
+    private boolean isOutbox() {
+        return !"direct".equals(delivery);
+    }
+
+    /**
+     * Продукт и событие о его создании сохраняются в одной транзакции. Идентификатор сообщения сохраняется вместе
+     * с событием и передается в заголовке messageId при каждой попытке отправки.
+     */
+    private void saveWithOutbox(String productId, String messageId, CreateProductDto createProductDto) {
+        ProductCreatedEvent productCreatedEvent = createEvent(productId, createProductDto);
+        transactionTemplate.executeWithoutResult(status -> {
+            productRepository.save(new ProductEntity(productId, createProductDto.getTitle(),
+                    createProductDto.getPrice(), createProductDto.getQuantity()));
+            outboxEventRepository.save(new OutboxEventEntity(messageId, TOPIC, productId,
+                    ProductCreatedEventCodec.encode(productCreatedEvent)));
+        });
+    }
+
+    /**
+     * Метод формирует запись для отправки в топик. Ключом выступает идентификатор продукта, в заголовок messageId
+     * кладется уникальный идентификатор сообщения для идемпотентной обработки на стороне потребителя, в заголовок
+     * produceTimestamp - время создания события (epoch ms) для расчета сквозной задержки на стороне потребителя.
+     * @param productId - идентификатор продукта
+     * @param messageId - идентификатор сообщения
+     * @param createProductDto - продукт
+     * @return - запись для kafka producer
+     */
+    private ProducerRecord<String, ProductCreatedEvent> createRecord(String productId, String messageId,
+                                                                     CreateProductDto createProductDto) {
+        ProducerRecord<String, ProductCreatedEvent> record = new ProducerRecord<>(TOPIC,
+                productId, createEvent(productId, createProductDto));
+        record.headers().add("messageId", messageId.getBytes());
+        record.headers().add("produceTimestamp", Long.toString(System.currentTimeMillis()).getBytes());
+        return record;
+    }
 
+    private static String fingerprint(CreateProductDto createProductDto) {
+        BigDecimal price = createProductDto.getPrice();
+        return createProductDto.getTitle() + "|" + (price == null ? null : price.stripTrailingZeros().toPlainString())
+                + "|" + createProductDto.getQuantity();
+    }
+
+    private ProductCreatedEvent createEvent(String productId, CreateProductDto createProductDto) {
+        return new ProductCreatedEvent(
+                productId, createProductDto.getTitle(), createProductDto.getPrice(), createProductDto.getQuantity());
+    }
+
+    private void logResult(SendResult<String, ProductCreatedEvent> result) {
         log.info("Topic: {}", result.getRecordMetadata().topic());
         log.info("Partition: {}", result.getRecordMetadata().partition());
         log.info("Offset: {}", result.getRecordMetadata().offset());
-
-        log.info("Return: {}", productId);
-        return productId;
     }
 }
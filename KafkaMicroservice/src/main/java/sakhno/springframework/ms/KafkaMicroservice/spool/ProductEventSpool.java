@@ -0,0 +1,408 @@
+package sakhno.springframework.ms.KafkaMicroservice.spool;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Локальный журнал событий на диске на время недоступности Kafka.
+ * <p>
+ * Журнал состоит из сегментов фиксированного размера (segment-size-bytes), отображенных в память. Записи только
+ * дописываются в конец последнего сегмента; если запись не помещается, создается следующий сегмент. Сегмент
+ * начинается с заголовка: 4 байта MAGIC и 4 байта версии формата (FORMAT_VERSION). Формат записи версии 1:
+ * <pre>
+ * length   4 байта - длина данных, 0 - конец сегмента
+ * crc      4 байта - CRC32C данных
+ * data     2 байта длина ключа + ключ, 2 байта длина messageId + messageId, 8 байт produceTimestamp,
+ *          значение в формате EventContract
+ * </pre>
+ * Позиция чтения хранится в файле checkpoint и сдвигается только после подтверждения отправки, полностью
+ * прочитанные сегменты отключаются от памяти и удаляются. Запись в отображенную память переживает падение процесса; при force-on-append
+ * каждая запись дополнительно сбрасывается на диск и переживает падение ОС.
+ * </p>
+ * <p>
+ * При запуске журнал восстанавливается: сегменты проверяются с позиции checkpoint, первая запись с неверной длиной
+ * или CRC (недописанная при сбое) считается концом журнала, а остаток сегмента обнуляется. Сегмент без заголовка или
+ * с другой версией формата (записанный прежней версией сервиса) не читается: запуск завершается ошибкой, чтобы
+ * события не были потеряны или прочитаны неверно. Такой журнал нужно воспроизвести прежней версией сервиса.
+ * </p>
+ */
+@Component
+public class ProductEventSpool implements MeterBinder, DisposableBean {
+    private final static Logger log = LoggerFactory.getLogger(ProductEventSpool.class);
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int HEADER = 8;
+    private static final int MAGIC = 0x53504F4C;
+    static final int FORMAT_VERSION = 1;
+    /** Заголовок сегмента: MAGIC и версия формата */
+    private static final int SEGMENT_HEADER = 8;
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Spool segments will stay mapped until garbage collection: {}", e.getMessage());
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceOnAppend;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private MappedByteBuffer checkpoint;
+    private Position readPosition;
+    private long pending;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder drained = new LongAdder();
+
+    @Autowired
+    public ProductEventSpool(Environment environment) {
+        this(environment.getProperty("product.spool.enabled", Boolean.class, false),
+                Paths.get(environment.getProperty("product.spool.directory",
+                        System.getProperty("java.io.tmpdir") + "/kafka-microservice-spool")),
+                environment.getProperty("product.spool.segment-size-bytes", Integer.class, 16 * 1024 * 1024),
+                environment.getProperty("product.spool.force-on-append", Boolean.class, false));
+    }
+
+    public ProductEventSpool(boolean enabled, Path directory, int segmentSize, boolean forceOnAppend) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceOnAppend = forceOnAppend;
+        if (enabled) {
+            try {
+                recover();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open spool in " + directory, e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Запись события в конец журнала.
+     * @param produceTimestamp - время создания события (epoch ms), при воспроизведении передается в заголовке
+     * produceTimestamp
+     * @throws IllegalArgumentException - если запись больше сегмента
+     */
+    public synchronized void append(String key, String messageId, long produceTimestamp, ProductCreatedEvent event) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] messageIdBytes = messageId.getBytes(StandardCharsets.UTF_8);
+        byte[] value = ProductCreatedEventCodec.encode(event);
+        int length = 12 + keyBytes.length + messageIdBytes.length + value.length;
+        if (SEGMENT_HEADER + HEADER + length > segmentSize - 4) {
+            throw new IllegalArgumentException("Spool record of " + length + " bytes exceeds segment size");
+        }
+        ByteBuffer data = ByteBuffer.allocate(length)
+                .putShort((short) keyBytes.length).put(keyBytes)
+                .putShort((short) messageIdBytes.length).put(messageIdBytes)
+                .putLong(produceTimestamp)
+                .put(value)
+                .flip();
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.writePosition + HEADER + length > segmentSize - 4) {
+            tail = openSegment(tail == null ? 0 : tail.id + 1);
+            tail.buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION);
+            tail.writePosition = SEGMENT_HEADER;
+            segments.addLast(tail);
+        }
+        MappedByteBuffer buffer = tail.buffer;
+        int position = tail.writePosition;
+        // длина пишется последней: запись без длины при чтении считается концом журнала
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.put(position + HEADER, data, 0, length);
+        buffer.putInt(position, length);
+        tail.writePosition = position + HEADER + length;
+        if (forceOnAppend) {
+            buffer.force(position, HEADER + length);
+        }
+        pending++;
+        appended.increment();
+    }
+
+    /**
+     * Запись события в журнал, если в нем есть неотправленные события. Проверка и запись выполняются под блокировкой
+     * журнала, поэтому событие не может быть отправлено в обход журнала, пока в нем остаются записанные раньше.
+     * @param always - записать событие, даже если журнал пуст
+     * @return - true, если событие записано
+     */
+    public synchronized boolean appendIfPending(boolean always, String key, String messageId, long produceTimestamp,
+                                                ProductCreatedEvent event) {
+        if (!always && pending == 0) {
+            return false;
+        }
+        append(key, messageId, produceTimestamp, event);
+        return true;
+    }
+
+    /**
+     * Чтение записей с позиции checkpoint без ее сдвига.
+     * @param max - максимальное количество записей
+     */
+    public synchronized Batch read(int max) {
+        List<SpooledEvent> events = new ArrayList<>();
+        Position position = readPosition;
+        for (Segment segment : segments) {
+            if (segment.id < position.segment()) {
+                continue;
+            }
+            int offset = segment.id == position.segment() ? position.offset() : SEGMENT_HEADER;
+            while (events.size() < max && offset < segment.writePosition) {
+                int length = segment.buffer.getInt(offset);
+                byte[] data = new byte[length];
+                segment.buffer.get(offset + HEADER, data);
+                events.add(decode(data));
+                offset += HEADER + length;
+            }
+            position = new Position(segment.id, offset);
+            if (events.size() == max) {
+                break;
+            }
+        }
+        return new Batch(events, position);
+    }
+
+    /**
+     * Сдвиг позиции чтения после подтверждения отправки пачки. Прочитанные сегменты удаляются.
+     */
+    public synchronized void commit(Batch batch) {
+        readPosition = batch.next();
+        pending -= batch.events().size();
+        drained.add(batch.events().size());
+        checkpoint.putLong(0, readPosition.segment()).putInt(8, readPosition.offset());
+        checkpoint.putInt(12, checkpointCrc(readPosition));
+        checkpoint.force();
+        while (segments.size() > 1 && segments.peekFirst().id < readPosition.segment()) {
+            deleteSegment(segments.pollFirst());
+        }
+    }
+
+    public synchronized long pending() {
+        return pending;
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        FileChannel checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        checkpointChannel.close();
+
+        List<Long> ids;
+        try (Stream<Path> files = Files.list(directory)) {
+            ids = files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        Position stored = new Position(checkpoint.getLong(0), checkpoint.getInt(8));
+        boolean valid = checkpoint.getInt(12) == checkpointCrc(stored) && ids.contains(stored.segment());
+        readPosition = valid ? stored : new Position(ids.isEmpty() ? 0 : ids.get(0), SEGMENT_HEADER);
+
+        for (long id : ids) {
+            if (id < readPosition.segment()) {
+                Files.deleteIfExists(segmentPath(id));
+                continue;
+            }
+            Segment segment = openSegment(id);
+            checkFormat(segment);
+            segments.addLast(segment);
+            int from = id == readPosition.segment() ? readPosition.offset() : 0;
+            int offset = SEGMENT_HEADER;
+            while (offset + HEADER <= segmentSize - 4) {
+                int length = segment.buffer.getInt(offset);
+                if (length <= 0 || offset + HEADER + length > segmentSize - 4 || !crcMatches(segment, offset, length)) {
+                    break;
+                }
+                if (offset >= from) {
+                    pending++;
+                }
+                offset += HEADER + length;
+            }
+            segment.writePosition = offset;
+            if (segment.buffer.getInt(offset) != 0) {
+                log.warn("Spool segment {} is corrupted at offset {}, discarding the rest of it", id, offset);
+                for (int i = offset; i < segmentSize; i++) {
+                    segment.buffer.put(i, (byte) 0);
+                }
+            }
+        }
+        if (pending > 0) {
+            log.info("Recovered {} spooled events from {}", pending, directory);
+        }
+    }
+
+    /**
+     * Проверка заголовка сегмента. Пустой сегмент (создан, но заголовок не записан) получает заголовок текущей версии.
+     * @throws IllegalStateException - если сегмент записан в другом формате
+     */
+    private void checkFormat(Segment segment) {
+        int magic = segment.buffer.getInt(0);
+        int version = segment.buffer.getInt(4);
+        if (magic == 0 && version == 0 && segment.buffer.getInt(SEGMENT_HEADER) == 0) {
+            segment.buffer.putInt(0, MAGIC).putInt(4, FORMAT_VERSION);
+            return;
+        }
+        if (magic != MAGIC || version != FORMAT_VERSION) {
+            throw new IllegalStateException("Spool segment " + segment.path + " has unsupported format "
+                    + (magic == MAGIC ? "version " + version : "without a header")
+                    + ", replay it with the service version that wrote it or remove it");
+        }
+    }
+
+    private boolean crcMatches(Segment segment, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(segment.buffer.slice(offset + HEADER, length));
+        return (int) crc.getValue() == segment.buffer.getInt(offset + 4);
+    }
+
+    private Segment openSegment(long id) {
+        Path path = segmentPath(id);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open spool segment " + path, e);
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    private void deleteSegment(Segment segment) {
+        // без отключения отображение держит место удаленного файла на диске до сборки мусора
+        unmap(segment.buffer);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("Could not delete spool segment {}: {}", segment.path, e.getMessage());
+        }
+    }
+
+    /**
+     * Отключение отображения до сборки мусора через sun.misc.Unsafe.invokeCleaner. Обращение к буферу после этого
+     * приводит к падению JVM, поэтому вызывается только для сегментов, уже исключенных из журнала под блокировкой.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Could not unmap spool segment: {}", e.getMessage());
+        }
+    }
+
+    private static SpooledEvent decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        byte[] key = new byte[buffer.getShort()];
+        buffer.get(key);
+        byte[] messageId = new byte[buffer.getShort()];
+        buffer.get(messageId);
+        long produceTimestamp = buffer.getLong();
+        byte[] value = new byte[buffer.remaining()];
+        buffer.get(value);
+        return new SpooledEvent(new String(key, StandardCharsets.UTF_8),
+                new String(messageId, StandardCharsets.UTF_8), produceTimestamp, ProductCreatedEventCodec.decode(value));
+    }
+
+    private static int checkpointCrc(Position position) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(12).putLong(position.segment()).putInt(position.offset()).flip());
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void destroy() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("product.spool.pending", this, ProductEventSpool::pending)
+                .description("Spooled events waiting to be sent")
+                .register(registry);
+        FunctionCounter.builder("product.spool.appended", appended, LongAdder::sum)
+                .description("Events written to the spool")
+                .register(registry);
+        FunctionCounter.builder("product.spool.drained", drained, LongAdder::sum)
+                .description("Spooled events acknowledged by the broker")
+                .register(registry);
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    public record Position(long segment, int offset) {
+    }
+
+    public record SpooledEvent(String key, String messageId, long produceTimestamp, ProductCreatedEvent event) {
+    }
+
+    public record Batch(List<SpooledEvent> events, Position next) {
+    }
+}
@@ -0,0 +1,172 @@
+package sakhno.springframework.ms.KafkaMicroservice.spool;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.DescribeClusterOptions;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.KafkaMicroservice.producer.AdaptiveBatchingController;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Переключение прямой отправки на локальный журнал {@link ProductEventSpool} и воспроизведение журнала.
+ * <p>
+ * Раз в drain.interval-ms кластер проверяется запросом describeCluster с таймаутом health-timeout-ms. Пока кластер
+ * недоступен или в журнале есть неотправленные события, новые события пишутся в журнал, чтобы не ждать
+ * delivery.timeout.ms и не обгонять записанные ранее. Наличие неотправленных событий проверяется под блокировкой
+ * журнала вместе с записью (см. {@link #spoolIfSpooling}). Когда кластер снова доступен, события отправляются пачками
+ * по drain.batch-size в порядке записи; позиция журнала сдвигается после подтверждения всей пачки. Если пачка
+ * подтверждена не полностью, она отправляется заново с теми же messageId, дубликаты отбрасывает потребитель.
+ * </p>
+ */
+@Component
+public class SpoolDrainer implements DisposableBean {
+    private final static Logger log = LoggerFactory.getLogger(SpoolDrainer.class);
+    private static final String TOPIC = "product-created-events-topic";
+
+    private final ProductEventSpool spool;
+    private final KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate;
+    private final AdaptiveBatchingController adaptiveBatchingController;
+    private final String bootstrapServers;
+    private final int batchSize;
+    private final int healthTimeoutMs;
+    private final long sendTimeoutMs;
+
+    private AdminClient adminClient;
+    private volatile boolean clusterAvailable = true;
+
+    @Autowired
+    public SpoolDrainer(ProductEventSpool spool, KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate,
+                        AdaptiveBatchingController adaptiveBatchingController, Environment environment) {
+        this.spool = spool;
+        this.kafkaTemplate = kafkaTemplate;
+        this.adaptiveBatchingController = adaptiveBatchingController;
+        this.bootstrapServers = environment.getProperty("spring.kafka.producer.bootstrap-servers");
+        this.batchSize = environment.getProperty("product.spool.drain.batch-size", Integer.class, 500);
+        this.healthTimeoutMs = environment.getProperty("product.spool.health-timeout-ms", Integer.class, 2000);
+        this.sendTimeoutMs = environment.getProperty("product.spool.drain.send-timeout-ms", Long.class, 30000L);
+    }
+
+    /**
+     * @return - true, если новые события пишутся в журнал, а не отправляются в Kafka
+     */
+    public boolean isSpooling() {
+        return spool.isEnabled() && (!clusterAvailable || spool.pending() > 0);
+    }
+
+    /**
+     * Запись нового события в журнал, пока кластер недоступен или в журнале есть неотправленные события.
+     * @return - true, если событие записано в журнал и отправлять его в Kafka не нужно
+     */
+    public boolean spoolIfSpooling(ProducerRecord<String, ProductCreatedEvent> record) {
+        return spool.isEnabled() && spool.appendIfPending(!clusterAvailable, record.key(), header(record, "messageId"),
+                Long.parseLong(header(record, "produceTimestamp")), record.value());
+    }
+
+    /**
+     * Запись события, отправка которого не удалась, в журнал.
+     * @return - false, если журнал выключен
+     */
+    public boolean spoolFailed(ProducerRecord<String, ProductCreatedEvent> record, Throwable cause) {
+        if (!spool.isEnabled()) {
+            return false;
+        }
+        clusterAvailable = false;
+        log.warn("Send of {} failed, writing it to the spool: {}", record.key(), cause.getMessage());
+        spool(record);
+        return true;
+    }
+
+    private void spool(ProducerRecord<String, ProductCreatedEvent> record) {
+        spool.append(record.key(), header(record, "messageId"), Long.parseLong(header(record, "produceTimestamp")),
+                record.value());
+    }
+
+    private static String header(ProducerRecord<String, ProductCreatedEvent> record, String name) {
+        return new String(record.headers().lastHeader(name).value(), StandardCharsets.UTF_8);
+    }
+
+    @Scheduled(fixedDelayString = "${product.spool.drain.interval-ms:1000}")
+    public void drain() {
+        if (!spool.isEnabled()) {
+            return;
+        }
+        boolean available = probe();
+        if (available != clusterAvailable) {
+            log.info("Kafka cluster is {}", available ? "available" : "unavailable");
+        }
+        clusterAvailable = available;
+        while (clusterAvailable && spool.pending() > 0) {
+            ProductEventSpool.Batch batch = spool.read(batchSize);
+            if (!send(batch)) {
+                clusterAvailable = false;
+                return;
+            }
+            spool.commit(batch);
+            log.info("Replayed {} spooled events, {} left", batch.events().size(), spool.pending());
+        }
+    }
+
+    private boolean send(ProductEventSpool.Batch batch) {
+        List<CompletableFuture<SendResult<String, ProductCreatedEvent>>> results =
+                new ArrayList<>(batch.events().size());
+        try {
+            for (ProductEventSpool.SpooledEvent event : batch.events()) {
+                ProducerRecord<String, ProductCreatedEvent> record = new ProducerRecord<>(TOPIC, event.key(),
+                        event.event());
+                record.headers().add("messageId", event.messageId().getBytes(StandardCharsets.UTF_8));
+                record.headers().add("produceTimestamp",
+                        Long.toString(event.produceTimestamp()).getBytes(StandardCharsets.UTF_8));
+                results.add(adaptiveBatchingController.send(() -> kafkaTemplate.send(record)));
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.warn("Replay of spooled events failed: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean probe() {
+        try {
+            if (adminClient == null) {
+                adminClient = AdminClient.create(Map.of(
+                        AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers,
+                        AdminClientConfig.REQUEST_TIMEOUT_MS_CONFIG, healthTimeoutMs,
+                        AdminClientConfig.DEFAULT_API_TIMEOUT_MS_CONFIG, healthTimeoutMs));
+            }
+            return !adminClient.describeCluster(new DescribeClusterOptions().timeoutMs(healthTimeoutMs))
+                    .nodes().get(healthTimeoutMs, TimeUnit.MILLISECONDS).isEmpty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (adminClient != null) {
+            adminClient.close();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.KafkaMicroservice.producer.AdaptiveBatchingController;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Адаптивная подстройка пакетов под пиковой нагрузкой на встроенном кластере из 3 брокеров: продюсер пересоздается с
+ * большим linger.ms, и ни одна отправленная запись при этом не теряется. Время отправки не сравнивается, для
+ * измерений используется модуль Benchmarks.
+ */
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true)
+@SpringBootTest(properties = "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}")
+public class AdaptiveBatchingIntegrationTest {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveBatchingIntegrationTest.class);
+    private static final long LOAD_MS = 5000;
+    private static final int MAX_IN_FLIGHT = 5000;
+
+    @Autowired
+    private ProducerFactory<String, ProductCreatedEvent> producerFactory;
+
+    @Test
+    void testAdjust_whenSpike_raisesLingerWithoutLosingRecords() throws Exception {
+        DefaultKafkaProducerFactory<String, ProductCreatedEvent> adaptiveFactory =
+                new DefaultKafkaProducerFactory<>(producerFactory.getConfigurationProperties());
+        KafkaTemplate<String, ProductCreatedEvent> adaptiveTemplate = new KafkaTemplate<>(adaptiveFactory);
+        AdaptiveBatchingController controller = new AdaptiveBatchingController(adaptiveFactory, adaptiveTemplate,
+                new MockEnvironment()
+                        .withProperty("product.producer.adaptive-batching.enabled", "true")
+                        .withProperty("product.producer.adaptive-batching.cooldown-ms", "500"));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(controller::adjust, 200, 200, TimeUnit.MILLISECONDS);
+
+        ProductCreatedEvent event = new ProductCreatedEvent(UUID.randomUUID().toString(), "Samsung",
+                new BigDecimal(600), 1);
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        AtomicInteger acknowledged = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        int sent = 0;
+        try {
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LOAD_MS);
+            while (System.nanoTime() < end) {
+                inFlight.acquire();
+                ProducerRecord<String, ProductCreatedEvent> record = new ProducerRecord<>(
+                        "product-created-events-topic", UUID.randomUUID().toString(), event);
+                record.headers().add("messageId", UUID.randomUUID().toString().getBytes());
+                controller.send(() -> adaptiveTemplate.send(record)).whenComplete((result, exception) -> {
+                    (exception == null ? acknowledged : failed).incrementAndGet();
+                    inFlight.release();
+                });
+                sent++;
+            }
+            inFlight.acquire(MAX_IN_FLIGHT);
+        } finally {
+            scheduler.shutdownNow();
+            adaptiveFactory.destroy();
+        }
+
+        log.info("Sent {} records, linger.ms={}, batch.size={}", sent, controller.getLingerMs(),
+                controller.getBatchSize());
+        assertEquals(0, failed.get());
+        assertEquals(sent, acknowledged.get());
+        assertTrue(controller.getLingerMs() > 0, "linger was not raised under load");
+    }
+}
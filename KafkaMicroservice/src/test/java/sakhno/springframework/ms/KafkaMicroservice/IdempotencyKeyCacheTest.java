@@ -0,0 +1,82 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import sakhno.springframework.ms.KafkaMicroservice.idempotency.IdempotencyKeyCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyKeyCacheTest {
+
+    @Test
+    void testGetOrCreate_whenTimedOut_resendsWithSameIds() {
+        IdempotencyKeyCache cache = new IdempotencyKeyCache(new MockEnvironment());
+        List<String> attempts = new ArrayList<>();
+
+        CompletableFuture<String> first = cache.getOrCreate("key", "body", (productId, messageId) -> {
+            attempts.add(productId + "/" + messageId);
+            return CompletableFuture.failedFuture(new CompletionException(new TimeoutException()));
+        });
+        assertTrue(first.isCompletedExceptionally());
+        assertEquals(1, cache.size());
+
+        CompletableFuture<String> second = cache.getOrCreate("key", "body", (productId, messageId) -> {
+            attempts.add(productId + "/" + messageId);
+            return CompletableFuture.failedFuture(new IllegalStateException("broker down"));
+        });
+        assertTrue(second.isCompletedExceptionally());
+        // исход первой попытки неизвестен, запись сохраняется и после ошибки другого типа
+        assertEquals(1, cache.size());
+
+        CompletableFuture<String> third = cache.getOrCreate("key", "body", (productId, messageId) -> {
+            attempts.add(productId + "/" + messageId);
+            return CompletableFuture.completedFuture(productId);
+        });
+        assertEquals(attempts.get(0).split("/")[0], third.join());
+        assertEquals(3, attempts.size());
+        assertEquals(1, attempts.stream().distinct().count());
+        assertEquals(2, cache.getResends());
+    }
+
+    @Test
+    void testGetOrCreate_whenFailed_forgetsKey() {
+        IdempotencyKeyCache cache = new IdempotencyKeyCache(new MockEnvironment());
+        List<String> productIds = new ArrayList<>();
+
+        cache.getOrCreate("key", "body", (productId, messageId) -> {
+            productIds.add(productId);
+            return CompletableFuture.failedFuture(new IllegalStateException("serialization"));
+        });
+        assertEquals(0, cache.size());
+        cache.getOrCreate("key", "body", (productId, messageId) -> {
+            productIds.add(productId);
+            return CompletableFuture.completedFuture(productId);
+        });
+
+        assertNotEquals(productIds.get(0), productIds.get(1));
+    }
+
+    @Test
+    void testEvict_whenCreationInFlight_keepsEntry() {
+        IdempotencyKeyCache cache = new IdempotencyKeyCache(new MockEnvironment()
+                .withProperty("product.idempotency.max-size", "1"));
+        CompletableFuture<String> inFlight = new CompletableFuture<>();
+        cache.getOrCreate("first", "body", (productId, messageId) -> inFlight);
+
+        cache.getOrCreate("second", "body", (productId, messageId) -> CompletableFuture.completedFuture(productId));
+
+        assertEquals(1, cache.getEvictions());
+        CompletableFuture<String> joined = cache.getOrCreate("first", "body", (productId, messageId) -> {
+            throw new AssertionError("created twice");
+        });
+        assertEquals(1, cache.getJoins());
+        inFlight.complete("done");
+        assertEquals("done", joined.join());
+    }
+}
@@ -0,0 +1,92 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
+import sakhno.springframework.ms.KafkaMicroservice.idempotency.IdempotencyKeyCache;
+import sakhno.springframework.ms.KafkaMicroservice.repository.ProductRepository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Повторы POST /product с одним Idempotency-Key, в том числе одновременные, создают один продукт и возвращают его
+ * идентификатор; тот же ключ с другим телом отклоняется, а кэш не растет больше max-size.
+ */
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+                "product.idempotency.max-size=5"})
+public class IdempotencyKeyIntegrationTest {
+    private static final int RETRIES = 8;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private IdempotencyKeyCache idempotencyKeyCache;
+
+    @Test
+    void testCreateProduct_whenRetriedWithSameKey_createsOneProduct() throws Exception {
+        CreateProductDto createProductDto = new CreateProductDto("Samsung", new BigDecimal("600.00"), 1);
+        String key = UUID.randomUUID().toString();
+        long productsBefore = productRepository.count();
+
+        ExecutorService executor = Executors.newFixedThreadPool(RETRIES);
+        List<CompletableFuture<ResponseEntity<String>>> responses = new ArrayList<>();
+        try {
+            for (int i = 0; i < RETRIES; i++) {
+                responses.add(CompletableFuture.supplyAsync(() -> post(createProductDto, key), executor));
+            }
+            CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        String productId = responses.get(0).join().getBody();
+        for (CompletableFuture<ResponseEntity<String>> response : responses) {
+            assertEquals(HttpStatus.CREATED, response.join().getStatusCode());
+            assertEquals(productId, response.join().getBody());
+        }
+        ResponseEntity<String> repeated = post(new CreateProductDto("Samsung", new BigDecimal(600), 1), key);
+        assertEquals(productId, repeated.getBody());
+        assertEquals(productsBefore + 1, productRepository.count());
+        assertEquals(RETRIES, idempotencyKeyCache.getHits() + idempotencyKeyCache.getJoins());
+
+        ResponseEntity<String> conflict = post(new CreateProductDto("Apple", new BigDecimal(700), 1), key);
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, conflict.getStatusCode());
+        assertEquals(1, idempotencyKeyCache.getConflicts());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(HttpStatus.CREATED, post(createProductDto, UUID.randomUUID().toString()).getStatusCode());
+        }
+        assertEquals(5, idempotencyKeyCache.size());
+        assertEquals(6, idempotencyKeyCache.getEvictions());
+        assertNotEquals(productId, post(createProductDto, key).getBody());
+    }
+
+    private ResponseEntity<String> post(CreateProductDto createProductDto, String key) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Idempotency-Key", key);
+        return restTemplate.postForEntity("/product", new HttpEntity<>(createProductDto, headers), String.class);
+    }
+}
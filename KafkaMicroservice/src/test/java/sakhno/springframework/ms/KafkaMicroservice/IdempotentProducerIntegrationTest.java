@@ -9,7 +9,7 @@ import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
-import sakhno.springframework.ms.KafkaMicroservice.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
 
 import java.util.Map;
 
@@ -0,0 +1,84 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
+import sakhno.springframework.ms.KafkaMicroservice.entety.OutboxEventEntity;
+import sakhno.springframework.ms.KafkaMicroservice.repository.OutboxEventRepository;
+import sakhno.springframework.ms.KafkaMicroservice.repository.ProductRepository;
+import sakhno.springframework.ms.KafkaMicroservice.service.ProductService;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Создание продуктов через outbox: ответ возвращается после фиксации транзакции, события доставляет OutboxRelay с
+ * messageId из таблицы outbox_events.
+ */
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true)
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "product.outbox.relay.interval-ms=50"})
+public class OutboxRelayIntegrationTest {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelayIntegrationTest.class);
+    private static final int PRODUCTS = 2000;
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Test
+    void testCreateProduct_whenOutboxDelivery_relaysEveryEventWithStoredMessageId() throws Exception {
+        Map<String, String> received = new ConcurrentHashMap<>();
+        KafkaMessageListenerContainer<String, ProductCreatedEvent> container = ProductCreatedEventsTestConsumer.start(
+                embeddedKafkaBroker, "outbox-test", record ->
+                        received.put(ProductCreatedEventsTestConsumer.messageId(record), record.key()));
+        try {
+            CreateProductDto createProductDto = new CreateProductDto("Samsung", new BigDecimal(600), 1);
+            Set<String> productIds = new HashSet<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < PRODUCTS; i++) {
+                productIds.add(productService.createProduct(createProductDto));
+            }
+            long writeNanos = System.nanoTime() - start;
+            assertEquals(PRODUCTS, productRepository.count());
+
+            await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> assertEquals(PRODUCTS, received.size()));
+            long relayNanos = System.nanoTime() - start;
+            await().atMost(Duration.ofSeconds(10))
+                    .untilAsserted(() -> assertEquals(0, outboxEventRepository.countBySentAtIsNull()));
+
+            Map<String, String> stored = outboxEventRepository.findAll().stream()
+                    .collect(Collectors.toMap(OutboxEventEntity::getMessageId, OutboxEventEntity::getMessageKey));
+            assertEquals(stored, received);
+            assertEquals(productIds, new HashSet<>(received.values()));
+            log.info("Outbox: {} products written in {} ms, relayed within {} ms", PRODUCTS,
+                    writeNanos / 1_000_000, relayNanos / 1_000_000);
+        } finally {
+            container.stop();
+        }
+    }
+}
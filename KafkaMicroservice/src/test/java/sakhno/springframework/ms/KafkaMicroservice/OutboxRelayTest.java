@@ -0,0 +1,94 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.support.TransactionTemplate;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventCodec;
+import sakhno.springframework.ms.KafkaMicroservice.entety.OutboxEventEntity;
+import sakhno.springframework.ms.KafkaMicroservice.outbox.OutboxRelay;
+import sakhno.springframework.ms.KafkaMicroservice.producer.AdaptiveBatchingController;
+import sakhno.springframework.ms.KafkaMicroservice.repository.OutboxEventRepository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class OutboxRelayTest {
+    private final OutboxEventRepository outboxEventRepository = mock(OutboxEventRepository.class);
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = mock(KafkaTemplate.class);
+    private final AdaptiveBatchingController adaptiveBatchingController = mock(AdaptiveBatchingController.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRelay_whenEventNotAcknowledged_marksOnlyPrecedingEventsSent() {
+        List<OutboxEventEntity> events = events(1, 3);
+        when(outboxEventRepository.findBySentAtIsNullOrderByIdAsc(any())).thenReturn(events);
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.completedFuture(null))
+                .thenReturn(CompletableFuture.failedFuture(new KafkaException("not acknowledged")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        relay(new MockEnvironment().withProperty("product.outbox.relay.batch-size", "3")).relay();
+
+        verify(outboxEventRepository).markSent(eq(List.of(1L)), any());
+        // пачка не подтверждена целиком, следующая не читается
+        verify(outboxEventRepository, times(1)).findBySentAtIsNullOrderByIdAsc(Limit.of(3));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRelay_whenBatchesStayFull_stopsAfterMaxBatches() {
+        when(outboxEventRepository.findBySentAtIsNullOrderByIdAsc(any()))
+                .thenAnswer(invocation -> events(1, 2));
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(null));
+
+        relay(new MockEnvironment()
+                .withProperty("product.outbox.relay.batch-size", "2")
+                .withProperty("product.outbox.relay.max-batches", "3")).relay();
+
+        verify(outboxEventRepository, times(3)).findBySentAtIsNullOrderByIdAsc(Limit.of(2));
+        verify(outboxEventRepository, times(3)).markSent(anyCollection(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private OutboxRelay relay(MockEnvironment environment) {
+        when(adaptiveBatchingController.send(any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+        doAnswer(invocation -> {
+            invocation.<Consumer<Object>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        return new OutboxRelay(outboxEventRepository, kafkaTemplate, adaptiveBatchingController, transactionTemplate,
+                environment);
+    }
+
+    private static List<OutboxEventEntity> events(long firstId, int count) {
+        byte[] payload = ProductCreatedEventCodec.encode(
+                new ProductCreatedEvent(UUID.randomUUID().toString(), "Samsung", new BigDecimal(600), 1));
+        List<OutboxEventEntity> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            OutboxEventEntity event = new OutboxEventEntity(UUID.randomUUID().toString(),
+                    "product-created-events-topic", UUID.randomUUID().toString(), payload);
+            event.setId(firstId + i);
+            events.add(event);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,142 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
+import sakhno.springframework.ms.KafkaMicroservice.service.ProductService;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сравнение режимов product.producer.partitioner.mode на встроенном кластере из 3 брокеров, в котором брокер 0
+ * ограничивает запись квотой {@link ThrottledBrokerQuotaCallback}. Запросы выполняются из фиксированного пула потоков
+ * (аналог пула Tomcat). key-affinity распределяет записи по хешу ключа, и треть из них ждет медленного лидера, занимая
+ * потоки; latency-aware уводит записи на быстрые партиции. Проверяется только доля записей медленной партиции, время
+ * режимов выводится в лог для сравнения. Каждый режим запускается в отдельном контексте со своим продюсером, поэтому
+ * квота у них независимая.
+ */
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true, brokerProperties = {
+        "client.quota.callback.class=sakhno.springframework.ms.KafkaMicroservice.ThrottledBrokerQuotaCallback",
+        "test.throttled.node.id=0",
+        "test.throttled.produce-bytes-per-second=10000",
+        // скорость считается по quota.window.num окнам: при 11 окнах по умолчанию квота пропускает всплеск ~10 секунд
+        "quota.window.num=2"})
+public class PartitionerModesIntegrationTest {
+    private static final Logger log = LoggerFactory.getLogger(PartitionerModesIntegrationTest.class);
+    private static final String TOPIC = "product-created-events-topic";
+    private static final int PRODUCTS = 1000;
+    private static final int THREADS = 16;
+    private static final int THROTTLED_NODE = 0;
+
+    @Test
+    void testCreateProduct_whenLeaderThrottled_latencyAwareAvoidsSlowPartition(EmbeddedKafkaBroker broker)
+            throws Exception {
+        String brokers = broker.getBrokersAsString();
+        // топик создается контекстом первого режима
+        Result keyAffinity = run(brokers, "key-affinity");
+        int slowPartition = slowPartition(brokers);
+        Result latencyAware = run(brokers, "latency-aware");
+
+        double latencyAwareShare = latencyAware.share(slowPartition);
+        double keyAffinityShare = keyAffinity.share(slowPartition);
+        log.info("Partitioner: slow partition {}, key-affinity {} ms, share {}, partitions {}",
+                slowPartition, keyAffinity.millis, keyAffinityShare, Arrays.toString(keyAffinity.counts));
+        log.info("Partitioner: slow partition {}, latency-aware {} ms, share {}, partitions {}",
+                slowPartition, latencyAware.millis, latencyAwareShare, Arrays.toString(latencyAware.counts));
+
+        // медленный брокер по-прежнему получает записи, которые успевает подтвердить в пределах квоты
+        assertTrue(keyAffinityShare > 0.25, "key-affinity share " + keyAffinityShare);
+        assertTrue(latencyAwareShare < keyAffinityShare * 0.75,
+                "latency-aware share " + latencyAwareShare + ", key-affinity share " + keyAffinityShare);
+    }
+
+    private Result run(String brokers, String mode) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(KafkaMicroserviceApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .run("--spring.kafka.producer.bootstrap-servers=" + brokers,
+                        "--product.create.delivery=direct",
+                        "--product.producer.partitioner.mode=" + mode)) {
+            ProductService productService = context.getBean(ProductService.class);
+            MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+            CreateProductDto createProductDto = new CreateProductDto("Samsung", new BigDecimal(600), 1);
+            // прогрев: метаданные топика и соединения с брокерами
+            productService.createProduct(createProductDto);
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            long millis;
+            try {
+                long start = System.nanoTime();
+                List<Future<String>> results = new ArrayList<>(PRODUCTS);
+                for (int i = 0; i < PRODUCTS; i++) {
+                    results.add(executor.submit(() -> productService.createProduct(createProductDto)));
+                }
+                for (Future<String> result : results) {
+                    assertNotNull(result.get(60, TimeUnit.SECONDS));
+                }
+                millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            } finally {
+                executor.shutdownNow();
+            }
+
+            // ProducerListener вызывается после завершения future отправки
+            await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertEquals(PRODUCTS + 1,
+                    meterRegistry.find("product.producer.send.latency").timers().stream()
+                            .mapToLong(Timer::count)
+                            .sum()));
+            long[] counts = new long[3];
+            for (Timer timer : meterRegistry.find("product.producer.send.latency").timers()) {
+                counts[Integer.parseInt(timer.getId().getTag("partition"))] += timer.count();
+            }
+            return new Result(millis, counts);
+        }
+    }
+
+    private static int slowPartition(String brokers) throws Exception {
+        try (AdminClient adminClient = AdminClient.create(
+                Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, brokers))) {
+            TopicDescription description = adminClient.describeTopics(List.of(TOPIC)).allTopicNames().get()
+                    .get(TOPIC);
+            return description.partitions().stream()
+                    .filter(partition -> partition.leader().id() == THROTTLED_NODE)
+                    .findFirst()
+                    .orElseThrow()
+                    .partition();
+        }
+    }
+
+    private record Result(long millis, long[] counts) {
+        double share(int partition) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return (double) counts[partition] / total;
+        }
+    }
+}
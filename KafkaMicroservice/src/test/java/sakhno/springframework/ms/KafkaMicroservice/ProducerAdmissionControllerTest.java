@@ -0,0 +1,124 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.KafkaMicroservice.controller.ProductController;
+import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
+import sakhno.springframework.ms.KafkaMicroservice.exception.ProducerOverloadedException;
+import sakhno.springframework.ms.KafkaMicroservice.producer.ProducerAdmissionController;
+import sakhno.springframework.ms.KafkaMicroservice.service.ProductService;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ProducerAdmissionControllerTest {
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = mock(KafkaTemplate.class);
+
+    private final MockEnvironment environment = new MockEnvironment()
+            .withProperty("product.producer.admission.enabled", "true")
+            .withProperty("product.producer.admission.initial-limit", "4")
+            .withProperty("product.producer.admission.min-limit", "2")
+            .withProperty("product.producer.admission.max-limit", "8")
+            .withProperty("product.producer.admission.target-latency-ms", "50")
+            .withProperty("product.producer.admission.backoff-ratio", "0.5");
+
+    @Test
+    void testAcquire_whenLimitReached_rejectsUntilReleased() {
+        ProducerAdmissionController controller = new ProducerAdmissionController(kafkaTemplate, environment);
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        controller.bindTo(meterRegistry);
+
+        long[] admitted = new long[4];
+        for (int i = 0; i < admitted.length; i++) {
+            admitted[i] = controller.acquire();
+        }
+        ProducerOverloadedException exception = assertThrows(ProducerOverloadedException.class, controller::acquire);
+        assertFalse(exception.isBufferExhausted());
+        assertEquals(1, exception.getRetryAfterSeconds());
+
+        controller.release(admitted[0], null);
+        controller.acquire();
+        assertEquals(5, meterRegistry.get("product.producer.admission.admitted").functionCounter().count());
+        assertEquals(1, meterRegistry.get("product.producer.admission.rejected").tag("reason", "limit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void testRelease_whenLatencyAboveTarget_decreasesMultiplicativelyAndRecoversAdditively() {
+        ProducerAdmissionController controller = new ProducerAdmissionController(kafkaTemplate, environment);
+
+        controller.release(controller.acquire() - TimeUnit.MILLISECONDS.toNanos(100), null);
+        assertEquals(2, controller.getLimit());
+        // второе медленное подтверждение в пределах target-latency-ms лимит не уменьшает
+        controller.release(controller.acquire(), new RuntimeException("timeout"));
+        assertEquals(2, controller.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            controller.release(controller.acquire(), null);
+        }
+        assertTrue(controller.getLimit() >= 6, "limit is expected to grow by about one per limit acknowledgements");
+        for (int i = 0; i < 200; i++) {
+            controller.release(controller.acquire(), null);
+        }
+        assertEquals(8, controller.getLimit());
+        assertEquals(0, controller.getInFlight());
+    }
+
+    @Test
+    void testAcquire_whenProducerBufferFull_rejectsWithBufferExhausted() {
+        Map<MetricName, Metric> metrics = Map.of(
+                metricName("buffer-total-bytes"), metric(1000.0),
+                metricName("buffer-available-bytes"), metric(50.0));
+        doReturn(metrics).when(kafkaTemplate).metrics();
+        ProducerAdmissionController controller = new ProducerAdmissionController(kafkaTemplate, environment);
+
+        controller.acquire();
+        controller.refreshBufferUtilization();
+        ProducerOverloadedException exception = assertThrows(ProducerOverloadedException.class, controller::acquire);
+        assertTrue(exception.isBufferExhausted());
+    }
+
+    @Test
+    void testCreateProduct_whenRejected_returnsStatusWithRetryAfter() {
+        ProductService productService = mock(ProductService.class);
+        ProductController productController = new ProductController(productService);
+        CreateProductDto createProductDto = new CreateProductDto("Samsung", new BigDecimal(600), 1);
+
+        when(productService.createProductAsync(createProductDto, null))
+                .thenThrow(new ProducerOverloadedException("limit", false, 2));
+        ResponseEntity<Object> response = productController.createProduct(createProductDto, null).join();
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+        assertEquals("2", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        reset(productService);
+        when(productService.createProductAsync(createProductDto, null))
+                .thenThrow(new ProducerOverloadedException("buffer", true, 1));
+        response = productController.createProduct(createProductDto, null).join();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    private static MetricName metricName(String name) {
+        return new MetricName(name, "producer-metrics", "", Map.of());
+    }
+
+    private static Metric metric(double value) {
+        Metric metric = mock(Metric.class);
+        when(metric.metricValue()).thenReturn(value);
+        return metric;
+    }
+}
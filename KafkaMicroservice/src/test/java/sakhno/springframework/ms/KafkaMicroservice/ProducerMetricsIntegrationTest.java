@@ -0,0 +1,62 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
+import sakhno.springframework.ms.KafkaMicroservice.service.ProductService;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Время отправки учитывается по партициям и выдается вместе с метриками клиента Kafka на /actuator/prometheus.
+ */
+@DirtiesContext
+@AutoConfigureObservability
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+                "product.create.delivery=direct"})
+public class ProducerMetricsIntegrationTest {
+    private static final int PRODUCTS = 30;
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void testCreateProduct_whenSentDirectly_recordsSendLatencyPerPartition() throws Exception {
+        CreateProductDto createProductDto = new CreateProductDto("Samsung", new BigDecimal(600), 1);
+        for (int i = 0; i < PRODUCTS; i++) {
+            productService.createProduct(createProductDto);
+        }
+
+        // ProducerListener вызывается после завершения future отправки
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> assertEquals(PRODUCTS,
+                meterRegistry.find("product.producer.send.latency").timers().stream()
+                        .mapToLong(Timer::count)
+                        .sum()));
+        assertTrue(meterRegistry.find("product.producer.send.latency").timers().size() > 1,
+                "latency is expected to be tagged by partition");
+
+        String scrape = restTemplate.getForObject("/actuator/prometheus", String.class);
+        assertTrue(scrape.contains("product_producer_send_latency_seconds_bucket"));
+        assertTrue(scrape.contains("kafka_producer_record_send_total"));
+    }
+}
@@ -0,0 +1,47 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventDeserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Потребитель product-created-events-topic для интеграционных тестов: читает топик с начала в отдельной группе и
+ * возвращается после назначения всех партиций.
+ */
+final class ProductCreatedEventsTestConsumer {
+
+    private ProductCreatedEventsTestConsumer() {
+    }
+
+    static KafkaMessageListenerContainer<String, ProductCreatedEvent> start(
+            EmbeddedKafkaBroker embeddedKafkaBroker, String groupId,
+            MessageListener<String, ProductCreatedEvent> listener) {
+        DefaultKafkaConsumerFactory<String, ProductCreatedEvent> consumerFactory = new DefaultKafkaConsumerFactory<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, embeddedKafkaBroker.getBrokersAsString(),
+                ConsumerConfig.GROUP_ID_CONFIG, groupId,
+                ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest",
+                ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class,
+                ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ProductCreatedEventDeserializer.class));
+        KafkaMessageListenerContainer<String, ProductCreatedEvent> container = new KafkaMessageListenerContainer<>(
+                consumerFactory, new ContainerProperties("product-created-events-topic"));
+        container.setupMessageListener(listener);
+        container.start();
+        ContainerTestUtils.waitForAssignment(container, embeddedKafkaBroker.getPartitionsPerTopic());
+        return container;
+    }
+
+    static String messageId(ConsumerRecord<String, ProductCreatedEvent> record) {
+        return new String(record.headers().lastHeader("messageId").value(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,119 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import sakhno.springframework.ms.KafkaMicroservice.producer.PartitionLatencyTracker;
+import sakhno.springframework.ms.KafkaMicroservice.producer.ProductEventPartitioner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProductEventPartitionerTest {
+    private static final String TOPIC = "product-created-events-topic";
+    private static final int SENDS = 3000;
+
+    private final Node[] nodes = {new Node(0, "localhost", 9092), new Node(1, "localhost", 9093),
+            new Node(2, "localhost", 9094)};
+    private final Cluster cluster = new Cluster("cluster", List.of(nodes), List.of(
+            new PartitionInfo(TOPIC, 0, nodes[0], nodes, nodes),
+            new PartitionInfo(TOPIC, 1, nodes[1], nodes, nodes),
+            new PartitionInfo(TOPIC, 2, nodes[2], nodes, nodes)), Set.of(), Set.of());
+
+    @Test
+    void testPartition_whenKeyAffinity_usesKeyHash() {
+        ProductEventPartitioner partitioner = partitioner("key-affinity");
+
+        for (int i = 0; i < 100; i++) {
+            byte[] key = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+            int partition = partitioner.partition(TOPIC, null, key, null, null, cluster);
+            assertEquals(Utils.toPositive(Utils.murmur2(key)) % 3, partition);
+            assertEquals(partition, partitioner.partition(TOPIC, null, key, null, null, cluster));
+        }
+    }
+
+    @Test
+    void testPartition_whenLatencyAware_avoidsSlowPartition() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("product.producer.partitioner.mode", "latency-aware")
+                .withProperty("product.producer.partitioner.exploration-ratio", "0.05");
+        PartitionLatencyTracker tracker = new PartitionLatencyTracker(new SimpleMeterRegistry(), environment);
+        ProductEventPartitioner partitioner = partitioner(tracker);
+        // партиция 0 подтверждается за 500 мс, остальные - сразу
+        for (int partition = 0; partition < 3; partition++) {
+            TopicPartition topicPartition = new TopicPartition(TOPIC, partition);
+            tracker.onSend(topicPartition);
+            tracker.onAcknowledged(topicPartition, partition == 0 ? 500 : 1, false);
+        }
+
+        // быстрые партиции подтверждают запись сразу, медленная - не подтверждает
+        int[] counts = new int[3];
+        for (int i = 0; i < SENDS; i++) {
+            byte[] key = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+            int partition = partitioner.partition(TOPIC, null, key, null, null, cluster);
+            counts[partition]++;
+            if (partition != 0) {
+                tracker.onAcknowledged(new TopicPartition(TOPIC, partition), 1, false);
+            }
+        }
+
+        // в медленную партицию уходит одна проба exploration-ratio: пока она не подтверждена, партиция не исследуется
+        assertEquals(1, counts[0]);
+        assertTrue(counts[1] > SENDS * 0.4 && counts[2] > SENDS * 0.4);
+        assertEquals(counts[0], tracker.getInFlight(new TopicPartition(TOPIC, 0)));
+    }
+
+    @Test
+    void testPartition_whenLatencyAware_skipsPartitionWithoutLeader() {
+        Cluster withoutLeader = new Cluster("cluster", List.of(nodes), List.of(
+                new PartitionInfo(TOPIC, 0, null, nodes, nodes),
+                new PartitionInfo(TOPIC, 1, nodes[1], nodes, nodes),
+                new PartitionInfo(TOPIC, 2, nodes[2], nodes, nodes)), Set.of(), Set.of());
+        ProductEventPartitioner partitioner = partitioner("latency-aware");
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(partitioner.partition(TOPIC, null, null, null, null, withoutLeader) != 0);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testOnNewBatch_whenPartitionReassigned_countsRecordOnce() {
+        PartitionLatencyTracker tracker = new PartitionLatencyTracker(new SimpleMeterRegistry(),
+                new MockEnvironment().withProperty("product.producer.partitioner.mode", "latency-aware"));
+        ProductEventPartitioner partitioner = partitioner(tracker);
+
+        int first = partitioner.partition(TOPIC, null, null, null, null, cluster);
+        partitioner.onNewBatch(TOPIC, cluster, first);
+        int second = partitioner.partition(TOPIC, null, null, null, null, cluster);
+
+        int inFlight = 0;
+        for (int partition = 0; partition < 3; partition++) {
+            inFlight += tracker.getInFlight(new TopicPartition(TOPIC, partition));
+        }
+        assertEquals(1, inFlight);
+        assertEquals(1, tracker.getInFlight(new TopicPartition(TOPIC, second)));
+    }
+
+    private ProductEventPartitioner partitioner(String mode) {
+        return partitioner(new PartitionLatencyTracker(new SimpleMeterRegistry(),
+                new MockEnvironment().withProperty("product.producer.partitioner.mode", mode)));
+    }
+
+    private static ProductEventPartitioner partitioner(PartitionLatencyTracker tracker) {
+        ProductEventPartitioner partitioner = new ProductEventPartitioner();
+        partitioner.configure(Map.of(PartitionLatencyTracker.TRACKER_CONFIG, tracker));
+        return partitioner;
+    }
+}
@@ -0,0 +1,154 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.KafkaMicroservice.producer.AdaptiveBatchingController;
+import sakhno.springframework.ms.KafkaMicroservice.spool.ProductEventSpool;
+import sakhno.springframework.ms.KafkaMicroservice.spool.SpoolDrainer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class ProductEventSpoolTest {
+    private static final int SEGMENT_SIZE = 4096;
+    private static final long TIMESTAMP = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testSpool_whenManyRecords_rollsSegmentsAndReadsInOrder() throws IOException {
+        ProductEventSpool spool = new ProductEventSpool(true, directory, SEGMENT_SIZE, false);
+        for (int i = 0; i < 1000; i++) {
+            spool.append("key-" + i, "message-" + i, TIMESTAMP + i, event(i));
+        }
+        assertTrue(segmentCount() > 10);
+        assertEquals(1000, spool.pending());
+
+        List<String> messageIds = new ArrayList<>();
+        while (spool.pending() > 0) {
+            ProductEventSpool.Batch batch = spool.read(100);
+            batch.events().forEach(event -> messageIds.add(event.messageId()));
+            spool.commit(batch);
+        }
+        assertEquals(1000, messageIds.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("message-" + i, messageIds.get(i));
+        }
+        assertEquals(1, segmentCount());
+    }
+
+    @Test
+    void testAppendIfPending_whenSpoolDrained_leavesEventForDirectSend() {
+        ProductEventSpool spool = new ProductEventSpool(true, directory, SEGMENT_SIZE, false);
+        assertFalse(spool.appendIfPending(false, "key-0", "message-0", TIMESTAMP, event(0)));
+        assertTrue(spool.appendIfPending(true, "key-1", "message-1", TIMESTAMP, event(1)));
+        // пока в журнале есть событие, следующие пишутся за ним
+        assertTrue(spool.appendIfPending(false, "key-2", "message-2", TIMESTAMP, event(2)));
+
+        spool.commit(spool.read(10));
+        assertFalse(spool.appendIfPending(false, "key-3", "message-3", TIMESTAMP, event(3)));
+        assertEquals(0, spool.pending());
+    }
+
+    @Test
+    void testSpool_whenSegmentHasNoFormatHeader_refusesToOpen() throws IOException {
+        // сегмент прежнего формата начинается сразу с длины первой записи
+        try (FileChannel channel = FileChannel.open(directory.resolve(String.format("%020d.seg", 0)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(SEGMENT_SIZE).putInt(0, 40).putInt(4, 0x12345678));
+        }
+
+        assertThrows(IllegalStateException.class, () -> new ProductEventSpool(true, directory, SEGMENT_SIZE, false));
+    }
+
+    @Test
+    void testSpool_whenReopened_resumesFromCheckpoint() {
+        ProductEventSpool spool = new ProductEventSpool(true, directory, SEGMENT_SIZE, false);
+        for (int i = 0; i < 100; i++) {
+            spool.append("key-" + i, "message-" + i, TIMESTAMP + i, event(i));
+        }
+        spool.commit(spool.read(40));
+
+        ProductEventSpool reopened = new ProductEventSpool(true, directory, SEGMENT_SIZE, false);
+        assertEquals(60, reopened.pending());
+        ProductEventSpool.SpooledEvent first = reopened.read(1).events().get(0);
+        assertEquals("message-40", first.messageId());
+        assertEquals("key-40", first.key());
+        assertEquals(TIMESTAMP + 40, first.produceTimestamp());
+        assertEquals(event(40), first.event());
+    }
+
+    @Test
+    void testSpool_whenLastRecordIsTorn_recoversUpToIt() throws IOException {
+        ProductEventSpool spool = new ProductEventSpool(true, directory, SEGMENT_SIZE, false);
+        spool.append("key-0", "message-0", TIMESTAMP, event(0));
+        spool.append("key-1", "message-1", TIMESTAMP + 1, event(1));
+        int tornOffset = spool.read(2).next().offset();
+        spool.append("key-2", "message-2", TIMESTAMP + 2, event(2));
+
+        // портится последний байт третьей записи, как при сбое во время записи
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.toString().endsWith(".seg")).findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, tornOffset);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), tornOffset + 8 + length.flip().getInt() - 1);
+        }
+
+        ProductEventSpool recovered = new ProductEventSpool(true, directory, SEGMENT_SIZE, false);
+        assertEquals(2, recovered.pending());
+        recovered.append("key-3", "message-3", TIMESTAMP + 3, event(3));
+        assertEquals(List.of("message-0", "message-1", "message-3"),
+                recovered.read(10).events().stream().map(ProductEventSpool.SpooledEvent::messageId).toList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testDrainer_whenClusterUnreachable_switchesToSpool() {
+        ProductEventSpool spool = new ProductEventSpool(true, directory, SEGMENT_SIZE, false);
+        KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = mock(KafkaTemplate.class);
+        SpoolDrainer drainer = new SpoolDrainer(spool, kafkaTemplate, mock(AdaptiveBatchingController.class),
+                new MockEnvironment()
+                        .withProperty("spring.kafka.producer.bootstrap-servers", "localhost:1")
+                        .withProperty("product.spool.health-timeout-ms", "300"));
+        try {
+            assertFalse(drainer.isSpooling());
+            drainer.drain();
+            assertTrue(drainer.isSpooling());
+            verifyNoInteractions(kafkaTemplate);
+        } finally {
+            drainer.destroy();
+        }
+    }
+
+    private static ProductCreatedEvent event(int i) {
+        return new ProductCreatedEvent("product-" + i, "Title " + i, new BigDecimal("10.5").add(BigDecimal.valueOf(i)), i);
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).count();
+        }
+    }
+}
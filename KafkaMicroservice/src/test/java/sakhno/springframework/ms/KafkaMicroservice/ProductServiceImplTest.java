@@ -0,0 +1,83 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
+import sakhno.springframework.ms.KafkaMicroservice.idempotency.IdempotencyKeyCache;
+import sakhno.springframework.ms.KafkaMicroservice.producer.AdaptiveBatchingController;
+import sakhno.springframework.ms.KafkaMicroservice.producer.ProducerAdmissionController;
+import sakhno.springframework.ms.KafkaMicroservice.service.ProductServiceImpl;
+import sakhno.springframework.ms.KafkaMicroservice.spool.SpoolDrainer;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Запись в журнал при прямой отправке: журнал получает запись только при ошибке самой отправки, но не при превышении
+ * product.create.send-timeout-ms.
+ */
+public class ProductServiceImplTest {
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, ProductCreatedEvent> kafkaTemplate = mock(KafkaTemplate.class);
+    private final AdaptiveBatchingController adaptiveBatchingController = mock(AdaptiveBatchingController.class);
+    private final ProducerAdmissionController producerAdmissionController = mock(ProducerAdmissionController.class);
+    private final SpoolDrainer spoolDrainer = mock(SpoolDrainer.class);
+    private final CompletableFuture<SendResult<String, ProductCreatedEvent>> sendResult = new CompletableFuture<>();
+    private ProductServiceImpl productService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(adaptiveBatchingController.send(any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(sendResult);
+        when(spoolDrainer.spoolFailed(any(), any())).thenReturn(true);
+        productService = new ProductServiceImpl(kafkaTemplate, adaptiveBatchingController,
+                producerAdmissionController, null, null, null, spoolDrainer, mock(IdempotencyKeyCache.class));
+        ReflectionTestUtils.setField(productService, "delivery", "direct");
+        ReflectionTestUtils.setField(productService, "sendTimeout", 100L);
+    }
+
+    @Test
+    void testCreateProductAsync_whenAckTimesOut_failsWithoutSpooling() {
+        CompletableFuture<String> productId = productService.createProductAsync(createProductDto());
+
+        ExecutionException exception = assertThrows(ExecutionException.class, productId::get);
+        assertInstanceOf(TimeoutException.class, exception.getCause());
+        verify(spoolDrainer, never()).spoolFailed(any(), any());
+        verify(producerAdmissionController, never()).release(anyLong(), any());
+
+        // запись осталась в продюсере; если ее отправка все же не удалась, разрешение освобождается, а запись
+        // попадает в журнал один раз
+        sendResult.completeExceptionally(new KafkaException("delivery timeout"));
+        verify(producerAdmissionController).release(anyLong(), any());
+        verify(spoolDrainer, times(1)).spoolFailed(any(), any());
+    }
+
+    @Test
+    void testCreateProductAsync_whenSendFails_spoolsAndReturnsProductId() throws Exception {
+        CompletableFuture<String> productId = productService.createProductAsync(createProductDto());
+        sendResult.completeExceptionally(new KafkaException("broker unavailable"));
+
+        assertNotNull(productId.get());
+        verify(spoolDrainer, times(1)).spoolFailed(any(), any());
+    }
+
+    private static CreateProductDto createProductDto() {
+        return new CreateProductDto("Samsung", new BigDecimal("600.00"), 1);
+    }
+}
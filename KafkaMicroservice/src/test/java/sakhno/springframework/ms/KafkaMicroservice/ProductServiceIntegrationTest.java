@@ -15,14 +15,14 @@ import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.KafkaMessageListenerContainer;
 import org.springframework.kafka.listener.MessageListener;
 import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.test.EmbeddedKafkaBroker;
 import org.springframework.kafka.test.context.EmbeddedKafka;
 import org.springframework.kafka.test.utils.ContainerTestUtils;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.EventContract.serialization.ProductCreatedEventDeserializer;
 import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
-import sakhno.springframework.ms.KafkaMicroservice.event.ProductCreatedEvent;
 import sakhno.springframework.ms.KafkaMicroservice.service.ProductService;
 import sakhno.springframework.ms.KafkaMicroservice.service.ProductServiceImpl;
 
@@ -74,9 +74,8 @@ public class ProductServiceIntegrationTest {
                 ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, embeddedKafkaBroker.getBrokersAsString(),
                 ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class,
                 ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class,
-                ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, JsonDeserializer.class,
+                ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, ProductCreatedEventDeserializer.class,
                 ConsumerConfig.GROUP_ID_CONFIG, environment.getProperty("spring.kafka.consumer.group-id"),
-                JsonDeserializer.TRUSTED_PACKAGES, environment.getProperty("spring.kafka.consumer.properties.spring.json.trusted.packages"),
                 ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, environment.getProperty("spring.kafka.consumer.auto-offset-reset")
         );
     }
@@ -85,9 +84,10 @@ public class ProductServiceIntegrationTest {
     void testCreateProduct_whenGivenValidProductDetails_successfullySendsKafkaMessage() throws ExecutionException, InterruptedException {
         CreateProductDto createProductDto = new CreateProductDto("Samsung", new BigDecimal(600), 1);
         productService.createProduct(createProductDto);
-        ConsumerRecord<String, ProductCreatedEvent> message = records.poll(3000, TimeUnit.MICROSECONDS);
+        ConsumerRecord<String, ProductCreatedEvent> message = records.poll(3000, TimeUnit.MILLISECONDS);
         assertNotNull(message);
         assertNotNull(message.key());
+        assertNotNull(message.headers().lastHeader("produceTimestamp"));
         ProductCreatedEvent productCreatedEvent = message.value();
         assertEquals(createProductDto.getTitle(), productCreatedEvent.getTitle());
         assertEquals(createProductDto.getPrice(), productCreatedEvent.getPrice());
@@ -0,0 +1,128 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
+import sakhno.springframework.ms.KafkaMicroservice.service.ProductService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный тест на встроенном кластере из 3 брокеров: пропускная способность синхронной и асинхронной отправки при
+ * фиксированном пуле потоков (аналог пула Tomcat). В асинхронном режиме поток вызывающего не ждет подтверждения,
+ * поэтому пул держит в полете больше запросов, чем в нем потоков. Используется прямая отправка без outbox.
+ * <p>
+ * Пропускная способность выводится в лог на уровне INFO. Системное свойство product.load-test.min-async-rps задает
+ * нижнюю границу для асинхронного режима, по умолчанию 0 - не проверяется: время зависит от машины.
+ * </p>
+ */
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true)
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "product.create.delivery=direct"})
+public class ProductServiceLoadTest {
+    private static final Logger log = LoggerFactory.getLogger(ProductServiceLoadTest.class);
+    private static final int THREADS = 8;
+    private static final int REQUESTS = 1000;
+
+    @Autowired
+    private ProductService productService;
+
+    @Test
+    void testCreateProductAsync_whenFixedThreadPool_measuresThroughputAndCompletesEveryRequest() throws Exception {
+        CreateProductDto createProductDto = new CreateProductDto("Samsung", new BigDecimal(600), 1);
+        // прогрев: метаданные топика и соединения с брокерами
+        productService.createProduct(createProductDto);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<String>> syncResults = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                syncResults.add(executor.submit(() -> productService.createProduct(createProductDto)));
+            }
+            for (Future<String> result : syncResults) {
+                assertNotNull(result.get(30, TimeUnit.SECONDS));
+            }
+            long syncNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                results.add(CompletableFuture
+                        .supplyAsync(() -> productService.createProductAsync(createProductDto), executor)
+                        .thenCompose(future -> future));
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+            long asyncNanos = System.nanoTime() - start;
+
+            Set<String> productIds = results.stream().map(CompletableFuture::join).collect(Collectors.toSet());
+            assertEquals(REQUESTS, productIds.size());
+            long asyncThroughput = throughput(asyncNanos);
+            log.info("Sync: {} requests on {} threads, {} req/s", REQUESTS, THREADS, throughput(syncNanos));
+            log.info("Async: {} requests on {} threads, {} req/s", REQUESTS, THREADS, asyncThroughput);
+            long minThroughput = Long.getLong("product.load-test.min-async-rps", 0);
+            assertTrue(asyncThroughput >= minThroughput,
+                    "async " + asyncThroughput + " req/s, expected at least " + minThroughput);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testCreateProductAsync_whenSingleCallerThread_returnsBeforeAcknowledgement() throws Exception {
+        CreateProductDto createProductDto = new CreateProductDto("Samsung", new BigDecimal(600), 1);
+
+        // прогрев: первая отправка ждет метаданные топика
+        productService.createProduct(createProductDto);
+
+        // один поток запускает все отправки подряд: синхронный путь ждал бы подтверждения каждой, и каждая future
+        // была бы завершена к возврату из вызова
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            List<CompletableFuture<String>> results = new ArrayList<>();
+            int pendingOnReturn = caller.submit(() -> {
+                int pending = 0;
+                for (int i = 0; i < REQUESTS; i++) {
+                    CompletableFuture<String> future = productService.createProductAsync(createProductDto);
+                    if (!future.isDone()) {
+                        pending++;
+                    }
+                    results.add(future);
+                }
+                return pending;
+            }).get(30, TimeUnit.SECONDS);
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+            log.info("{} of {} futures were pending when createProductAsync returned", pendingOnReturn, REQUESTS);
+            assertTrue(pendingOnReturn > REQUESTS / 2, pendingOnReturn + " futures pending on return");
+            assertEquals(REQUESTS, results.stream().map(CompletableFuture::join).distinct().count());
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    private static long throughput(long nanos) {
+        return REQUESTS * TimeUnit.SECONDS.toNanos(1) / Math.max(nanos, 1);
+    }
+}
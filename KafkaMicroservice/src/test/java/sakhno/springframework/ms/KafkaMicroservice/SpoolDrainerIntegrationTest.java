@@ -0,0 +1,77 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import sakhno.springframework.ms.EventContract.event.ProductCreatedEvent;
+import sakhno.springframework.ms.KafkaMicroservice.spool.ProductEventSpool;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Воспроизведение журнала, оставшегося после перезапуска: события, записанные в журнал до запуска контекста,
+ * доставляются в порядке записи после появления кластера.
+ */
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true)
+@SpringBootTest(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "product.create.delivery=direct",
+        "product.spool.enabled=true",
+        "product.spool.segment-size-bytes=4096",
+        "product.spool.drain.interval-ms=200",
+        "product.spool.drain.batch-size=50"})
+public class SpoolDrainerIntegrationTest {
+    private static final int SPOOLED = 300;
+    private static final String KEY = "spooled-product";
+
+    @Autowired
+    private ProductEventSpool spool;
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @DynamicPropertySource
+    static void spoolDirectory(DynamicPropertyRegistry registry) throws IOException {
+        Path directory = Files.createTempDirectory("spool-test");
+        ProductEventSpool spool = new ProductEventSpool(true, directory, 4096, false);
+        for (int i = 0; i < SPOOLED; i++) {
+            spool.append(KEY, "message-" + i, System.currentTimeMillis(),
+                    new ProductCreatedEvent(KEY, "Samsung", new BigDecimal(600), i));
+        }
+        registry.add("product.spool.directory", directory::toString);
+    }
+
+    @Test
+    void testDrainer_whenSpoolRecoveredOnStartup_replaysEventsInOrder() {
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        KafkaMessageListenerContainer<String, ProductCreatedEvent> container = ProductCreatedEventsTestConsumer.start(
+                embeddedKafkaBroker, "spool-test", record -> received.add(ProductCreatedEventsTestConsumer.messageId(record)));
+        try {
+            await().atMost(Duration.ofSeconds(30)).untilAsserted(() -> assertEquals(0, spool.pending()));
+            await().atMost(Duration.ofSeconds(10)).untilAsserted(() -> assertEquals(SPOOLED, received.size()));
+
+            for (int i = 0; i < SPOOLED; i++) {
+                assertEquals("message-" + i, received.get(i));
+            }
+        } finally {
+            container.stop();
+        }
+    }
+}
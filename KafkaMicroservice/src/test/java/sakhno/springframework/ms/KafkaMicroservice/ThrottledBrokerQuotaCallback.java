@@ -0,0 +1,59 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.security.auth.KafkaPrincipal;
+import org.apache.kafka.server.quota.ClientQuotaCallback;
+import org.apache.kafka.server.quota.ClientQuotaEntity;
+import org.apache.kafka.server.quota.ClientQuotaType;
+
+import java.util.Map;
+
+/**
+ * Квота брокера для тестов: на брокере с node.id, равным test.throttled.node.id, запись каждого клиента ограничена
+ * test.throttled.produce-bytes-per-second байт в секунду, остальные брокеры и типы квот не ограничены. Подключается
+ * свойством брокера client.quota.callback.class, так один брокер встроенного кластера становится медленным лидером.
+ */
+public class ThrottledBrokerQuotaCallback implements ClientQuotaCallback {
+    private boolean throttled;
+    private double produceBytesPerSecond;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object nodeId = configs.get("node.id") != null ? configs.get("node.id") : configs.get("broker.id");
+        this.throttled = String.valueOf(configs.get("test.throttled.node.id")).equals(String.valueOf(nodeId));
+        this.produceBytesPerSecond = Double.parseDouble(
+                String.valueOf(configs.get("test.throttled.produce-bytes-per-second")));
+    }
+
+    @Override
+    public Map<String, String> quotaMetricTags(ClientQuotaType quotaType, KafkaPrincipal principal, String clientId) {
+        return Map.of("user", "", "client-id", clientId);
+    }
+
+    @Override
+    public Double quotaLimit(ClientQuotaType quotaType, Map<String, String> metricTags) {
+        return throttled && quotaType == ClientQuotaType.PRODUCE ? produceBytesPerSecond : null;
+    }
+
+    @Override
+    public void updateQuota(ClientQuotaType quotaType, ClientQuotaEntity quotaEntity, double newValue) {
+    }
+
+    @Override
+    public void removeQuota(ClientQuotaType quotaType, ClientQuotaEntity quotaEntity) {
+    }
+
+    @Override
+    public boolean quotaResetRequired(ClientQuotaType quotaType) {
+        return false;
+    }
+
+    @Override
+    public boolean updateClusterMetadata(Cluster cluster) {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,25 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.env.MockEnvironment;
+import sakhno.springframework.ms.KafkaMicroservice.admin.TopicCapacityService;
+import sakhno.springframework.ms.KafkaMicroservice.controller.TopicAdminController;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class TopicAdminControllerTest {
+    private final TopicCapacityService topicCapacityService = mock(TopicCapacityService.class);
+
+    @Test
+    void testExpand_whenAdminNotEnabled_rejectsWithoutTouchingCluster() throws Exception {
+        TopicAdminController controller = new TopicAdminController(topicCapacityService, new MockEnvironment());
+
+        ResponseEntity<Object> response = controller.expand(6, false, true);
+
+        assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+        verify(topicCapacityService, never()).expand(anyInt(), anyBoolean(), anyBoolean());
+    }
+}
@@ -0,0 +1,150 @@
+package sakhno.springframework.ms.KafkaMicroservice;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import sakhno.springframework.ms.KafkaMicroservice.admin.TopicCapacityService;
+import sakhno.springframework.ms.KafkaMicroservice.admin.TopicCapacityService.CapacityReport;
+import sakhno.springframework.ms.KafkaMicroservice.admin.TopicCapacityService.PartitionCapacity;
+import sakhno.springframework.ms.KafkaMicroservice.admin.TopicCapacityService.PartitionExpansion;
+import sakhno.springframework.ms.KafkaMicroservice.admin.TopicCapacityService.PartitionRecommendation;
+import sakhno.springframework.ms.KafkaMicroservice.dto.CreateProductDto;
+import sakhno.springframework.ms.KafkaMicroservice.dto.ErrorMessage;
+import sakhno.springframework.ms.KafkaMicroservice.service.ProductService;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DirtiesContext
+@ActiveProfiles("test")
+@EmbeddedKafka(partitions = 3, count = 3, controlledShutdown = true, topics = {"product-created-events-topic",
+        "product-created-events-topic-retry-1000", "product-created-events-topic-dlt"})
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+                "product.create.delivery=direct",
+                "product.topic.capacity.sample-interval-ms=3600000",
+                "product.topic.admin.enabled=true"})
+public class TopicCapacityIntegrationTest {
+    private static final String TOPIC = "product-created-events-topic";
+
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private TopicCapacityService topicCapacityService;
+    @Autowired
+    private TestRestTemplate restTemplate;
+    @Value("${spring.embedded.kafka.brokers}")
+    private String brokers;
+
+    @Test
+    void testSample_whenProducedAndConsumed_reportsRatesAndRecommendsPartitions() throws Exception {
+        createProducts(20);
+        consumeAndCommit();
+        topicCapacityService.sample();
+        createProducts(30);
+        consumeAndCommit();
+
+        CapacityReport report = topicCapacityService.sample();
+        long endOffsets = report.partitionDetails().stream().mapToLong(PartitionCapacity::endOffset).sum();
+        assertTrue(endOffsets >= 50, "end offsets " + endOffsets);
+        assertTrue(report.intervalSeconds() > 0);
+        assertTrue(report.partitionDetails().stream().mapToDouble(PartitionCapacity::produceRate).sum() > 0);
+        assertTrue(report.partitionDetails().stream().mapToLong(PartitionCapacity::sizeBytes).sum() > 0);
+        assertEquals(0, report.partitionDetails().stream().mapToLong(PartitionCapacity::lag).sum());
+        assertTrue(report.partitionDetails().stream().mapToDouble(PartitionCapacity::consumerRate).sum() > 0);
+
+        PartitionRecommendation given = topicCapacityService.recommend(1000, 100.0);
+        // ceil(1000 * 1.2 / 100)
+        assertEquals(12, given.recommendedPartitions());
+        assertFalse(given.measured());
+
+        // потребитель не отставал: измеренная скорость - нижняя граница
+        PartitionRecommendation measured = topicCapacityService.recommend(1000, null);
+        assertTrue(measured.measured());
+        assertTrue(measured.consumerRatePerPartition() > 0);
+        assertTrue(measured.warnings().stream().anyMatch(warning -> warning.contains("lower bound")));
+    }
+
+    @Test
+    void testExpand_whenKeyedPartitioner_requiresAcceptKeyReordering() throws Exception {
+        createProducts(1);
+        int current = topicCapacityService.sample().partitions();
+        int expanded = current + 3;
+
+        ResponseEntity<ErrorMessage> rejected = restTemplate.postForEntity(
+                "/admin/topic/partitions?count=" + expanded, null, ErrorMessage.class);
+        assertEquals(HttpStatus.CONFLICT, rejected.getStatusCode());
+        assertTrue(rejected.getBody().getMessage().contains("acceptKeyReordering"));
+        ResponseEntity<ErrorMessage> shrink = restTemplate.postForEntity(
+                "/admin/topic/partitions?count=1&acceptKeyReordering=true", null, ErrorMessage.class);
+        assertEquals(HttpStatus.BAD_REQUEST, shrink.getStatusCode());
+
+        PartitionExpansion dryRun = topicCapacityService.expand(expanded, true, true);
+        assertTrue(dryRun.dryRun());
+        assertEquals(current, topicCapacityService.sample().partitions());
+
+        ResponseEntity<PartitionExpansion> expansion = restTemplate.postForEntity(
+                "/admin/topic/partitions?count=" + expanded + "&acceptKeyReordering=true", null,
+                PartitionExpansion.class);
+        assertEquals(HttpStatus.OK, expansion.getStatusCode());
+        assertEquals(current, expansion.getBody().previousPartitions());
+        assertEquals(List.of(TOPIC + "-dlt", TOPIC + "-retry-1000"), expansion.getBody().companionTopics());
+        assertEquals(3, expansion.getBody().warnings().size());
+        assertEquals(expanded, restTemplate.getForObject("/admin/topic/capacity?refresh=true", CapacityReport.class)
+                .partitions());
+        try (AdminClient admin = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, brokers))) {
+            admin.describeTopics(List.of(TOPIC + "-retry-1000", TOPIC + "-dlt")).allTopicNames().get()
+                    .forEach((name, description) -> assertEquals(expanded, description.partitions().size(), name));
+        }
+    }
+
+    private void createProducts(int count) throws Exception {
+        CreateProductDto createProductDto = new CreateProductDto("Samsung", new BigDecimal(600), 1);
+        for (int i = 0; i < count; i++) {
+            productService.createProduct(createProductDto);
+        }
+    }
+
+    /**
+     * Чтение всех записей топика группой product-created-events с фиксацией offset.
+     */
+    private void consumeAndCommit() {
+        try (KafkaConsumer<String, byte[]> consumer = new KafkaConsumer<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, brokers,
+                ConsumerConfig.GROUP_ID_CONFIG, "product-created-events",
+                ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest",
+                ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false),
+                new StringDeserializer(), new ByteArrayDeserializer())) {
+            consumer.subscribe(List.of(TOPIC));
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (System.currentTimeMillis() < deadline) {
+                consumer.poll(Duration.ofMillis(200));
+                consumer.commitSync();
+                if (!consumer.assignment().isEmpty() && consumer.assignment().stream()
+                        .allMatch(partition -> consumer.position(partition)
+                                >= consumer.endOffsets(List.of(partition)).get(partition))) {
+                    return;
+                }
+            }
+        }
+    }
+}